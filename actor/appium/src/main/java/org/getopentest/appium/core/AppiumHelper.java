@@ -10,6 +10,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.getopentest.logging.Logger;
+import org.getopentest.util.ActorContext;
 import org.getopentest.util.Config;
 import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
@@ -20,26 +21,14 @@ import org.openqa.selenium.remote.DesiredCapabilities;
  */
 public final class AppiumHelper {
 
-    private static Config config;
-
-    private static AppiumDriver<MobileElement> driver;
-
-    private static int explicitWaitSec;
-    
-    private static boolean invertHorizontalSwipe;
-    
-    private static boolean invertVerticalSwipe;
-
     /**
-     * Platform name, in lowercase ("ios" or "android").
+     * The configuration loaded from actor.yaml, used when the test actor that
+     * owns the current thread didn't publish its own configuration.
      */
-    private static String platform;
+    private static Config defaultConfig;
 
     static {
-        config = Config.load("actor.yaml");
-        explicitWaitSec = config.getInteger("appium.explicitWaitSec", 10);
-        invertHorizontalSwipe = config.getBoolean("appium.invertHorizontalSwipe", false);
-        invertVerticalSwipe = config.getBoolean("appium.invertVerticalSwipe", false);
+        defaultConfig = Config.load("actor.yaml");
     }
 
     /**
@@ -69,7 +58,7 @@ public final class AppiumHelper {
                 getCapabilityAsString(
                         capsMap,
                         "platform",
-                        config.getString("appium.desiredCapabilities.platformName", null)));
+                        getConfig().getString("appium.desiredCapabilities.platformName", null)));
         if (platformLowercase != null) {
             platformLowercase = platformLowercase.trim().toLowerCase();
         } else {
@@ -79,7 +68,7 @@ public final class AppiumHelper {
                     + "\"appium.desiredCapabilities.platformName\" key. The valid "
                     + "values are \"iOS\" or \"Android\".");
         }
-        AppiumHelper.platform = platformLowercase;
+        getActorState().platform = platformLowercase;
 
         AppiumDriver<MobileElement> newDriver;
 
@@ -90,14 +79,14 @@ public final class AppiumHelper {
         injectCapsFromConfig(caps);
 
         try {
-            if (platform.equalsIgnoreCase("android")) {
+            if (platformLowercase.equals("android")) {
                 caps.setCapability("platformName", "Android");
 
                 copyCapabilities(capsMap, caps);
 
                 Logger.info("Creating Appium Android driver...");
                 newDriver = new AndroidDriver<>(new URL(url), caps);
-            } else if (platform.equalsIgnoreCase("ios")) {
+            } else if (platformLowercase.equals("ios")) {
                 caps.setCapability("platformName", "iOS");
 
                 copyCapabilities(capsMap, caps);
@@ -118,14 +107,15 @@ public final class AppiumHelper {
     }
 
     public static AppiumDriver<MobileElement> createDriverWithRetries(String url, Map<String, Object> capsMap) {
-        int retriesLeft = config.getInteger("appium.initRetries", 3);
+        ActorState state = getActorState();
+        int retriesLeft = getConfig().getInteger("appium.initRetries", 3);
 
-        while ((driver == null) && retriesLeft > 0) {
+        while ((state.driver == null) && retriesLeft > 0) {
             --retriesLeft;
 
             try {
-                driver = createDriver(url, capsMap);
-                return driver;
+                state.driver = createDriver(url, capsMap);
+                return state.driver;
             } catch (Exception ex) {
                 if (retriesLeft > 0) {
                     Logger.warning(String.format(
@@ -151,14 +141,15 @@ public final class AppiumHelper {
      * Calls driver.quit() and sets the driver instance to null.
      */
     public static void discardDriver() {
-        if (driver != null) {
+        ActorState state = getActorState();
+        if (state.driver != null) {
             try {
-                driver.quit();
+                state.driver.quit();
             } catch (Exception ex) {
                 Logger.warning("Failed to quit the Appium driver", ex);
             }
 
-            driver = null;
+            state.driver = null;
         }
     }
 
@@ -179,28 +170,43 @@ public final class AppiumHelper {
         }
     }
 
+    /**
+     * Returns the state kept for the test actor that owns the current thread.
+     * Every test actor running in this JVM has its own driver.
+     */
+    private static ActorState getActorState() {
+        return ActorContext.getCurrent().getAttribute(ActorState.class.getName(), ActorState::new);
+    }
+
+    /**
+     * Returns the configuration of the test actor that owns the current
+     * thread.
+     */
     public static Config getConfig() {
-        return config;
+        Config actorConfig = ActorContext.getCurrent().getConfig();
+        return actorConfig != null ? actorConfig : defaultConfig;
     }
 
     public static AppiumDriver<MobileElement> getDriver() {
+        ActorState state = getActorState();
+
         // If driver exists, verify that it is healthy
-        if (driver != null) {
+        if (state.driver != null) {
             try {
                 // Just a command to force the driver to talk to the device
-                driver.getPageSource();
+                state.driver.getPageSource();
             } catch (Exception ex) {
                 discardDriver();
             }
         }
 
-        if (driver == null) {
+        if (state.driver == null) {
             createDriverWithRetries(null, null);
-            int implicitWaitSec = config.getInteger("appium.implicitWaitSec", 0);
-            driver.manage().timeouts().implicitlyWait(implicitWaitSec, TimeUnit.SECONDS);
+            int implicitWaitSec = getConfig().getInteger("appium.implicitWaitSec", 0);
+            state.driver.manage().timeouts().implicitlyWait(implicitWaitSec, TimeUnit.SECONDS);
         }
 
-        return driver;
+        return state.driver;
     }
 
     /**
@@ -209,25 +215,25 @@ public final class AppiumHelper {
      * @return Explicit wait time in seconds
      */
     public static int getExplicitWaitSec() {
-        return explicitWaitSec;
+        return getConfig().getInteger("appium.explicitWaitSec", 10);
     }
 
     /**
      * Returns the value of the appium.invertHorizontalSwipe config parameter.
      */
     public static boolean getInvertHorizontalSwipe() {
-        return invertHorizontalSwipe;
+        return getConfig().getBoolean("appium.invertHorizontalSwipe", false);
     }
     
     /**
      * Returns the value of the appium.invertVerticalSwipe config parameter.
      */
     public static boolean getInvertVerticalSwipe() {
-        return invertVerticalSwipe;
+        return getConfig().getBoolean("appium.invertVerticalSwipe", false);
     }
     
     public static String getPlatform() {
-        return platform;
+        return getActorState().platform;
     }
 
     /**
@@ -235,7 +241,7 @@ public final class AppiumHelper {
      * DesiredCapabilities object.
      */
     private static void injectCapsFromConfig(DesiredCapabilities caps) {
-        Object capsFromConfig = config.get("appium.desiredCapabilities", null);
+        Object capsFromConfig = getConfig().get("appium.desiredCapabilities", null);
 
         if (capsFromConfig instanceof Map) {
             Map<String, Object> capsFromConfigMap = (Map) capsFromConfig;
@@ -248,6 +254,19 @@ public final class AppiumHelper {
     }
 
     public static boolean isPlatform(String platform) {
-        return AppiumHelper.platform.equalsIgnoreCase(platform.trim());
+        return getPlatform().equalsIgnoreCase(platform.trim());
+    }
+
+    /**
+     * The state that AppiumHelper keeps for each test actor.
+     */
+    private static class ActorState {
+
+        public AppiumDriver<MobileElement> driver;
+
+        /**
+         * Platform name, in lowercase ("ios" or "android").
+         */
+        public String platform;
     }
 }
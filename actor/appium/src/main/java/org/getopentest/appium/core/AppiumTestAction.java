@@ -25,6 +25,7 @@ import org.getopentest.base.TestAction;
 import org.getopentest.base.TestActorEvents;
 import org.getopentest.contracts.ITestActor;
 import org.getopentest.logging.Logger;
+import org.getopentest.util.ActorContext;
 import org.getopentest.util.Config;
 import org.openqa.selenium.By;
 import org.openqa.selenium.Dimension;
@@ -36,20 +37,19 @@ import org.openqa.selenium.support.ui.WebDriverWait;
 
 public abstract class AppiumTestAction extends TestAction {
 
-    // Used for implementing the TouchActions API
-    private static TouchAction actions;
-
+    /**
+     * The configuration of the test actor that created the last action
+     * instance. Use AppiumHelper.getConfig() instead, which returns the
+     * configuration of the test actor that owns the current thread.
+     */
+    @Deprecated
     protected static Config config;
 
     protected AppiumDriver<MobileElement> driver;
 
-    private static boolean initialized;
-
-    static {
+    public AppiumTestAction() {
         AppiumTestAction.config = AppiumHelper.getConfig();
-    }
 
-    public AppiumTestAction() {
         this.driver = AppiumHelper.getDriver();
 
         if (this.driver == null) {
@@ -179,7 +179,7 @@ public abstract class AppiumTestAction extends TestAction {
     }
 
     public static void discardActionsObject() {
-        AppiumTestAction.actions = null;
+        getActorState().actions = null;
     }
 
     /**
@@ -188,12 +188,20 @@ public abstract class AppiumTestAction extends TestAction {
      * on touch-enabled devices.
      */
     public static TouchAction getActionsInstance() {
-        if (AppiumTestAction.actions == null) {
+        ActorState state = getActorState();
+        if (state.actions == null) {
             Logger.debug("Creating a new TouchAction instance...");
-            AppiumTestAction.actions = new TouchAction(AppiumHelper.getDriver());
+            state.actions = new TouchAction(AppiumHelper.getDriver());
         }
 
-        return AppiumTestAction.actions;
+        return state.actions;
+    }
+
+    /**
+     * Returns the state kept for the test actor that owns the current thread.
+     */
+    private static ActorState getActorState() {
+        return ActorContext.getCurrent().getAttribute(ActorState.class.getName(), ActorState::new);
     }
 
     /**
@@ -267,8 +275,9 @@ public abstract class AppiumTestAction extends TestAction {
         // We run this code in the "initialize" method and not in the constructor, 
         // because at the time the constructor is run, the "actor" field of the 
         // test action is not yet populated.
-        if (!AppiumTestAction.initialized) {
-            AppiumTestAction.initialized = true;
+        ActorState state = getActorState();
+        if (!state.initialized) {
+            state.initialized = true;
 
             this.getActor().addObserver(new Observer() {
                 @Override
@@ -292,7 +301,7 @@ public abstract class AppiumTestAction extends TestAction {
     protected void hideKeyboard(String keyName) {
         try {
             if (driver instanceof IOSDriver) {
-                if (config.getBoolean("appium.hideKeyboardIos", Boolean.TRUE)) {
+                if (AppiumHelper.getConfig().getBoolean("appium.hideKeyboardIos", Boolean.TRUE)) {
                     IOSDriver iosDriver = (IOSDriver) driver;
                     if (keyName != null) {
                         iosDriver.hideKeyboard(keyName);
@@ -305,7 +314,7 @@ public abstract class AppiumTestAction extends TestAction {
                     }
                 }
             } else if (driver instanceof AndroidDriver) {
-                if (config.getBoolean("appium.hideKeyboardAndroid", Boolean.TRUE)) {
+                if (AppiumHelper.getConfig().getBoolean("appium.hideKeyboardAndroid", Boolean.TRUE)) {
                     AndroidDriver androidDriver = (AndroidDriver) driver;
                     androidDriver.hideKeyboard();
                 }
@@ -597,4 +606,21 @@ public abstract class AppiumTestAction extends TestAction {
                     locator), ex);
         }
     }
+
+    /**
+     * The state that AppiumTestAction keeps for each test actor.
+     */
+    private static class ActorState {
+
+        /**
+         * Used for implementing the TouchActions API.
+         */
+        public TouchAction actions;
+
+        /**
+         * Flag to remember whether we've done the one-time initialization work
+         * in the initialize() method.
+         */
+        public boolean initialized;
+    }
 }
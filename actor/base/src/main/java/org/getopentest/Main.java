@@ -1,20 +1,128 @@
 package org.getopentest;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import org.getopentest.base.TestActor;
 import org.getopentest.contracts.ITestActor;
 import org.getopentest.logging.Logger;
+import org.getopentest.util.ActorContext;
+import org.getopentest.util.Config;
 import org.getopentest.util.Encryptor;
 
 public class Main {
 
     public static void main(String[] args) {
-        processCommandLineArgs(args);
-        ITestActor actor = new TestActor();
+        OptionSet options = processCommandLineArgs(args);
 
+        List<Map<String, Object>> actorConfigs = getActorConfigs(options);
+        if (actorConfigs == null) {
+            runActor(new TestActor());
+        } else {
+            runActors(actorConfigs);
+        }
+    }
+
+    /**
+     * Returns the configuration overrides for each of the test actors that
+     * must be started in this JVM, or null if only one test actor must be
+     * started. Multiple test actors can be defined using the "actors" list in
+     * actor.yaml (each list item contains the configuration parameters that
+     * are specific to one actor) or using the --instances command line
+     * argument (all instances use the same configuration).
+     */
+    private static List<Map<String, Object>> getActorConfigs(OptionSet options) {
+        int instances = 1;
+        if (options.has("instances")) {
+            try {
+                instances = Integer.parseInt(options.valueOf("instances").toString());
+            } catch (NumberFormatException ex) {
+                instances = 0;
+            }
+
+            if (instances < 1) {
+                throw new RuntimeException(String.format(
+                        "The value of the --instances command line argument must be "
+                        + "a positive integer, but it was \"%s\".",
+                        options.valueOf("instances")));
+            }
+        }
+
+        Config baseConfig;
+        try {
+            baseConfig = Config.load("actor.yaml");
+        } catch (Exception ex) {
+            return null;
+        }
+
+        List<Object> actorsList = baseConfig.getList("actors", null);
+        if (actorsList == null && instances == 1) {
+            return null;
+        }
+
+        Map<String, Object> baseConfigMap = baseConfig.asMap();
+        String baseActorId = baseConfig.getString("actorId", "");
+        List<Map<String, Object>> actorConfigs = new ArrayList<>();
+
+        if (actorsList != null) {
+            for (Object actorEntry : actorsList) {
+                if (!(actorEntry instanceof Map)) {
+                    throw new RuntimeException(String.format(
+                            "Invalid entry in the \"actors\" list in actor.yaml: %s. "
+                            + "Each entry must be a map of configuration parameters.",
+                            actorEntry));
+                }
+
+                Map<String, Object> overrides = mergeMaps(baseConfigMap, (Map<String, Object>) actorEntry);
+                if (!((Map) actorEntry).containsKey("actorId")) {
+                    // Let each actor generate its own random ID
+                    overrides.put("actorId", "");
+                }
+                actorConfigs.add(overrides);
+            }
+        } else {
+            for (int i = 1; i <= instances; i++) {
+                Map<String, Object> overrides = new LinkedHashMap<>(baseConfigMap);
+                overrides.put("actorId", baseActorId.isEmpty() ? "" : String.format("%s-%s", baseActorId, i));
+                actorConfigs.add(overrides);
+            }
+        }
+
+        for (Map<String, Object> overrides : actorConfigs) {
+            overrides.remove("actors");
+        }
+
+        return actorConfigs;
+    }
+
+    /**
+     * Merges the override map into a copy of the base map. Values that are
+     * maps in both the base map and the override map are merged recursively.
+     */
+    private static Map<String, Object> mergeMaps(Map<String, Object> base, Map<String, Object> override) {
+        Map<String, Object> result = new LinkedHashMap<>(base);
+
+        for (Map.Entry<String, Object> entry : override.entrySet()) {
+            Object baseValue = result.get(entry.getKey());
+            if (baseValue instanceof Map && entry.getValue() instanceof Map) {
+                result.put(entry.getKey(), mergeMaps((Map) baseValue, (Map) entry.getValue()));
+            } else {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    private static void runActor(ITestActor actor) {
         while (true) {
             try {
                 actor.runOneSession();
@@ -26,11 +134,47 @@ public class Main {
         }
     }
 
-    private static void processCommandLineArgs(String[] args) {
+    /**
+     * Starts multiple test actors in the current JVM, each one on its own
+     * thread and with its own actor context. The test actors share the
+     * resources that are safe to share (HTTP connection pools, loaded
+     * classes, etc.).
+     */
+    private static void runActors(List<Map<String, Object>> actorConfigs) {
+        Logger.info(String.format("Starting %s test actors", actorConfigs.size()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(actorConfigs.size());
+        for (int i = 0; i < actorConfigs.size(); i++) {
+            final Map<String, Object> overrides = actorConfigs.get(i);
+            final String threadName = String.format("actor-%s", i + 1);
+
+            executor.submit(() -> {
+                Thread.currentThread().setName(threadName);
+                ActorContext.setCurrent(new ActorContext());
+
+                try {
+                    runActor(new TestActor(overrides));
+                } catch (Throwable ex) {
+                    Logger.error(String.format("Test actor thread %s failed to start", threadName), ex);
+                }
+            });
+        }
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static OptionSet processCommandLineArgs(String[] args) {
         OptionParser parser = new OptionParser();
 
         parser.acceptsAll(Arrays.asList(new String[]{"encrypt"})).withRequiredArg();
         parser.acceptsAll(Arrays.asList(new String[]{"decrypt"})).withRequiredArg();
+        parser.acceptsAll(Arrays.asList(new String[]{"instances"})).withRequiredArg();
         parser.acceptsAll(Arrays.asList(new String[]{"p", "password"})).withRequiredArg();
         parser.acceptsAll(Arrays.asList(new String[]{"w", "workdir"})).withRequiredArg();
 
@@ -77,5 +221,7 @@ public class Main {
 
             System.exit(0);
         }
+
+        return options;
     }
 }
@@ -58,6 +58,17 @@ import org.getopentest.util.Factory;
         description = "Determines whether the response body should be parsed "
         + "from JSON automatically, to make it easier to work with in subsequent "
         + "steps. Default: true.")
+@TestActionArgument(
+        name = "connectTimeoutSec", type = Type.INTEGER, optional = true,
+        description = "The maximum time to wait for the connection to the HTTP "
+        + "server to be established. Default: the value of the "
+        + "\"http.connectTimeoutSec\" config parameter.")
+@TestActionArgument(
+        name = "readTimeoutSec", type = Type.INTEGER, optional = true,
+        description = "The maximum time to wait for data to be received from the "
+        + "HTTP server, once the connection was established. A value of 0 means "
+        + "no timeout. Default: the value of the \"http.readTimeoutSec\" config "
+        + "parameter.")
 
 /**
  * Performs an HTTP request.
@@ -78,6 +89,8 @@ public class HttpRequest extends TestAction {
         String proxy = this.readStringArgument("proxy", this.getActor().getConfig().getString("api.httpProxy", null));
         Integer successStatusCode = this.readIntArgument("successStatusCode", null);
         Boolean parseBody = this.readBooleanArgument("parseBody", null);
+        Integer connectTimeoutSec = this.readIntArgument("connectTimeoutSec", null);
+        Integer readTimeoutSec = this.readIntArgument("readTimeoutSec", null);
         boolean noLogs = this.readBooleanArgument("$noLogs", false);
 
         if (httpVerb == HttpVerb.DELETE && body != null) {
@@ -87,6 +100,11 @@ public class HttpRequest extends TestAction {
         HttpRequestOptions options = new HttpRequestOptions(url, httpVerb);
         options.proxy = proxy;
         options.ignoreCert = ignoreCert;
+        options.connectTimeoutSec = connectTimeoutSec;
+        options.readTimeoutSec = readTimeoutSec;
+        // When the response is saved to a file, we stream it straight to
+        // disk, instead of buffering the whole payload in memory
+        options.streamResponse = outputFilePath != null;
 
         if (ignoreCert) {
             log.warning(
@@ -146,6 +164,7 @@ public class HttpRequest extends TestAction {
                 responseInputStream.close();
                 outputFileStream.close();
             } catch (Throwable ex) {
+                httpRequest.close();
                 throw new RuntimeException(String.format(
                         "Failed to save response payload into file \"%s\"",
                         outputFilePath), ex);
@@ -2,26 +2,27 @@ package org.getopentest.actions;
 
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.function.Predicate;
 import org.apache.commons.codec.CharEncoding;
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.input.BOMInputStream;
 import org.getopentest.annotations.TestActionArgument;
 import org.getopentest.annotations.TestActionClass;
 import org.getopentest.annotations.TestActionOutput;
 import org.getopentest.annotations.Type;
 import org.getopentest.base.TestAction;
+import org.getopentest.base.TestActorEvents;
+import org.getopentest.contracts.IScriptEngine;
+import org.getopentest.contracts.ITestActor;
+import org.getopentest.util.CsvRecordList;
 
 @TestActionClass(
         description = "Parses CSV data from a file or a string and returns the "
@@ -48,6 +49,20 @@ import org.getopentest.base.TestAction;
 @TestActionArgument(name = "fieldNames", type = Type.ARRAY, optional = true,
         description = "The CSV field names as an array of strings. If this argument "
         + "is not provided and the CSV has no header row, the column names will become \"col1\", \"col2\", etc.")
+@TestActionArgument(name = "columns", type = Type.ARRAY, optional = true,
+        description = "The names of the columns to include in the records. By default, "
+        + "all columns are included.")
+@TestActionArgument(name = "filter", type = Type.OBJECT, optional = true,
+        description = "A JavaScript function that receives a record and returns true if "
+        + "the record should be included in the output.")
+@TestActionArgument(name = "skip", type = Type.INTEGER, optional = true, defaultValue = "0",
+        description = "The number of records to skip (after applying the filter).")
+@TestActionArgument(name = "limit", type = Type.INTEGER, optional = true,
+        description = "The maximum number of records to return.")
+@TestActionArgument(name = "stream", type = Type.BOOLEAN, optional = true, defaultValue = "false",
+        description = "Specifies whether the records should be read on demand, as the "
+        + "\"records\" array is iterated, instead of loading all of them in memory. "
+        + "Use this for very large CSV files.")
 @TestActionOutput(name = "records", type = Type.ARRAY,
         description = "The CSV records as an array of objects. The object properties "
         + "will match the field names in the CSV header row. If the header row "
@@ -76,22 +91,39 @@ public class ReadCsv extends TestAction {
         Boolean hasHeader = this.readBooleanArgument("hasHeader", Boolean.FALSE);
         String format = this.readStringArgument("format", "default");
         List<String> fieldNames = this.readArrayArgument("fieldNames", String.class, null);
-
-        try {
-
-            Reader csvReader;
-            if (filePath != null) {
+        List<String> columns = this.readArrayArgument("columns", String.class, null);
+        Object filterFunction = this.readArgument("filter", null);
+        Integer skip = this.readIntArgument("skip", 0);
+        Integer limit = this.readIntArgument("limit", -1);
+        Boolean stream = this.readBooleanArgument("stream", Boolean.FALSE);
+
+        CsvRecordList.ReaderFactory readerFactory;
+        if (filePath != null) {
+            readerFactory = () -> {
                 if (excludeBom) {
-                    csvReader = new InputStreamReader(new BOMInputStream(new FileInputStream(filePath)), CharEncoding.UTF_8);
+                    return new InputStreamReader(new BOMInputStream(new FileInputStream(filePath)), CharEncoding.UTF_8);
                 } else {
-                    csvReader = Files.newBufferedReader(Paths.get(filePath), Charsets.UTF_8);
+                    return Files.newBufferedReader(Paths.get(filePath), Charsets.UTF_8);
                 }
-            } else if (csvString != null) {
-                csvReader = new StringReader(csvString);
-            } else {
-                throw new RuntimeException("Neither the \"file\" argument, nor the \"csv\" argument were provided.");
+            };
+        } else if (csvString != null) {
+            readerFactory = () -> new StringReader(csvString);
+        } else {
+            throw new RuntimeException("Neither the \"file\" argument, nor the \"csv\" argument were provided.");
+        }
+
+        Predicate<Map<String, String>> filter = null;
+        if (filterFunction != null) {
+            IScriptEngine scriptEngine = this.getActor() != null ? this.getActor().getScriptEngine() : null;
+            Predicate<Object> jsFilter = scriptEngine != null ? scriptEngine.toPredicate(filterFunction) : null;
+            if (jsFilter == null) {
+                throw new RuntimeException("The \"filter\" argument must be a JavaScript function.");
             }
 
+            filter = jsFilter::test;
+        }
+
+        try {
             CSVFormat csvFormat = this.getCsvFormat(format);
 
             if (hasHeader) {
@@ -110,38 +142,48 @@ public class ReadCsv extends TestAction {
                 csvFormat = csvFormat.withRecordSeparator(recordSeparator);
             }
 
-            List<Map<String, String>> recordsArray = new ArrayList<>();
-            CSVParser parser = csvFormat.parse(csvReader);
-            Iterable<CSVRecord> records = (Iterable<CSVRecord>) parser;
-
-            for (CSVRecord record : records) {
-                if (hasHeader) {
-                    recordsArray.add(record.toMap());
-                } else {
-                    Map<String, String> recordsMap = new HashMap<>();
-                    Iterator<String> fields = record.iterator();
-                    int columnNo = 1;
-                    while (fields.hasNext()) {
-                        String field = fields.next();
-                        if (fieldNames != null && fieldNames.size() >= columnNo && fieldNames.get(columnNo - 1) != null) {
-                            recordsMap.put(fieldNames.get(columnNo - 1).trim(), field);
-                        } else {
-                            recordsMap.put(String.format("col%s", columnNo), field);
-                        }
-
-                        columnNo++;
-                    }
-                    recordsArray.add(recordsMap);
-                }
+            CsvRecordList records = new CsvRecordList(
+                    readerFactory,
+                    csvFormat,
+                    fieldNames,
+                    columns,
+                    filter,
+                    skip,
+                    limit);
+
+            this.writeOutput("header", records.getHeaderMap());
+            if (stream) {
+                this.closeWhenTestCompletes(records);
+                this.writeOutput("records", records);
+            } else {
+                this.writeOutput("records", records.toArrayList());
             }
-
-            this.writeOutput("header", parser.getHeaderMap());
-            this.writeOutput("records", recordsArray);
         } catch (Exception ex) {
             throw new RuntimeException("Failed to parse CSV", ex);
         }
     }
 
+    /**
+     * Makes sure the file handles held by the record list are released at the
+     * end of the test, even if the records were not read to the end.
+     */
+    private void closeWhenTestCompletes(CsvRecordList records) {
+        ITestActor actor = this.getActor();
+        if (actor == null) {
+            return;
+        }
+
+        actor.addObserver(new Observer() {
+            @Override
+            public void update(Observable eventSource, Object eventData) {
+                if (eventData == TestActorEvents.TEST_COMPLETED) {
+                    records.close();
+                    actor.deleteObserver(this);
+                }
+            }
+        });
+    }
+
     /**
      * Returns a CSVFormat object given the CSV format as a string.
      *
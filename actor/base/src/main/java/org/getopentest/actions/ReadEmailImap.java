@@ -28,7 +28,6 @@ import javax.mail.search.FromStringTerm;
 import javax.mail.search.SearchTerm;
 import javax.mail.search.SentDateTerm;
 import javax.mail.search.SubjectTerm;
-import jdk.nashorn.api.scripting.ScriptUtils;
 import org.getopentest.base.TestAction;
 
 /**
@@ -167,7 +166,7 @@ public class ReadEmailImap extends TestAction {
                         resultMessages.size()));
             }
 
-            this.writeOutput("emails", ScriptUtils.wrapArray(resultMessages.toArray()));
+            this.writeOutput("emails", this.getActor().toJsArray(resultMessages));
 
             // Write the details of the most recent message again, to
             // dedicated output values. These three output values will be
@@ -1,9 +1,14 @@
 package org.getopentest.actions;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -13,11 +18,13 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
-import jdk.nashorn.api.scripting.AbstractJSObject;
-import jdk.nashorn.internal.runtime.Undefined;
 import org.getopentest.base.TestAction;
+import org.getopentest.contracts.IScriptEngine;
+import org.getopentest.contracts.IScriptObject;
 import org.getopentest.contracts.ITestActor;
+import org.getopentest.util.XmlFragmentReader;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -25,7 +32,10 @@ import org.w3c.dom.NodeList;
 
 /**
  * An action that parses XML data and extracts fragments of it based on XPath
- * expressions.
+ * expressions. When the "paths" argument is provided, the XML data is read in
+ * streaming mode instead of being loaded in a DOM, and only the fragments
+ * matched by the path expressions are returned, in the "matches" output (see
+ * XmlFragmentReader for the supported path syntax).
  */
 public class ReadXml extends TestAction {
 
@@ -33,19 +43,60 @@ public class ReadXml extends TestAction {
     // can access it from anonymous classes
     final TestAction action = this;
 
+    /**
+     * The maximum number of compiled XPath expressions cached for each thread.
+     */
+    private static final int XPATH_CACHE_SIZE = 256;
+
+    /**
+     * Compiled XPath expressions, cached per thread because the XPath API
+     * objects are not thread-safe.
+     */
+    private static final ThreadLocal<Map<String, XPathExpression>> xpathCache = ThreadLocal.withInitial(() -> {
+        return new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                return size() > XPATH_CACHE_SIZE;
+            }
+        };
+    });
+
+    private static final ThreadLocal<XPath> xpath = ThreadLocal.withInitial(() -> {
+        return XPathFactory.newInstance().newXPath();
+    });
+
+    /**
+     * Returns the compiled form of the specified XPath expression, compiling
+     * it only the first time it is used on the current thread.
+     */
+    private static XPathExpression compileXPath(String xpathExpression) throws XPathExpressionException {
+        Map<String, XPathExpression> cache = xpathCache.get();
+        XPathExpression compiledExpression = cache.get(xpathExpression);
+
+        if (compiledExpression == null) {
+            compiledExpression = xpath.get().compile(xpathExpression);
+            cache.put(xpathExpression, compiledExpression);
+        }
+
+        return compiledExpression;
+    }
+
     /**
      * Wraps a Node instance into a JS object with a friendly API that allows
-     * the user to parse the XML data (access children and attributes).
+     * the user to parse the XML data (access children and attributes). The
+     * wrapper is converted to the script engine's own representation of a JS
+     * object up front, so that it also works when it's nested in a list or a
+     * map (e.g. in the "matches" output).
      */
-    private AbstractJSObject createNodeWrapper(Node node) {
-        return new XmlNodeWrapper(node);
+    private Object createNodeWrapper(Node node) {
+        XmlNodeWrapper nodeWrapper = new XmlNodeWrapper(node);
+        ITestActor actor = this.getActor();
+        return actor != null ? actor.toJsType(nodeWrapper) : nodeWrapper;
     }
 
     private List<Node> executeXPath(Node rootNode, String xpathExpression) {
         try {
-            XPathFactory xPathfactory = XPathFactory.newInstance();
-            XPath xpath = xPathfactory.newXPath();
-            XPathExpression expr = xpath.compile(xpathExpression);
+            XPathExpression expr = compileXPath(xpathExpression);
             Object nodeObj = expr.evaluate(rootNode, XPathConstants.NODESET);
             List<Node> results = new ArrayList<>();
             if (nodeObj instanceof Node) {
@@ -73,6 +124,12 @@ public class ReadXml extends TestAction {
 
         String filePath = this.readStringArgument("file", null);
         String xmlString = this.readStringArgument("xml", null);
+        List<String> paths = this.readArrayArgument("paths", String.class, null);
+
+        if (paths != null) {
+            this.readFragments(filePath, xmlString, paths);
+            return;
+        }
 
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -94,56 +151,40 @@ public class ReadXml extends TestAction {
         }
     }
 
-    private void processAttributes(Node xmlNode, Map<String, Object> nodeObject) {
-        NamedNodeMap attributesMap = xmlNode.getAttributes();
-        int attrCount = attributesMap.getLength();
-        for (int attrIndex = 0; attrIndex < attrCount; attrIndex++) {
-            Node attributeNode = attributesMap.item(attrIndex);
-            if (attributeNode.getNodeType() == Node.ATTRIBUTE_NODE) {
-                String prefix = attributeNode.getPrefix() != null ? attributeNode.getPrefix() : "";
-                nodeObject.put("$" + prefix + attributeNode.getNodeName(), attributeNode.getNodeValue());
-            }
-        }
-    }
-
-    private Object processNode(Node xmlNode) {
-        if (xmlNode.getNodeType() == Node.ELEMENT_NODE) {
-            Map<String, Object> nodeObject = new HashMap<>();
-
-            processAttributes(xmlNode, nodeObject);
-
-            StringBuilder nodeText = null;
-            NodeList nodeList = xmlNode.getChildNodes();
-            int childCount = nodeList.getLength();
-            for (int childIndex = 0; childIndex < childCount; childIndex++) {
-                Node childNode = nodeList.item(childIndex);
-                if (childNode.getNodeType() == Node.ELEMENT_NODE) {
-                    String prefix = childNode.getPrefix() != null ? childNode.getPrefix() : "";
-                    nodeObject.put(prefix + childNode.getNodeName(), processNode(childNode));
-                } else if (childNode.getNodeType() == Node.TEXT_NODE) {
-                    if (nodeText == null) {
-                        nodeText = new StringBuilder();
-                    }
+    /**
+     * Reads the XML data in streaming mode and writes the fragments matched by
+     * each path expression to the "matches" output.
+     */
+    private void readFragments(String filePath, String xmlString, List<String> paths) {
+        XmlFragmentReader fragmentReader = new XmlFragmentReader(paths);
+        Map<String, List<Object>> fragments;
 
-                    nodeText.append(childNode.getTextContent());
+        try {
+            if (filePath != null) {
+                try (InputStream xmlStream = new BufferedInputStream(new FileInputStream(filePath))) {
+                    fragments = fragmentReader.read(xmlStream);
                 }
+            } else if (xmlString != null) {
+                fragments = fragmentReader.read(new ByteArrayInputStream(xmlString.getBytes("UTF-8")));
+            } else {
+                throw new RuntimeException("Neither the \"file\" argument, nor the \"xml\" argument were provided.");
             }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to parse XML", ex);
+        }
 
-            if (nodeText != null) {
-                nodeObject.put("$$text", nodeText.toString());
-            }
-
-            return nodeObject;
-        } else if (xmlNode.getNodeType() == Node.ATTRIBUTE_NODE) {
-            return xmlNode.getNodeValue();
-        } else if (xmlNode.getNodeType() == Node.TEXT_NODE) {
-            return xmlNode.getNodeValue();
-        } else {
-            return null;
+        Map<String, List<Object>> matches = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Object>> entry : fragments.entrySet()) {
+            List<Object> pathMatches = entry.getValue().stream()
+                    .map(f -> f instanceof Node ? createNodeWrapper((Node) f) : f)
+                    .collect(Collectors.toList());
+            matches.put(entry.getKey(), pathMatches);
         }
+
+        this.writeOutput("matches", matches);
     }
 
-    class XmlNodeWrapper extends AbstractJSObject {
+    class XmlNodeWrapper implements IScriptObject {
 
         private transient Node wrappedNode;
 
@@ -180,9 +221,9 @@ public class ReadXml extends TestAction {
                 case "name":
                     return wrappedNode.getNodeName();
                 case "node":
-                    return new Function<String, AbstractJSObject>() {
+                    return new Function<String, Object>() {
                         @Override
-                        public AbstractJSObject apply(String xpathExpression) {
+                        public Object apply(String xpathExpression) {
                             List<Node> children = executeXPath(wrappedNode, xpathExpression);
                             if (children.size() > 0) {
                                 return createNodeWrapper(children.get(0));
@@ -192,14 +233,14 @@ public class ReadXml extends TestAction {
                         }
                     };
                 case "nodes":
-                    return new AbstractJSObject() {
+                    return new IScriptObject() {
                         @Override
                         public boolean isFunction() {
                             return true;
                         }
 
                         @Override
-                        public Object call(Object thiz, Object... args) {
+                        public Object call(Object... args) {
                             String xpathExpression;
 
                             if (args.length > 0) {
@@ -209,7 +250,7 @@ public class ReadXml extends TestAction {
                             }
 
                             List<Node> children = executeXPath(wrappedNode, xpathExpression);
-                            List<AbstractJSObject> jsObjectList = children.stream()
+                            List<Object> jsObjectList = children.stream()
                                     .map(n -> createNodeWrapper(n))
                                     .collect(Collectors.toList());
                             return action.getActor().toJsType(jsObjectList);
@@ -247,7 +288,7 @@ public class ReadXml extends TestAction {
                 case "text":
                     return wrappedNode.getTextContent();
                 default:
-                    return Undefined.getUndefined();
+                    return IScriptEngine.UNDEFINED;
             }
         }
     }
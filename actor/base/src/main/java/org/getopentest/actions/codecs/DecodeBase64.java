@@ -5,7 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.Base64;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.getopentest.base.TestAction;
 import org.getopentest.util.TypeUtil;
@@ -17,7 +17,7 @@ public class DecodeBase64 extends TestAction {
         super.run();
 
         String sourceFile = readStringArgument("sourceFile", null);
-        Object sourceBytesObj = this.readArgument("sourceBytes", null);
+        Object sourceBytesObj = this.toJavaType(this.readArgument("sourceBytes", null));
         String sourceString = this.readStringArgument("sourceString", null);
         String targetFile = readStringArgument("targetFile", null);
 
@@ -30,9 +30,8 @@ public class DecodeBase64 extends TestAction {
             } else if (sourceBytesObj != null) {
                 if (sourceBytesObj instanceof byte[]) {
                     sourceBytes = (byte[]) sourceBytesObj;
-                } else if (sourceBytesObj instanceof ScriptObjectMirror) {
-                    sourceBytes = TypeUtil.jsNumberArrayToJavaByteArray(
-                            (ScriptObjectMirror) sourceBytesObj);
+                } else if (sourceBytesObj instanceof List) {
+                    sourceBytes = TypeUtil.numberListToByteArray((List<Object>) sourceBytesObj);
                 } else {
                     throw new RuntimeException(
                             "The \"sourceBytes\" argument must be either a Java "
@@ -2,7 +2,7 @@ package org.getopentest.actions.codecs;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import java.util.List;
 import org.getopentest.base.TestAction;
 import org.getopentest.util.TypeUtil;
 
@@ -12,15 +12,14 @@ public class DecodeUtf8 extends TestAction {
     public void run() {
         super.run();
 
-        Object sourceBytesObj = this.readArgument("sourceBytes");
+        Object sourceBytesObj = this.toJavaType(this.readArgument("sourceBytes"));
 
         byte[] sourceBytes;
 
         if (sourceBytesObj instanceof byte[]) {
             sourceBytes = (byte[]) sourceBytesObj;
-        } else if (sourceBytesObj instanceof ScriptObjectMirror) {
-            sourceBytes = TypeUtil.jsNumberArrayToJavaByteArray(
-                    (ScriptObjectMirror) sourceBytesObj);
+        } else if (sourceBytesObj instanceof List) {
+            sourceBytes = TypeUtil.numberListToByteArray((List<Object>) sourceBytesObj);
         } else {
             throw new RuntimeException(
                     "The \"sourceBytes\" argument must be either a Java "
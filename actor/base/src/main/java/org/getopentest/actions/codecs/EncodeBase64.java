@@ -3,7 +3,7 @@ package org.getopentest.actions.codecs;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.Base64;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.getopentest.base.TestAction;
 import org.getopentest.util.TypeUtil;
@@ -15,7 +15,7 @@ public class EncodeBase64 extends TestAction {
         super.run();
 
         String sourceFile = readStringArgument("sourceFile", null);
-        Object sourceBytesObj = this.readArgument("sourceBytes", null);
+        Object sourceBytesObj = this.toJavaType(this.readArgument("sourceBytes", null));
         String sourceString = this.readStringArgument("sourceString", null);
 
         try {
@@ -27,9 +27,8 @@ public class EncodeBase64 extends TestAction {
             } else if (sourceBytesObj != null) {
                 if (sourceBytesObj instanceof byte[]) {
                     sourceBytes = (byte[]) sourceBytesObj;
-                } else if (sourceBytesObj instanceof ScriptObjectMirror) {
-                    sourceBytes = TypeUtil.jsNumberArrayToJavaByteArray(
-                            (ScriptObjectMirror) sourceBytesObj);
+                } else if (sourceBytesObj instanceof List) {
+                    sourceBytes = TypeUtil.numberListToByteArray((List<Object>) sourceBytesObj);
                 } else {
                     throw new RuntimeException(
                             "The \"sourceBytes\" argument must be either a Java "
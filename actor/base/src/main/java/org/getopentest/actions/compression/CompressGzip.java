@@ -5,8 +5,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.List;
 import java.util.zip.GZIPOutputStream;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
 import org.apache.commons.io.IOUtils;
 import org.getopentest.base.TestAction;
 import org.getopentest.util.TypeUtil;
@@ -18,7 +18,7 @@ public class CompressGzip extends TestAction {
         super.run();
 
         String sourceFile = readStringArgument("sourceFile", null);
-        Object sourceBytesObj = this.readArgument("sourceBytes", null);
+        Object sourceBytesObj = this.toJavaType(this.readArgument("sourceBytes", null));
         String sourceString = this.readStringArgument("sourceString", null);
         String targetFile = readStringArgument("targetFile", null);
 
@@ -31,9 +31,8 @@ public class CompressGzip extends TestAction {
             } else if (sourceBytesObj != null) {
                 if (sourceBytesObj instanceof byte[]) {
                     sourceBytes = (byte[]) sourceBytesObj;
-                } else if (sourceBytesObj instanceof ScriptObjectMirror) {
-                    sourceBytes = TypeUtil.jsNumberArrayToJavaByteArray(
-                            (ScriptObjectMirror) sourceBytesObj);
+                } else if (sourceBytesObj instanceof List) {
+                    sourceBytes = TypeUtil.numberListToByteArray((List<Object>) sourceBytesObj);
                 } else {
                     throw new RuntimeException(
                             "The \"sourceBytes\" argument must be either a Java "
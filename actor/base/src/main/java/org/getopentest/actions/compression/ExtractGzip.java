@@ -4,8 +4,8 @@ import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
 import org.apache.commons.io.IOUtils;
 import org.getopentest.base.TestAction;
 import org.getopentest.util.TypeUtil;
@@ -17,7 +17,7 @@ public class ExtractGzip extends TestAction {
         super.run();
 
         String sourceFile = readStringArgument("sourceFile", null);
-        Object sourceBytesObj = this.readArgument("sourceBytes", null);
+        Object sourceBytesObj = this.toJavaType(this.readArgument("sourceBytes", null));
         String targetFile = readStringArgument("targetFile", null);
 
         try {
@@ -29,9 +29,8 @@ public class ExtractGzip extends TestAction {
             } else if (sourceBytesObj != null) {
                 if (sourceBytesObj instanceof byte[]) {
                     sourceBytes = (byte[]) sourceBytesObj;
-                } else if (sourceBytesObj instanceof ScriptObjectMirror) {
-                    sourceBytes = TypeUtil.jsNumberArrayToJavaByteArray(
-                            (ScriptObjectMirror) sourceBytesObj);
+                } else if (sourceBytesObj instanceof List) {
+                    sourceBytes = TypeUtil.numberListToByteArray((List<Object>) sourceBytesObj);
                 } else {
                     throw new RuntimeException(
                             "The \"sourceBytes\" argument must be either a Java "
@@ -0,0 +1,134 @@
+package org.getopentest.actions.db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.getopentest.db.JdbcConnectionPool.PooledConnection;
+
+/**
+ * Iterates over the rows of a JDBC result set, converting each row to a map.
+ * The column names and types are read from the result set metadata only once.
+ * The cursor returns its connection to the pool as soon as the last row was
+ * read or when close() is called.
+ */
+public class JdbcCursor implements Iterator<Map<String, Object>>, Iterable<Map<String, Object>> {
+
+    private transient String[] columnNames;
+
+    private transient boolean[] columnIsTemporal;
+
+    private transient PooledConnection connection;
+
+    private transient Boolean hasNextRow;
+
+    private transient ResultSet resultSet;
+
+    private transient int rowCount;
+
+    JdbcCursor(PooledConnection connection, ResultSet resultSet) throws SQLException {
+        this.connection = connection;
+        this.resultSet = resultSet;
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        this.columnNames = new String[columnCount];
+        this.columnIsTemporal = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            this.columnNames[i] = metaData.getColumnName(i + 1);
+
+            switch (metaData.getColumnType(i + 1)) {
+                case Types.DATE:
+                case Types.TIME:
+                case Types.TIME_WITH_TIMEZONE:
+                case Types.TIMESTAMP:
+                case Types.TIMESTAMP_WITH_TIMEZONE:
+                    this.columnIsTemporal[i] = true;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Closes the result set and returns the connection to the pool. Calling
+     * this method more than once has no effect.
+     */
+    public synchronized void close() {
+        if (this.connection == null) {
+            return;
+        }
+
+        PooledConnection pooledConnection = this.connection;
+        this.connection = null;
+        this.hasNextRow = false;
+
+        try {
+            this.resultSet.close();
+            pooledConnection.release();
+        } catch (Exception ex) {
+            pooledConnection.discard();
+        }
+    }
+
+    /**
+     * Returns the number of rows read so far.
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (this.hasNextRow == null) {
+            try {
+                this.hasNextRow = this.resultSet.next();
+            } catch (SQLException ex) {
+                PooledConnection pooledConnection = this.connection;
+                this.connection = null;
+                this.hasNextRow = false;
+                pooledConnection.discard();
+                throw new RuntimeException(ex);
+            }
+
+            if (!this.hasNextRow) {
+                this.close();
+            }
+        }
+
+        return this.hasNextRow;
+    }
+
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        return this;
+    }
+
+    @Override
+    public synchronized Map<String, Object> next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.hasNextRow = null;
+
+        try {
+            Map<String, Object> row = new HashMap<>(this.columnNames.length * 2);
+            for (int i = 0; i < this.columnNames.length; i++) {
+                Object value = this.resultSet.getObject(i + 1);
+                if (value != null && this.columnIsTemporal[i]) {
+                    value = value.toString();
+                }
+                row.put(this.columnNames[i], value);
+            }
+
+            this.rowCount++;
+            return row;
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
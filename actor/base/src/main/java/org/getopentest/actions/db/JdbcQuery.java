@@ -1,20 +1,30 @@
 package org.getopentest.actions.db;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
 import org.getopentest.base.TestAction;
+import org.getopentest.base.TestActorEvents;
+import org.getopentest.contracts.ITestActor;
+import org.getopentest.db.JdbcConnectionPool;
+import org.getopentest.db.JdbcConnectionPool.PooledConnection;
 
 /**
  * An action that executes a SQL query statement against a database using JDBC.
+ * Connections and prepared statements are pooled and reused across actions.
+ * The values in the "params" argument are bound to the "?" placeholders in the
+ * SQL code.
+ *
+ * When the "stream" argument is true, the rows are not loaded in memory.
+ * Instead, the action outputs a cursor that reads them from the database as
+ * they are iterated. The database connection is held until the cursor is
+ * exhausted or closed, or until the test completes.
  */
 public class JdbcQuery extends TestAction {
 
@@ -24,45 +34,85 @@ public class JdbcQuery extends TestAction {
         String user = this.readStringArgument("user", null);
         String password = this.readStringArgument("password", null);
         String sql = this.readStringArgument("sql");
+        List<Object> params = this.readArrayArgument("params", Object.class, null);
+        Integer fetchSize = this.readIntArgument("fetchSize", null);
+        Boolean stream = this.readBooleanArgument("stream", Boolean.FALSE);
+
+        PooledConnection connection = null;
 
         try {
-            Connection conn;
+            connection = JdbcConnectionPool.acquire(jdbcUrl, user, password);
 
-            if (user != null && password != null) {
-                conn = DriverManager.getConnection(jdbcUrl, user, password);
-            } else {
-                conn = DriverManager.getConnection(jdbcUrl);
-            }
+            PreparedStatement statement = connection.prepareStatement(sql);
+            setParameters(statement, params);
+            statement.setFetchSize(fetchSize != null ? fetchSize : 0);
 
-            Statement statement = conn.createStatement();
-            ResultSet resultSet = statement.executeQuery(sql);
-            ResultSetMetaData rsMetaData = resultSet.getMetaData();
+            ResultSet resultSet = statement.executeQuery();
+            JdbcCursor cursor = new JdbcCursor(connection, resultSet);
+            connection = null;
 
-            List<Map<String, Object>> rows = new ArrayList<>();
-            int columnCount = rsMetaData.getColumnCount();
-            while (resultSet.next()) {
-                Map<String, Object> row = new HashMap<>();
-                for (int columnNo = 1; columnNo <= columnCount; columnNo++) {
-                    switch (rsMetaData.getColumnType(columnNo)) {
-                        case Types.DATE:
-                        case Types.TIME:
-                        case Types.TIME_WITH_TIMEZONE:
-                        case Types.TIMESTAMP:
-                        case Types.TIMESTAMP_WITH_TIMEZONE:
-                            row.put(rsMetaData.getColumnName(columnNo), resultSet.getObject(columnNo).toString());
-                            break;
-                        default:
-                            row.put(rsMetaData.getColumnName(columnNo), resultSet.getObject(columnNo));
+            if (stream) {
+                this.closeWhenTestCompletes(cursor);
+                this.writeOutput("cursor", cursor);
+            } else {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                try {
+                    while (cursor.hasNext()) {
+                        rows.add(cursor.next());
                     }
+                } finally {
+                    cursor.close();
                 }
-                rows.add(row);
-            }
-            resultSet.close();
 
-            this.writeOutput("rows", rows);
-            this.writeOutput("rowCount", rows.size());
+                this.writeOutput("rows", rows);
+                this.writeOutput("rowCount", rows.size());
+            }
         } catch (SQLException ex) {
+            if (connection != null) {
+                connection.discard();
+            }
+
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * Makes sure the cursor's connection goes back to the pool at the end of
+     * the test, even if the cursor was not exhausted.
+     */
+    private void closeWhenTestCompletes(JdbcCursor cursor) {
+        ITestActor actor = this.getActor();
+        if (actor == null) {
+            return;
+        }
+
+        actor.addObserver(new Observer() {
+            @Override
+            public void update(Observable eventSource, Object eventData) {
+                if (eventData == TestActorEvents.TEST_COMPLETED) {
+                    cursor.close();
+                    actor.deleteObserver(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Binds the values of the "params" argument to the statement's
+     * placeholders.
+     */
+    static void setParameters(PreparedStatement statement, List<Object> params) throws SQLException {
+        if (params == null) {
+            return;
+        }
+
+        for (int i = 0; i < params.size(); i++) {
+            Object param = params.get(i);
+            if (param == null) {
+                statement.setNull(i + 1, Types.NULL);
+            } else {
+                statement.setObject(i + 1, param);
+            }
+        }
+    }
 }
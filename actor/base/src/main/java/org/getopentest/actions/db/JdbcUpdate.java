@@ -1,13 +1,17 @@
 package org.getopentest.actions.db;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.List;
 import org.getopentest.base.TestAction;
+import org.getopentest.db.JdbcConnectionPool;
+import org.getopentest.db.JdbcConnectionPool.PooledConnection;
 
 /**
  * An action that executes a SQL update statement against a database using JDBC.
+ * Connections and prepared statements are pooled and reused across actions.
+ * The values in the "params" argument are bound to the "?" placeholders in the
+ * SQL code.
  */
 public class JdbcUpdate extends TestAction {
 
@@ -17,21 +21,24 @@ public class JdbcUpdate extends TestAction {
         String user = this.readStringArgument("user", null);
         String password = this.readStringArgument("password", null);
         String sql = this.readStringArgument("sql");
+        List<Object> params = this.readArrayArgument("params", Object.class, null);
 
-        try {
-            Connection conn;
+        PooledConnection connection = null;
 
-            if (user != null && password != null) {
-                conn = DriverManager.getConnection(jdbcUrl, user, password);
-            } else {
-                conn = DriverManager.getConnection(jdbcUrl);
-            }
+        try {
+            connection = JdbcConnectionPool.acquire(jdbcUrl, user, password);
 
-            Statement statement = conn.createStatement();
-            int updateCount = statement.executeUpdate(sql);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            JdbcQuery.setParameters(statement, params);
+            int updateCount = statement.executeUpdate();
 
+            connection.release();
             this.writeOutput("updateCount", updateCount);
         } catch (SQLException ex) {
+            if (connection != null) {
+                connection.discard();
+            }
+
             throw new RuntimeException(ex);
         }
     }
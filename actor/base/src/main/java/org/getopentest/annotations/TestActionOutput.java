@@ -1,7 +1,10 @@
 package org.getopentest.annotations;
 
 import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
+@Retention(RetentionPolicy.RUNTIME)
 @Repeatable(TestActionOutputs.class)
 public @interface TestActionOutput {
     String name();
@@ -1,5 +1,9 @@
 package org.getopentest.annotations;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+@Retention(RetentionPolicy.RUNTIME)
 public @interface TestActionOutputs {
     TestActionOutput[] value();
 }
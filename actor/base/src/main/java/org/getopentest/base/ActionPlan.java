@@ -0,0 +1,263 @@
+package org.getopentest.base;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.getopentest.testdef.TestDefAction;
+import org.getopentest.util.TypeConverter;
+
+/**
+ * The compiled, immutable form of an action from a test or macro definition.
+ * The legacy property aliases are resolved, the action class is looked up and
+ * the arguments are compiled once, so the same plan can be executed for every
+ * data record and iteration without re-interpreting the definition.
+ */
+public class ActionPlan {
+
+    /**
+     * The arguments whose values are only evaluated after the action executes.
+     */
+    private static final Set<String> DEFERRED_ARGS = new HashSet<>(
+            Arrays.asList("$localData", "$sessionData", "$sharedData"));
+
+    public enum Kind {
+        ACTION, MACRO, SCRIPT
+    }
+
+    private final ActionRegistry.ActionType actionType;
+
+    private final String actionClassName;
+
+    private final Map<String, ValuePlan> args;
+
+    private final Boolean checkpoint;
+
+    private final TestDefAction definition;
+
+    private final String description;
+
+    private final Kind kind;
+
+    private final Map<String, ValuePlan> legacySharedData;
+
+    private final Map<String, ValuePlan> localData;
+
+    private final String name;
+
+    private final Map<String, ValuePlan> sessionData;
+
+    private final Map<String, ValuePlan> sharedData;
+
+    private ActionPlan(TestDefAction actionDef) {
+        this.definition = actionDef;
+
+        // The "type" property is supported for backward compatibility, as an
+        // alias to "action"
+        String action = actionDef.action != null ? actionDef.action : actionDef.type;
+
+        if (actionDef.script != null) {
+            this.kind = Kind.SCRIPT;
+        } else if (actionDef.macro != null) {
+            this.kind = Kind.MACRO;
+        } else {
+            this.kind = Kind.ACTION;
+        }
+
+        this.name = action != null ? action : actionDef.macro;
+
+        if (actionDef.description != null && !actionDef.description.trim().isEmpty()) {
+            this.description = actionDef.description.trim();
+        } else if (action != null && !action.trim().isEmpty()) {
+            this.description = action.trim();
+        } else if (actionDef.script != null) {
+            this.description = ScriptAction.class.getName();
+        } else if (actionDef.macro != null) {
+            this.description = actionDef.macro.trim();
+        } else {
+            this.description = "(No description provided)";
+        }
+
+        Map<String, Object> rawArgs = actionDef.args != null
+                ? new LinkedHashMap<>(actionDef.args)
+                : new LinkedHashMap<>();
+        if (this.kind == Kind.ACTION) {
+            TestActor.curateArguments(rawArgs);
+        }
+
+        Map<String, ValuePlan> compiledArgs = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : rawArgs.entrySet()) {
+            // Deferred arguments are passed to the action as they are
+            compiledArgs.put(entry.getKey(), DEFERRED_ARGS.contains(entry.getKey())
+                    ? new ValuePlan.Literal(entry.getValue())
+                    : ValuePlan.compile(entry.getValue()));
+        }
+        this.args = Collections.unmodifiableMap(compiledArgs);
+
+        ValuePlan checkpointArg = this.args.get("$checkpoint");
+        if (checkpointArg == null) {
+            this.checkpoint = false;
+        } else if (checkpointArg.isLiteral()) {
+            this.checkpoint = toBoolean(checkpointArg.evaluate(null));
+        } else {
+            this.checkpoint = null;
+        }
+
+        this.sessionData = compileData(rawArgs.get("$sessionData"));
+        this.sharedData = compileData(rawArgs.get("$sharedData"));
+        this.localData = compileData(rawArgs.get("$localData"));
+        this.legacySharedData = compileData(actionDef.sharedData);
+
+        if (this.kind == Kind.ACTION && action != null) {
+            this.actionClassName = TestActor.curateActionName(action);
+            this.actionType = findActionType(this.actionClassName);
+        } else {
+            this.actionClassName = null;
+            this.actionType = null;
+        }
+    }
+
+    /**
+     * Compiles the specified action definition. The definition must not be
+     * modified afterwards.
+     */
+    public static ActionPlan compile(TestDefAction actionDef) {
+        return new ActionPlan(actionDef);
+    }
+
+    private static Map<String, ValuePlan> compileData(Object data) {
+        if (!(data instanceof Map)) {
+            return null;
+        }
+
+        ValuePlan compiledData = ValuePlan.compile(data);
+        if (compiledData instanceof ValuePlan.MapValue) {
+            return ((ValuePlan.MapValue) compiledData).getEntries();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the action class. Failures are not reported here, but only
+     * when (and if) the action is executed, so the action type is resolved
+     * again at that time.
+     */
+    private static ActionRegistry.ActionType findActionType(String actionClassName) {
+        try {
+            return ActionRegistry.getActionType(actionClassName);
+        } catch (RuntimeException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    private static Boolean toBoolean(Object value) {
+        try {
+            return TypeConverter.toBooolean(value, false);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the action class name (after converting the obsolete action
+     * names), or null if this is not a regular action.
+     */
+    public String getActionClassName() {
+        return this.actionClassName;
+    }
+
+    /**
+     * Returns the action type, or null if this is not a regular action or if
+     * the action class couldn't be found when the plan was compiled.
+     */
+    public ActionRegistry.ActionType getActionType() {
+        return this.actionType;
+    }
+
+    /**
+     * Returns the compiled arguments. The values of the $localData,
+     * $sessionData and $sharedData arguments are literals that hold the
+     * unevaluated data.
+     */
+    public Map<String, ValuePlan> getArgs() {
+        return this.args;
+    }
+
+    /**
+     * Returns the value of the $checkpoint argument, or null if it can only
+     * be determined by evaluating the argument.
+     */
+    public Boolean getCheckpoint() {
+        return this.checkpoint;
+    }
+
+    /**
+     * Returns the action definition the plan was compiled from. For error
+     * messages only.
+     */
+    public TestDefAction getDefinition() {
+        return this.definition;
+    }
+
+    /**
+     * Returns the description to use when the $description argument is not
+     * specified.
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the data from the deprecated "sharedData" property of the action
+     * definition, or null if not specified.
+     */
+    public Map<String, ValuePlan> getLegacySharedData() {
+        return this.legacySharedData;
+    }
+
+    /**
+     * Returns the value of the $localData argument, or null if not specified.
+     */
+    public Map<String, ValuePlan> getLocalData() {
+        return this.localData;
+    }
+
+    public String getMacro() {
+        return this.definition.macro;
+    }
+
+    /**
+     * Returns the action class name or the macro name, as specified in the
+     * definition, or null for script actions.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    public String getScript() {
+        return this.definition.script;
+    }
+
+    /**
+     * Returns the value of the $sessionData argument, or null if not
+     * specified.
+     */
+    public Map<String, ValuePlan> getSessionData() {
+        return this.sessionData;
+    }
+
+    /**
+     * Returns the value of the $sharedData argument, or null if not
+     * specified.
+     */
+    public Map<String, ValuePlan> getSharedData() {
+        return this.sharedData;
+    }
+}
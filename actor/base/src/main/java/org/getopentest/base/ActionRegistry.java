@@ -0,0 +1,290 @@
+package org.getopentest.base;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.getopentest.annotations.TestActionArgument;
+import org.getopentest.annotations.TestActionClass;
+import org.getopentest.annotations.TestActionOutput;
+import org.getopentest.logging.Logger;
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+
+/**
+ * Process-wide registry of the test action classes. The classpath is scanned
+ * once, in the background, for all the subclasses of TestAction. The action
+ * classes are then looked up by their full class name or by their simple
+ * class name (when it's unique), without having to go through Class.forName
+ * and constructor lookups every time an action is executed.
+ *
+ * Action classes that are requested before the classpath scan completes are
+ * resolved with Class.forName and added to the registry right away.
+ */
+public class ActionRegistry {
+
+    /**
+     * The maximum time to wait for the classpath scan to complete when an
+     * action is requested by its simple name or when suggesting the names of
+     * similar action classes.
+     */
+    private static final long INDEXING_TIMEOUT_SEC = 60;
+
+    private static final CountDownLatch indexingDone = new CountDownLatch(1);
+
+    private static Thread indexingThread;
+
+    /**
+     * Maps the simple names of the action classes to their full names.
+     */
+    private static final Map<String, Set<String>> fullNamesBySimpleName = new ConcurrentHashMap<>();
+
+    private static final Map<String, ActionType> typesByName = new ConcurrentHashMap<>();
+
+    private static ActionType addActionClass(Class<?> actionClass) {
+        ActionType actionType = new ActionType((Class<? extends TestAction>) actionClass);
+
+        ActionType existingType = typesByName.putIfAbsent(actionClass.getName(), actionType);
+        if (existingType != null) {
+            return existingType;
+        }
+
+        fullNamesBySimpleName
+                .computeIfAbsent(actionClass.getSimpleName(), (name) -> ConcurrentHashMap.newKeySet())
+                .add(actionClass.getName());
+
+        return actionType;
+    }
+
+    /**
+     * Returns all the action classes found so far.
+     */
+    public static Collection<ActionType> getActionTypes() {
+        return Collections.unmodifiableCollection(typesByName.values());
+    }
+
+    /**
+     * Returns the names of the action classes that have names similar to the
+     * specified (unknown) action name, to be used in error messages.
+     */
+    private static List<String> getSuggestions(String actionName) {
+        waitForIndexing();
+
+        boolean isSimpleName = !actionName.contains(".");
+        String searchName = actionName.toLowerCase();
+        int maxDistance = Math.max(2, searchName.length() / 5);
+        LevenshteinDistance levenshtein = new LevenshteinDistance(maxDistance);
+
+        Set<String> suggestions = new TreeSet<>();
+        for (ActionType actionType : typesByName.values()) {
+            String candidateName = isSimpleName
+                    ? actionType.getSimpleName()
+                    : actionType.getName();
+            int distance = levenshtein.apply(searchName, candidateName.toLowerCase());
+            if (distance >= 0) {
+                suggestions.add(actionType.getName());
+            }
+        }
+
+        return new ArrayList<>(suggestions);
+    }
+
+    /**
+     * Returns the action type for the specified action name, which can be
+     * either a full class name or, if it's unique across all action classes,
+     * a simple class name.
+     */
+    public static ActionType getActionType(String actionName) {
+        ActionType actionType = typesByName.get(actionName);
+        if (actionType != null) {
+            return actionType;
+        }
+
+        if (!actionName.contains(".")) {
+            waitForIndexing();
+
+            Set<String> fullNames = fullNamesBySimpleName.getOrDefault(actionName, new HashSet<>());
+            if (fullNames.size() == 1) {
+                return typesByName.get(fullNames.iterator().next());
+            } else if (fullNames.size() > 1) {
+                throw new RuntimeException(String.format(
+                        "The test action name \"%s\" is ambiguous. Please use the full name "
+                        + "of the test action class instead, which can be one of: %s.",
+                        actionName,
+                        String.join(", ", new TreeSet<>(fullNames))));
+            }
+        } else {
+            Class<?> actionClass;
+            try {
+                actionClass = Class.forName(actionName);
+            } catch (ClassNotFoundException | NoClassDefFoundError ex) {
+                throw new ActionNotFoundException(actionName, getSuggestions(actionName), ex);
+            }
+
+            if (!TestAction.class.isAssignableFrom(actionClass)) {
+                throw new RuntimeException(String.format(
+                        "Class %s is not a test action class and cannot be used in test definitions",
+                        actionName));
+            }
+
+            return addActionClass(actionClass);
+        }
+
+        throw new ActionNotFoundException(actionName, getSuggestions(actionName), null);
+    }
+
+    /**
+     * Scans the classpath for test action classes. The scan is performed on a
+     * background thread and this method returns right away. Only the first
+     * call has any effect.
+     */
+    public static synchronized void startIndexing() {
+        if (indexingThread != null) {
+            return;
+        }
+
+        indexingThread = new Thread(() -> {
+            try {
+                long startTime = System.currentTimeMillis();
+
+                Set<URL> urls = new HashSet<>(ClasspathHelper.forJavaClassPath());
+                urls.addAll(ClasspathHelper.forClassLoader());
+
+                Reflections reflections = new Reflections(new ConfigurationBuilder()
+                        .setUrls(urls)
+                        .setExpandSuperTypes(false)
+                        .setScanners(new SubTypesScanner()));
+
+                // Reflections.getSubTypesOf is not used because it logs an
+                // error for every class that can't be loaded
+                Iterable<String> actionClassNames = reflections.getStore().getAll(
+                        SubTypesScanner.class.getSimpleName(),
+                        Collections.singletonList(TestAction.class.getName()));
+
+                for (String actionClassName : actionClassNames) {
+                    try {
+                        Class<?> actionClass = Class.forName(actionClassName, false, ActionRegistry.class.getClassLoader());
+                        if (!Modifier.isAbstract(actionClass.getModifiers())
+                                && Modifier.isPublic(actionClass.getModifiers())) {
+                            addActionClass(actionClass);
+                        }
+                    } catch (Throwable ex) {
+                        // Classes that can't be loaded are reported when used
+                    }
+                }
+
+                Logger.trace(String.format("Found %s test action classes in %s ms",
+                        typesByName.size(),
+                        System.currentTimeMillis() - startTime));
+            } catch (Throwable ex) {
+                Logger.warning(String.format("Failed to scan the classpath for test action classes: %s",
+                        ex.getMessage()));
+            } finally {
+                indexingDone.countDown();
+            }
+        }, "action-registry-indexer");
+
+        indexingThread.setDaemon(true);
+        indexingThread.start();
+    }
+
+    private static void waitForIndexing() {
+        startIndexing();
+
+        try {
+            indexingDone.await(INDEXING_TIMEOUT_SEC, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Thrown when no action class exists for an action name.
+     */
+    public static class ActionNotFoundException extends RuntimeException {
+
+        private final List<String> suggestions;
+
+        public ActionNotFoundException(String actionName, List<String> suggestions, Throwable cause) {
+            super(String.format(
+                    "Failed to find test action class \"%s\".%s",
+                    actionName,
+                    suggestions.isEmpty() ? "" : String.format(" Did you mean %s?", String.join(" or ", suggestions))),
+                    cause);
+            this.suggestions = suggestions;
+        }
+
+        /**
+         * Returns the names of the action classes with similar names.
+         */
+        public List<String> getSuggestions() {
+            return this.suggestions;
+        }
+    }
+
+    /**
+     * A test action class, along with its resolved constructor and its
+     * metadata (the descriptions of the action, its arguments and its
+     * outputs).
+     */
+    public static class ActionType {
+
+        private final Class<? extends TestAction> actionClass;
+
+        private Constructor<? extends TestAction> constructor;
+
+        ActionType(Class<? extends TestAction> actionClass) {
+            this.actionClass = actionClass;
+        }
+
+        public Class<? extends TestAction> getActionClass() {
+            return this.actionClass;
+        }
+
+        public List<TestActionArgument> getArguments() {
+            return Arrays.asList(this.actionClass.getAnnotationsByType(TestActionArgument.class));
+        }
+
+        public String getDescription() {
+            TestActionClass annotation = this.actionClass.getAnnotation(TestActionClass.class);
+            return annotation != null ? annotation.description() : null;
+        }
+
+        public String getName() {
+            return this.actionClass.getName();
+        }
+
+        public List<TestActionOutput> getOutputs() {
+            return Arrays.asList(this.actionClass.getAnnotationsByType(TestActionOutput.class));
+        }
+
+        public String getSimpleName() {
+            return this.actionClass.getSimpleName();
+        }
+
+        /**
+         * Creates a new instance of the action class.
+         */
+        public TestAction newInstance() throws ReflectiveOperationException {
+            if (this.constructor == null) {
+                this.constructor = this.actionClass.getConstructor();
+            }
+
+            return this.constructor.newInstance();
+        }
+    }
+}
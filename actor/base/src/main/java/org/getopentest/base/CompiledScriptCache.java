@@ -0,0 +1,83 @@
+package org.getopentest.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * Caches the compiled form of the JavaScript snippets evaluated by a script
+ * engine, so that the snippets that are evaluated over and over again (e.g.
+ * the arguments of the actions in macros and data-driven tests) are only
+ * parsed and compiled once. Compiled scripts are bound to the engine that
+ * compiled them, so every script engine needs its own cache.
+ */
+public class CompiledScriptCache {
+
+    private final Compilable compiler;
+
+    private long hits;
+
+    private long misses;
+
+    private final Map<String, CompiledScript> scripts;
+
+    /**
+     * @param scriptEngine The script engine used to compile the scripts. Must
+     * implement the Compilable interface.
+     * @param maxSize The maximum number of compiled scripts to keep. When the
+     * cache is full, the least recently used script is evicted.
+     */
+    public CompiledScriptCache(ScriptEngine scriptEngine, int maxSize) {
+        if (!(scriptEngine instanceof Compilable)) {
+            throw new RuntimeException(String.format(
+                    "Script engine %s doesn't support compiling scripts",
+                    scriptEngine.getClass().getName()));
+        }
+
+        this.compiler = (Compilable) scriptEngine;
+        this.scripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled form of the specified script, compiling it first if
+     * it is not in the cache already.
+     */
+    public synchronized CompiledScript get(String script) throws ScriptException {
+        CompiledScript compiledScript = this.scripts.get(script);
+
+        if (compiledScript != null) {
+            ++this.hits;
+        } else {
+            ++this.misses;
+            compiledScript = this.compiler.compile(script);
+            this.scripts.put(script, compiledScript);
+        }
+
+        return compiledScript;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized int size() {
+        return this.scripts.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits=%s, misses=%s, size=%s", this.hits, this.misses, this.scripts.size());
+    }
+}
@@ -0,0 +1,346 @@
+package org.getopentest.base;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.imageio.ImageIO;
+
+/**
+ * Caches the decoded image files used by the tests (e.g. the template images
+ * used by the visual testing actions), so that image files are only downloaded
+ * and decoded once. The cache is bounded by the amount of memory occupied by
+ * the decoded images and evicts the least recently used images first.
+ *
+ * Images downloaded from the sync server are kept from one test session to
+ * the next and are revalidated the first time they are used in each session,
+ * using the image's ETag or, if the server doesn't provide one, by comparing
+ * the hash of the downloaded content with the hash of the cached content.
+ * Image files read from an absolute path are revalidated every time, using the
+ * file's size and modification time.
+ *
+ * Images are decoded to the TYPE_3BYTE_BGR format, which is what the image
+ * comparison and image recognition code works with. The images returned by
+ * the cache are shared and must not be modified. Other representations of a
+ * cached image (e.g. its OpenCV Mat) can be cached along with the image, by
+ * using the getDerivedForm method.
+ */
+public class ImageCache {
+
+    /**
+     * Maps the images returned by all the image caches to their cache
+     * entries. Used for finding the derived forms of an image.
+     */
+    private static final Map<BufferedImage, CachedImage> cachedImages = new WeakHashMap<>();
+
+    private long evictions;
+
+    private final Map<String, CachedImage> images;
+
+    private long hits;
+
+    private final TestAssetCache.AssetLoader loader;
+
+    private final long maxSizeBytes;
+
+    private long misses;
+
+    private long revalidations;
+
+    private String sessionId;
+
+    private long sizeBytes;
+
+    /**
+     * @param loader Downloads the image files from the sync server
+     * @param maxSizeBytes The maximum amount of memory used by the cached
+     * images. Zero disables the cache.
+     */
+    public ImageCache(TestAssetCache.AssetLoader loader, long maxSizeBytes) {
+        this.images = new LinkedHashMap<>(16, 0.75f, true);
+        this.loader = loader;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    private synchronized void add(String key, CachedImage cachedImage) {
+        CachedImage previousImage = this.images.remove(key);
+        if (previousImage != null) {
+            this.remove(previousImage);
+        }
+
+        if (cachedImage.sizeBytes > this.maxSizeBytes) {
+            return;
+        }
+
+        this.images.put(key, cachedImage);
+        this.sizeBytes += cachedImage.sizeBytes;
+        synchronized (cachedImages) {
+            cachedImages.put(cachedImage.image, cachedImage);
+        }
+
+        Iterator<CachedImage> iterator = this.images.values().iterator();
+        while (this.sizeBytes > this.maxSizeBytes && iterator.hasNext()) {
+            CachedImage eldestImage = iterator.next();
+            if (eldestImage != cachedImage) {
+                iterator.remove();
+                this.remove(eldestImage);
+                ++this.evictions;
+            }
+        }
+    }
+
+    private static BufferedImage decode(byte[] content, String fileName) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(content));
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Failed decoding image file %s", fileName), ex);
+        }
+
+        if (image == null) {
+            throw new RuntimeException(String.format(
+                    "Failed decoding image file %s. The file format is not supported.",
+                    fileName));
+        }
+
+        if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            BufferedImage convertedImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+            convertedImage.getGraphics().drawImage(image, 0, 0, null);
+            image = convertedImage;
+        }
+
+        return image;
+    }
+
+    /**
+     * Returns the specified image file, downloading it from the sync server
+     * if it is not in the cache or if it changed on the sync server.
+     */
+    public BufferedImage get(String partialPath) {
+        String key = "server:" + partialPath;
+        CachedImage cachedImage;
+
+        synchronized (this) {
+            cachedImage = this.images.get(key);
+            if (cachedImage != null && Objects.equals(cachedImage.version, this.sessionId)) {
+                ++this.hits;
+                return cachedImage.image;
+            }
+        }
+
+        TestAssetCache.Asset asset = this.loader.load("image", partialPath, cachedImage != null ? cachedImage.etag : null);
+
+        if (cachedImage != null) {
+            boolean notModified = asset == null;
+            if (notModified || getHash(asset.content).equals(cachedImage.contentHash)) {
+                synchronized (this) {
+                    ++this.revalidations;
+                    if (!notModified && asset.etag != null) {
+                        cachedImage.etag = asset.etag;
+                    }
+                    cachedImage.version = this.sessionId;
+                }
+                return cachedImage.image;
+            }
+        } else if (asset == null) {
+            throw new RuntimeException(String.format(
+                    "The sync server returned no content for image file %s",
+                    partialPath));
+        }
+
+        CachedImage newCachedImage = new CachedImage(decode(asset.content, partialPath));
+        newCachedImage.contentHash = getHash(asset.content);
+        newCachedImage.etag = asset.etag;
+
+        synchronized (this) {
+            ++this.misses;
+            newCachedImage.version = this.sessionId;
+            this.add(key, newCachedImage);
+        }
+
+        return newCachedImage.image;
+    }
+
+    /**
+     * Returns the image file at the specified absolute path, reading it from
+     * disk if it is not in the cache or if the file changed.
+     */
+    public BufferedImage get(File imageFile) {
+        String key = "file:" + imageFile.getAbsolutePath();
+        String version = String.format("%s:%s", imageFile.length(), imageFile.lastModified());
+
+        synchronized (this) {
+            CachedImage cachedImage = this.images.get(key);
+            if (cachedImage != null && cachedImage.version.equals(version)) {
+                ++this.hits;
+                return cachedImage.image;
+            }
+        }
+
+        byte[] content;
+        try {
+            content = Files.readAllBytes(imageFile.toPath());
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Failed reading image file %s", imageFile), ex);
+        }
+
+        CachedImage newCachedImage = new CachedImage(decode(content, imageFile.toString()));
+        newCachedImage.contentHash = getHash(content);
+        newCachedImage.version = version;
+
+        synchronized (this) {
+            ++this.misses;
+            this.add(key, newCachedImage);
+        }
+
+        return newCachedImage.image;
+    }
+
+    /**
+     * Returns another representation of an image returned by an image cache,
+     * creating it with the converter function the first time it is requested.
+     * The derived form is dropped along with the image when the image is
+     * evicted from the cache, so it must not be released or modified by the
+     * caller.
+     *
+     * @return The derived form, or null if the image is not a cached image
+     */
+    public static <T> T getDerivedForm(BufferedImage image, String formName, Function<BufferedImage, T> converter) {
+        return getDerivedForm(image, formName, converter, null);
+    }
+
+    /**
+     * Same as getDerivedForm(image, formName, converter), for derived forms
+     * that hold resources which must be released explicitly (e.g. the native
+     * memory of an OpenCV Mat). The release function is called when the image
+     * is evicted from the cache and at the beginning of every test session, so
+     * the derived form must only be used for the duration of the current
+     * operation.
+     *
+     * @param releaser Releases the resources held by the derived form. Can be
+     * null.
+     */
+    public static <T> T getDerivedForm(BufferedImage image, String formName, Function<BufferedImage, T> converter, Consumer<T> releaser) {
+        CachedImage cachedImage;
+        synchronized (cachedImages) {
+            cachedImage = cachedImages.get(image);
+        }
+
+        if (cachedImage == null) {
+            return null;
+        }
+
+        synchronized (cachedImage) {
+            return (T) cachedImage.derivedForms.computeIfAbsent(formName, (name) -> {
+                T derivedForm = converter.apply(image);
+                if (releaser != null && derivedForm != null) {
+                    cachedImage.releasers.put(formName, () -> releaser.accept(derivedForm));
+                }
+                return derivedForm;
+            });
+        }
+    }
+
+    private static String getHash(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(content));
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to compute image file hash", ex);
+        }
+    }
+
+    private void remove(CachedImage cachedImage) {
+        this.sizeBytes -= cachedImage.sizeBytes;
+        synchronized (cachedImages) {
+            cachedImages.remove(cachedImage.image);
+        }
+        cachedImage.releaseDerivedForms();
+    }
+
+    /**
+     * Must be called at the beginning of each test session, so that the
+     * cached images are revalidated on first use. The derived forms that hold
+     * resources which must be released explicitly are released and will be
+     * created again when needed.
+     */
+    public synchronized void startSession(String sessionId) {
+        this.sessionId = sessionId;
+
+        for (CachedImage cachedImage : this.images.values()) {
+            cachedImage.releaseDerivedForms();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits=%s, misses=%s, revalidations=%s, evictions=%s, size=%s, memory=%.1f/%.1f MB",
+                this.hits,
+                this.misses,
+                this.revalidations,
+                this.evictions,
+                this.images.size(),
+                this.sizeBytes / 1048576.0,
+                this.maxSizeBytes / 1048576.0);
+    }
+
+    private static class CachedImage {
+
+        public String contentHash;
+
+        public final Map<String, Object> derivedForms;
+
+        public String etag;
+
+        public final BufferedImage image;
+
+        /**
+         * The functions that release the derived forms which hold resources
+         * that must be released explicitly, keyed by the derived form name.
+         */
+        public final Map<String, Runnable> releasers;
+
+        /**
+         * The memory occupied by the decoded image, plus the memory estimated
+         * for its derived forms (which are assumed to be about as large as
+         * the decoded image itself).
+         */
+        public final long sizeBytes;
+
+        /**
+         * The ID of the test session in which an image downloaded from the
+         * sync server was last validated, or the size and modification time
+         * of an image file read from disk.
+         */
+        public String version;
+
+        CachedImage(BufferedImage image) {
+            this.derivedForms = new HashMap<>();
+            this.image = image;
+            this.releasers = new HashMap<>();
+            this.sizeBytes = 2L * image.getWidth() * image.getHeight() * 3;
+        }
+
+        /**
+         * Releases and drops the derived forms that have a release function.
+         */
+        synchronized void releaseDerivedForms() {
+            for (Map.Entry<String, Runnable> entry : this.releasers.entrySet()) {
+                this.derivedForms.remove(entry.getKey());
+                entry.getValue().run();
+            }
+            this.releasers.clear();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.getopentest.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.getopentest.testdef.MacroDefinition;
+import org.getopentest.testdef.TestDefAction;
+
+/**
+ * The compiled, immutable form of a macro definition. Macro plans are cached
+ * by the test asset cache and reused every time the macro is called.
+ */
+public class MacroPlan implements TestAssetCache.ImmutableAsset {
+
+    private final List<ActionPlan> actions;
+
+    private final String fullName;
+
+    private final Object includes;
+
+    private MacroPlan(String fullName, MacroDefinition macroDef) {
+        List<ActionPlan> actionPlans = new ArrayList<>();
+        if (macroDef.actions != null) {
+            for (TestDefAction actionDef : macroDef.actions) {
+                actionPlans.add(ActionPlan.compile(actionDef));
+            }
+        }
+
+        this.actions = Collections.unmodifiableList(actionPlans);
+        this.fullName = fullName;
+        this.includes = macroDef.includes;
+    }
+
+    /**
+     * Compiles the specified macro definition. The definition must not be
+     * modified afterwards.
+     *
+     * @param fullName The name and relative path of the macro
+     */
+    public static MacroPlan compile(String fullName, MacroDefinition macroDef) {
+        return new MacroPlan(fullName, macroDef);
+    }
+
+    public List<ActionPlan> getActions() {
+        return this.actions;
+    }
+
+    public String getFullName() {
+        return this.fullName;
+    }
+
+    /**
+     * Returns the "includes" property of the macro definition (a string or a
+     * list of strings).
+     */
+    public Object getIncludes() {
+        return this.includes;
+    }
+}
@@ -0,0 +1,512 @@
+package org.getopentest.base;
+
+import com.google.gson.JsonObject;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.util.EntityUtils;
+import org.getopentest.http.HttpClientPool;
+import org.getopentest.logging.Logger;
+import org.getopentest.util.Config;
+
+/**
+ * Saves the screenshots captured by a test actor to disk and uploads them to
+ * the sync server in the background, so that the test thread only has to read
+ * the screenshot data from the driver.
+ *
+ * Screenshots go through two stages. A single encoder thread converts them to
+ * the configured image format and writes them to the screenshots directory,
+ * skipping the encoding for screenshots that are identical to one captured
+ * before. Then, a few uploader threads send them to the sync server, several
+ * files per request. Identical screenshots are uploaded only once and the
+ * sync server is asked to copy the file that was already uploaded instead.
+ */
+public class ScreenshotPipeline {
+
+    /**
+     * The maximum number of screenshot hashes kept in memory for detecting
+     * identical screenshots.
+     */
+    private static final int MAX_HASHES = 1000;
+
+    private static final int MAX_RETRY_INTERVAL_MS = 30000;
+
+    private final int batchSize;
+
+    private final AtomicLong captured;
+
+    private final boolean deduplicate;
+
+    private final AtomicLong deduplicated;
+
+    private final ThreadPoolExecutor encoder;
+
+    private final AtomicLong failedRequests;
+
+    private final String format;
+
+    /**
+     * Maps the hashes of the most recent screenshots to the names of the
+     * files they were saved into.
+     */
+    private final Map<String, String> hashes;
+
+    private final float jpegQuality;
+
+    /**
+     * The number of screenshots that were submitted, but were not uploaded
+     * yet.
+     */
+    private final AtomicInteger pending;
+
+    /**
+     * Monitor used for waking up the threads waiting in the flush method, once
+     * there are no more pending screenshots.
+     */
+    private final Object pendingMonitor = new Object();
+
+    private final Set<String> reservedFileNames;
+
+    private final File screenshotsDir;
+
+    /**
+     * Set when the sync server rejects a request with multiple files, which
+     * means it's an older version that only accepts one file per request.
+     * Reset at the beginning of every test session.
+     */
+    private volatile boolean singleFileMode;
+
+    private volatile boolean stopping;
+
+    private final String syncServerUrl;
+
+    /**
+     * The names of the screenshot files that were uploaded successfully in
+     * the current test session. Only tracked when de-duplication is enabled.
+     */
+    private final Set<String> uploadedOriginals;
+
+    private final LinkedBlockingDeque<Screenshot> uploadQueue;
+
+    private final AtomicLong uploaded;
+
+    private final List<Thread> uploaders;
+
+    private final AtomicLong uploadRequests;
+
+    public ScreenshotPipeline(File screenshotsDir, String syncServerUrl, Config config) {
+        this.screenshotsDir = screenshotsDir;
+        this.syncServerUrl = syncServerUrl;
+        this.format = config.getString("screenshots.format", "png").toLowerCase().replace("jpeg", "jpg");
+        this.jpegQuality = config.getInteger("screenshots.jpegQuality", 85) / 100f;
+        this.deduplicate = config.getBoolean("screenshots.deduplicate", true);
+        this.batchSize = Math.max(config.getInteger("screenshots.batchSize", 10), 1);
+
+        if (!this.format.equals("png") && !this.format.equals("jpg")) {
+            throw new RuntimeException(String.format(
+                    "Invalid screenshot format \"%s\". The supported formats are \"png\" and \"jpg\".",
+                    this.format));
+        }
+
+        this.captured = new AtomicLong();
+        this.deduplicated = new AtomicLong();
+        this.failedRequests = new AtomicLong();
+        this.pending = new AtomicInteger();
+        this.uploaded = new AtomicLong();
+        this.uploadRequests = new AtomicLong();
+        this.reservedFileNames = ConcurrentHashMap.newKeySet();
+        this.uploadedOriginals = ConcurrentHashMap.newKeySet();
+        this.uploadQueue = new LinkedBlockingDeque<>();
+        this.hashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_HASHES;
+            }
+        };
+
+        // When the queue is full, the test thread encodes the screenshot
+        // itself, which slows the test down instead of losing screenshots
+        this.encoder = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getInteger("screenshots.queueCapacity", 50)),
+                (runnable) -> {
+                    Thread thread = new Thread(runnable, "screenshot-encoder");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.uploaders = new ArrayList<>();
+        int uploaderCount = Math.max(config.getInteger("screenshots.uploadThreads", 2), 1);
+        for (int i = 0; i < uploaderCount; i++) {
+            Thread uploader = new Thread(this::uploadScreenshots, "screenshot-uploader-" + (i + 1));
+            uploader.setDaemon(true);
+            uploader.start();
+            this.uploaders.add(uploader);
+        }
+    }
+
+    private void encode(Screenshot screenshot, byte[] pngData) {
+        try {
+            String hash = this.deduplicate ? getHash(pngData) : null;
+            String originalFileName = null;
+
+            if (hash != null) {
+                synchronized (this.hashes) {
+                    originalFileName = this.hashes.get(hash);
+                    if (originalFileName == null) {
+                        this.hashes.put(hash, screenshot.fileName);
+                    }
+                }
+            }
+
+            if (originalFileName != null && new File(this.screenshotsDir, originalFileName).exists()) {
+                this.deduplicated.incrementAndGet();
+                screenshot.originalFileName = originalFileName;
+                Files.copy(
+                        new File(this.screenshotsDir, originalFileName).toPath(),
+                        screenshot.file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } else if (this.format.equals("png")) {
+                Files.write(screenshot.file.toPath(), pngData);
+            } else {
+                this.writeJpeg(pngData, screenshot.file);
+            }
+
+            this.uploadQueue.add(screenshot);
+        } catch (Exception ex) {
+            this.completeScreenshots(1);
+            Logger.error(String.format("Failed to save screenshot %s", screenshot.fileName), ex);
+        } finally {
+            this.reservedFileNames.remove(screenshot.fileName);
+        }
+    }
+
+    /**
+     * Waits for the screenshots that were submitted so far to be uploaded.
+     *
+     * @return False if the operation timed out
+     */
+    public boolean flush(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (this.pendingMonitor) {
+            while (this.pending.get() > 0) {
+                long waitMs = deadline - System.currentTimeMillis();
+                if (waitMs <= 0) {
+                    return false;
+                }
+
+                try {
+                    this.pendingMonitor.wait(waitMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the specified number of screenshots as processed (uploaded or
+     * failed to save) and wakes up the threads waiting in the flush method if
+     * there are no more pending screenshots.
+     */
+    private void completeScreenshots(int count) {
+        if (this.pending.addAndGet(-count) <= 0) {
+            synchronized (this.pendingMonitor) {
+                this.pendingMonitor.notifyAll();
+            }
+        }
+    }
+
+    private static String getHash(byte[] content) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Base64.getEncoder().encodeToString(digest.digest(content));
+    }
+
+    /**
+     * Returns the counters for the screenshots processed so far.
+     */
+    public String getStats() {
+        return String.format("captured=%s, deduplicated=%s, uploaded=%s, pending=%s, requests=%s, failedRequests=%s",
+                this.captured.get(),
+                this.deduplicated.get(),
+                this.uploaded.get(),
+                this.pending.get(),
+                this.uploadRequests.get(),
+                this.failedRequests.get());
+    }
+
+    /**
+     * Picks a name that is not used by any other screenshot file.
+     */
+    private synchronized File reserveFile(String baseName) {
+        int index = 1;
+        while (true) {
+            String suffix = index == 1 ? "" : String.format("_%02d", index);
+            String fileName = String.format("%s%s.%s", baseName, suffix, this.format);
+            File file = new File(this.screenshotsDir, fileName);
+
+            if (!file.exists() && this.reservedFileNames.add(fileName)) {
+                return file;
+            }
+
+            index++;
+        }
+    }
+
+    /**
+     * Stops the pipeline, after waiting (up to the specified time) for the
+     * pending screenshots to be uploaded.
+     */
+    public void shutdown(long timeoutMs) {
+        this.flush(timeoutMs);
+        this.stopping = true;
+        this.encoder.shutdownNow();
+        for (Thread uploader : this.uploaders) {
+            uploader.interrupt();
+        }
+    }
+
+    /**
+     * Resets the state that is specific to a test session: the screenshots
+     * known to be uploaded and the single-file fallback mode, which may have
+     * been caused by a transient error.
+     */
+    public void startSession() {
+        synchronized (this.hashes) {
+            this.hashes.clear();
+        }
+        this.uploadedOriginals.clear();
+        this.singleFileMode = false;
+    }
+
+    /**
+     * Queues a screenshot for being saved and uploaded and returns the file
+     * it will be saved into. The screenshot data must be in PNG format.
+     *
+     * @param baseName The name of the screenshot file, without the extension
+     */
+    public File submit(String baseName, InputStream pngStream) throws IOException {
+        byte[] pngData;
+        try {
+            pngData = IOUtils.toByteArray(pngStream);
+        } finally {
+            pngStream.close();
+        }
+
+        Screenshot screenshot = new Screenshot(this.reserveFile(baseName));
+        this.captured.incrementAndGet();
+        this.pending.incrementAndGet();
+        this.encoder.execute(() -> this.encode(screenshot, pngData));
+
+        return screenshot.file;
+    }
+
+    /**
+     * Sends a batch of screenshots to the sync server.
+     *
+     * @return The screenshots that must be uploaded again
+     */
+    private List<Screenshot> upload(List<Screenshot> batch) throws IOException {
+        MultipartEntityBuilder multipartBuilder = MultipartEntityBuilder.create()
+                .setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
+        JsonObject aliases = new JsonObject();
+
+        for (Screenshot screenshot : batch) {
+            if (screenshot.originalFileName != null
+                    && !this.singleFileMode
+                    && this.uploadedOriginals.contains(screenshot.originalFileName)) {
+                aliases.addProperty(screenshot.fileName, screenshot.originalFileName);
+            } else {
+                multipartBuilder.addBinaryBody(
+                        "screenshot",
+                        screenshot.file,
+                        org.apache.http.entity.ContentType.DEFAULT_BINARY,
+                        screenshot.fileName);
+            }
+        }
+
+        if (aliases.size() > 0) {
+            multipartBuilder.addTextBody("aliases", aliases.toString());
+        }
+
+        HttpUriRequest request = RequestBuilder
+                .post(String.format("%s/api/screenshot", this.syncServerUrl))
+                .setEntity(multipartBuilder.build())
+                .build();
+
+        this.uploadRequests.incrementAndGet();
+        String responseText = HttpClientPool.getClient(false, null).execute(request, (response) -> {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            String textContent = entity != null ? EntityUtils.toString(entity) : "";
+
+            if (status != 200) {
+                // Older sync servers reject the requests with multiple files
+                // with status code 500. Other server errors, like 502 or 503,
+                // are assumed to be transient.
+                if ((batch.size() > 1 || aliases.size() > 0)
+                        && (status == 400 || status == 413 || status == 500)) {
+                    this.singleFileMode = true;
+                }
+
+                throw new RuntimeException(String.format(
+                        "Received unexpected HTTP response status code %s "
+                        + "while uploading screenshot file(s) %s",
+                        status,
+                        batch));
+            }
+
+            return textContent;
+        });
+
+        // Older sync servers only accept one file per request and ignore the
+        // aliases, so the aliased screenshots must be uploaded again
+        List<Screenshot> notUploaded = new ArrayList<>();
+        if (aliases.size() > 0 && !responseText.contains("\"copied\"")) {
+            this.singleFileMode = true;
+            for (Screenshot screenshot : batch) {
+                if (aliases.has(screenshot.fileName)) {
+                    notUploaded.add(screenshot);
+                }
+            }
+        }
+
+        for (Screenshot screenshot : batch) {
+            if (this.deduplicate && screenshot.originalFileName == null) {
+                this.uploadedOriginals.add(screenshot.fileName);
+            }
+        }
+
+        return notUploaded;
+    }
+
+    /**
+     * The main loop of the uploader threads.
+     */
+    private void uploadScreenshots() {
+        int retryIntervalMs = 1000;
+
+        while (!this.stopping) {
+            List<Screenshot> batch = new ArrayList<>();
+
+            try {
+                Screenshot screenshot = this.uploadQueue.poll(1, TimeUnit.SECONDS);
+                if (screenshot == null) {
+                    continue;
+                }
+
+                batch.add(screenshot);
+                if (!this.singleFileMode) {
+                    this.uploadQueue.drainTo(batch, this.batchSize - 1);
+                }
+
+                // Put the screenshots back in front of the queue, in the order
+                // they were captured
+                List<Screenshot> notUploaded = this.upload(batch);
+                for (int i = notUploaded.size() - 1; i >= 0; i--) {
+                    this.uploadQueue.addFirst(notUploaded.get(i));
+                }
+
+                int uploadedCount = batch.size() - notUploaded.size();
+                this.uploaded.addAndGet(uploadedCount);
+                this.completeScreenshots(uploadedCount);
+                retryIntervalMs = 1000;
+            } catch (InterruptedException ex) {
+                break;
+            } catch (Exception ex) {
+                this.failedRequests.incrementAndGet();
+                Logger.error(String.format("Failed uploading screenshot(s) %s", batch), ex);
+
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    this.uploadQueue.addFirst(batch.get(i));
+                }
+
+                try {
+                    Thread.sleep(retryIntervalMs);
+                } catch (InterruptedException ex2) {
+                    break;
+                }
+
+                retryIntervalMs = Math.min(retryIntervalMs * 2, MAX_RETRY_INTERVAL_MS);
+            }
+        }
+    }
+
+    private void writeJpeg(byte[] pngData, File file) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(pngData));
+
+        // JPEG images have no alpha channel
+        if (image.getType() != BufferedImage.TYPE_3BYTE_BGR && image.getType() != BufferedImage.TYPE_INT_RGB) {
+            BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+            rgbImage.getGraphics().drawImage(image, 0, 0, null);
+            image = rgbImage;
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParam.setCompressionQuality(this.jpegQuality);
+
+        try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(outputStream);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static class Screenshot {
+
+        public final File file;
+
+        public final String fileName;
+
+        /**
+         * The name of the file that holds an identical screenshot, if any.
+         */
+        public String originalFileName;
+
+        Screenshot(File file) {
+            this.file = file;
+            this.fileName = file.getName();
+        }
+
+        @Override
+        public String toString() {
+            return this.fileName;
+        }
+    }
+}
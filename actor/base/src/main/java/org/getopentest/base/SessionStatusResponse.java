@@ -20,6 +20,26 @@ public class SessionStatusResponse {
     public String environment;
     
     public String result;
+
+    /**
+     * The version of the session data store. Changes every time the data is
+     * written. Older versions of the sync server don't provide it.
+     */
+    public Integer sessionDataVersion;
+
+    /**
+     * The version of the current test's shared data store. Changes every time
+     * the data is written. Older versions of the sync server don't provide it.
+     */
+    public Integer sharedDataVersion;
+
+    /**
+     * Opaque value that identifies the state of the session at the time the
+     * response was produced. It is sent back to the sync server to wait for
+     * the next state change (long-polling). Older versions of the sync server
+     * don't provide it.
+     */
+    public String stateKey;
     
     public String status;
 }
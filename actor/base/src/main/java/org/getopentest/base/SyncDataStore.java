@@ -0,0 +1,384 @@
+package org.getopentest.base;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.getopentest.http.ContentType;
+import org.getopentest.http.HttpRequest;
+import org.getopentest.http.HttpRequestOptions;
+import org.getopentest.http.HttpVerb;
+import org.getopentest.logging.Logger;
+import org.getopentest.util.Factory;
+
+/**
+ * Actor-side copy of a data store that is kept on the sync server (the
+ * session-scoped data or the test-scoped shared data). The data is downloaded
+ * once and reads are served from the local copy, until the copy is
+ * invalidated. Writes are applied to the local copy right away and are sent to
+ * the sync server in one request when the store is flushed (after every
+ * action and at the end of every test segment).
+ *
+ * The sync server assigns a version number to every change of the data,
+ * which it sends as the ETag of the data and in the session status. At the
+ * beginning of a test segment, the local copy is only downloaded again if the
+ * version changed. Older versions of the sync server don't provide the version
+ * number, in which case the local copy is revalidated (using the ETag
+ * generated by the web server) at the beginning of every segment and after
+ * every write.
+ *
+ * Data written by other actors during the current segment is not visible
+ * until the next segment starts, except for properties that don't exist in the
+ * local copy, which are always looked up on the sync server.
+ */
+public class SyncDataStore {
+
+    private static final Gson gson = new Gson();
+
+    private final boolean cacheEnabled;
+
+    /**
+     * The local copy of the data. Null until the data is first downloaded.
+     */
+    private Map<String, Object> data;
+
+    /**
+     * The ETag of the local copy of the data, as provided by the sync server.
+     */
+    private String etag;
+
+    private final String name;
+
+    /**
+     * The writes that were not sent to the sync server yet.
+     */
+    private final Map<String, JsonElement> pendingWrites;
+
+    /**
+     * True when the local copy must be revalidated before it is used.
+     */
+    private boolean stale;
+
+    private final Stats stats;
+
+    private final Transport transport;
+
+    private final Gson writeGson;
+
+    /**
+     * @param name The name of the data store, for logging purposes (e.g.
+     * "session" or "shared")
+     * @param transport Reads and writes the data on the sync server
+     * @param cacheEnabled When false, the data is downloaded for every read
+     * and every write is sent to the sync server right away
+     */
+    public SyncDataStore(String name, Transport transport, boolean cacheEnabled) {
+        this(name, transport, cacheEnabled, new Stats());
+    }
+
+    /**
+     * @param name The name of the data store, for logging purposes (e.g.
+     * "session" or "shared")
+     * @param transport Reads and writes the data on the sync server
+     * @param cacheEnabled When false, the data is downloaded for every read
+     * and every write is sent to the sync server right away
+     * @param stats Collects the statistics of the data store. Can be shared
+     * by multiple data stores.
+     */
+    public SyncDataStore(String name, Transport transport, boolean cacheEnabled, Stats stats) {
+        this.cacheEnabled = cacheEnabled;
+        this.name = name;
+        this.pendingWrites = new LinkedHashMap<>();
+        this.stats = stats;
+        this.transport = transport;
+        this.writeGson = Factory.getGsonBuilder().create();
+    }
+
+    /**
+     * Returns the ETag the sync server uses for the specified data version.
+     */
+    public static String getVersionETag(int version) {
+        return String.format("\"%s\"", version);
+    }
+
+    /**
+     * Sends all the pending writes to the sync server, in one request. If the
+     * request fails, the writes are kept and sent again with the next flush.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.pendingWrites.isEmpty()) {
+            return;
+        }
+
+        JsonObject changes = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : this.pendingWrites.entrySet()) {
+            changes.add(entry.getKey(), entry.getValue());
+        }
+
+        String jsonData = changes.toString();
+        Logger.debug(String.format("Publishing %s data: %s", this.name, jsonData));
+        String newETag;
+        try {
+            newETag = this.transport.save(jsonData);
+        } catch (IOException | RuntimeException ex) {
+            this.stale = true;
+            throw ex;
+        }
+        this.pendingWrites.clear();
+        this.stats.addWrite();
+
+        // The local copy is still in sync with the server if our changes
+        // were the only ones applied since the local copy was downloaded
+        Integer version = parseVersion(this.etag);
+        if (version != null && newETag != null && newETag.equals(getVersionETag(version + 1))) {
+            this.etag = newETag;
+        } else {
+            this.stale = true;
+        }
+    }
+
+    /**
+     * Returns the value of the specified property, or null if the property
+     * doesn't exist.
+     */
+    public synchronized Object get(String propertyName) throws IOException {
+        return this.read(propertyName).get(propertyName);
+    }
+
+    /**
+     * Returns true if the specified property exists in the data store.
+     */
+    public synchronized boolean has(String propertyName) throws IOException {
+        return this.read(propertyName).containsKey(propertyName);
+    }
+
+    public Stats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Marks the local copy of the data as outdated, unless its version is the
+     * same as the specified version of the data on the sync server.
+     *
+     * @param serverVersion The current version of the data, as reported by
+     * the sync server in the session status. Null if the sync server doesn't
+     * provide it.
+     */
+    public synchronized void invalidate(Integer serverVersion) {
+        if (serverVersion == null || !getVersionETag(serverVersion).equals(this.etag)) {
+            this.stale = true;
+        }
+    }
+
+    private static Integer parseVersion(String etag) {
+        if (etag == null || !etag.matches("\"\\d+\"")) {
+            return null;
+        }
+
+        return Integer.valueOf(etag.substring(1, etag.length() - 1));
+    }
+
+    /**
+     * Writes a property in the data store. The value is sent to the sync
+     * server when the store is flushed.
+     */
+    public synchronized void put(String propertyName, Object value) throws IOException {
+        this.write(propertyName, value);
+
+        if (!this.cacheEnabled) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes multiple properties in the data store. The values are sent to
+     * the sync server when the store is flushed.
+     */
+    public synchronized void putAll(Map<String, Object> values) throws IOException {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            this.write(entry.getKey(), entry.getValue());
+        }
+
+        if (!this.cacheEnabled) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Returns the local copy of the data, downloading it first if needed.
+     */
+    private Map<String, Object> read(String propertyName) throws IOException {
+        if (this.data != null && !this.stale && this.cacheEnabled) {
+            if (this.data.containsKey(propertyName)) {
+                this.stats.addRead(true);
+                return this.data;
+            }
+
+            // The property might have been created by another actor
+            this.stale = true;
+        }
+
+        this.stats.addRead(false);
+
+        Data serverData = this.transport.load(this.cacheEnabled && this.data != null ? this.etag : null);
+        if (serverData != null) {
+            Map<String, Object> newData = serverData.json != null
+                    ? gson.fromJson(serverData.json, Map.class)
+                    : null;
+            this.data = newData != null ? newData : new LinkedHashMap<>();
+            this.etag = serverData.etag;
+
+            // Writes that were not sent to the server yet must still be visible
+            for (Map.Entry<String, JsonElement> entry : this.pendingWrites.entrySet()) {
+                this.data.put(entry.getKey(), gson.fromJson(entry.getValue(), Object.class));
+            }
+        }
+        this.stale = false;
+
+        return this.data;
+    }
+
+    private void write(String propertyName, Object value) {
+        JsonElement jsonValue = this.writeGson.toJsonTree(value);
+        this.pendingWrites.put(propertyName, jsonValue);
+
+        // Store the value the same way it would be read back from the server
+        if (this.data != null) {
+            this.data.put(propertyName, gson.fromJson(jsonValue, Object.class));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.stats.toString();
+    }
+
+    /**
+     * The data, as received from the sync server.
+     */
+    public static class Data {
+
+        public String etag;
+
+        public String json;
+    }
+
+    /**
+     * The number of reads, cache hits and write requests of one or more data
+     * stores.
+     */
+    public static class Stats {
+
+        private long hits;
+
+        private long reads;
+
+        private long writes;
+
+        synchronized void addRead(boolean cacheHit) {
+            ++this.reads;
+            if (cacheHit) {
+                ++this.hits;
+            }
+        }
+
+        synchronized void addWrite() {
+            ++this.writes;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("reads=%s, cacheHits=%s, writeRequests=%s",
+                    this.reads,
+                    this.hits,
+                    this.writes);
+        }
+    }
+
+    /**
+     * Reads and writes the data through the data endpoints of the sync
+     * server.
+     */
+    public static class HttpTransport implements Transport {
+
+        private final String proxy;
+
+        private final String url;
+
+        /**
+         * @param url The URL of the data endpoint
+         * @param proxy The HTTP proxy to use, or null
+         */
+        public HttpTransport(String url, String proxy) {
+            this.proxy = proxy;
+            this.url = url;
+        }
+
+        @Override
+        public Data load(String etag) throws IOException {
+            HttpRequestOptions options = new HttpRequestOptions(this.url, HttpVerb.GET);
+            options.proxy = this.proxy;
+            HttpRequest request = new HttpRequest(options);
+            if (etag != null) {
+                request.setHeader("If-None-Match", etag);
+            }
+
+            request.execute();
+            int statusCode = request.getResponseStatusCode();
+            if (statusCode == 304) {
+                return null;
+            }
+            this.checkStatusCode(statusCode, HttpVerb.GET);
+
+            Data data = new Data();
+            data.json = request.getResponseAsString();
+            data.etag = request.getFirstHeader("ETag");
+            return data;
+        }
+
+        @Override
+        public String save(String jsonData) throws IOException {
+            HttpRequestOptions options = new HttpRequestOptions(this.url, HttpVerb.PUT);
+            options.proxy = this.proxy;
+            HttpRequest request = new HttpRequest(options);
+            request.setContent(jsonData, ContentType.APPLICATION_JSON);
+            request.execute();
+            this.checkStatusCode(request.getResponseStatusCode(), HttpVerb.PUT);
+
+            return request.getFirstHeader("ETag");
+        }
+
+        private void checkStatusCode(int statusCode, HttpVerb httpVerb) throws IOException {
+            if (statusCode >= 400) {
+                throw new IOException(String.format(
+                        "The sync service responded with HTTP status code %s. HTTP request was: %s %s",
+                        statusCode,
+                        httpVerb,
+                        this.url));
+            }
+        }
+    }
+
+    public interface Transport {
+
+        /**
+         * Downloads the data from the sync server.
+         *
+         * @param etag The ETag of the local copy of the data, if any
+         * @return The data, or null if the data was not modified since the
+         * local copy (identified by the ETag) was downloaded
+         */
+        Data load(String etag) throws IOException;
+
+        /**
+         * Sends the changed properties to the sync server, which merges them
+         * into the data.
+         *
+         * @return The ETag of the new version of the data, or null if the sync
+         * server doesn't provide it
+         */
+        String save(String jsonData) throws IOException;
+    }
+}
@@ -3,14 +3,12 @@ package org.getopentest.base;
 import com.google.gson.Gson;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
 import org.getopentest.contracts.ILogger;
 import org.getopentest.contracts.ITestActor;
 import org.getopentest.exceptions.ArgumentException;
@@ -477,18 +475,25 @@ public abstract class TestAction {
         return null;
     }
 
+    /**
+     * Converts JS native objects and arrays to their equivalent standard Java
+     * types, using the script engine of the actor. Values that are already
+     * Java types are returned unchanged.
+     */
+    protected Object toJavaType(Object value) {
+        return this.actor != null ? this.actor.toJavaType(value) : value;
+    }
+
     /**
      * Parses the specified argument value as an ArrayList object of the type
      * specified.
      */
     private <T extends Object> List<T> toList(String argName, Object objValue, Class klass) {
         try {
+            objValue = this.toJavaType(objValue);
+
             if (objValue instanceof List) {
                 return (List<T>) objValue;
-            } else if (objValue instanceof ScriptObjectMirror) {
-//                return (List<T>)ScriptUtils.convert(objValue, Object[].class);
-                Object[] objArray = ((ScriptObjectMirror) objValue).to(Object[].class);
-                return (List<T>) Arrays.asList(objArray);
             } else if (objValue.getClass().isArray()) {
                 ArrayList<T> list = new ArrayList<T>();
 
@@ -20,32 +20,18 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
-import javax.imageio.ImageIO;
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
-import jdk.nashorn.api.scripting.AbstractJSObject;
-import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
-import jdk.nashorn.internal.runtime.Undefined;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.text.StringEscapeUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.methods.RequestBuilder;
-import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.getopentest.contracts.ILogger;
+import org.getopentest.contracts.IScriptEngine;
+import org.getopentest.contracts.IScriptObject;
 import org.getopentest.contracts.ITestActor;
+import org.getopentest.db.JdbcConnectionPool;
 import org.getopentest.exceptions.CheckpointException;
 import org.getopentest.exceptions.IntentionalFailException;
 import org.getopentest.http.ContentType;
+import org.getopentest.http.HttpClientPool;
 import org.getopentest.http.HttpRequest;
 import org.getopentest.http.HttpRequestOptions;
 import org.getopentest.http.HttpVerb;
@@ -55,18 +41,19 @@ import org.getopentest.logging.HttpLogger;
 import org.getopentest.logging.LogLevel;
 import org.getopentest.logging.Logger;
 import org.getopentest.logging.NullLogger;
-import org.getopentest.serialization.json.ScriptObjectMirrorSerializer;
 import org.getopentest.serialization.json.TrimmableMap;
 import org.getopentest.testdef.MacroDefinition;
 import org.getopentest.testdef.TestDefAction;
 import org.getopentest.testdef.TestDefActor;
 import org.getopentest.testdef.TestDefSegment;
 import org.getopentest.testdef.TestDefinition;
+import org.getopentest.util.ActorContext;
 import org.getopentest.util.Config;
 import org.getopentest.util.Encryptor;
 import org.getopentest.util.Factory;
 import org.getopentest.util.JarUtil;
 import org.getopentest.util.MainUtil;
+import org.getopentest.util.ObjectUtil;
 import org.getopentest.util.TypeConverter;
 import org.getopentest.util.TypeUtil;
 import org.yaml.snakeyaml.Yaml;
@@ -98,6 +85,41 @@ public class TestActor extends Observable implements ITestActor {
 
     private Thread announceThread;
 
+    /**
+     * The minimum time between two consecutive announce requests.
+     */
+    private static final int ANNOUNCE_INTERVAL_MS = 5000;
+
+    /**
+     * The maximum time the sync server is asked to hold an announce request
+     * until the actor is acquired by a test session. Must stay below the time
+     * after which the sync server considers an idle actor to be offline.
+     */
+    private static final int ANNOUNCE_WAIT_MS = 4000;
+
+    /**
+     * The maximum time to wait for the pending screenshots to be uploaded when
+     * the actor is shutting down.
+     */
+    private static final int SCREENSHOT_FLUSH_TIMEOUT_MS = 10000;
+
+    /**
+     * The content of the helpers.js resource, which is evaluated in the
+     * global scope of every script engine.
+     */
+    private static volatile String helpersScript;
+
+    /**
+     * Defines the $log API in the global scope of the script engine.
+     */
+    private static final String LOG_API_SCRIPT
+            = "$log = function(text) { $_logInfo(text); };"
+            + "$log.debug = $_logDebug;"
+            + "$log.error = $_logError;"
+            + "$log.info = $_logInfo;"
+            + "$log.warn = $_logWarn;"
+            + "$log.trace = $_logTrace;";
+
     /**
      * Flags all threads and activities to shut down.
      */
@@ -151,10 +173,40 @@ public class TestActor extends Observable implements ITestActor {
      * it means that this test actorType was acquired by the sync service and
      * allocated to a particular test session
      */
-    private TestSessionStatus currentSessionStatus;
+    private volatile TestSessionStatus currentSessionStatus;
 
+    /**
+     * The definition of the current test. It is shared with the cached test
+     * plan, so it must not be modified.
+     */
     private TestDefinition currentTest;
 
+    /**
+     * The compiled form of the current test's segments for this actor type.
+     */
+    private TestPlan currentTestPlan;
+
+    private final ValuePlan.Evaluator planEvaluator = this::evalExpression;
+
+    /**
+     * The local copy of the current session's data store. Created when first
+     * used in each session.
+     */
+    private SyncDataStore sessionDataStore;
+
+    /**
+     * The local copy of the current test's shared data store.
+     */
+    private SyncDataStore sharedDataStore;
+
+    /**
+     * The statistics of all the shared data stores used in the current
+     * session (one for each test).
+     */
+    private SyncDataStore.Stats sharedDataStoreStats = new SyncDataStore.Stats();
+
+    private String sharedDataStoreUrl;
+
     /**
      * Caches the content of data files used in the tests, as soon as a test
      * first reads a value from a data file. The cache is reset at the beginning
@@ -176,6 +228,19 @@ public class TestActor extends Observable implements ITestActor {
 
     private ILogger log;
 
+    /**
+     * When true, the actor asks the sync server to hold the announce and
+     * session status requests until something changes (long-polling), instead
+     * of polling the sync server at fixed intervals.
+     */
+    private boolean longPolling;
+
+    /**
+     * The maximum time the sync server is asked to hold a session status
+     * request while waiting for the session state to change.
+     */
+    private int longPollTimeoutSec;
+
     /**
      * The output values for the last test action that was executed, if any.
      */
@@ -199,34 +264,50 @@ public class TestActor extends Observable implements ITestActor {
     private Map<String, Object> macroArgs;
 
     /**
-     * Caches macro definitions so we don't have to load them from disk every
-     * time they're used.
+     * Used to wake up the test thread as soon as the announce thread finds out
+     * that the actor was acquired by a test session.
      */
-    private Map<String, MacroDefinition> macroCache;
+    private final Object sessionAcquiredSignal = new Object();
 
     /**
      * Stores the names of the currently executing macros.
      */
     private Stack<String> macroStack;
 
-    private ScriptEngine scriptEngine;
+    private IScriptEngine scriptEngine;
+
+    /**
+     * Determines whether the same script engine is used for all the tests,
+     * instead of creating a new one for every test.
+     */
+    private boolean reuseScriptEngine;
 
     private final String syncServerUrl;
 
     private File tempDir;
 
+    /**
+     * Caches the macro definitions, test definitions and script files used by
+     * the tests, so we don't have to download and parse them every time
+     * they're used.
+     */
+    private TestAssetCache testAssetCache;
+
+    /**
+     * Caches the decoded image files used by the tests.
+     */
+    private ImageCache imageCache;
+
     private File outDir;
 
     /**
-     * The file names of the image files for the screenshots that were captured
-     * by this test actor.
+     * Saves the screenshots captured by this test actor and uploads them to
+     * the sync server.
      */
-    private List<String> screenshots;
+    private ScreenshotPipeline screenshotPipeline;
 
     private File screenshotsDir;
 
-    private Thread screenshotUploadThread;
-
     private File workDir;
 
     public TestActor() {
@@ -262,6 +343,13 @@ public class TestActor extends Observable implements ITestActor {
 
         consoleLogger.setLevel(LogLevel.valueOf(this.config.getString("logLevel", "DEBUG")));
 
+        // Make the configuration available to the helper classes (Selenium,
+        // Appium, etc.) running on this actor's threads
+        ActorContext.getCurrent().setConfig(this.config);
+
+        HttpClientPool.configure(this.config);
+        JdbcConnectionPool.configure(this.config);
+
         logJarVersions();
 
         logExtensions();
@@ -299,6 +387,8 @@ public class TestActor extends Observable implements ITestActor {
         }
         this.lastActionOutput = new TrimmableMap<>();
         this.lastMacroOutput = new TrimmableMap<>();
+        this.longPolling = this.config.getBoolean("sync.longPolling", true);
+        this.longPollTimeoutSec = this.config.getInteger("sync.longPollTimeoutSec", 30);
         this.localData = new HashMap<>();
         this.macroStack = new Stack<>();
         String syncServerUrl = this.config.getString(
@@ -313,7 +403,6 @@ public class TestActor extends Observable implements ITestActor {
         this.syncServerUrl = syncServerUrl.replaceAll("^[\\s]+|[/\\s]+$", "");
 
         this.outDir = Paths.get(System.getProperty("user.dir"), "out").normalize().toFile();
-        this.screenshots = new ArrayList<String>();
         this.screenshotsDir = Paths.get(outDir.getAbsolutePath(), "screenshots").toFile();
         screenshotsDir.mkdirs();
         this.tempDir = Paths.get(outDir.getAbsolutePath(), "temp").toFile();
@@ -326,10 +415,18 @@ public class TestActor extends Observable implements ITestActor {
         this.actorIsStopping = false;
         this.currentSessionStatus = null;
 
-        this.scriptEngine = this.createScriptEngine();
+        this.reuseScriptEngine = this.config.getBoolean("reuseScriptEngine", true);
+        this.testAssetCache = new TestAssetCache(
+                this::loadTestAsset,
+                this.config.getBoolean("testAssetCache.crossSession", false));
+        this.imageCache = new ImageCache(
+                this::loadTestAsset,
+                this.config.getInteger("imageCache.maxSizeMb", 256) * 1048576L);
+        this.resetScriptEngine();
 
         startAnnounceThread();
-        startScreenShotUploadThread();
+        this.screenshotPipeline = new ScreenshotPipeline(this.screenshotsDir, this.syncServerUrl, this.config);
+        ActionRegistry.startIndexing();
     }
 
     private void abandonSession() {
@@ -354,6 +451,9 @@ public class TestActor extends Observable implements ITestActor {
             content.put("actorId", actorId);
             content.put("actorType", actorType);
             content.put("actorTags", actorTags);
+            if (this.longPolling && this.currentSessionStatus == null) {
+                content.put("waitMs", ANNOUNCE_WAIT_MS);
+            }
 
             String jsonContent = Factory.getGson().toJson(content);
             request.setContent(jsonContent, ContentType.APPLICATION_JSON);
@@ -393,6 +493,10 @@ public class TestActor extends Observable implements ITestActor {
                             testSessionId,
                             currentSessionId));
                     this.currentSessionStatus = new TestSessionStatus(testSessionId);
+
+                    synchronized (this.sessionAcquiredSignal) {
+                        this.sessionAcquiredSignal.notifyAll();
+                    }
                 }
             } else {
                 this.currentSessionStatus = null;
@@ -416,31 +520,27 @@ public class TestActor extends Observable implements ITestActor {
     @Override
     public void close() {
         actorIsStopping = true;
+
+        if (this.screenshotPipeline != null) {
+            this.screenshotPipeline.shutdown(SCREENSHOT_FLUSH_TIMEOUT_MS);
+        }
     }
 
     /**
      * Initialize the JavaScript interpreter that will be used to evaluate
      * action arguments and run "script" test actions.
      */
-    private ScriptEngine createScriptEngine() {
-        NashornScriptEngineFactory nashornFactory = new NashornScriptEngineFactory();
-        ScriptEngine engine = nashornFactory.getScriptEngine();
-
-        try {
-            InputStream inputStream;
-
-            inputStream = this.getClass().getResourceAsStream("/js/helpers.js");
-            engine.eval(new InputStreamReader(inputStream));
-        } catch (Exception ex) {
-            throw new RuntimeException("Failed to evaluate JS code while preparing the JS interpreter", ex);
-        }
+    private IScriptEngine createScriptEngine() {
+        // The Java objects that implement the JavaScript APIs, which are bound
+        // in the global scope of the script engine every time it is reset
+        Map<String, Object> globals = new HashMap<>();
 
         // Keeping a final reference to the current actorType instance, so that we
         // can access it from the anonymous classes below
         final TestActor actor = this;
 
         // $array
-        engine.put("$array", new Function<Object, Object>() {
+        globals.put("$array", new Function<Object, Object>() {
             @Override
             public Object apply(Object arrayLike) {
                 return actor.toJsArray(arrayLike);
@@ -448,7 +548,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $base64
-        engine.put("$base64", new Function<Object, String>() {
+        globals.put("$base64", new Function<Object, String>() {
             @Override
             public String apply(Object value) {
                 try {
@@ -461,7 +561,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $config
-        engine.put("$config", new Function<String, Object>() {
+        globals.put("$config", new Function<String, Object>() {
             @Override
             public Object apply(String propertyName) {
                 Object propertyValue = actor.config.get(propertyName, null);
@@ -470,7 +570,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $data
-        engine.put("$data", new Function<String, Object>() {
+        globals.put("$data", new Function<String, Object>() {
             @Override
             public Object apply(String relativePath) {
                 if (dataFileCache.containsKey(relativePath)) {
@@ -506,7 +606,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $decrypt
-        engine.put("$decrypt", new Function<String, String>() {
+        globals.put("$decrypt", new Function<String, String>() {
             @Override
             public String apply(String text) {
                 String decrypted = actor.getEncryptor().decrypt(text.toString());
@@ -516,7 +616,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $delay
-        engine.put("$delay", new Consumer<Object>() {
+        globals.put("$delay", new Consumer<Object>() {
             @Override
             public void accept(Object durationMs) {
                 int durationMsInt = Integer.valueOf(durationMs.toString());
@@ -528,7 +628,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $encrypt
-        engine.put("$encrypt", new Function<String, String>() {
+        globals.put("$encrypt", new Function<String, String>() {
             @Override
             public String apply(String text) {
                 actor.log.addSecret(text);
@@ -538,14 +638,14 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $env
-        engine.put("$env", new AbstractJSObject() {
+        globals.put("$env", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 if (args.length > 0) {
                     String varName = args[0].toString();
                     return System.getenv(varName);
@@ -556,7 +656,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $eval
-        engine.put("$eval", new Function<Object, Object>() {
+        globals.put("$eval", new Function<Object, Object>() {
             @Override
             public Object apply(Object expression) {
                 return evalObject(expression, null);
@@ -564,14 +664,14 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $fail
-        engine.put("$fail", new AbstractJSObject() {
+        globals.put("$fail", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 String errorMessage = "";
 
                 if (args.length == 1 && args[0] != null) {
@@ -583,7 +683,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $include
-        engine.put("$include", new Consumer<String>() {
+        globals.put("$include", new Consumer<String>() {
             @Override
             public void accept(String filePartialPath) {
                 includeScriptFile(filePartialPath);
@@ -591,7 +691,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $image
-        engine.put("$image", new Function<String, BufferedImage>() {
+        globals.put("$image", new Function<String, BufferedImage>() {
             @Override
             public BufferedImage apply(String fileName) {
                 return getImage(fileName);
@@ -599,11 +699,8 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $json
-        engine.put("$json", new Function<Object, Object>() {
-            private Gson gson = Factory.getGsonBuilder()
-                    .registerTypeAdapter(ScriptObjectMirror.class, new ScriptObjectMirrorSerializer(true))
-                    .serializeNulls()
-                    .create();
+        globals.put("$json", new Function<Object, Object>() {
+            private Gson gson = Factory.getGson(true);
 
             @Override
             public Object apply(Object value) {
@@ -620,7 +717,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $include
-        engine.put("$include", new Consumer<Object>() {
+        globals.put("$include", new Consumer<Object>() {
             @Override
             public void accept(Object includesSource) {
                 evalIncludes(includesSource);
@@ -628,14 +725,14 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $localData
-        engine.put("$localData", new AbstractJSObject() {
+        globals.put("$localData", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 String propertyName = args[0].toString();
 
                 if (args.length == 1) {
@@ -645,7 +742,7 @@ public class TestActor extends Observable implements ITestActor {
                     actor.localData.put(propertyName, propertyValue);
                 }
 
-                return Undefined.getUndefined();
+                return IScriptEngine.UNDEFINED;
             }
 
             @Override
@@ -660,52 +757,39 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $_logDebug
-        engine.put("$_logDebug", (Consumer<Object>) (Object text) -> {
+        globals.put("$_logDebug", (Consumer<Object>) (Object text) -> {
             Logger.debug(String.valueOf(text));
         });
 
         // $_logError
-        engine.put("$_logError", (Consumer<Object>) (Object text) -> {
+        globals.put("$_logError", (Consumer<Object>) (Object text) -> {
             Logger.error(String.valueOf(text));
         });
 
         // $_logInfo
-        engine.put("$_logInfo", (Consumer<Object>) (Object text) -> {
+        globals.put("$_logInfo", (Consumer<Object>) (Object text) -> {
             Logger.info(String.valueOf(text));
         });
 
         // $_logTrace
-        engine.put("$_logTrace", (Consumer<Object>) (Object text) -> {
+        globals.put("$_logTrace", (Consumer<Object>) (Object text) -> {
             Logger.trace(String.valueOf(text));
         });
 
         // $_logWarn
-        engine.put("$_logWarn", (Consumer<Object>) (Object text) -> {
+        globals.put("$_logWarn", (Consumer<Object>) (Object text) -> {
             Logger.warning(String.valueOf(text));
         });
 
-        // $log
-        try {
-            String script
-                    = "$log = function(text) { $_logInfo(text); };"
-                    + "$log.debug = $_logDebug;"
-                    + "$log.error = $_logError;"
-                    + "$log.info = $_logInfo;"
-                    + "$log.warn = $_logWarn;"
-                    + "$log.trace = $_logTrace;";
-            engine.eval(script);
-        } catch (Exception ex) {
-        }
-
         // $macroArgs
-        engine.put("$macroArgs", new AbstractJSObject() {
+        globals.put("$macroArgs", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 if (args.length == 1) {
                     String argName = args[0].toString();
                     if (actor.macroArgs != null) {
@@ -730,24 +814,24 @@ public class TestActor extends Observable implements ITestActor {
 
             @Override
             public void setMember(String name, Object value) {
-                this.call(null, new Object[]{name, value});
+                this.call(name, value);
             }
 
             @Override
             public Object getMember(String name) {
-                return this.call(null, new Object[]{name});
+                return this.call(name);
             }
         });
 
         // $macroOutput
-        engine.put("$macroOutput", new AbstractJSObject() {
+        globals.put("$macroOutput", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 if (args.length == 2) {
                     String propName = args[0].toString();
                     Object propValue = args[1];
@@ -759,22 +843,22 @@ public class TestActor extends Observable implements ITestActor {
                             args.length));
                 }
 
-                return Undefined.getUndefined();
+                return IScriptEngine.UNDEFINED;
             }
 
             @Override
             public void setMember(String name, Object value) {
-                this.call(null, new Object[]{name, value});
+                this.call(name, value);
             }
 
             @Override
             public Object getMember(String name) {
-                return this.call(null, new Object[]{name});
+                return this.call(name);
             }
         });
 
         // $maskSecret
-        engine.put("$maskSecret", new Consumer<Object>() {
+        globals.put("$maskSecret", new Consumer<Object>() {
             @Override
             public void accept(Object secretObj) {
                 actor.log.addSecret((String) secretObj);
@@ -782,7 +866,7 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $maskSecretByRegex
-        engine.put("$maskSecretByRegex", new Consumer<String>() {
+        globals.put("$maskSecretByRegex", new Consumer<String>() {
             @Override
             public void accept(String secretRegexStr) {
                 actor.log.addSecretByRegex(secretRegexStr);
@@ -790,14 +874,14 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $output
-        engine.put("$output", new AbstractJSObject() {
+        globals.put("$output", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 if (args.length == 1) {
                     String propName = args[0].toString();
 
@@ -818,23 +902,20 @@ public class TestActor extends Observable implements ITestActor {
 
             @Override
             public void setMember(String name, Object value) {
-                this.call(null, new Object[]{name, value});
+                this.call(name, value);
             }
 
             @Override
             public Object getMember(String name) {
-                return this.call(null, new Object[]{name});
+                return this.call(name);
             }
         });
 
         // $readOutput
-        try {
-            engine.eval("$readOutput = $output");
-        } catch (Exception ex) {
-        }
+        globals.put("$readOutput", globals.get("$output"));
 
         // $require
-        engine.put("$require", new Function<String, Object>() {
+        globals.put("$require", new Function<String, Object>() {
             @Override
             public Object apply(String relativePath) {
                 // TODO: Continue implementation
@@ -844,14 +925,14 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $runAction
-        engine.put("$runAction", new AbstractJSObject() {
+        globals.put("$runAction", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 String actionClassName = (String) args[0];
 
                 Map<String, Object> argsMap;
@@ -865,7 +946,7 @@ public class TestActor extends Observable implements ITestActor {
                     TestDefAction actionDef = new TestDefAction();
                     actionDef.action = actionClassName;
                     actionDef.args = argsMap;
-                    return executeActionByDef(actionDef);
+                    return executeActionByPlan(ActionPlan.compile(actionDef));
                 } catch (Exception ex) {
                     throw new RuntimeException(String.format(
                             "Failed executing action %s %s",
@@ -876,14 +957,14 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $runMacro
-        engine.put("$runMacro", new AbstractJSObject() {
+        globals.put("$runMacro", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 String macroName = (String) args[0];
 
                 Map<String, Object> argsMap;
@@ -905,42 +986,28 @@ public class TestActor extends Observable implements ITestActor {
         });
 
         // $sessionData
-        engine.put("$sessionData", new AbstractJSObject() {
+        globals.put("$sessionData", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 String propertyName = args[0].toString();
 
                 if (args.length == 1) {
-                    String url = String.format("%s/api/session/%s/data",
-                            TestActor.this.syncServerUrl,
-                            TestActor.this.currentSessionStatus.id);
-
                     try {
-                        HttpRequestOptions options = new HttpRequestOptions(
-                                url,
-                                HttpVerb.GET);
-                        options.proxy = TestActor.this.httpProxy;
-                        HttpRequest request = new HttpRequest(options);
-
-                        request.execute();
-                        String responseBody = request.getResponseAsString();
-                        Map<String, Object> sessionData = new Gson().fromJson(responseBody, Map.class);
-                        return sessionData.get(propertyName);
+                        return TestActor.this.getSessionDataStore().get(propertyName);
                     } catch (Exception ex) {
-                        throw new RuntimeException(String.format(
+                        throw new RuntimeException(
                                 "There was an error while requesting the test session data "
-                                + "from the sync service. HTTP request details: %s",
-                                "GET " + url));
+                                + "from the sync service.", ex);
                     }
                 } else if (args.length == 2) {
                     Object propertyValue = args[1];
                     try {
-                        TestActor.this.publishSessionData(propertyName, propertyValue);
+                        TestActor.this.getSessionDataStore().put(propertyName, propertyValue);
                     } catch (Exception ex) {
                         throw new RuntimeException(String.format(
                                 "There was an error while publishing the test session "
@@ -948,49 +1015,36 @@ public class TestActor extends Observable implements ITestActor {
                     }
                 }
 
-                return Undefined.getUndefined();
+                return IScriptEngine.UNDEFINED;
             }
 
             @Override
             public void setMember(String name, Object value) {
-                this.call(null, new Object[]{name, value});
+                this.call(name, value);
             }
 
             @Override
             public Object getMember(String name) {
-                return this.call(null, new Object[]{name});
+                return this.call(name);
             }
         });
 
         // $sharedData
-        engine.put("$sharedData", new AbstractJSObject() {
+        globals.put("$sharedData", new IScriptObject() {
             @Override
             public boolean isFunction() {
                 return true;
             }
 
             @Override
-            public Object call(Object thiz, Object... args) {
+            public Object call(Object... args) {
                 String propertyName = args[0].toString();
 
                 if (args.length == 1) {
-                    String url = String.format("%s/api/session/%s/test/%s/data",
-                            TestActor.this.syncServerUrl,
-                            TestActor.this.currentSessionStatus.id,
-                            TestActor.this.currentSessionStatus.currentTestIndex);
-
                     try {
-                        HttpRequestOptions options = new HttpRequestOptions(
-                                url,
-                                HttpVerb.GET);
-                        options.proxy = TestActor.this.httpProxy;
-                        HttpRequest request = new HttpRequest(options);
-
-                        request.execute();
-                        String responseBody = request.getResponseAsString();
-                        Map<String, Object> sharedData = new Gson().fromJson(responseBody, Map.class);
+                        SyncDataStore sharedData = TestActor.this.getSharedDataStore();
 
-                        if (sharedData.containsKey(propertyName)) {
+                        if (sharedData.has(propertyName)) {
                             return sharedData.get(propertyName);
                         } else {
                             log.warning(String.format(
@@ -1002,43 +1056,39 @@ public class TestActor extends Observable implements ITestActor {
                             return null;
                         }
                     } catch (Exception ex) {
-                        throw new RuntimeException(String.format(
+                        throw new RuntimeException(
                                 "There was an error while requesting the test shared data from the "
-                                + "sync service. HTTP request was: %s",
-                                "GET " + url), ex);
+                                + "sync service.", ex);
                     }
                 } else if (args.length == 2) {
                     Object propertyValue = args[1];
                     try {
-                        TestActor.this.publishSharedData(propertyName, propertyValue);
+                        TestActor.this.getSharedDataStore().put(propertyName, propertyValue);
                     } catch (Exception ex) {
                         throw new RuntimeException(String.format(
                                 "There was an error while publishing the test shared data to the sync service."), ex);
                     }
                 }
 
-                return Undefined.getUndefined();
+                return IScriptEngine.UNDEFINED;
             }
 
             @Override
             public void setMember(String name, Object value) {
-                this.call(null, new Object[]{name, value});
+                this.call(name, value);
             }
 
             @Override
             public Object getMember(String name) {
-                return this.call(null, new Object[]{name});
+                return this.call(name);
             }
         });
 
         // $tempDir
-        engine.put("$tempDir", this.tempDir);
-
-        // $test
-        engine.put("$test", this.currentTest);
+        globals.put("$tempDir", this.tempDir);
 
         // $writeMacroOutput (deprecated)
-        engine.put("$writeMacroOutput", new BiConsumer<String, Object>() {
+        globals.put("$writeMacroOutput", new BiConsumer<String, Object>() {
             @Override
             public void accept(String valName, Object value) {
                 actor.lastMacroOutput.put(valName, value);
@@ -1048,7 +1098,23 @@ public class TestActor extends Observable implements ITestActor {
         // $writeOutput
         // This function is being populated dynamically by each script
         // action when it executes.
-        engine.put("$writeOutput", null);
+        globals.put("$writeOutput", null);
+
+        String helpers;
+        try {
+            if (helpersScript == null) {
+                helpersScript = IOUtils.toString(
+                        this.getClass().getResourceAsStream("/js/helpers.js"),
+                        Charset.forName("UTF-8"));
+            }
+
+            helpers = helpersScript;
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to read the JS helpers while preparing the JS interpreter", ex);
+        }
+
+        IScriptEngine engine = Factory.getScriptEngine(this.config);
+        engine.setGlobals(globals, Arrays.asList(helpers, LOG_API_SCRIPT));
 
         return engine;
     }
@@ -1057,7 +1123,7 @@ public class TestActor extends Observable implements ITestActor {
      * Convert old test action names to their new name in order to avoid
      * breaking old tests.
      */
-    private String curateActionName(String actionName) {
+    static String curateActionName(String actionName) {
         String newActionName = actionName
                 .replaceAll("^dtest.np6actions.", "com.mcd.opentest.np6.")
                 .replaceAll("^dtest.mobileactions.", "org.getopentest.appium.")
@@ -1070,7 +1136,7 @@ public class TestActor extends Observable implements ITestActor {
      * Deal with recoverable error conditions related to test action arguments,
      * like deprecated arguments.
      */
-    private void curateArguments(Map<String, Object> args) {
+    static void curateArguments(Map<String, Object> args) {
         // executeIf was deprecated in favor of $if
         if (args.containsKey("executeIf")) {
             args.put("$if", args.get("executeIf"));
@@ -1112,25 +1178,17 @@ public class TestActor extends Observable implements ITestActor {
     }
 
     /**
-     * Converts a value from a Java type to a JavaScript native type, by first
-     * serializing it to a JSON string and then using JSON.parse. This is
+     * Converts a value from a Java type to a JavaScript native type. This is
      * necessary to allow the use of JS APIs on arrays and objects (e.g.
      * Array.prototype.join, Object.keys, etc.), instead of requiring test
      * automation developers to work with those values using Java APIs. Types
-     * that map to native JS primitive values (number, string, etc.) apparently
-     * cannot be converted to native JS objects.
+     * that map to native JS primitive values (number, string, etc.) are
+     * returned unchanged.
      */
     private Object convertToJavaScriptType(Object value) {
         try {
-            // Check if the value is a List or Map, but exclude ScriptObjectMirror
-            // instances, because they are already JS native types
-            if ((value instanceof List || value instanceof Map)
-                    && !(value instanceof ScriptObjectMirror)) {
-
-                Gson gson = new Gson();
-                String json = gson.toJson(value);
-                json = json.replace("\\", "\\\\");
-                return this.scriptEngine.eval(String.format("JSON.parse('%s')", json));
+            if (value instanceof List || value instanceof Map) {
+                return this.scriptEngine.toNativeType(value);
             } else {
                 return value;
             }
@@ -1142,28 +1200,11 @@ public class TestActor extends Observable implements ITestActor {
     }
 
     /**
-     * Converts ScriptObjectMirror instances to their equivalent standard Java
+     * Converts JS native objects and arrays to their equivalent standard Java
      * types. Objects that are already Java types are returned unchanged.
      */
     private Object convertToJavaType(Object inputObj) {
-        if (inputObj instanceof ScriptObjectMirror) {
-            ScriptObjectMirror scriptObjectMirror = (ScriptObjectMirror) inputObj;
-            if (scriptObjectMirror.isArray()) {
-                List<Object> list = new ArrayList<>();
-                for (Map.Entry<String, Object> entry : scriptObjectMirror.entrySet()) {
-                    list.add(convertToJavaType(entry.getValue()));
-                }
-                return list;
-            } else {
-                Map<String, Object> map = new HashMap<>();
-                for (Map.Entry<String, Object> entry : scriptObjectMirror.entrySet()) {
-                    map.put(entry.getKey(), convertToJavaType(entry.getValue()));
-                }
-                return map;
-            }
-        } else {
-            return inputObj;
-        }
+        return this.scriptEngine.toJavaType(inputObj);
     }
 
     /**
@@ -1174,7 +1215,7 @@ public class TestActor extends Observable implements ITestActor {
         if (dataSetSource != null) {
             if (dataSetSource instanceof String) {
                 String expression = (String) dataSetSource;
-                String cleanedExpression = expression.replaceAll("^\\s*\\$script\\s*", "");
+                String cleanedExpression = removeScriptPrefix(expression);
                 Object evaledObj;
                 try {
                     evaledObj = this.scriptEngine.eval(cleanedExpression);
@@ -1192,7 +1233,9 @@ public class TestActor extends Observable implements ITestActor {
                             cleanedExpression));
                 }
             } else if (dataSetSource instanceof List) {
-                return (List) dataSetSource;
+                // The data set is exposed to the test scripts as $dataSet, so
+                // the cached test definition is protected from changes
+                return ObjectUtil.deepCopy((List) dataSetSource);
             } else {
                 throw new RuntimeException(String.format(
                         "The \"dataSet\" property of the data-driven test is not a collection type. The value we found was >>> %s <<<.",
@@ -1237,9 +1280,12 @@ public class TestActor extends Observable implements ITestActor {
                 }
             } else if (includesSource instanceof List) {
                 includesList = (List) includesSource;
-            } else if (includesSource instanceof ScriptObjectMirror) {
-                ScriptObjectMirror includesSom = (ScriptObjectMirror) includesSource;
-                includesList = includesSom.values().stream()
+            } else if (this.scriptEngine.isNativeObject(includesSource)) {
+                Object includesObj = this.scriptEngine.toJavaType(includesSource);
+                Collection<Object> includesValues = includesObj instanceof Map
+                        ? ((Map<String, Object>) includesObj).values()
+                        : (List<Object>) includesObj;
+                includesList = includesValues.stream()
                         .map(s -> s.toString())
                         .collect(Collectors.toList());
             } else {
@@ -1257,15 +1303,11 @@ public class TestActor extends Observable implements ITestActor {
     }
 
     /**
-     * Parse JSON data using the JS engine and return the corresponding JS
-     * native value.
+     * Parse JSON data directly into the corresponding JS native value.
      */
     public Object parseJsonToNativeJsType(String jsonData) {
         try {
-            String escapedJson = StringEscapeUtils.escapeJson(jsonData);
-            String jsCode = String.format("JSON.parse(\"%s\")", escapedJson);
-            Object jsNativeType = this.scriptEngine.eval(jsCode);
-            return jsNativeType;
+            return this.scriptEngine.parseJson(jsonData);
         } catch (Exception ex) {
             throw new RuntimeException(String.format(
                     "An error was encountered while parsing JSON data. The JSON data was: %s",
@@ -1367,21 +1409,48 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
+    /**
+     * Evaluates a JS expression from a compiled test or macro definition. The
+     * result is evaluated further by evalObject, in case it is itself a JS
+     * expression or a collection that contains JS expressions.
+     */
+    private Object evalExpression(ValuePlan.Expression expression) {
+        try {
+            Object result;
+            try {
+                result = evalScriptCode(expression.getCode());
+            } catch (IntentionalFailException ex1) {
+                throw ex1;
+            } catch (Exception ex2) {
+                throw new RuntimeException(String.format(
+                        "Failed to evaluate JavaScript code. The script content was: %s",
+                        expression.getSource()), ex2);
+            }
+
+            return evalObject(result, null);
+        } catch (StackOverflowError e) {
+            throw new RuntimeException(String.format(
+                    "We got a StackOverflowError while evaluating a data property. The property's value was \"%s\". This is typically caused by a circular dependency (e.g. property1 refercencing property2, which, in turn, references property1).",
+                    expression.getExpression()
+            ));
+        }
+    }
+
     /**
      * Evaluate JS code and return the result.
      */
     public Object evalScript(String script) {
         // Remove the $script syntax from the beginning of the string, if present
-        String cleanedExpression = script.replaceAll("^\\s*\\$script\\s*", "");
+        String cleanedExpression = removeScriptPrefix(script);
 
         try {
             // Check whether the string represents an object literal
-            if (cleanedExpression.matches("^\\s*\\{[\\s\\S]*\\}\\s*$")) {
+            if (isObjectLiteral(cleanedExpression)) {
                 // We must enclose the expression in parantheses, so that object
                 // literals are propely evaluated
-                return this.scriptEngine.eval(String.format("(%s)", cleanedExpression));
+                return evalScriptCode(String.format("(%s)", cleanedExpression));
             } else {
-                return this.scriptEngine.eval(cleanedExpression);
+                return evalScriptCode(cleanedExpression);
             }
         } catch (IntentionalFailException ex1) {
             throw ex1;
@@ -1392,14 +1461,21 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
-    private Object evalScriptFile(String scriptFileFullPath) throws ScriptException, FileNotFoundException {
+    /**
+     * Evaluates JS code in the current script engine.
+     */
+    private Object evalScriptCode(String code) throws ScriptException {
+        return this.scriptEngine.eval(code);
+    }
+
+    private Object evalScriptFile(String scriptFileFullPath) throws ScriptException, IOException {
         Path scriptPath = Paths.get(scriptFileFullPath);
 
         if (Files.exists(scriptPath)) {
             this.currentScript = scriptPath.toString();
         }
 
-        return this.scriptEngine.eval(new FileReader(scriptPath.toString()));
+        return this.scriptEngine.eval(new String(Files.readAllBytes(scriptPath), "UTF-8"));
     }
 
     /**
@@ -1411,9 +1487,9 @@ public class TestActor extends Observable implements ITestActor {
     private Object evalString(String expression) {
         // A string is considered to be a JS expression if it starts with
         // "$script" or any dollar-prefixed identifier
-        if (expression.matches("(?s)^[\\s\\n]*(\\$[a-zA-Z]\\w+).*")) {
+        if (isJsExpression(expression)) {
             // Remove the $script syntax from the beginning of the string, if present
-            String cleanedExpression = expression.replaceAll("^\\s*\\$script\\s*", "");
+            String cleanedExpression = removeScriptPrefix(expression);
 
             return evalScript(cleanedExpression);
         } else {
@@ -1500,10 +1576,7 @@ public class TestActor extends Observable implements ITestActor {
         // Output values should not be written to the log if the $noLogs = true
         // argument was passed.
         if (!noLogs && (outputValues.size() > 0)) {
-            Gson gson = Factory.getGsonBuilder(this.config)
-                    .registerTypeAdapter(ScriptObjectMirror.class, new ScriptObjectMirrorSerializer(true))
-                    .serializeNulls()
-                    .create();
+            Gson gson = Factory.getGson(this.config, true);
             StringBuilder outputValuesStr = new StringBuilder();
 
             for (Object key : outputValues.keySet()) {
@@ -1533,39 +1606,54 @@ public class TestActor extends Observable implements ITestActor {
     }
 
     /**
-     * Executes an action given the action's Java class name and returns the
-     * output values produced by the action.
+     * Evaluates the data published by an action using the $sessionData and
+     * $sharedData arguments.
      */
-    private Map<String, Object> executeActionByClassName(String actionClassName, Map<String, Object> args) {
-        actionClassName = curateActionName(actionClassName);
-        this.curateArguments(args);
-
-        try {
-            Class<?> actionClass;
-            actionClass = Class.forName(actionClassName);
+    private Map<String, Object> evalData(Map<String, ValuePlan> data) {
+        Map<String, Object> result = new HashMap<>();
 
-            if (TestAction.class.isAssignableFrom(actionClass)) {
-                TestAction actionInstance = (TestAction) actionClass.getConstructor().newInstance();
+        for (Map.Entry<String, ValuePlan> entry : data.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().evaluate(this.planEvaluator));
+        }
 
-                executeAction(actionInstance, args);
+        return result;
+    }
 
-                this.lastActionOutput = actionInstance.getOutput();
-                return actionInstance.getOutput();
-            } else {
-                throw new RuntimeException(String.format(
-                        "Class %s is not a test action class and cannot be used in test definitions",
-                        actionClassName));
-            }
-        } catch (ClassNotFoundException | NoClassDefFoundError ex) {
+    /**
+     * Looks up the type of an action given the action's Java class name.
+     */
+    private ActionRegistry.ActionType resolveActionType(String actionClassName) {
+        try {
+            return ActionRegistry.getActionType(actionClassName);
+        } catch (ActionRegistry.ActionNotFoundException ex) {
             throw new RuntimeException(String.format(
-                    "Failed to find test action class \"%s\". Most common causes to watch for are "
+                    "%s Most common causes to watch for are "
                     + "capitalization mistakes (e.g. using \"some.package.sampleAction\" "
                     + "instead \"some.package.SampleAction\") or spelling mistakes. If these "
                     + "look good, make sure the JAR file where the test action class is implemented "
                     + "exists in the CLASSPATH. A less common cause for this error is having a "
                     + "dependency conflict that prevents the test action class from instantiating.",
-                    actionClassName), ex);
-        } catch (Exception ex) {
+                    ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Executes an action given the action's type and returns the output values
+     * produced by the action.
+     */
+    private Map<String, Object> executeActionByType(
+            ActionRegistry.ActionType actionType,
+            String actionClassName,
+            Map<String, Object> args) {
+
+        try {
+            TestAction actionInstance = actionType.newInstance();
+
+            executeAction(actionInstance, args);
+
+            this.lastActionOutput = actionInstance.getOutput();
+            return actionInstance.getOutput();
+        } catch (Exception | NoClassDefFoundError ex) {
             throw new RuntimeException(String.format(
                     "Failed to instantiate action class \"%s\"",
                     actionClassName), ex);
@@ -1573,15 +1661,15 @@ public class TestActor extends Observable implements ITestActor {
     }
 
     /**
-     * Executes an action given the action's definition and returns the output
-     * values produced by the action.
+     * Executes an action given the action's compiled definition and returns
+     * the output values produced by the action.
      */
-    private Map<String, Object> executeActionByDef(TestDefAction actionDef) {
+    private Map<String, Object> executeActionByPlan(ActionPlan actionPlan) {
         long startTimeNano = 0;
         long endTimeNano = 0;
 
         TestActionInfo localActionInfo = new TestActionInfo();
-        boolean isCheckpoint = false;
+        Boolean isCheckpoint = actionPlan.getCheckpoint();
         Map<String, Object> actionArgs = null;
 
         try {
@@ -1590,39 +1678,25 @@ public class TestActor extends Observable implements ITestActor {
             localActionInfo.result = null;
             localActionInfo.segment = this.currentSegmentNo;
 
-            // Added for backward compatibility to support using the "type" property
-            // as an alias to "action" but will be removed eventually
-            if (actionDef.action == null) {
-                actionDef.action = actionDef.type;
-                actionDef.type = null;
-            }
-
-            actionArgs = (Map) evalObject(
-                    actionDef.args,
-                    new String[]{"$localData", "$sessionData", "$sharedData"});
-            if (actionArgs == null) {
-                actionArgs = new HashMap<>();
+            actionArgs = new HashMap<>();
+            for (Map.Entry<String, ValuePlan> entry : actionPlan.getArgs().entrySet()) {
+                try {
+                    actionArgs.put(entry.getKey(), entry.getValue().evaluate(this.planEvaluator));
+                } catch (Exception ex) {
+                    throw new RuntimeException(String.format(
+                            "There was an error while evaluating property \"%s\"",
+                            entry.getKey()), ex);
+                }
             }
 
             localActionInfo.args = new TrimmableMap(actionArgs);
-            isCheckpoint = TypeConverter.toBooolean(actionArgs.get("$checkpoint"), false);
-            localActionInfo.isCheckpoint = isCheckpoint;
-
-            String description;
-            if (actionDef.description != null && !actionDef.description.trim().isEmpty()) {
-                description = actionDef.description.trim();
-            } else if (actionDef.action != null && !actionDef.action.trim().isEmpty()) {
-                description = actionDef.action.trim();
-            } else if (actionDef.script != null) {
-                description = ScriptAction.class.getName();
-            } else if (actionDef.macro != null) {
-                description = actionDef.macro.trim();
-            } else {
-                description = "(No description provided)";
+            if (isCheckpoint == null) {
+                isCheckpoint = TypeConverter.toBooolean(actionArgs.get("$checkpoint"), false);
             }
+            localActionInfo.isCheckpoint = isCheckpoint;
 
             localActionInfo.description
-                    = actionArgs.getOrDefault("$description", description).toString();
+                    = actionArgs.getOrDefault("$description", actionPlan.getDescription()).toString();
 
             Map<String, Object> outputValues = null;
 
@@ -1632,22 +1706,26 @@ public class TestActor extends Observable implements ITestActor {
 
             startTimeNano = System.nanoTime();
 
-            if (actionDef.script != null) {
-                // SCRIPT ACTION
-                localActionInfo.action = ScriptAction.class.getName();
-                actionDef.action = ScriptAction.class.getName();
-                ScriptAction scriptAction = new ScriptAction(this, actionDef.script);
-                outputValues = this.executeAction(scriptAction, actionArgs);
-            } else if (actionDef.macro != null) {
-                // MACRO ACTION
-                localActionInfo.action = MacroAction.class.getName();
-                localActionInfo.macro = actionDef.macro;
-                actionDef.action = MacroAction.class.getName();
-                outputValues = this.executeMacroActionByName(actionDef.macro, actionArgs);
-            } else if (actionDef.action != null) {
-                // REGULAR ACTION
-                localActionInfo.action = actionDef.action;
-                outputValues = this.executeActionByClassName(actionDef.action, actionArgs);
+            switch (actionPlan.getKind()) {
+                case SCRIPT:
+                    localActionInfo.action = ScriptAction.class.getName();
+                    ScriptAction scriptAction = new ScriptAction(this, actionPlan.getScript());
+                    outputValues = this.executeAction(scriptAction, actionArgs);
+                    break;
+                case MACRO:
+                    localActionInfo.action = MacroAction.class.getName();
+                    localActionInfo.macro = actionPlan.getMacro();
+                    outputValues = this.executeMacroActionByName(actionPlan.getMacro(), actionArgs);
+                    break;
+                case ACTION:
+                    if (actionPlan.getName() != null) {
+                        localActionInfo.action = actionPlan.getName();
+                        ActionRegistry.ActionType actionType = actionPlan.getActionType() != null
+                                ? actionPlan.getActionType()
+                                : resolveActionType(actionPlan.getActionClassName());
+                        outputValues = this.executeActionByType(actionType, actionPlan.getActionClassName(), actionArgs);
+                    }
+                    break;
             }
 
             endTimeNano = System.nanoTime();
@@ -1655,70 +1733,41 @@ public class TestActor extends Observable implements ITestActor {
             // Evaluate and publish values in the test's shared data. This code
             // section is just for backward compatibility, since the correct way
             // to share data is to use the $sharedData argument.
-            if (actionDef.sharedData != null) {
-                Map<String, Object> sharedData = new HashMap<>();
-
-                for (Map.Entry<String, Object> entry : actionDef.sharedData.entrySet()) {
-                    sharedData.put(entry.getKey(), this.evalObject(entry.getValue(), null));
-                }
+            if (actionPlan.getLegacySharedData() != null) {
+                publishSharedData(evalData(actionPlan.getLegacySharedData()));
+            }
 
-                publishSharedData(sharedData);
+            // Evaluate and publish values in the session data store
+            if (actionPlan.getSessionData() != null) {
+                publishSessionData(evalData(actionPlan.getSessionData()));
             }
 
-            if (actionDef.args != null) {
-                // Evaluate and publish values in the session data store
-                if (actionDef.args.containsKey("$sessionData")) {
-                    Object sessionDataObj = actionDef.args.get("$sessionData");
-                    if (sessionDataObj instanceof Map) {
-                        Map<String, Object> sharedDataOriginal = (Map) sessionDataObj;
-                        Map<String, Object> sessionData = new HashMap<String, Object>();
+            // Evaluate and publish values in the shared (test-scoped) data store
+            if (actionPlan.getSharedData() != null) {
+                publishSharedData(evalData(actionPlan.getSharedData()));
+            }
 
-                        for (Map.Entry<String, Object> entry : sharedDataOriginal.entrySet()) {
-                            sessionData.put(entry.getKey(), this.evalObject(entry.getValue(), null));
-                        }
+            // Evaluate and publish values in the local (actor-scoped) data
+            // store. Every value is published as soon as it's evaluated, so
+            // it can be used by the values that follow.
+            if (actionPlan.getLocalData() != null) {
+                Map<String, Object> localData = new TrimmableMap();
 
-                        publishSessionData(sessionData);
-                    }
+                for (Map.Entry<String, ValuePlan> entry : actionPlan.getLocalData().entrySet()) {
+                    Object result = entry.getValue().evaluate(this.planEvaluator);
+                    localData.put(entry.getKey(), result);
+                    this.localData.put(entry.getKey(), result);
                 }
 
-                // Evaluate and publish values in the shared (test-scoped) data store
-                if (actionDef.args.containsKey("$sharedData")) {
-                    Object sharedDataObj = actionDef.args.get("$sharedData");
-                    if (sharedDataObj instanceof Map) {
-                        Map<String, Object> sharedDataOriginal = (Map) sharedDataObj;
-                        Map<String, Object> sharedData = new HashMap<String, Object>();
-
-                        for (Map.Entry<String, Object> entry : sharedDataOriginal.entrySet()) {
-                            sharedData.put(entry.getKey(), this.evalObject(entry.getValue(), null));
-                        }
-
-                        publishSharedData(sharedData);
-                    }
-                }
-
-                // Evaluate and publish values in the local (actor-scoped) data store
-                if (actionDef.args.containsKey("$localData")) {
-                    Object localDataObj = actionDef.args.get("$localData");
-                    if (localDataObj instanceof Map) {
-                        Map<String, Object> localData = new TrimmableMap((Map) localDataObj);
-
-                        for (Map.Entry<String, Object> entry : localData.entrySet()) {
-                            Object result = this.evalObject(entry.getValue(), null);
-                            localData.put(entry.getKey(), result);
-                            this.localData.put(entry.getKey(), result);
-                        }
-
-                        Gson gson = Factory.getGsonBuilder(this.config)
-                                .registerTypeAdapter(
-                                        ScriptObjectMirror.class,
-                                        new ScriptObjectMirrorSerializer(false))
-                                .create();
-                        String jsonData = gson.toJson(localData);
-                        Logger.debug(String.format("Published local data: %s", jsonData));
-                    }
-                }
+                Gson gson = Factory.getGson(this.config);
+                String jsonData = gson.toJson(localData);
+                Logger.debug(String.format("Published local data: %s", jsonData));
             }
 
+            // Send the session and shared data written by the action (or by
+            // its arguments) in one request per data store
+            flushDataStores();
+
             if (outputValues == null) {
                 outputValues = new HashMap<String, Object>();
             }
@@ -1731,6 +1780,7 @@ public class TestActor extends Observable implements ITestActor {
         } catch (Exception ex) {
             localActionInfo.result = "failed";
             localActionInfo.stackTrace = BaseLogger.getStackTrace(ex);
+            tryFlushDataStores();
 
             // We don't take screenshots for macros, since the screenshot was
             // already taken for the action that failed within the macro
@@ -1741,11 +1791,9 @@ public class TestActor extends Observable implements ITestActor {
                 }
             }
 
-            String actionType = actionDef.action != null
-                    ? actionDef.action
-                    : actionDef.macro != null
-                            ? actionDef.macro
-                            : actionDef.script != null ? "of type \"script\"" : "?";
+            String actionType = actionPlan.getName() != null
+                    ? actionPlan.getName()
+                    : actionPlan.getScript() != null ? "of type \"script\"" : "?";
 
             String actionArguments;
             if (this.currentAction != null) {
@@ -1757,7 +1805,7 @@ public class TestActor extends Observable implements ITestActor {
             String errorMessage = String.format(
                     "Failed executing action %s %s",
                     actionType, actionArguments);
-            if (isCheckpoint) {
+            if (isCheckpoint == Boolean.TRUE) {
                 throw wrapCheckpointException(ex);
             } else {
                 if (ex instanceof IntentionalFailException) {
@@ -1780,9 +1828,9 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
-    private Map<String, Object> executeMacroActionByDef(
+    private Map<String, Object> executeMacroActionByPlan(
             String macroFullName,
-            MacroDefinition macroDef,
+            MacroPlan macroPlan,
             Map<String, Object> macroArgs) throws Exception {
 
         try {
@@ -1799,79 +1847,74 @@ public class TestActor extends Observable implements ITestActor {
             }
 
             if (macroArgs.containsKey("$if") && macroArgs.get("$if") != Boolean.TRUE) {
-                Logger.info(String.format("Skipping conditional macro action %s", macroDef.fullName));
+                Logger.info(String.format("Skipping conditional macro action %s", macroPlan.getFullName()));
                 this.currentActionInfo.result = "skipped";
                 return new HashMap<>();
             }
 
             Logger.info(String.format("Executing macro %s %s...",
-                    macroDef.fullName,
+                    macroPlan.getFullName(),
                     getArgsStringDescription(macroArgs)));
 
-            evalIncludes(macroDef.includes);
+            evalIncludes(macroPlan.getIncludes());
 
             // Execute the actions for the current macro, in the order
             // they appear in the macro definition file
-            if (macroDef.actions != null) {
-                for (TestDefAction actionDef : macroDef.actions) {
-                    try {
-                        // Added for backward compatibility to support using the "type" property
-                        // as an alias to "action" but will be removed eventually
-                        if (actionDef.action == null) {
-                            actionDef.action = actionDef.type;
-                            actionDef.type = null;
-                        }
-
-                        Logger.info(String.format("Evaluating action %s/%s in macro %s%s...",
-                                macroDef.actions.indexOf(actionDef) + 1,
-                                macroDef.actions.size(),
-                                macroDef.fullName,
-                                actionDef.description != null
-                                        ? String.format(" (%s)", actionDef.description)
-                                        : ""));
-                        this.lastActionOutput = executeActionByDef(actionDef);
-                    } catch (Exception ex) {
-                        Gson gson = Factory.getGsonBuilder().setPrettyPrinting().create();
-                        String actionDefJson = gson.toJson(actionDef);
+            List<ActionPlan> actionPlans = macroPlan.getActions();
+            for (int actionIndex = 0; actionIndex < actionPlans.size(); actionIndex++) {
+                ActionPlan actionPlan = actionPlans.get(actionIndex);
+                TestDefAction actionDef = actionPlan.getDefinition();
 
-                        if (ex instanceof IntentionalFailException) {
-                            throw (IntentionalFailException) ex;
-                        } else if (ex instanceof CheckpointException) {
-                            Throwable cause = ex.getCause();
-                            if (cause instanceof IntentionalFailException) {
-                                String userDefinedMessage = ex.getMessage();
-                                String userDefinedMessageSuffix
-                                        = (userDefinedMessage != null) && (!userDefinedMessage.isEmpty())
-                                        ? String.format("The user-defined message was: \"%s\".", cause.getMessage())
-                                        : "No user-defined message was passed.";
-                                String errorMessage = String.format(
-                                        "The action was failed intentionally using the $fail() function. %s",
-                                        userDefinedMessageSuffix);
-                                this.log.error(errorMessage);
-                            } else {
-                                this.log.error(String.format(
-                                        "There was an error while executing checkpoint action no. %s (%s) in macro "
-                                        + "%s.\nThe action definition was:\n%s",
-                                        macroDef.actions.indexOf(actionDef) + 1,
-                                        actionDef.action,
-                                        macroDef.fullName,
-                                        actionDefJson), ex);
-                            }
-
-                            Integer subtestIndex = null;
-                            if (this.currentDataSet != null) {
-                                subtestIndex = this.currentSessionStatus.currentDataRecordIndex;
-                            }
-                            reportCheckpointFailed(this.currentSessionStatus.id, this.currentSessionStatus.currentTestIndex, subtestIndex);
+                try {
+                    Logger.info(String.format("Evaluating action %s/%s in macro %s%s...",
+                            actionIndex + 1,
+                            actionPlans.size(),
+                            macroPlan.getFullName(),
+                            actionDef.description != null
+                                    ? String.format(" (%s)", actionDef.description)
+                                    : ""));
+                    this.lastActionOutput = executeActionByPlan(actionPlan);
+                } catch (Exception ex) {
+                    Gson gson = Factory.getGsonBuilder().setPrettyPrinting().create();
+                    String actionDefJson = gson.toJson(actionDef);
+
+                    if (ex instanceof IntentionalFailException) {
+                        throw (IntentionalFailException) ex;
+                    } else if (ex instanceof CheckpointException) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof IntentionalFailException) {
+                            String userDefinedMessage = ex.getMessage();
+                            String userDefinedMessageSuffix
+                                    = (userDefinedMessage != null) && (!userDefinedMessage.isEmpty())
+                                    ? String.format("The user-defined message was: \"%s\".", cause.getMessage())
+                                    : "No user-defined message was passed.";
+                            String errorMessage = String.format(
+                                    "The action was failed intentionally using the $fail() function. %s",
+                                    userDefinedMessageSuffix);
+                            this.log.error(errorMessage);
                         } else {
-                            throw new RuntimeException(String.format(
-                                    "There was an error while executing action no. %s (%s) in macro "
+                            this.log.error(String.format(
+                                    "There was an error while executing checkpoint action no. %s (%s) in macro "
                                     + "%s.\nThe action definition was:\n%s",
-                                    macroDef.actions.indexOf(actionDef) + 1,
-                                    actionDef.action,
-                                    macroDef.fullName,
+                                    actionIndex + 1,
+                                    actionPlan.getName(),
+                                    macroPlan.getFullName(),
                                     actionDefJson), ex);
                         }
+
+                        Integer subtestIndex = null;
+                        if (this.currentDataSet != null) {
+                            subtestIndex = this.currentSessionStatus.currentDataRecordIndex;
+                        }
+                        reportCheckpointFailed(this.currentSessionStatus.id, this.currentSessionStatus.currentTestIndex, subtestIndex);
+                    } else {
+                        throw new RuntimeException(String.format(
+                                "There was an error while executing action no. %s (%s) in macro "
+                                + "%s.\nThe action definition was:\n%s",
+                                actionIndex + 1,
+                                actionPlan.getName(),
+                                macroPlan.getFullName(),
+                                actionDefJson), ex);
                     }
                 }
             }
@@ -1887,9 +1930,9 @@ public class TestActor extends Observable implements ITestActor {
             this.lastActionOutput = currentMacroOutput;
 
             if (currentMacroOutput.size() > 0) {
-                Gson gson = Factory.getGsonBuilder().serializeNulls().create();
+                Gson gson = Factory.getGson(this.config, true);
                 Logger.debug(String.format("The output values from macro %s were: %s",
-                        macroDef.fullName,
+                        macroPlan.getFullName(),
                         gson.toJson(currentMacroOutput)));
             }
 
@@ -1902,9 +1945,8 @@ public class TestActor extends Observable implements ITestActor {
     private Map<String, Object> executeMacroActionByName(String macroFullName, Map<String, Object> macroArgs) throws Exception {
         try {
             String macroRelativePath = macroFullName.replaceAll("[\\.\\\\]", "/").trim();
-            MacroDefinition macroDef = this.getMacroDefinition(macroRelativePath);
-            macroDef.fullName = macroRelativePath;
-            return executeMacroActionByDef(macroFullName, macroDef, macroArgs);
+            MacroPlan macroPlan = this.getMacroPlan(macroRelativePath);
+            return executeMacroActionByPlan(macroFullName, macroPlan, macroArgs);
         } catch (Exception ex) {
             if (ex instanceof IntentionalFailException) {
                 throw (IntentionalFailException) ex;
@@ -1974,24 +2016,9 @@ public class TestActor extends Observable implements ITestActor {
         this.currentSegmentActions = new ArrayList<TestActionInfo>();
 
         try {
-            TestDefSegment segment = null;
-
-            for (TestDefActor currentActor : currentTest.actors) {
-                if (currentActor.actorType.equals(this.actorType)) {
-                    for (TestDefSegment currentSegment : currentActor.segments) {
-                        if (currentSegment.segment.equals(segmentNumber)) {
-                            segment = currentSegment;
-                            break;
-                        }
-                    }
-                }
+            List<ActionPlan> actionPlans = this.currentTestPlan.getSegment(segmentNumber);
 
-                if (segment != null) {
-                    break;
-                }
-            }
-
-            if (segment != null && segment.actions != null) {
+            if (actionPlans != null) {
                 log.info(String.format("Executing segment %s of test %s/%s...",
                         segmentNumber,
                         this.currentSessionStatus.currentTestPath,
@@ -1999,24 +2026,24 @@ public class TestActor extends Observable implements ITestActor {
 
                 // Execute the actions for the current segment, in the order
                 // they appear in the test definition file
-                for (TestDefAction actionDef : segment.actions) {
-                    this.currentActionNo = segment.actions.indexOf(actionDef) + 1;
-                    String actionName = actionDef.action != null
-                            ? actionDef.action
-                            : actionDef.macro != null
-                                    ? actionDef.macro
-                                    : actionDef.script != null ? "script action" : "?";
+                for (int actionIndex = 0; actionIndex < actionPlans.size(); actionIndex++) {
+                    ActionPlan actionPlan = actionPlans.get(actionIndex);
+                    TestDefAction actionDef = actionPlan.getDefinition();
+                    this.currentActionNo = actionIndex + 1;
+                    String actionName = actionPlan.getName() != null
+                            ? actionPlan.getName()
+                            : actionDef.script != null ? "script action" : "?";
 
                     try {
                         log.info(String.format("Evaluating action %s/%s (%s) in segment %s%s...",
-                                segment.actions.indexOf(actionDef) + 1,
-                                segment.actions.size(),
+                                actionIndex + 1,
+                                actionPlans.size(),
                                 actionName,
                                 segmentNumber,
                                 actionDef.description != null
                                         ? String.format(" (%s)", actionDef.description)
                                         : ""));
-                        this.lastActionOutput = executeActionByDef(actionDef);
+                        this.lastActionOutput = executeActionByPlan(actionPlan);
                     } catch (Throwable ex) {
                         boolean lastActionIsCheckpoint = false;
                         if (ex instanceof CheckpointException) {
@@ -2051,7 +2078,7 @@ public class TestActor extends Observable implements ITestActor {
                             String errorMessage = String.format(
                                     "There was an error while executing action no. %s (%s) in segment %s of "
                                     + "test %s/%s.\nThe action definition was:\n%s",
-                                    segment.actions.indexOf(actionDef) + 1,
+                                    actionIndex + 1,
                                     actionName,
                                     segmentNumber,
                                     this.currentSessionStatus.currentTestPath,
@@ -2085,9 +2112,13 @@ public class TestActor extends Observable implements ITestActor {
                 }
             });
 
-            Gson gson = Factory.getGson(this.config);
-            String segmentInfoJson = gson.toJson(segmentInfo);
-            segmentStatusRequest.setContent(segmentInfoJson, ContentType.APPLICATION_JSON);
+            flushDataStores();
+
+            // Make sure all the log entries for the segment reach the sync
+            // server before the segment is reported as completed
+            this.log.flush();
+
+            segmentStatusRequest.setJsonContent(segmentInfo, Factory.getGson(this.config));
             segmentStatusRequest.execute();
         } catch (Exception ex) {
             // Notify the sync service that the segment execution failed
@@ -2103,9 +2134,10 @@ public class TestActor extends Observable implements ITestActor {
                 }
             });
 
-            Gson gson = Factory.getGson(this.config);
-            String reqPayload = gson.toJson(content);
-            segmentStatusRequest.setContent(reqPayload, ContentType.APPLICATION_JSON);
+            tryFlushDataStores();
+            this.log.flush();
+
+            segmentStatusRequest.setJsonContent(content, Factory.getGson(this.config));
             segmentStatusRequest.execute();
 
             Exception newException = new Exception(String.format("Failed executing test %s/%s, segment %s",
@@ -2132,9 +2164,7 @@ public class TestActor extends Observable implements ITestActor {
         String actionArguments;
 
         if (argsMap != null && argsMap.size() > 0) {
-            Gson gson = Factory.getGsonBuilder(this.config)
-                    .serializeNulls()
-                    .create();
+            Gson gson = Factory.getGson(this.config, true);
             actionArguments = String.format("with arguments %s",
                     gson.toJson(new TrimmableMap<String, Object>(argsMap)));
         } else {
@@ -2171,8 +2201,13 @@ public class TestActor extends Observable implements ITestActor {
         return this.screenshotsDir;
     }
 
+    public IScriptEngine getScriptEngine() {
+        return this.scriptEngine;
+    }
+
     /**
-     * Queries the sync service for the specified image file.
+     * Queries the sync service for the specified image file. The image is
+     * cached in memory, so the returned image must not be modified.
      */
     public BufferedImage getImage(String fileName) {
         File imageFile = new File(fileName);
@@ -2182,57 +2217,13 @@ public class TestActor extends Observable implements ITestActor {
             // troubleshooting and quick POCs during test development. Always
             // use relative paths in production code and let the test actor
             // request the image file from the sync service.
-            try {
-                return ImageIO.read(imageFile);
-            } catch (IOException ex) {
-                throw new RuntimeException(String.format(
-                        "Failed reading image file %s",
-                        fileName), ex);
-            }
+            return this.imageCache.get(imageFile);
         } else {
             // A relative path means that the file will be requested from the
-            // sync server and cached on disk. Subsequently, the cached version
-            // will be used instead, to optimize bandwidth and performance
-            Path imagePath = Paths.get(
-                    this.outDir.getAbsolutePath(),
-                    "images",
-                    "cached",
-                    fileName);
-
-            int fiveMinutesInSec = 5 * 60;
-            int imageCacheTimeoutSec = this.config.getInteger("imageCacheTimeoutSec", fiveMinutesInSec);
-            long timeThreshold = System.currentTimeMillis() - (imageCacheTimeoutSec * 1000);
-            if (Files.exists(imagePath)
-                    && imagePath.toFile().lastModified() > timeThreshold) {
-
-                Logger.trace(String.format(
-                        "Using cached version of image file stored at \"%s\"",
-                        imagePath.normalize().toString()));
-            } else {
-                Logger.trace(String.format(
-                        "Requesting image file \"%s\" from server",
-                        fileName));
-                try {
-                    InputStream imageStream = getTestAsset("image", fileName);
-                    imagePath.toFile().getParentFile().mkdirs();
-                    OutputStream outputStream = new FileOutputStream(imagePath.toFile(), false);
-                    IOUtils.copy(imageStream, outputStream);
-                    outputStream.close();
-                    imageStream.close();
-                } catch (Exception ex) {
-                    throw new RuntimeException(String.format(
-                            "Failed reading image file %s from sync server",
-                            fileName), ex);
-                }
-            }
-
-            try {
-                return ImageIO.read(imagePath.toFile());
-            } catch (IOException ex) {
-                throw new RuntimeException(String.format(
-                        "Failed reading image file %s from sync server",
-                        fileName), ex);
-            }
+            // sync server and cached in memory. Subsequently, the cached
+            // version will be used instead, after checking once per session
+            // that the file didn't change on the server
+            return this.imageCache.get(fileName);
         }
     }
 
@@ -2245,67 +2236,16 @@ public class TestActor extends Observable implements ITestActor {
      * input stream with the content of that asset.
      */
     public InputStream getTestAsset(String assetType, String partialPath) {
-        // URL-encode the partial path
-        String urlEncodedPartialPath = null;
-        try {
-            urlEncodedPartialPath = URLEncoder.encode(partialPath, "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            throw new RuntimeException(String.format("Failed encoding partial path %s",
-                    partialPath), ex);
-        }
-
-        String url;
-        if (assetType.equals("data") && this.currentSessionStatus.environment != null) {
-            // URL-encode the partial path
-            String urlEncodedEnv = null;
-            try {
-                urlEncodedEnv = URLEncoder.encode(this.currentSessionStatus.environment, "UTF-8");
-            } catch (UnsupportedEncodingException ex) {
-                throw new RuntimeException(String.format("Failed encoding environment name %s",
-                        this.currentSessionStatus.environment), ex);
-            }
-
-            url = String.format("%s/api/test-asset?type=%s&path=%s&env=%s",
-                    this.syncServerUrl,
-                    assetType,
-                    urlEncodedPartialPath,
-                    urlEncodedEnv);
-        } else {
-            url = String.format("%s/api/test-asset?type=%s&path=%s",
-                    this.syncServerUrl,
-                    assetType,
-                    urlEncodedPartialPath);
-        }
-
-        HttpRequestOptions options = new HttpRequestOptions(url, HttpVerb.GET);
-        options.proxy = this.httpProxy;
-        HttpRequest request = new HttpRequest(options);
+        HttpRequest request = requestTestAsset(assetType, partialPath, null);
 
         try {
-            request.execute();
+            return request.getResponseAsStream();
         } catch (Exception ex) {
             throw new RuntimeException(String.format(
-                    "An error occured while making the HTTP request to get %s asset %s from the sync service",
+                    "An error occured while retrieving the HTTP response input stream for %s asset %s from the sync service",
                     assetType,
                     partialPath), ex);
         }
-
-        if (request.getResponseStatusCode() == 200) {
-            try {
-                return request.getResponseAsStream();
-            } catch (Exception ex) {
-                throw new RuntimeException(String.format(
-                        "An error occured while retrieving the HTTP response input stream for %s asset %s from the sync service",
-                        assetType,
-                        partialPath), ex);
-            }
-        } else {
-            throw new RuntimeException(String.format("Failed to get %s asset %s from the sync service. The HTTP status code was: %s. The HTTP body was: %s",
-                    assetType,
-                    partialPath,
-                    request.getResponseStatusCode(),
-                    request.getResponseAsString()));
-        }
     }
 
     public String getType() {
@@ -2313,17 +2253,27 @@ public class TestActor extends Observable implements ITestActor {
     }
 
     /**
-     * Get a macro definition from the sync service.
+     * Get a macro definition from the sync service, in its compiled form.
      */
-    private MacroDefinition getMacroDefinition(String partialPath) {
-        Yaml yaml = new Yaml();
-        MacroDefinition def = yaml.loadAs(getTestAsset("macro", partialPath), MacroDefinition.class);
-        return def;
+    private MacroPlan getMacroPlan(String partialPath) {
+        return this.testAssetCache.get("macro", partialPath, (assetStream) -> {
+            Yaml yaml = new Yaml();
+            return MacroPlan.compile(partialPath, yaml.loadAs(assetStream, MacroDefinition.class));
+        });
     }
 
-    private TestDefinition getTestDefinition(String partialPath) {
+    /**
+     * Get a test definition from the sync service, in its compiled form.
+     */
+    private TestPlan getTestPlan(String partialPath) {
+        return this.testAssetCache.get("test", partialPath, (assetStream) -> {
+            return TestPlan.compile(parseTestDefinition(assetStream), this.actorType);
+        });
+    }
+
+    private TestDefinition parseTestDefinition(InputStream assetStream) {
         Yaml yaml = new Yaml();
-        TestDefinition def = yaml.loadAs(getTestAsset("test", partialPath), TestDefinition.class);
+        TestDefinition def = yaml.loadAs(assetStream, TestDefinition.class);
 
         // Account for usage of obsolete "index" and "step" properties in the segment
         // definition and transfer their value(s) to the "segment" property.
@@ -2353,14 +2303,34 @@ public class TestActor extends Observable implements ITestActor {
         return def;
     }
 
-    private SessionStatusResponse getTestSessionStatus() {
+    /**
+     * Reads the execution status of the current test session from the sync
+     * server.
+     *
+     * @param lastStateKey The state key of the last session status that was
+     * processed by the actor. When specified and long-polling is enabled, the
+     * sync server holds the request until the session state changes or until
+     * the long-polling timeout expires.
+     */
+    private SessionStatusResponse getTestSessionStatus(String lastStateKey) {
+        boolean isLongPoll = this.longPolling && lastStateKey != null;
+
         try {
-            HttpRequestOptions options = new HttpRequestOptions(
-                    String.format("%s/api/session/%s/status",
-                            this.syncServerUrl,
-                            this.currentSessionStatus.id),
-                    HttpVerb.GET);
+            String url = String.format("%s/api/session/%s/status",
+                    this.syncServerUrl,
+                    this.currentSessionStatus.id);
+            if (isLongPoll) {
+                url = String.format("%s?stateKey=%s&waitMs=%s",
+                        url,
+                        URLEncoder.encode(lastStateKey, "UTF-8"),
+                        this.longPollTimeoutSec * 1000);
+            }
+
+            HttpRequestOptions options = new HttpRequestOptions(url, HttpVerb.GET);
             options.proxy = this.httpProxy;
+            if (isLongPoll) {
+                options.readTimeoutSec = Math.max(this.longPollTimeoutSec + 30, HttpClientPool.getReadTimeoutSec());
+            }
             HttpRequest request = new HttpRequest(options);
 
             request.execute();
@@ -2373,6 +2343,10 @@ public class TestActor extends Observable implements ITestActor {
                     JsonObject responseObj = responseElement.getAsJsonObject();
                     SessionStatusResponse sessionStatus = new SessionStatusResponse();
                     sessionStatus.status = responseObj.get("status").getAsString();
+                    if (responseObj.has("stateKey")) {
+                        sessionStatus.stateKey = responseObj.get("stateKey").getAsString();
+                    }
+
                     if (sessionStatus.status.equals("started")) {
                         sessionStatus.currentTestIndex = responseObj.get("currentTestIndex").getAsInt();
                         if (responseObj.has("currentStepIndex")) {
@@ -2407,6 +2381,16 @@ public class TestActor extends Observable implements ITestActor {
                 abandonSession();
             }
         } catch (Exception ex) {
+            if (isLongPoll) {
+                // Some proxies and load balancers don't play well with requests
+                // that take a long time to complete, so we revert to polling
+                Logger.warning(String.format(
+                        "Long-polling the status of session %s failed. Switching to regular polling.",
+                        this.currentSessionStatus.id), ex);
+                this.longPolling = false;
+                return getTestSessionStatus(null);
+            }
+
             throw new RuntimeException(String.format("Failed to get or parse status data for session %s",
                     this.currentSessionStatus.id), ex);
         }
@@ -2434,18 +2418,22 @@ public class TestActor extends Observable implements ITestActor {
             String script = null;
 
             try {
-                InputStream scriptFileStream;
-                scriptFileStream = getTestAsset("script", normalizedPartialPath);
-                StringWriter writer = new StringWriter();
-                IOUtils.copy(scriptFileStream, writer, Charset.forName("UTF-8"));
-                script = writer.toString();
+                script = this.testAssetCache.get("script", normalizedPartialPath, (scriptFileStream) -> {
+                    try {
+                        StringWriter writer = new StringWriter();
+                        IOUtils.copy(scriptFileStream, writer, Charset.forName("UTF-8"));
+                        return writer.toString();
+                    } catch (IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                });
             } catch (Exception ex) {
                 throw new RuntimeException(String.format("Failed to get script file \"%s\".",
                         normalizedPartialPath), ex);
             }
 
             try {
-                this.scriptEngine.eval(script);
+                this.evalScriptCode(script);
             } catch (Exception ex) {
                 throw new RuntimeException(
                         String.format("Failed to run script file %s",
@@ -2461,6 +2449,27 @@ public class TestActor extends Observable implements ITestActor {
         this.scriptEngine.put(varName, varValue);
     }
 
+    /**
+     * Determines whether a string must be evaluated as JavaScript code, which
+     * is the case when it starts with a dollar-prefixed identifier (like
+     * "$script" or "$data"), optionally preceded by whitespace. This is called
+     * for every string argument, so we are scanning the characters instead of
+     * matching a regular expression.
+     */
+    static boolean isJsExpression(String text) {
+        int length = text.length();
+        int pos = skipWhitespace(text, 0);
+
+        if (pos + 2 >= length || text.charAt(pos) != '$') {
+            return false;
+        }
+
+        char firstChar = text.charAt(pos + 1);
+        boolean firstCharIsLetter = (firstChar >= 'a' && firstChar <= 'z') || (firstChar >= 'A' && firstChar <= 'Z');
+
+        return firstCharIsLetter && isWordChar(text.charAt(pos + 2));
+    }
+
     private boolean isLastSegment(int currentSegment) {
         Optional<TestDefActor> testDefActorOpt = currentTest.actors.stream()
                 .filter(a -> a.actorType.equals(this.actorType)).findFirst();
@@ -2477,6 +2486,52 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
+    /**
+     * Determines whether the specified JavaScript code is an object literal
+     * (starts with "{" and ends with "}", ignoring whitespace).
+     */
+    static boolean isObjectLiteral(String code) {
+        int start = skipWhitespace(code, 0);
+        int end = code.length() - 1;
+        while (end > start && isWhitespace(code.charAt(end))) {
+            --end;
+        }
+
+        return end > start && code.charAt(start) == '{' && code.charAt(end) == '}';
+    }
+
+    private static boolean isWhitespace(char c) {
+        // Same as the \s character class in regular expressions
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Downloads a test asset for the test asset cache.
+     */
+    private TestAssetCache.Asset loadTestAsset(String assetType, String partialPath, String etag) {
+        HttpRequest request = requestTestAsset(assetType, partialPath, etag);
+        if (request.getResponseStatusCode() == 304) {
+            return null;
+        }
+
+        TestAssetCache.Asset asset = new TestAssetCache.Asset();
+        try {
+            asset.content = IOUtils.toByteArray(request.getResponseAsStream());
+        } catch (Exception ex) {
+            throw new RuntimeException(String.format(
+                    "An error occured while reading the content of %s asset %s from the sync service",
+                    assetType,
+                    partialPath), ex);
+        }
+        asset.etag = request.getFirstHeader("ETag");
+
+        return asset;
+    }
+
     /**
      * Logs the names, versions and commit SHAs of relevant JAR files.
      */
@@ -2579,51 +2634,97 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
-    private void publishSessionData(Map<String, Object> sharedData) throws IOException {
-        HttpRequestOptions options = new HttpRequestOptions(
-                String.format("%s/api/session/%s/data",
-                        this.syncServerUrl,
-                        this.currentSessionStatus.id),
-                HttpVerb.PUT);
-        options.proxy = this.httpProxy;
-        HttpRequest request = new HttpRequest(options);
+    private void publishSessionData(Map<String, Object> sessionData) throws IOException {
+        getSessionDataStore().putAll(sessionData);
+    }
 
-        Gson gson = Factory.getGsonBuilder().create();
-        String jsonData = gson.toJson(sharedData);
-        request.setContent(jsonData, ContentType.APPLICATION_JSON);
+    private void publishSharedData(Map<String, Object> sharedData) throws IOException {
+        getSharedDataStore().putAll(sharedData);
+    }
 
-        Logger.debug(String.format("Publishing session data: %s", jsonData));
-        request.execute();
+    /**
+     * Sends the pending writes to the session data and to the shared data to
+     * the sync server.
+     */
+    private void flushDataStores() throws IOException {
+        if (this.sessionDataStore != null) {
+            this.sessionDataStore.flush();
+        }
+
+        if (this.sharedDataStore != null) {
+            this.sharedDataStore.flush();
+        }
     }
 
-    private void publishSessionData(String name, Object value) throws IOException {
-        Map<String, Object> sharedData = new HashMap<String, Object>();
-        sharedData.put(name, value);
-        publishSessionData(sharedData);
+    /**
+     * Same as flushDataStores, but only logs the errors. Used when the
+     * operation that wrote the data has already failed.
+     */
+    private void tryFlushDataStores() {
+        try {
+            flushDataStores();
+        } catch (Exception ex) {
+            Logger.warning("Failed to publish the session data or the shared data to the sync service", ex);
+        }
     }
 
-    private void publishSharedData(Map<String, Object> sharedData) throws IOException {
-        HttpRequestOptions options = new HttpRequestOptions(
-                String.format("%s/api/session/%s/test/%s/data",
-                        this.syncServerUrl,
-                        this.currentSessionStatus.id,
-                        this.currentSessionStatus.currentTestIndex),
-                HttpVerb.PUT);
-        options.proxy = this.httpProxy;
-        HttpRequest request = new HttpRequest(options);
+    /**
+     * Invalidates the local copies of the session data and of the current
+     * test's shared data, unless the sync server reports that they didn't
+     * change.
+     */
+    private void invalidateDataStores(SessionStatusResponse sessionStatus) {
+        getSessionDataStore().invalidate(sessionStatus.sessionDataVersion);
+        getSharedDataStore().invalidate(sessionStatus.sharedDataVersion);
+    }
+
+    private SyncDataStore getSessionDataStore() {
+        if (this.sessionDataStore == null) {
+            this.sessionDataStore = createDataStore("session", String.format("%s/api/session/%s/data",
+                    this.syncServerUrl,
+                    this.currentSessionStatus.id),
+                    new SyncDataStore.Stats());
+        }
 
-        Gson gson = Factory.getGsonBuilder().create();
-        String jsonData = gson.toJson(sharedData);
-        request.setContent(jsonData, ContentType.APPLICATION_JSON);
+        return this.sessionDataStore;
+    }
+
+    private SyncDataStore getSharedDataStore() {
+        String url = String.format("%s/api/session/%s/test/%s/data",
+                this.syncServerUrl,
+                this.currentSessionStatus.id,
+                this.currentSessionStatus.currentTestIndex);
+
+        if (this.sharedDataStore == null || !url.equals(this.sharedDataStoreUrl)) {
+            if (this.sharedDataStore != null) {
+                tryFlushDataStores();
+            }
 
-        Logger.debug(String.format("Publishing shared data: %s", jsonData));
-        request.execute();
+            this.sharedDataStore = createDataStore("shared", url, this.sharedDataStoreStats);
+            this.sharedDataStoreUrl = url;
+        }
+
+        return this.sharedDataStore;
     }
 
-    private void publishSharedData(String name, Object value) throws IOException {
-        Map<String, Object> sharedData = new HashMap<String, Object>();
-        sharedData.put(name, value);
-        publishSharedData(sharedData);
+    private SyncDataStore createDataStore(String name, String url, SyncDataStore.Stats stats) {
+        SyncDataStore.Transport transport = new SyncDataStore.HttpTransport(url, this.httpProxy);
+
+        return new SyncDataStore(name, transport, this.config.getBoolean("sync.cacheData", true), stats);
+    }
+
+    /**
+     * Removes the "$script" keyword and the whitespace around it from the
+     * beginning of the specified string, if present.
+     */
+    static String removeScriptPrefix(String text) {
+        int pos = skipWhitespace(text, 0);
+
+        if (text.startsWith("$script", pos)) {
+            return text.substring(skipWhitespace(text, pos + "$script".length()));
+        } else {
+            return text;
+        }
     }
 
     /**
@@ -2656,6 +2757,99 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
+    /**
+     * Makes the HTTP request to get the specified test asset from the sync
+     * service and returns the executed request. When an ETag is specified, the
+     * request is conditional and the sync service might respond with status
+     * code 304 (not modified).
+     */
+    private HttpRequest requestTestAsset(String assetType, String partialPath, String etag) {
+        // URL-encode the partial path
+        String urlEncodedPartialPath = null;
+        try {
+            urlEncodedPartialPath = URLEncoder.encode(partialPath, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(String.format("Failed encoding partial path %s",
+                    partialPath), ex);
+        }
+
+        String url;
+        if (assetType.equals("data") && this.currentSessionStatus.environment != null) {
+            // URL-encode the partial path
+            String urlEncodedEnv = null;
+            try {
+                urlEncodedEnv = URLEncoder.encode(this.currentSessionStatus.environment, "UTF-8");
+            } catch (UnsupportedEncodingException ex) {
+                throw new RuntimeException(String.format("Failed encoding environment name %s",
+                        this.currentSessionStatus.environment), ex);
+            }
+
+            url = String.format("%s/api/test-asset?type=%s&path=%s&env=%s",
+                    this.syncServerUrl,
+                    assetType,
+                    urlEncodedPartialPath,
+                    urlEncodedEnv);
+        } else {
+            url = String.format("%s/api/test-asset?type=%s&path=%s",
+                    this.syncServerUrl,
+                    assetType,
+                    urlEncodedPartialPath);
+        }
+
+        HttpRequestOptions options = new HttpRequestOptions(url, HttpVerb.GET);
+        options.proxy = this.httpProxy;
+        HttpRequest request = new HttpRequest(options);
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+
+        try {
+            request.execute();
+        } catch (Exception ex) {
+            throw new RuntimeException(String.format(
+                    "An error occured while making the HTTP request to get %s asset %s from the sync service",
+                    assetType,
+                    partialPath), ex);
+        }
+
+        int statusCode = request.getResponseStatusCode();
+        if (statusCode == 200 || (etag != null && statusCode == 304)) {
+            return request;
+        } else {
+            throw new RuntimeException(String.format("Failed to get %s asset %s from the sync service. The HTTP status code was: %s. The HTTP body was: %s",
+                    assetType,
+                    partialPath,
+                    statusCode,
+                    request.getResponseAsString()));
+        }
+    }
+
+    /**
+     * Prepares the script engine for a new test. The script engine is created
+     * only once, unless the "reuseScriptEngine" config parameter is false.
+     * Before every test, the global scope of the engine is replaced with a
+     * fresh one that only contains the JavaScript APIs of the actor, so no
+     * state can leak from one test to the next. Since the engine is reused,
+     * the scripts that every test evaluates (included script files, action
+     * arguments in macros, etc.) are only compiled once.
+     */
+    private void resetScriptEngine() {
+        if (this.scriptEngine != null) {
+            log.trace(String.format("Script engine stats: %s", this.scriptEngine));
+        }
+
+        if (this.scriptEngine == null || !this.reuseScriptEngine) {
+            if (this.scriptEngine != null) {
+                this.scriptEngine.close();
+            }
+
+            this.scriptEngine = createScriptEngine();
+        }
+
+        this.scriptEngine.reset();
+        this.scriptEngine.put("$test", this.currentTest);
+    }
+
     /**
      * Waits for the actorType to be acquired by a test session and does the
      * work for that one session, then returns.
@@ -2691,13 +2885,18 @@ public class TestActor extends Observable implements ITestActor {
             // Wait until this actorType is acquired by a test session. The
             // currentTestSession field is populated in the announce thread which
             // is started in the constructor.
+            long waitStartTime = System.currentTimeMillis();
             while (this.currentSessionStatus == null) {
                 try {
-                    Thread.sleep(1000);
+                    synchronized (this.sessionAcquiredSignal) {
+                        if (this.currentSessionStatus == null) {
+                            this.sessionAcquiredSignal.wait(1000);
+                        }
+                    }
                 } catch (InterruptedException e) {
                 }
 
-                waitTime = waitTime.plus(Duration.ofMillis(1000));
+                waitTime = Duration.ofMillis(System.currentTimeMillis() - waitStartTime);
                 if (maxWaitTime != null && waitTime.compareTo(maxWaitTime) > 0) {
                     log.info(String.format("The maximum wait time of %s seconds was exceeded while waiting for a test session to start",
                             maxWaitTime.getSeconds()));
@@ -2705,9 +2904,14 @@ public class TestActor extends Observable implements ITestActor {
                 }
             }
 
-            // Reset data file and macro caches
+            // Reset data file and test asset caches
             this.dataFileCache = new HashMap<>();
-            this.macroCache = new HashMap<>();
+            this.sessionDataStore = null;
+            this.sharedDataStore = null;
+            this.sharedDataStoreStats = new SyncDataStore.Stats();
+            this.testAssetCache.startSession(this.currentSessionStatus.id);
+            this.imageCache.startSession(this.currentSessionStatus.id);
+            this.screenshotPipeline.startSession();
 
             HashMap<String, String> actorLogContext = new HashMap<String, String>();
             actorLogContext.put("actorId", actorId);
@@ -2717,9 +2921,20 @@ public class TestActor extends Observable implements ITestActor {
                     this.currentSessionStatus.id,
                     actorLogContext,
                     this.httpProxy);
+            if (this.log instanceof HttpLogger) {
+                // Stop the background thread of the previous session's logger
+                ((HttpLogger) this.log).close();
+            }
             this.log = logger;
             logger.setMaskSecrets(this.config.getBoolean("maskSecrets", true));
             logger.setLevel(LogLevel.valueOf(this.config.getString("logLevel", "DEBUG")));
+            if (this.config.getBoolean("httpLogger.async", false)) {
+                logger.enableBatching(
+                        this.config.getInteger("httpLogger.batchSize", 200),
+                        this.config.getInteger("httpLogger.flushIntervalMs", 500),
+                        this.config.getInteger("httpLogger.queueCapacity", 10000),
+                        this.config.getString("httpLogger.queueFullPolicy", "block").equalsIgnoreCase("drop"));
+            }
 
             this.log.info(String.format("Actor %s of type %s was acquired by test session %s",
                     this.actorId,
@@ -2731,11 +2946,12 @@ public class TestActor extends Observable implements ITestActor {
             logExtensions();
 
             // Start querying the session status and executing the tests/segments
+            String lastStateKey = null;
             while (this.currentSessionStatus != null) {
                 SessionStatusResponse sessionStatus = null;
 
                 try {
-                    sessionStatus = this.getTestSessionStatus();
+                    sessionStatus = this.getTestSessionStatus(lastStateKey);
                     boolean mustSetEnvironment
                             = this.currentSessionStatus.environment == null
                             && sessionStatus.environment != null
@@ -2792,6 +3008,7 @@ public class TestActor extends Observable implements ITestActor {
                         // load the test definition
                         if (this.currentSessionStatus.currentTestIndex < sessionStatus.currentTestIndex) {
                             this.currentTest = null;
+                            this.currentTestPlan = null;
                             this.currentSegmentIsCompleted = false;
                             this.currentSessionStatus.currentTestIndex = sessionStatus.currentTestIndex;
                             this.currentSessionStatus.currentTestPath = sessionStatus.currentTestPath;
@@ -2812,13 +3029,15 @@ public class TestActor extends Observable implements ITestActor {
 
                             try {
                                 // Initialize the script engine for the current test
-                                this.scriptEngine = createScriptEngine();
+                                resetScriptEngine();
                                 log.clearSecrets();
+                                invalidateDataStores(sessionStatus);
 
                                 // Identify and parse the test definition file
-                                this.currentTest = getTestDefinition(String.format("%s/%s",
+                                this.currentTestPlan = getTestPlan(String.format("%s/%s",
                                         this.currentSessionStatus.currentTestPath,
                                         this.currentSessionStatus.currentTestName));
+                                this.currentTest = this.currentTestPlan.getDefinition();
 
                                 this.includedScripts = new ArrayList<String>();
                                 evalIncludes(this.currentTest.includes);
@@ -2851,6 +3070,7 @@ public class TestActor extends Observable implements ITestActor {
                                 this.localData = new HashMap<>();
 
                                 populateDataRecordJsApi();
+                                flushDataStores();
 
                                 // Start step 0
                                 stepStatusRequest.setContent("{\"status\":\"started\",\"result\":\"pending\"}", ContentType.APPLICATION_JSON);
@@ -2878,6 +3098,7 @@ public class TestActor extends Observable implements ITestActor {
                                 StringWriter sw = new StringWriter();
                                 ex.printStackTrace(new PrintWriter(sw));
                                 log.error((sw.toString()));
+                                tryFlushDataStores();
 
                                 // Notify the sync service that step 0 of the test failed
                                 stepStatusRequest.setContent("{\"status\":\"completed\",\"result\":\"failed\"}", ContentType.APPLICATION_JSON);
@@ -2896,6 +3117,7 @@ public class TestActor extends Observable implements ITestActor {
                                 currentSegmentIsCompleted = true;
 
                                 try {
+                                    invalidateDataStores(sessionStatus);
                                     executeTestSegment(sessionStatus.currentSegmentIndex);
                                 } catch (Exception ex) {
                                     Logger.error(ex);
@@ -2907,9 +3129,13 @@ public class TestActor extends Observable implements ITestActor {
                     }
                 }
 
-                // Wait for a little bit, to avoid overwhelming the sync server while actors
-                // are waiting for other actors to finish the work for a specific segment
-                if (sessionStatus.currentSegmentIndex > 0) {
+                if (this.longPolling && sessionStatus.stateKey != null) {
+                    // The next status request will be held by the sync server
+                    // until the session moves on, so there's no need to wait here
+                    lastStateKey = sessionStatus.stateKey;
+                } else if (sessionStatus.currentSegmentIndex > 0) {
+                    // Wait for a little bit, to avoid overwhelming the sync server while actors
+                    // are waiting for other actors to finish the work for a specific segment
                     try {
                         Thread.sleep(500);
                     } catch (InterruptedException ex) {
@@ -2918,6 +3144,17 @@ public class TestActor extends Observable implements ITestActor {
             }
 
             log.info("Test session has completed");
+            log.debug(String.format("HTTP connection pool stats: %s", HttpClientPool.getStats()));
+            log.debug(String.format("JDBC connection pool stats: %s", JdbcConnectionPool.getStats()));
+            log.debug(String.format("Test asset cache stats: %s", this.testAssetCache));
+            if (this.sessionDataStore != null) {
+                log.debug(String.format("Session data store stats: %s", this.sessionDataStore));
+            }
+            if (this.sharedDataStore != null) {
+                log.debug(String.format("Shared data store stats: %s", this.sharedDataStoreStats));
+            }
+            log.debug(String.format("Image cache stats: %s", this.imageCache));
+            log.debug(String.format("Screenshot stats: %s", this.screenshotPipeline.getStats()));
 
             this.setChanged();
             log.trace("Firing TEST_COMPLETED event...");
@@ -2925,6 +3162,7 @@ public class TestActor extends Observable implements ITestActor {
             this.setChanged();
             log.trace("Firing SESSION_COMPLETED event...");
             this.notifyObservers(TestActorEvents.SESSION_COMPLETED);
+            log.flush();
         } catch (Exception ex) {
             Logger.error("The \"runOneSession\" method failed", ex);
         }
@@ -2935,15 +3173,34 @@ public class TestActor extends Observable implements ITestActor {
         runOneSession(null);
     }
 
+    private static int skipWhitespace(String text, int startPos) {
+        int pos = startPos;
+        while (pos < text.length() && isWhitespace(text.charAt(pos))) {
+            ++pos;
+        }
+
+        return pos;
+    }
+
     private void startAnnounceThread() {
         stopAnnounceThread();
 
         announceThread = new Thread() {
             public void run() {
                 while (!actorIsStopping) {
+                    long startTime = System.currentTimeMillis();
+                    boolean isIdle = currentSessionStatus == null;
                     announce();
+
+                    // When long-polling, the announce request is held by the sync
+                    // server until the actor is acquired, so we can announce again
+                    // right away
+                    long intervalMs = longPolling && isIdle ? ANNOUNCE_WAIT_MS : ANNOUNCE_INTERVAL_MS;
+                    long sleepMs = intervalMs - (System.currentTimeMillis() - startTime);
                     try {
-                        Thread.sleep(5000);
+                        if (sleepMs > 0) {
+                            Thread.sleep(sleepMs);
+                        }
                     } catch (InterruptedException ex) {
                         break;
                     }
@@ -2961,32 +3218,6 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
-    private void startScreenShotUploadThread() {
-        stopScreenShotUploadThread();
-
-        screenshotUploadThread = new Thread() {
-            public void run() {
-                while (true) {
-                    uploadScreenshots();
-
-                    try {
-                        Thread.sleep(5000);
-                    } catch (InterruptedException ex) {
-                        break;
-                    }
-                }
-            }
-        };
-
-        screenshotUploadThread.start();
-    }
-
-    private void stopScreenShotUploadThread() {
-        if (screenshotUploadThread != null) {
-            screenshotUploadThread.interrupt();
-        }
-    }
-
     /**
      * Takes a screenshot by delegating to the "takeScreenshot" method of the
      * provided test action and returns the file object for the image file that
@@ -3001,35 +3232,15 @@ public class TestActor extends Observable implements ITestActor {
             InputStream screenshotStream = action.takeScreenshot();
 
             if (screenshotStream != null) {
-                boolean foundFilename = false;
-                int index = 1;
-                File screenshotFile = null;
-
-                while (!foundFilename) {
-                    String suffix = index == 1 ? "" : String.format("_%02d", index);
-                    screenshotFile = new File(
-                            this.getScreenshotsDir().toString(),
-                            String.format("SID%s_%s_T%02d_SG%02d_ST%02d_%s%s.png",
-                                    this.currentSessionStatus.id,
-                                    this.actorType,
-                                    this.currentSessionStatus.currentTestIndex + 1,
-                                    segmentNo != null ? segmentNo : 0,
-                                    actionNo != null ? actionNo : 0,
-                                    screenShotType,
-                                    suffix));
-
-                    if (!screenshotFile.exists()) {
-                        foundFilename = true;
-                    }
-
-                    index++;
-                }
-
-                FileOutputStream outStream = new FileOutputStream(screenshotFile);
-                IOUtils.copy(screenshotStream, outStream);
-                screenshotStream.close();
-                outStream.close();
-                this.screenshots.add(screenshotFile.getName());
+                File screenshotFile = this.screenshotPipeline.submit(
+                        String.format("SID%s_%s_T%02d_SG%02d_ST%02d_%s",
+                                this.currentSessionStatus.id,
+                                this.actorType,
+                                this.currentSessionStatus.currentTestIndex + 1,
+                                segmentNo != null ? segmentNo : 0,
+                                actionNo != null ? actionNo : 0,
+                                screenShotType),
+                        screenshotStream);
                 Logger.info(String.format("Captured screenshot at %s", screenshotFile.getAbsolutePath()));
                 return screenshotFile;
             } else {
@@ -3064,10 +3275,10 @@ public class TestActor extends Observable implements ITestActor {
             byte[] originalBytes = (byte[]) value;
             byte[] encodedBytes = Base64.getMimeEncoder().encode(originalBytes);
             return encodedBytes;
-        } else if (value instanceof ScriptObjectMirror) {
-            ScriptObjectMirror scriptObj = (ScriptObjectMirror) value;
-            if (scriptObj.isArray()) {
-                byte[] originalBytes = TypeUtil.jsNumberArrayToJavaByteArray(scriptObj);
+        } else if (this.scriptEngine.isNativeObject(value) || value instanceof List) {
+            Object javaValue = this.scriptEngine.toJavaType(value);
+            if (javaValue instanceof List) {
+                byte[] originalBytes = TypeUtil.numberListToByteArray((List<Object>) javaValue);
                 byte[] encodedBytes = Base64.getMimeEncoder().encode(originalBytes);
                 return encodedBytes;
             } else {
@@ -3082,6 +3293,19 @@ public class TestActor extends Observable implements ITestActor {
         }
     }
 
+    /**
+     * Converts JS native objects and arrays to their equivalent standard Java
+     * types (Map and List). Values that are already Java types are returned
+     * unchanged.
+     */
+    public Object toJavaType(Object value) {
+        if (this.scriptEngine == null) {
+            return value;
+        }
+
+        return this.convertToJavaType(value);
+    }
+
     /**
      * Converts the provided argument to a native JavaScript array. Useful when
      * returning Java collection types from JS APIs, so the JS code can work
@@ -3118,10 +3342,9 @@ public class TestActor extends Observable implements ITestActor {
             } else if (arrayLike instanceof List) {
                 this.scriptEngine.put("$transientVarName", ((List) arrayLike).toArray());
                 return this.scriptEngine.eval("Array.prototype.slice.call($transientVarName)");
-            } else if (arrayLike instanceof ScriptObjectMirror) {
-                ScriptObjectMirror scriptObject = (ScriptObjectMirror) arrayLike;
-                if (scriptObject.isArray()) {
-                    return scriptObject;
+            } else if (this.scriptEngine.isNativeObject(arrayLike)) {
+                if (this.scriptEngine.isNativeArray(arrayLike)) {
+                    return arrayLike;
                 } else {
                     this.scriptEngine.put("$transientVarName", arrayLike);
                     return this.scriptEngine.eval("[$transientVarName]");
@@ -3154,17 +3377,18 @@ public class TestActor extends Observable implements ITestActor {
                 // Nothing to do here. We'll be returning the exact
                 // same String instance that was passed-in.
             } else if (inputValue instanceof Map) {
-                result = this.evalScript("(" + Factory.getGson().toJson(inputValue) + ")");
+                result = this.scriptEngine.toNativeType(inputValue);
             } else if (inputValue.getClass().isArray()) {
                 this.scriptEngine.put("$transientVarName", inputValue);
                 result = this.scriptEngine.eval("Array.prototype.slice.call($transientVarName)");
             } else if (inputValue instanceof List) {
                 this.scriptEngine.put("$transientVarName", ((List) inputValue).toArray());
                 result = this.scriptEngine.eval("Array.prototype.slice.call($transientVarName)");
-            } else if (inputValue instanceof ScriptObjectMirror) {
-                ScriptObjectMirror scriptObject = (ScriptObjectMirror) inputValue;
-                if (scriptObject.isArray()) {
-                    result = scriptObject;
+            } else if (inputValue instanceof IScriptObject) {
+                result = this.scriptEngine.toNativeType(inputValue);
+            } else if (this.scriptEngine.isNativeObject(inputValue)) {
+                if (this.scriptEngine.isNativeArray(inputValue)) {
+                    result = inputValue;
                 } else {
                     this.scriptEngine.put("$__transientVarName", inputValue);
                     result = this.scriptEngine.eval("[$__transientVarName]");
@@ -3184,66 +3408,6 @@ public class TestActor extends Observable implements ITestActor {
         return result;
     }
 
-    private void uploadScreenshots() {
-        int sleepInterval = 5000;
-
-        while (screenshots.size() > 0) {
-            String screenshot = screenshots.get(0);
-
-            try {
-                HttpClient httpClient = HttpClients.custom()
-                        .setDefaultRequestConfig(RequestConfig.custom()
-                                .setCookieSpec(CookieSpecs.STANDARD)
-                                .build())
-                        .build();
-
-                File file = new File(this.screenshotsDir, screenshot);
-
-                HttpEntity screenshotData = MultipartEntityBuilder.create()
-                        .setMode(HttpMultipartMode.BROWSER_COMPATIBLE)
-                        .addBinaryBody("screenshot", file, org.apache.http.entity.ContentType.DEFAULT_BINARY, file.getName())
-                        .build();
-
-                String url = String.format("%s/api/screenshot",
-                        this.syncServerUrl);
-
-                HttpUriRequest request = RequestBuilder
-                        .post(url)
-                        .setEntity(screenshotData)
-                        .build();
-
-                ResponseHandler<Integer> responseHandler = response -> {
-                    int status = response.getStatusLine().getStatusCode();
-                    if (status != 200) {
-                        HttpEntity entity = response.getEntity();
-                        String textContent = entity != null ? EntityUtils.toString(entity) : null;
-                        throw new RuntimeException(String.format(
-                                "Received unexpected HTTP response status code %s "
-                                + "while uploading screenshot file %s",
-                                status,
-                                screenshot));
-                    }
-                    return status;
-                };
-                httpClient.execute(request, responseHandler);
-                screenshots.remove(0);
-                sleepInterval = 5000;
-            } catch (Exception ex) {
-                this.log.error(String.format("Failed uploading screenshot %s",
-                        screenshot), ex);
-
-                if (sleepInterval < 30000) {
-                    sleepInterval = sleepInterval * 2;
-                }
-            }
-
-            try {
-                Thread.sleep(sleepInterval);
-            } catch (InterruptedException ex) {
-            }
-        }
-    }
-
     /**
      * Wraps an exception into a CheckpointException. If the provided exception
      * is already a CheckpointException, it's returned unchanged.
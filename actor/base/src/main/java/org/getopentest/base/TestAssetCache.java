@@ -0,0 +1,172 @@
+package org.getopentest.base;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import org.getopentest.util.ObjectUtil;
+
+/**
+ * Caches test assets (macro definitions, test definitions, script files, etc.)
+ * downloaded from the sync server, in their parsed form. Within a test session,
+ * cached assets are used as they are. When the cache is configured to survive
+ * across test sessions, cached assets are revalidated once per session, using
+ * the asset's ETag or, if the server doesn't provide one, by comparing the
+ * hash of the downloaded content with the hash of the cached content.
+ *
+ * Test actors might modify the objects they work with in place, so the cache
+ * returns deep copies of the cached objects, except for the ones that are
+ * immutable (like the compiled test and macro plans).
+ */
+public class TestAssetCache {
+
+    private final Map<String, CachedAsset> assets;
+
+    private final boolean crossSession;
+
+    private long hits;
+
+    private final AssetLoader loader;
+
+    private long misses;
+
+    private long revalidations;
+
+    private String sessionId;
+
+    /**
+     * @param loader Downloads the test assets from the sync server
+     * @param crossSession Whether the cached assets are kept from one test
+     * session to the next
+     */
+    public TestAssetCache(AssetLoader loader, boolean crossSession) {
+        this.assets = new HashMap<>();
+        this.crossSession = crossSession;
+        this.loader = loader;
+    }
+
+    /**
+     * Returns a copy of the specified test asset, as produced by the parser
+     * function. The parser is only called when the asset is not in the cache
+     * or when the asset changed on the sync server.
+     */
+    public synchronized <T> T get(String assetType, String partialPath, Function<InputStream, T> parser) {
+        String key = String.format("%s:%s", assetType, partialPath);
+        CachedAsset cachedAsset = this.assets.get(key);
+
+        if (cachedAsset != null && Objects.equals(cachedAsset.sessionId, this.sessionId)) {
+            ++this.hits;
+            return (T) copy(cachedAsset.value);
+        }
+
+        Asset asset = this.loader.load(assetType, partialPath, cachedAsset != null ? cachedAsset.etag : null);
+
+        if (cachedAsset != null) {
+            boolean notModified = asset == null;
+            if (notModified || getHash(asset.content).equals(cachedAsset.contentHash)) {
+                ++this.revalidations;
+                if (!notModified && asset.etag != null) {
+                    cachedAsset.etag = asset.etag;
+                }
+                cachedAsset.sessionId = this.sessionId;
+                return (T) copy(cachedAsset.value);
+            }
+        } else if (asset == null) {
+            throw new RuntimeException(String.format(
+                    "The sync server returned no content for %s asset %s",
+                    assetType,
+                    partialPath));
+        }
+
+        ++this.misses;
+        T value = parser.apply(new ByteArrayInputStream(asset.content));
+
+        CachedAsset newCachedAsset = new CachedAsset();
+        newCachedAsset.contentHash = getHash(asset.content);
+        newCachedAsset.etag = asset.etag;
+        newCachedAsset.sessionId = this.sessionId;
+        newCachedAsset.value = value;
+        this.assets.put(key, newCachedAsset);
+
+        return copy(value);
+    }
+
+    private static <T> T copy(T value) {
+        return value instanceof ImmutableAsset ? value : ObjectUtil.deepCopy(value);
+    }
+
+    private static String getHash(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(content));
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to compute test asset hash", ex);
+        }
+    }
+
+    /**
+     * Must be called at the beginning of each test session. Drops all cached
+     * assets, unless the cache is configured to survive across test sessions,
+     * in which case the cached assets will be revalidated on first use.
+     */
+    public synchronized void startSession(String sessionId) {
+        if (!this.crossSession) {
+            this.assets.clear();
+        }
+
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits=%s, misses=%s, revalidations=%s, size=%s",
+                this.hits,
+                this.misses,
+                this.revalidations,
+                this.assets.size());
+    }
+
+    /**
+     * The content of a test asset, as received from the sync server.
+     */
+    public static class Asset {
+
+        public byte[] content;
+
+        public String etag;
+    }
+
+    /**
+     * Marks the parsed assets that are never modified after they are created,
+     * which can be returned by the cache without making a copy.
+     */
+    public interface ImmutableAsset {
+    }
+
+    public interface AssetLoader {
+
+        /**
+         * Downloads a test asset from the sync server.
+         *
+         * @param etag The ETag of the cached version of the asset, if any
+         * @return The asset, or null if the asset was not modified since the
+         * cached version (identified by the ETag) was downloaded
+         */
+        Asset load(String assetType, String partialPath, String etag);
+    }
+
+    private static class CachedAsset {
+
+        public String contentHash;
+
+        public String etag;
+
+        public String sessionId;
+
+        public Object value;
+    }
+}
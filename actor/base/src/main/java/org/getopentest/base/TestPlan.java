@@ -0,0 +1,78 @@
+package org.getopentest.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.getopentest.testdef.TestDefAction;
+import org.getopentest.testdef.TestDefActor;
+import org.getopentest.testdef.TestDefSegment;
+import org.getopentest.testdef.TestDefinition;
+
+/**
+ * The compiled, immutable form of a test definition. Only the segments of one
+ * actor type are compiled, so that the action classes used by other actor
+ * types (which might not be in the classpath) are not looked up. Test plans
+ * are cached by the test asset cache and reused for every data record and
+ * iteration of the test.
+ */
+public class TestPlan implements TestAssetCache.ImmutableAsset {
+
+    private final TestDefinition definition;
+
+    private final Map<Integer, List<ActionPlan>> segments;
+
+    private TestPlan(TestDefinition testDef, String actorType) {
+        Map<Integer, List<ActionPlan>> segmentPlans = new HashMap<>();
+
+        for (TestDefActor actor : testDef.actors) {
+            if (!actor.actorType.equals(actorType)) {
+                continue;
+            }
+
+            for (TestDefSegment segment : actor.segments) {
+                if (segmentPlans.containsKey(segment.segment)) {
+                    continue;
+                }
+
+                if (segment.actions != null) {
+                    List<ActionPlan> actionPlans = new ArrayList<>();
+                    for (TestDefAction actionDef : segment.actions) {
+                        actionPlans.add(ActionPlan.compile(actionDef));
+                    }
+                    segmentPlans.put(segment.segment, Collections.unmodifiableList(actionPlans));
+                } else {
+                    segmentPlans.put(segment.segment, null);
+                }
+            }
+        }
+
+        this.definition = testDef;
+        this.segments = Collections.unmodifiableMap(segmentPlans);
+    }
+
+    /**
+     * Compiles the segments of the specified actor type from a test
+     * definition. The definition must not be modified afterwards.
+     */
+    public static TestPlan compile(TestDefinition testDef, String actorType) {
+        return new TestPlan(testDef, actorType);
+    }
+
+    /**
+     * Returns the test definition the plan was compiled from. The definition
+     * is shared by all the users of the plan, so it must not be modified.
+     */
+    public TestDefinition getDefinition() {
+        return this.definition;
+    }
+
+    /**
+     * Returns the actions of the specified segment, or null if the actor type
+     * has no actions in that segment.
+     */
+    public List<ActionPlan> getSegment(int segmentNumber) {
+        return this.segments.get(segmentNumber);
+    }
+}
@@ -0,0 +1,215 @@
+package org.getopentest.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.script.Bindings;
+
+/**
+ * The compiled form of a value from a test or macro definition (an action
+ * argument, a data property, etc.). Plain values are separated from the
+ * JavaScript expressions once, when the definition is compiled, so they don't
+ * have to be classified again every time the value is evaluated. Evaluating a
+ * value always produces new maps and lists, so the definition itself is never
+ * modified.
+ */
+public abstract class ValuePlan {
+
+    private static final Pattern STRING_PREFIX = Pattern.compile("^\\s*\\$string\\s*");
+
+    /**
+     * Evaluates the JavaScript expressions found in a value.
+     */
+    public interface Evaluator {
+
+        Object evalExpression(Expression expression);
+    }
+
+    /**
+     * Compiles the specified value. Maps and lists are compiled recursively,
+     * except for the JS objects and arrays that are passed to $runAction,
+     * which are already evaluated.
+     */
+    public static ValuePlan compile(Object value) {
+        if (value instanceof Map && !(value instanceof Bindings)) {
+            Map<String, ValuePlan> entries = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                entries.put(entry.getKey(), compile(entry.getValue()));
+            }
+            return new MapValue(entries);
+        } else if (value instanceof List) {
+            List<ValuePlan> items = new ArrayList<>();
+            for (Object item : (List) value) {
+                items.add(compile(item));
+            }
+            return new ListValue(items);
+        } else if (value instanceof String) {
+            String text = (String) value;
+
+            // Dollar-prefixed values are normally interpreted as JS
+            // expressions. The "$string " prefix can be used to declare
+            // the value is a string and avoid evaluation.
+            if (text.matches("^\\s*\\$string\\s*.*")) {
+                return new Literal(STRING_PREFIX.matcher(text).replaceAll(""));
+            } else if (TestActor.isJsExpression(text)) {
+                return new Expression(text);
+            }
+        }
+
+        return new Literal(value);
+    }
+
+    /**
+     * Returns true if the value doesn't contain any JavaScript expressions.
+     */
+    public abstract boolean isLiteral();
+
+    public abstract Object evaluate(Evaluator evaluator);
+
+    /**
+     * A value that is used as-is.
+     */
+    public static class Literal extends ValuePlan {
+
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        public Object getValue() {
+            return this.value;
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return true;
+        }
+
+        @Override
+        public Object evaluate(Evaluator evaluator) {
+            return this.value;
+        }
+    }
+
+    /**
+     * A JavaScript expression (a string that starts with "$script" or with
+     * any dollar-prefixed identifier).
+     */
+    public static class Expression extends ValuePlan {
+
+        private final String code;
+
+        private final String expression;
+
+        private final String source;
+
+        Expression(String expression) {
+            this.expression = expression;
+            this.source = TestActor.removeScriptPrefix(TestActor.removeScriptPrefix(expression));
+
+            // Object literals must be enclosed in parantheses to be evaluated
+            // as objects instead of code blocks
+            this.code = TestActor.isObjectLiteral(this.source)
+                    ? String.format("(%s)", this.source)
+                    : this.source;
+        }
+
+        /**
+         * Returns the JS code to evaluate, without the "$script" prefix.
+         */
+        public String getCode() {
+            return this.code;
+        }
+
+        /**
+         * Returns the expression, as it was written in the definition.
+         */
+        public String getExpression() {
+            return this.expression;
+        }
+
+        /**
+         * Returns the expression without the "$script" prefix, as it should be
+         * displayed in error messages.
+         */
+        public String getSource() {
+            return this.source;
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return false;
+        }
+
+        @Override
+        public Object evaluate(Evaluator evaluator) {
+            return evaluator.evalExpression(this);
+        }
+    }
+
+    public static class MapValue extends ValuePlan {
+
+        private final Map<String, ValuePlan> entries;
+
+        private final boolean literal;
+
+        MapValue(Map<String, ValuePlan> entries) {
+            this.entries = Collections.unmodifiableMap(entries);
+            this.literal = entries.values().stream().allMatch(ValuePlan::isLiteral);
+        }
+
+        public Map<String, ValuePlan> getEntries() {
+            return this.entries;
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return this.literal;
+        }
+
+        @Override
+        public Map<String, Object> evaluate(Evaluator evaluator) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<String, ValuePlan> entry : this.entries.entrySet()) {
+                try {
+                    result.put(entry.getKey(), entry.getValue().evaluate(evaluator));
+                } catch (Exception ex) {
+                    throw new RuntimeException(String.format(
+                            "There was an error while evaluating property \"%s\"",
+                            entry.getKey()), ex);
+                }
+            }
+            return result;
+        }
+    }
+
+    public static class ListValue extends ValuePlan {
+
+        private final List<ValuePlan> items;
+
+        private final boolean literal;
+
+        ListValue(List<ValuePlan> items) {
+            this.items = Collections.unmodifiableList(items);
+            this.literal = items.stream().allMatch(ValuePlan::isLiteral);
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return this.literal;
+        }
+
+        @Override
+        public List<Object> evaluate(Evaluator evaluator) {
+            List<Object> result = new ArrayList<>(this.items.size());
+            for (ValuePlan item : this.items) {
+                result.add(item.evaluate(evaluator));
+            }
+            return result;
+        }
+    }
+}
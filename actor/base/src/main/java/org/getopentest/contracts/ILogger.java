@@ -16,6 +16,8 @@ public interface ILogger {
     
     public void error(String message, Throwable exception);
 
+    public void flush();
+
     public void info(String text);
     
     public void setLevel(LogLevel level);
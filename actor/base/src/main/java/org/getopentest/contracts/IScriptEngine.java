@@ -0,0 +1,94 @@
+package org.getopentest.contracts;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import javax.script.ScriptException;
+
+/**
+ * A JavaScript engine used by the test actor to evaluate action arguments,
+ * data properties and script actions. Implementations are created with
+ * Factory.getScriptEngine, based on the "scriptEngine" config parameter.
+ */
+public interface IScriptEngine {
+
+    /**
+     * The value Java APIs return to JS code to mean "undefined". Every engine
+     * converts it to its own undefined value.
+     */
+    Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "undefined";
+        }
+    };
+
+    /**
+     * Sets the Java objects to bind in the global scope (the $data,
+     * $runAction, etc. APIs) and the scripts to evaluate in it, every time the
+     * global scope is reset.
+     */
+    void setGlobals(Map<String, Object> bindings, List<String> bootstrapScripts);
+
+    /**
+     * Replaces the global scope with a fresh one that only contains the
+     * globals, so no state can leak from one test to the next.
+     */
+    void reset();
+
+    /**
+     * Evaluates JS code in the global scope and returns the result.
+     */
+    Object eval(String code) throws ScriptException;
+
+    /**
+     * Adds a variable into the global scope.
+     */
+    void put(String name, Object value);
+
+    /**
+     * Returns true if the value is a JS object or array that is still owned by
+     * the engine, as opposed to a standard Java type.
+     */
+    boolean isNativeObject(Object value);
+
+    /**
+     * Returns true if the value is a JS array that is still owned by the
+     * engine.
+     */
+    boolean isNativeArray(Object value);
+
+    /**
+     * Converts JS objects and arrays to their equivalent standard Java types
+     * (Map and List). Values that are already Java types are returned
+     * unchanged.
+     */
+    Object toJavaType(Object value);
+
+    /**
+     * Converts maps and lists (recursively) to the equivalent JS native
+     * objects and arrays and IScriptObject instances to the engine's own
+     * representation of a JS object.
+     */
+    Object toNativeType(Object value);
+
+    /**
+     * Adapts a JS function to a Predicate, which calls the function with the
+     * value to test and converts the result to a boolean the same way JS code
+     * does (e.g. in an if statement). Returns null if the value is not a JS
+     * function.
+     */
+    Predicate<Object> toPredicate(Object function);
+
+    /**
+     * Parses JSON data into JS native objects and arrays, without evaluating
+     * the data as JS code.
+     */
+    Object parseJson(String json) throws IOException;
+
+    /**
+     * Releases the resources used by the engine.
+     */
+    void close();
+}
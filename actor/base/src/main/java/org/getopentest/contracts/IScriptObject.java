@@ -0,0 +1,52 @@
+package org.getopentest.contracts;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A Java object that JS code can use like a native JS object or function
+ * (e.g. the $localData and $runAction APIs). Every script engine exposes these
+ * objects to JS code in its own way, so the Java APIs of the test actor don't
+ * depend on the internals of a particular JS engine.
+ */
+public interface IScriptObject {
+
+    /**
+     * Called when JS code calls the object as a function. Only used if
+     * isFunction returns true.
+     */
+    default Object call(Object... args) {
+        throw new UnsupportedOperationException(String.format(
+                "%s is not a function", this.getClass().getName()));
+    }
+
+    /**
+     * Returns the value of a property. Implementations can return
+     * IScriptEngine.UNDEFINED for the properties that don't exist.
+     */
+    default Object getMember(String name) {
+        return null;
+    }
+
+    default boolean hasMember(String name) {
+        return false;
+    }
+
+    default boolean isFunction() {
+        return false;
+    }
+
+    /**
+     * Returns the names of the properties that are enumerated by JS code
+     * (e.g. by Object.keys).
+     */
+    default Set<String> keySet() {
+        return Collections.emptySet();
+    }
+
+    default void removeMember(String name) {
+    }
+
+    default void setMember(String name, Object value) {
+    }
+}
@@ -44,6 +44,12 @@ public interface ITestActor {
      */
     File getScreenshotsDir();
 
+    /**
+     * Returns the JS engine used by the test actor to evaluate the test
+     * scripts. Null until the first script is evaluated.
+     */
+    IScriptEngine getScriptEngine();
+
     /**
      * Returns the temporary directory used by the test actor. This is where
      * test actions can store temporary files and any kind of persistent data.
@@ -73,6 +79,13 @@ public interface ITestActor {
 
     public void runOneSession();
 
+    /**
+     * Converts JS native objects and arrays to their equivalent standard Java
+     * types (Map and List). Values that are already Java types are returned
+     * unchanged.
+     */
+    public Object toJavaType(Object value);
+
     /**
      * Converts the provided argument to a native JavaScript array. Useful when
      * returning Java collection types from JS APIs, so the JS code can work
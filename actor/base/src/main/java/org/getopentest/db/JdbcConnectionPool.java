@@ -0,0 +1,308 @@
+package org.getopentest.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.getopentest.logging.Logger;
+import org.getopentest.util.Config;
+
+/**
+ * Process-wide registry of pooled JDBC connections, used by the JdbcQuery and
+ * JdbcUpdate test actions. Separate pools are maintained for each combination
+ * of JDBC URL and credentials. Each pooled connection also caches the prepared
+ * statements created on it, so that the queries that run over and over again
+ * (e.g. the DB verification steps in data-driven tests) are only prepared
+ * once.
+ */
+public class JdbcConnectionPool {
+
+    private static int idleTimeoutSec = 300;
+
+    private static int maxIdleConnections = 4;
+
+    private static final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private static int statementCacheSize = 50;
+
+    /**
+     * Connections that were idle for longer than this are validated before
+     * being handed out.
+     */
+    private static final long VALIDATION_INTERVAL_MS = 5000;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(JdbcConnectionPool::closeAll));
+    }
+
+    /**
+     * Returns a connection to the specified database, taking it from the pool
+     * if an idle connection is available, or opening a new one otherwise. The
+     * connection must be given back with release() or discard().
+     */
+    public static PooledConnection acquire(String jdbcUrl, String user, String password) throws SQLException {
+        String poolKey = String.format("%s|%s|%s",
+                jdbcUrl,
+                user != null ? user : "",
+                password != null ? Integer.toHexString(password.hashCode()) : "");
+        Pool pool = pools.computeIfAbsent(poolKey, (key) -> new Pool(jdbcUrl, user));
+
+        PooledConnection connection;
+        while ((connection = pool.takeIdle()) != null) {
+            if (connection.isUsable()) {
+                synchronized (pool) {
+                    pool.reuses++;
+                }
+                return connection;
+            }
+
+            connection.close();
+        }
+
+        Connection conn;
+        if (user != null && password != null) {
+            conn = DriverManager.getConnection(jdbcUrl, user, password);
+        } else {
+            conn = DriverManager.getConnection(jdbcUrl);
+        }
+
+        synchronized (pool) {
+            pool.opened++;
+        }
+
+        return new PooledConnection(pool, conn);
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    public static void closeAll() {
+        for (Pool pool : pools.values()) {
+            List<PooledConnection> idleConnections;
+            synchronized (pool) {
+                idleConnections = new ArrayList<>(pool.idleConnections);
+                pool.idleConnections.clear();
+            }
+
+            for (PooledConnection connection : idleConnections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the connection pool settings from the test actor configuration.
+     */
+    public static synchronized void configure(Config config) {
+        idleTimeoutSec = config.getInteger("jdbc.idleTimeoutSec", idleTimeoutSec);
+        maxIdleConnections = config.getInteger("jdbc.maxIdleConnections", maxIdleConnections);
+        statementCacheSize = config.getInteger("jdbc.statementCacheSize", statementCacheSize);
+    }
+
+    /**
+     * Returns the statistics (idle, opened and reused connections) for each of
+     * the pools created so far, keyed by JDBC URL and user.
+     */
+    public static Map<String, String> getStats() {
+        Map<String, String> stats = new HashMap<>();
+
+        for (Pool pool : pools.values()) {
+            synchronized (pool) {
+                stats.put(pool.name, String.format("idle=%s, opened=%s, reused=%s",
+                        pool.idleConnections.size(),
+                        pool.opened,
+                        pool.reuses));
+            }
+        }
+
+        return stats;
+    }
+
+    private static class Pool {
+
+        public final Deque<PooledConnection> idleConnections;
+
+        public final String name;
+
+        public long opened;
+
+        public long reuses;
+
+        Pool(String jdbcUrl, String user) {
+            this.idleConnections = new ArrayDeque<>();
+            this.name = user != null ? String.format("%s (%s)", jdbcUrl, user) : jdbcUrl;
+        }
+
+        synchronized PooledConnection takeIdle() {
+            return this.idleConnections.pollFirst();
+        }
+
+        /**
+         * Returns a connection to the pool, closing it if the pool is full.
+         * Also closes the connections that were idle for too long.
+         */
+        void giveBack(PooledConnection connection) {
+            List<PooledConnection> connectionsToClose = new ArrayList<>();
+            long now = System.currentTimeMillis();
+
+            synchronized (this) {
+                while (!this.idleConnections.isEmpty()
+                        && now - this.idleConnections.peekLast().lastUsedTime > idleTimeoutSec * 1000L) {
+                    connectionsToClose.add(this.idleConnections.pollLast());
+                }
+
+                if (this.idleConnections.size() < maxIdleConnections) {
+                    connection.lastUsedTime = now;
+                    this.idleConnections.addFirst(connection);
+                } else {
+                    connectionsToClose.add(connection);
+                }
+            }
+
+            for (PooledConnection connectionToClose : connectionsToClose) {
+                connectionToClose.close();
+            }
+        }
+    }
+
+    /**
+     * A JDBC connection leased from the pool, along with its cache of prepared
+     * statements.
+     */
+    public static class PooledConnection {
+
+        private final Connection connection;
+
+        private long lastUsedTime;
+
+        private final Pool pool;
+
+        private final Map<String, PreparedStatement> statements;
+
+        /**
+         * The statements created while the statement cache is disabled. They
+         * are closed when the connection is released.
+         */
+        private final List<PreparedStatement> uncachedStatements;
+
+        PooledConnection(Pool pool, Connection connection) {
+            this.pool = pool;
+            this.connection = connection;
+            this.uncachedStatements = new ArrayList<>();
+            this.lastUsedTime = System.currentTimeMillis();
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        closeStatement(eldest.getValue());
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        private void close() {
+            for (PreparedStatement statement : this.statements.values()) {
+                closeStatement(statement);
+            }
+            this.statements.clear();
+            this.closeUncachedStatements();
+
+            try {
+                this.connection.close();
+            } catch (Exception ex) {
+                Logger.trace(String.format("Failed to close JDBC connection: %s", ex.getMessage()));
+            }
+        }
+
+        private void closeUncachedStatements() {
+            for (PreparedStatement statement : this.uncachedStatements) {
+                closeStatement(statement);
+            }
+            this.uncachedStatements.clear();
+        }
+
+        private static void closeStatement(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (Exception ex) {
+            }
+        }
+
+        /**
+         * Closes the connection instead of returning it to the pool. Must be
+         * used when the connection might be in an unknown state (e.g. after a
+         * communication error).
+         */
+        public void discard() {
+            this.close();
+        }
+
+        public Connection getConnection() {
+            return this.connection;
+        }
+
+        private boolean isUsable() {
+            if (System.currentTimeMillis() - this.lastUsedTime < VALIDATION_INTERVAL_MS) {
+                return true;
+            }
+
+            try {
+                return this.connection.isValid(2);
+            } catch (Exception ex) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns a prepared statement for the specified SQL code, reusing the
+         * statement prepared previously on this connection, if any.
+         */
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            PreparedStatement statement = this.statements.get(sql);
+
+            if (statement != null && !statement.isClosed()) {
+                statement.clearParameters();
+            } else {
+                statement = this.connection.prepareStatement(sql);
+                if (statementCacheSize > 0) {
+                    this.statements.put(sql, statement);
+                } else {
+                    this.uncachedStatements.add(statement);
+                }
+            }
+
+            return statement;
+        }
+
+        /**
+         * Returns the connection to the pool. Uncommitted transactions are
+         * rolled back.
+         */
+        public void release() {
+            this.closeUncachedStatements();
+
+            try {
+                if (!this.connection.getAutoCommit()) {
+                    this.connection.rollback();
+                    this.connection.setAutoCommit(true);
+                }
+            } catch (Exception ex) {
+                this.discard();
+                return;
+            }
+
+            this.pool.giveBack(this);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.getopentest.http;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.getopentest.util.Config;
+
+/**
+ * Process-wide registry of pooled HTTP clients. All HTTP requests made by the
+ * test actor (sync server traffic and HttpRequest test actions) share the
+ * clients managed here, so that TCP and TLS connections can be kept alive and
+ * reused across requests. Separate pools are maintained for regular requests,
+ * for requests that ignore the server certificate and for each proxy server.
+ */
+public class HttpClientPool {
+
+    private static final Map<String, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private static int connectTimeoutSec = 30;
+
+    private static int idleConnectionTimeoutSec = 60;
+
+    private static int maxConnections = 100;
+
+    private static int maxConnectionsPerRoute = 20;
+
+    private static int readTimeoutSec = 300;
+
+    private static final Pattern proxyPattern = Pattern.compile("(?<proxy>.+?)(:(?<port>.+))?");
+
+    /**
+     * Reads the connection pool settings from the test actor configuration.
+     * The limits are applied to the pools that already exist, as well as to
+     * the pools that will be created later on.
+     */
+    public static synchronized void configure(Config config) {
+        connectTimeoutSec = config.getInteger("http.connectTimeoutSec", connectTimeoutSec);
+        idleConnectionTimeoutSec = config.getInteger("http.idleConnectionTimeoutSec", idleConnectionTimeoutSec);
+        maxConnections = config.getInteger("http.maxConnections", maxConnections);
+        maxConnectionsPerRoute = config.getInteger("http.maxConnectionsPerRoute", maxConnectionsPerRoute);
+        readTimeoutSec = config.getInteger("http.readTimeoutSec", readTimeoutSec);
+
+        for (PooledClient client : clients.values()) {
+            client.connectionManager.setMaxTotal(maxConnections);
+            client.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        }
+    }
+
+    /**
+     * Returns the shared HTTP client for the specified combination of
+     * certificate validation mode and proxy server, creating it if necessary.
+     */
+    public static CloseableHttpClient getClient(boolean ignoreCert, String proxy) {
+        String normalizedProxy = proxy != null && !proxy.trim().isEmpty()
+                ? proxy.trim()
+                : null;
+        String poolName = getPoolName(ignoreCert, normalizedProxy);
+
+        return clients.computeIfAbsent(poolName, (name) -> {
+            return createClient(ignoreCert, normalizedProxy);
+        }).httpClient;
+    }
+
+    public static int getConnectTimeoutSec() {
+        return connectTimeoutSec;
+    }
+
+    public static int getReadTimeoutSec() {
+        return readTimeoutSec;
+    }
+
+    /**
+     * Returns the connection statistics (leased, pending, available and max
+     * connections) for each of the pools created so far, keyed by pool name.
+     */
+    public static Map<String, PoolStats> getStats() {
+        Map<String, PoolStats> stats = new HashMap<>();
+
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().connectionManager.getTotalStats());
+        }
+
+        return stats;
+    }
+
+    private static String getPoolName(boolean ignoreCert, String proxy) {
+        String poolName = ignoreCert ? "ignoreCert" : "plain";
+        if (proxy != null) {
+            poolName = String.format("%s|proxy=%s", poolName, proxy);
+        }
+
+        return poolName;
+    }
+
+    /**
+     * Parses a proxy server specification in the "host" or "host:port" format.
+     */
+    static HttpHost parseProxy(String proxyServer) {
+        Matcher matcher = proxyPattern.matcher(proxyServer.trim());
+        if (matcher.matches()) {
+            String proxy = matcher.group("proxy");
+            String proxyPort = matcher.group("port");
+
+            if (proxyPort != null) {
+                return new HttpHost(proxy, Integer.valueOf(proxyPort));
+            } else {
+                return new HttpHost(proxy);
+            }
+        } else {
+            throw new RuntimeException(String.format("Invalid proxy server: %s", proxyServer));
+        }
+    }
+
+    private static synchronized PooledClient createClient(boolean ignoreCert, String proxy) {
+        try {
+            RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory());
+
+            if (ignoreCert) {
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(new KeyManager[0], new TrustManager[]{new NoopTrustManager()}, new SecureRandom());
+                SSLContext.setDefault(sslContext);
+
+                registryBuilder.register("https", new SSLConnectionSocketFactory(
+                        sslContext, NoopHostnameVerifier.INSTANCE));
+            } else {
+                registryBuilder.register("https", SSLConnectionSocketFactory.getSocketFactory());
+            }
+
+            Registry<ConnectionSocketFactory> registry = registryBuilder.build();
+
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            // Servers (including the sync server) close idle keep-alive
+            // connections after a few seconds, so we must make sure we are
+            // not handing out connections that were already closed
+            connectionManager.setValidateAfterInactivity(2000);
+
+            HttpClientBuilder builder = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .disableCookieManagement()
+                    .disableRedirectHandling()
+                    .evictExpiredConnections()
+                    .evictIdleConnections(idleConnectionTimeoutSec, TimeUnit.SECONDS);
+
+            if (proxy != null) {
+                builder.setProxy(parseProxy(proxy));
+            }
+
+            PooledClient client = new PooledClient();
+            client.connectionManager = connectionManager;
+            client.httpClient = builder.build();
+            return client;
+        } catch (Throwable ex) {
+            throw new RuntimeException(String.format(
+                    "Failed to create http client (ignoreCert = %s, proxy = %s)",
+                    ignoreCert,
+                    proxy), ex);
+        }
+    }
+
+    private static class PooledClient {
+
+        public PoolingHttpClientConnectionManager connectionManager;
+
+        public CloseableHttpClient httpClient;
+    }
+}
@@ -1,27 +1,21 @@
 package org.getopentest.http;
 
+import com.google.gson.Gson;
 import java.io.*;
 import java.nio.charset.Charset;
-import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.*;
+import org.apache.http.util.EntityUtils;
 
 public class HttpRequest {
 
@@ -29,17 +23,32 @@ public class HttpRequest {
 
     private HttpRequestBase httpRequest;
 
-    private HttpResponse response;
+    private CloseableHttpResponse response;
 
     private String url;
 
     private HttpVerb httpVerb;
 
+    private int connectTimeoutSec;
+
+    private HttpHost proxyHost;
+
+    private int readTimeoutSec;
+
+    private boolean streamResponse;
+
     public HttpRequest(HttpRequestOptions options) {
         this.url = options.url;
         this.httpVerb = options.httpVerb;
+        this.connectTimeoutSec = options.connectTimeoutSec != null
+                ? options.connectTimeoutSec
+                : HttpClientPool.getConnectTimeoutSec();
+        this.readTimeoutSec = options.readTimeoutSec != null
+                ? options.readTimeoutSec
+                : HttpClientPool.getReadTimeoutSec();
+        this.streamResponse = options.streamResponse;
 
-        this.httpClient = createHttpClient(options.ignoreCert);
+        this.httpClient = HttpClientPool.getClient(options.ignoreCert, options.proxy);
 
         switch (this.httpVerb) {
             case GET:
@@ -69,50 +78,56 @@ public class HttpRequest {
             default:
                 throw new RuntimeException(String.format("HTTP verb \"%s\" is not supported", this.httpVerb));
         }
-
-        if (options.proxy != null && !options.proxy.trim().isEmpty()) {
-            this.setProxy(options.proxy);
-        }
     }
 
-    private CloseableHttpClient createHttpClient(boolean ignoreCert) {
-        try {
-            RequestConfig requestConfig = RequestConfig.custom()
-                    .setCookieSpec(CookieSpecs.STANDARD)
-                    .build();
-
-            CloseableHttpClient client;
-
-            if (ignoreCert) {
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                sslContext.init(new KeyManager[0], new TrustManager[]{new NoopTrustManager()}, new SecureRandom());
-                SSLContext.setDefault(sslContext);
-
-                SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
-                        sslContext, NoopHostnameVerifier.INSTANCE);
-                client = HttpClients.custom()
-                        .disableRedirectHandling()
-                        .setDefaultRequestConfig(requestConfig)
-                        .setSSLSocketFactory(sslSocketFactory)
-                        .build();
-            } else {
-                client = HttpClientBuilder.create()
-                        .disableRedirectHandling()
-                        .setDefaultRequestConfig(requestConfig)
-                        .build();
+    /**
+     * Releases the connection used by this request back to the connection
+     * pool. This is only necessary when the response is streamed and the
+     * response stream is not read to the end or closed by the caller.
+     */
+    public void close() {
+        if (this.response != null) {
+            EntityUtils.consumeQuietly(this.response.getEntity());
+            try {
+                this.response.close();
+            } catch (IOException ex) {
             }
-
-            return client;
-        } catch (Throwable ex) {
-            throw new RuntimeException(String.format(
-                    "Failed to create http client (ignoreCert = %s)",
-                    ignoreCert), ex);
         }
     }
 
-    // TODO: Take a timeout value and throw an exception in case the HTTP server doesn't respond in due time
+    /**
+     * Executes the HTTP request. Unless the request was created with the
+     * "streamResponse" option, the response body is read into memory and the
+     * connection is returned to the pool right away.
+     */
     public void execute() throws IOException {
+        // The same request object can be executed multiple times (e.g. to
+        // update the status of a test segment), so we have to make sure the
+        // connection used by the previous execution was released
+        this.close();
+
+        RequestConfig.Builder configBuilder = RequestConfig.custom()
+                .setCookieSpec(CookieSpecs.STANDARD)
+                .setConnectTimeout(this.connectTimeoutSec * 1000)
+                .setConnectionRequestTimeout(this.connectTimeoutSec * 1000)
+                .setSocketTimeout(this.readTimeoutSec * 1000);
+        if (this.proxyHost != null) {
+            configBuilder.setProxy(this.proxyHost);
+        }
+        this.httpRequest.setConfig(configBuilder.build());
+
         this.response = this.httpClient.execute(httpRequest);
+
+        if (!this.streamResponse) {
+            try {
+                HttpEntity entity = this.response.getEntity();
+                if (entity != null) {
+                    this.response.setEntity(new BufferedHttpEntity(entity));
+                }
+            } finally {
+                this.response.close();
+            }
+        }
     }
 
     public HttpVerb getHttpVerb() {
@@ -188,37 +203,24 @@ public class HttpRequest {
         }
     }
 
+    /**
+     * Sets the request content to the JSON representation of the specified
+     * object. The object is serialized straight into the request stream when
+     * the request is executed, so large payloads don't have to be converted
+     * to a string first.
+     */
+    public void setJsonContent(Object content, Gson gson) {
+        if (HttpEntityEnclosingRequestBase.class.isInstance(httpRequest)) {
+            ((HttpEntityEnclosingRequestBase) this.httpRequest).setEntity(new JsonEntity(content, gson));
+            this.httpRequest.setHeader("Content-Type", ContentType.APPLICATION_JSON);
+        }
+    }
+
     public void setHeader(String headerName, String headerValue) {
         this.httpRequest.setHeader(headerName, headerValue);
     }
 
     public void setProxy(String proxyServer) {
-        String proxy = null;
-        String proxyPort = null;
-        Pattern pattern = Pattern.compile("(?<proxy>.+?)(:(?<port>.+))?");
-        Matcher matcher = pattern.matcher(proxyServer.trim());
-        if (matcher.matches()) {
-            proxy = matcher.group("proxy");
-            proxyPort = matcher.group("port");
-        } else {
-            throw new RuntimeException(String.format("Invalid proxy server:", proxyServer));
-        }
-
-        HttpHost proxyHost;
-        if (proxyPort != null) {
-            proxyHost = new HttpHost(proxy, Integer.valueOf(proxyPort));
-        } else {
-            proxyHost = new HttpHost(proxy);
-        }
-        RequestConfig oldConfig = this.httpRequest.getConfig();
-        RequestConfig.Builder configBuilder = null;
-
-        if (oldConfig != null) {
-            configBuilder = RequestConfig.copy(oldConfig);
-        } else {
-            configBuilder = RequestConfig.custom().setProxy(proxyHost);
-        }
-
-        this.httpRequest.setConfig(configBuilder.build());
+        this.proxyHost = HttpClientPool.parseProxy(proxyServer);
     }
 }
@@ -2,6 +2,12 @@ package org.getopentest.http;
 
 public class HttpRequestOptions {
 
+    /**
+     * The connect timeout for the request. If null, the value of the
+     * "http.connectTimeoutSec" config parameter is used.
+     */
+    public Integer connectTimeoutSec;
+
     public boolean ignoreCert;
     
     public String url;
@@ -10,10 +16,25 @@ public class HttpRequestOptions {
 
     public String proxy;
 
+    /**
+     * The maximum period of inactivity while waiting for the response data.
+     * If null, the value of the "http.readTimeoutSec" config parameter is
+     * used.
+     */
+    public Integer readTimeoutSec;
+
+    /**
+     * When true, the response body is not buffered in memory and the caller
+     * is responsible for reading the response stream to the end or closing
+     * it, so that the connection can be returned to the pool.
+     */
+    public boolean streamResponse;
+
     public HttpRequestOptions(String url, HttpVerb httpVerb) {
         this.url = url;
         this.httpVerb = httpVerb;
         this.proxy = null;
         this.ignoreCert = false;
+        this.streamResponse = false;
     }
 }
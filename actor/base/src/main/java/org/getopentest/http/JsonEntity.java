@@ -0,0 +1,69 @@
+package org.getopentest.http;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * HTTP entity that serializes an object to JSON directly into the request
+ * stream, instead of building the whole JSON document in memory first. The
+ * entity is repeatable, since the object is serialized again every time the
+ * entity is written.
+ */
+class JsonEntity extends AbstractHttpEntity {
+
+    private final Object content;
+
+    private final Gson gson;
+
+    JsonEntity(Object content, Gson gson) {
+        this.content = content;
+        this.gson = gson;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        this.writeTo(outStream);
+        return new ByteArrayInputStream(outStream.toByteArray());
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outStream, StandardCharsets.UTF_8);
+        JsonWriter jsonWriter = this.gson.newJsonWriter(writer);
+
+        if (this.content == null) {
+            jsonWriter.nullValue();
+        } else {
+            this.gson.toJson(this.content, this.content.getClass(), jsonWriter);
+        }
+
+        // Flush, but don't close the writer, since the output stream is
+        // managed by the HTTP client
+        jsonWriter.flush();
+    }
+}
@@ -2,7 +2,6 @@ package org.getopentest.logging;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.regex.Pattern;
 import org.getopentest.contracts.ILogger;
 
 /**
@@ -18,14 +17,9 @@ public abstract class BaseLogger implements ILogger {
     private LogLevel level;
 
     /**
-     * RegEx that matches the secrets that will be masked in the log.
+     * Matches the secrets that will be masked in the log.
      */
-    private String secretsRegexp;
-
-    /**
-     * Cached RegEx pattern matching the secrets that will be masked in the log.
-     */
-    private Pattern secretsRegexPattern;
+    private SecretMasker secretMasker = new SecretMasker();
 
     BaseLogger() {
         this.level = LogLevel.INFO;
@@ -33,30 +27,17 @@ public abstract class BaseLogger implements ILogger {
 
     /** Add a secret to be masked in the log. */
     public void addSecret(String secret) {
-        if (secretsRegexp == null) {
-            secretsRegexp = "\\Q" + secret + "\\E";
-        } else {
-            secretsRegexp = secretsRegexp + "|\\Q" + secret + "\\E";
-        }
-
-        secretsRegexPattern = Pattern.compile(secretsRegexp);
+        this.secretMasker.addSecret(secret);
     }
     
     /** Add a secret's regular expression to be masked in the log. */
     public void addSecretByRegex(String newSecretRegexp) {
-        if (secretsRegexp == null) {
-            secretsRegexp = newSecretRegexp;
-        } else {
-            secretsRegexp = secretsRegexp + "|" + newSecretRegexp;
-        }
-
-        secretsRegexPattern = Pattern.compile(secretsRegexp);
+        this.secretMasker.addSecretByRegex(newSecretRegexp);
     }
 
     /** Clear all secrets to be masked in the log. */
     public void clearSecrets() {
-        this.secretsRegexp = null;
-        this.secretsRegexPattern = null;
+        this.secretMasker.clear();
     }
 
     @Override
@@ -81,6 +62,14 @@ public abstract class BaseLogger implements ILogger {
         this.error(BaseLogger.getStackTrace(exception));
     }
 
+    /**
+     * Sends any buffered log entries to their destination. Derived classes
+     * that buffer log entries must override this method.
+     */
+    @Override
+    public void flush() {
+    }
+
     public LogLevel getLevel() {
         return level;
     }
@@ -152,10 +141,10 @@ public abstract class BaseLogger implements ILogger {
     }
 
     private String maskSecrets(String text) {
-        if (this.secretsRegexPattern == null || !this.isMaskSecrets) {
+        if (!this.isMaskSecrets) {
             return text;
         } else {
-            return this.secretsRegexPattern.matcher(text).replaceAll("<<MASKED_SECRET>>");
+            return this.secretMasker.mask(text);
         }
     }
 
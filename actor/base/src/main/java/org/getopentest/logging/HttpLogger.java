@@ -1,26 +1,66 @@
 package org.getopentest.logging;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.getopentest.http.ContentType;
 import org.getopentest.http.HttpRequest;
 import org.getopentest.http.HttpRequestOptions;
 import org.getopentest.http.HttpVerb;
 
 /**
- * Utility class to create log entries using the sync service HTTP API
+ * Utility class to create log entries using the sync service HTTP API. By
+ * default, every log entry is sent to the sync service as soon as it is
+ * written. When batching is enabled, log entries are queued in memory and
+ * sent in batches by a background thread, so that the test thread doesn't
+ * have to wait for the network.
  */
 public class HttpLogger extends BaseLogger {
 
+    private int batchSize;
+
     private HashMap<String, String> context;
 
+    /**
+     * The number of log entries that were discarded because the queue was
+     * full, since the last batch was sent.
+     */
+    private AtomicInteger droppedEntries;
+
+    private boolean dropWhenFull;
+
+    private volatile Thread flushThread;
+
+    private int flushIntervalMs;
+
+    /**
+     * Monitor used by the background thread to wake up the threads waiting in
+     * the flush method, once all queued log entries were sent.
+     */
+    private final Object flushMonitor = new Object();
+
     private String httpProxy;
 
+    /**
+     * The number of log entries that were queued, but were not yet sent to the
+     * sync service.
+     */
+    private AtomicInteger pendingEntries;
+
+    private volatile boolean isClosing;
+
+    private BlockingQueue<JsonObject> queue;
+
     private String syncServiceBaseUrl;
 
     private String testSessionId;
@@ -37,34 +77,100 @@ public class HttpLogger extends BaseLogger {
         this.httpProxy = httpProxy;
     }
 
-    @Override
-    protected void writeLogEntry(String text, LogLevel level) {
-        String httpMessage;
-        String consoleMessage;
+    /**
+     * Stops the background thread that sends log entries to the sync service
+     * (if batching is enabled), after sending all pending log entries.
+     */
+    public void close() {
+        if (this.flushThread != null) {
+            this.flush();
+            this.isClosing = true;
+            this.flushThread.interrupt();
+            this.flushThread = null;
+        }
+    }
 
-        if (text != null && !text.isEmpty()) {
-            String timeOfLogEntry = new SimpleDateFormat("HH:mm:ss").format(new Date());
-            httpMessage = String.format("%s%s", getPrefixForLevel(level), text);
-            consoleMessage = String.format("%s %s", timeOfLogEntry, httpMessage);
-        } else {
-            httpMessage = "";
-            consoleMessage = "";
+    /**
+     * Switches the logger to batching mode. Log entries will be sent to the
+     * sync service by a background thread, either when the number of queued
+     * entries reaches the batch size, or when the flush interval elapses.
+     *
+     * @param batchSize The maximum number of log entries sent in one request
+     * @param flushIntervalMs The maximum time a log entry is kept in the queue
+     * @param queueCapacity The maximum number of log entries in the queue
+     * @param dropWhenFull Whether to discard new log entries when the queue is
+     * full. If false, the calling thread waits for room in the queue.
+     */
+    public synchronized void enableBatching(int batchSize, int flushIntervalMs, int queueCapacity, boolean dropWhenFull) {
+        if (this.flushThread != null) {
+            return;
         }
 
-        // Also write the message to console
-        System.err.println(consoleMessage);
+        this.batchSize = Math.max(batchSize, 1);
+        this.droppedEntries = new AtomicInteger(0);
+        this.dropWhenFull = dropWhenFull;
+        this.flushIntervalMs = Math.max(flushIntervalMs, 1);
+        this.pendingEntries = new AtomicInteger(0);
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, this.batchSize));
 
-        HttpRequestOptions options = new HttpRequestOptions(
-                String.format("%s/api/session/%s/log",
-                        this.syncServiceBaseUrl,
-                        this.testSessionId),
-                HttpVerb.POST);
-        options.proxy = this.httpProxy;
-        HttpRequest request = new HttpRequest(options);
+        this.flushThread = new Thread() {
+            @Override
+            public void run() {
+                sendQueuedEntries();
+            }
+        };
+        this.flushThread.setName(String.format("http-logger-%s", this.testSessionId));
+        this.flushThread.setDaemon(true);
+        this.flushThread.start();
+    }
+
+    /**
+     * Blocks until all queued log entries were sent to the sync service. Does
+     * nothing if batching is not enabled.
+     */
+    @Override
+    public void flush() {
+        if (this.flushThread == null) {
+            return;
+        }
 
+        Thread thread = this.flushThread;
+        long deadline = System.currentTimeMillis() + 30000;
+        synchronized (this.flushMonitor) {
+            while (this.pendingEntries.get() > 0) {
+                long waitMs = deadline - System.currentTimeMillis();
+                if (thread == null || !thread.isAlive() || waitMs <= 0) {
+                    System.out.println("ERROR: Timed out while sending log entries to server");
+                    break;
+                }
+
+                try {
+                    this.flushMonitor.wait(waitMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the specified number of queued log entries as processed (sent or
+     * discarded) and wakes up the threads waiting in the flush method if there
+     * are no more pending entries.
+     */
+    private void completeEntries(int count) {
+        if (this.pendingEntries.addAndGet(-count) <= 0) {
+            synchronized (this.flushMonitor) {
+                this.flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    private JsonObject createEntry(String message, LogLevel level) {
         JsonObject json = new JsonObject();
         json.addProperty("level", getLevelAsString(level));
-        json.addProperty("message", httpMessage);
+        json.addProperty("message", message);
 
         if (this.context != null) {
             JsonObject extras = new JsonObject();
@@ -75,11 +181,127 @@ public class HttpLogger extends BaseLogger {
             }
             json.add("extras", extras);
         }
-        request.setContent(json.toString(), ContentType.APPLICATION_JSON);
+
+        return json;
+    }
+
+    private void postToServer(String jsonContent) {
+        HttpRequestOptions options = new HttpRequestOptions(
+                String.format("%s/api/session/%s/log",
+                        this.syncServiceBaseUrl,
+                        this.testSessionId),
+                HttpVerb.POST);
+        options.proxy = this.httpProxy;
+        HttpRequest request = new HttpRequest(options);
+
+        request.setContent(jsonContent, ContentType.APPLICATION_JSON);
         try {
             request.execute();
-        } catch (IOException ex) {
+        } catch (Exception ex) {
             System.out.println("ERROR: Failed sending log entry to server");
         }
     }
+
+    /**
+     * Runs on the background thread and sends the queued log entries to the
+     * sync service in batches.
+     */
+    private void sendQueuedEntries() {
+        List<JsonObject> batch = new ArrayList<>(this.batchSize);
+
+        while (!this.isClosing) {
+            try {
+                JsonObject firstEntry = this.queue.poll(this.flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (firstEntry == null) {
+                    continue;
+                }
+
+                batch.add(firstEntry);
+
+                // Give the test thread a chance to fill up the batch, but never
+                // keep a log entry waiting longer than the flush interval
+                long deadline = System.currentTimeMillis() + this.flushIntervalMs;
+                while (batch.size() < this.batchSize) {
+                    long waitMs = deadline - System.currentTimeMillis();
+                    JsonObject entry = waitMs > 0
+                            ? this.queue.poll(waitMs, TimeUnit.MILLISECONDS)
+                            : this.queue.poll();
+                    if (entry == null) {
+                        break;
+                    }
+
+                    batch.add(entry);
+                }
+            } catch (InterruptedException ex) {
+                if (batch.isEmpty()) {
+                    break;
+                }
+            }
+
+            int queuedEntriesCount = batch.size();
+            int droppedCount = this.droppedEntries.getAndSet(0);
+            if (droppedCount > 0) {
+                batch.add(createEntry(String.format(
+                        "%s%s log entries were discarded because the log queue was full",
+                        getPrefixForLevel(LogLevel.WARN),
+                        droppedCount), LogLevel.WARN));
+            }
+
+            if (!batch.isEmpty()) {
+                JsonArray entries = new JsonArray();
+                batch.forEach(entries::add);
+                JsonObject json = new JsonObject();
+                json.add("entries", entries);
+
+                postToServer(json.toString());
+                completeEntries(queuedEntriesCount);
+                batch.clear();
+            }
+        }
+
+        // Don't keep flush waiting for a thread that is no longer running
+        synchronized (this.flushMonitor) {
+            this.flushMonitor.notifyAll();
+        }
+    }
+
+    @Override
+    protected void writeLogEntry(String text, LogLevel level) {
+        String httpMessage;
+        String consoleMessage;
+
+        if (text != null && !text.isEmpty()) {
+            String timeOfLogEntry = new SimpleDateFormat("HH:mm:ss").format(new Date());
+            httpMessage = String.format("%s%s", getPrefixForLevel(level), text);
+            consoleMessage = String.format("%s %s", timeOfLogEntry, httpMessage);
+        } else {
+            httpMessage = "";
+            consoleMessage = "";
+        }
+
+        // Also write the message to console
+        System.err.println(consoleMessage);
+
+        JsonObject json = createEntry(httpMessage, level);
+
+        if (this.flushThread != null) {
+            this.pendingEntries.incrementAndGet();
+
+            if (this.dropWhenFull) {
+                if (!this.queue.offer(json)) {
+                    this.droppedEntries.incrementAndGet();
+                    completeEntries(1);
+                }
+            } else {
+                try {
+                    this.queue.put(json);
+                } catch (InterruptedException ex) {
+                    completeEntries(1);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } else {
+            postToServer(json.toString());
+        }
+    }
 }
@@ -1,53 +1,53 @@
 package org.getopentest.logging;
 
 import org.getopentest.contracts.ILogger;
+import org.getopentest.util.ActorContext;
 
+/**
+ * Provides static access to the logger of the test actor that owns the current
+ * thread.
+ */
 public class Logger {
 
-    private static ILogger INSTANCE;
-
-    static {
-        INSTANCE = new ConsoleLogger();
-    }
-
     public static ILogger getLogger() {
-        return INSTANCE;
+        return ActorContext.getCurrent().getLogger();
     }
 
     public static void debug(String text) {
-        INSTANCE.debug(text);
+        getLogger().debug(text);
     }
-    
+
     public static void error(String text) {
-        INSTANCE.error(text);
+        getLogger().error(text);
     }
 
     public static void error(Throwable exception) {
-        INSTANCE.error(BaseLogger.getStackTrace(exception));
+        getLogger().error(BaseLogger.getStackTrace(exception));
     }
-    
+
     public static void error(String message, Throwable exception) {
-        INSTANCE.error(message, exception);
+        getLogger().error(message, exception);
     }
 
     public static void info(String text) {
-        INSTANCE.info(text);
+        getLogger().info(text);
     }
-    
+
     public static void setLogger(ILogger loger) {
-        INSTANCE = loger;
+        ActorContext.getCurrent().setLogger(loger);
     }
 
     public static void trace(String text) {
-        INSTANCE.trace(text);
+        getLogger().trace(text);
     }
-    
+
     public static void warning(String text) {
-        INSTANCE.warning(text);
+        getLogger().warning(text);
     }
-    
+
     public static void warning(String message, Throwable exception) {
-        INSTANCE.warning(message);
-        INSTANCE.warning(BaseLogger.getStackTrace(exception));
+        ILogger logger = getLogger();
+        logger.warning(message);
+        logger.warning(BaseLogger.getStackTrace(exception));
     }
 }
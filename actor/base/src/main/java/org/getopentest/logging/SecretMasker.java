@@ -0,0 +1,400 @@
+package org.getopentest.logging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Masks secrets in log entries. Literal secrets are matched with an
+ * Aho-Corasick automaton, which finds all of them in a single pass over the
+ * text, no matter how many secrets were registered. Secrets specified as
+ * regular expressions are compiled individually and matched separately.
+ *
+ * Adding a secret only updates the trie the automaton is built from. The
+ * automaton itself is rebuilt the next time a text is masked, so adding many
+ * secrets in a row doesn't cause repeated rebuilds. Adding a secret that was
+ * already registered has no effect.
+ *
+ * When matches overlap, the whole overlapping region is masked.
+ */
+public class SecretMasker {
+
+    public static final String MASK = "<<MASKED_SECRET>>";
+
+    private TrieNode trieRoot = new TrieNode();
+
+    private int literalCount = 0;
+
+    private List<Pattern> patterns = new ArrayList<>();
+
+    /**
+     * The automaton for the literal secrets, or null if it has to be rebuilt
+     * after a secret was added.
+     */
+    private volatile Automaton automaton = Automaton.EMPTY;
+
+    private volatile Pattern[] compiledPatterns = new Pattern[0];
+
+    /**
+     * Registers a secret that must be masked wherever it appears in a text.
+     */
+    public synchronized void addSecret(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            return;
+        }
+
+        TrieNode node = this.trieRoot;
+        for (int i = 0; i < secret.length(); i++) {
+            node = node.children.computeIfAbsent(secret.charAt(i), (c) -> new TrieNode());
+        }
+
+        if (node.wordLength == 0) {
+            node.wordLength = secret.length();
+            this.literalCount++;
+            this.automaton = null;
+        }
+    }
+
+    /**
+     * Registers a regular expression that matches the secrets that must be
+     * masked.
+     */
+    public synchronized void addSecretByRegex(String secretRegex) {
+        Pattern pattern = Pattern.compile(secretRegex);
+
+        for (Pattern existingPattern : this.patterns) {
+            if (existingPattern.pattern().equals(secretRegex)) {
+                return;
+            }
+        }
+
+        this.patterns.add(pattern);
+        this.compiledPatterns = this.patterns.toArray(new Pattern[0]);
+    }
+
+    /**
+     * Removes all the registered secrets.
+     */
+    public synchronized void clear() {
+        this.trieRoot = new TrieNode();
+        this.literalCount = 0;
+        this.patterns.clear();
+        this.automaton = Automaton.EMPTY;
+        this.compiledPatterns = new Pattern[0];
+    }
+
+    private Automaton getAutomaton() {
+        Automaton currentAutomaton = this.automaton;
+
+        if (currentAutomaton == null) {
+            synchronized (this) {
+                if (this.automaton == null) {
+                    this.automaton = new Automaton(this.trieRoot, this.literalCount);
+                }
+
+                currentAutomaton = this.automaton;
+            }
+        }
+
+        return currentAutomaton;
+    }
+
+    /**
+     * Returns the specified text with all the secrets replaced by the
+     * "<<MASKED_SECRET>>" string. If the text doesn't contain any secrets, the
+     * same string instance is returned.
+     */
+    public String mask(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+
+        Pattern[] currentPatterns = this.compiledPatterns;
+        Automaton currentAutomaton = this.getAutomaton();
+
+        if (currentAutomaton.isEmpty() && currentPatterns.length == 0) {
+            return text;
+        }
+
+        MatchList matches = currentAutomaton.findMatches(text, null);
+
+        for (Pattern pattern : currentPatterns) {
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    matches = MatchList.add(matches, matcher.start(), matcher.end());
+                }
+            }
+        }
+
+        if (matches == null) {
+            return text;
+        }
+
+        return matches.apply(text);
+    }
+
+    private static class TrieNode {
+
+        private Map<Character, TrieNode> children = new TreeMap<>();
+
+        /**
+         * The length of the secret that ends at this node, or zero if no
+         * secret ends here.
+         */
+        private int wordLength = 0;
+    }
+
+    /**
+     * Immutable Aho-Corasick automaton. The transitions of each state are
+     * stored as sorted arrays of characters and target states, to keep the
+     * memory footprint low for large character sets.
+     */
+    private static class Automaton {
+
+        private static final Automaton EMPTY = new Automaton(new TrieNode(), 0);
+
+        private char[][] transitionChars;
+
+        private int[][] transitionStates;
+
+        private int[] failureStates;
+
+        /**
+         * For every state, the length of the longest secret that is a suffix
+         * of the text matched by the state, or zero if there is no such
+         * secret.
+         */
+        private int[] matchLengths;
+
+        /**
+         * The transitions from the initial state for ASCII characters, with
+         * zero meaning there is no transition. Most characters in a text
+         * don't start a secret, so this is the hottest lookup by far.
+         */
+        private int[] asciiRootStates = new int[128];
+
+        /**
+         * The only secret, when there is exactly one. Single secrets are
+         * searched for with String.indexOf, which is faster than walking the
+         * automaton.
+         */
+        private String singleWord;
+
+        private int minLength = Integer.MAX_VALUE;
+
+        private boolean isEmpty;
+
+        Automaton(TrieNode root, int wordCount) {
+            this.isEmpty = wordCount == 0;
+
+            List<TrieNode> nodes = new ArrayList<>();
+            Map<TrieNode, Integer> stateIds = new IdentityHashMap<>();
+            Queue<TrieNode> queue = new ArrayDeque<>();
+            queue.add(root);
+            stateIds.put(root, 0);
+            nodes.add(root);
+
+            // Number the states in breadth-first order, so that the failure
+            // state of every state is computed before the state itself
+            while (!queue.isEmpty()) {
+                TrieNode node = queue.remove();
+                for (TrieNode child : node.children.values()) {
+                    stateIds.put(child, nodes.size());
+                    nodes.add(child);
+                    queue.add(child);
+                }
+            }
+
+            int stateCount = nodes.size();
+            this.transitionChars = new char[stateCount][];
+            this.transitionStates = new int[stateCount][];
+            this.failureStates = new int[stateCount];
+            this.matchLengths = new int[stateCount];
+
+            for (int state = 0; state < stateCount; state++) {
+                TrieNode node = nodes.get(state);
+                char[] chars = new char[node.children.size()];
+                int[] states = new int[node.children.size()];
+                int index = 0;
+                for (Map.Entry<Character, TrieNode> entry : node.children.entrySet()) {
+                    chars[index] = entry.getKey();
+                    states[index] = stateIds.get(entry.getValue());
+                    index++;
+                }
+                this.transitionChars[state] = chars;
+                this.transitionStates[state] = states;
+                this.matchLengths[state] = node.wordLength;
+
+                if (node.wordLength > 0) {
+                    this.minLength = Math.min(this.minLength, node.wordLength);
+                }
+            }
+
+            for (int i = 0; i < this.transitionChars[0].length; i++) {
+                char c = this.transitionChars[0][i];
+                if (c < this.asciiRootStates.length) {
+                    this.asciiRootStates[c] = this.transitionStates[0][i];
+                }
+            }
+
+            if (wordCount == 1) {
+                StringBuilder word = new StringBuilder();
+                TrieNode node = root;
+                while (!node.children.isEmpty()) {
+                    Map.Entry<Character, TrieNode> entry = node.children.entrySet().iterator().next();
+                    word.append(entry.getKey());
+                    node = entry.getValue();
+                }
+                this.singleWord = word.toString();
+            }
+
+            for (int state = 0; state < stateCount; state++) {
+                char[] chars = this.transitionChars[state];
+                int[] states = this.transitionStates[state];
+
+                for (int i = 0; i < chars.length; i++) {
+                    int childState = states[i];
+                    int failureState = 0;
+
+                    if (state != 0) {
+                        failureState = this.failureStates[state];
+                        while (failureState != 0 && this.getTransition(failureState, chars[i]) < 0) {
+                            failureState = this.failureStates[failureState];
+                        }
+                        failureState = Math.max(this.getTransition(failureState, chars[i]), 0);
+                    }
+
+                    this.failureStates[childState] = failureState;
+                    this.matchLengths[childState] = Math.max(
+                            this.matchLengths[childState],
+                            this.matchLengths[failureState]);
+                }
+            }
+        }
+
+        private int getTransition(int state, char c) {
+            int index = Arrays.binarySearch(this.transitionChars[state], c);
+            return index >= 0 ? this.transitionStates[state][index] : -1;
+        }
+
+        boolean isEmpty() {
+            return this.isEmpty;
+        }
+
+        MatchList findMatches(String text, MatchList matches) {
+            if (this.isEmpty || text.length() < this.minLength) {
+                return matches;
+            }
+
+            if (this.singleWord != null) {
+                int index = text.indexOf(this.singleWord);
+                while (index >= 0) {
+                    matches = MatchList.add(matches, index, index + this.singleWord.length());
+                    index = text.indexOf(this.singleWord, index + 1);
+                }
+
+                return matches;
+            }
+
+            int state = 0;
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                int nextState;
+
+                if (state == 0 && c < this.asciiRootStates.length) {
+                    nextState = this.asciiRootStates[c];
+                    if (nextState == 0) {
+                        continue;
+                    }
+                } else {
+                    nextState = this.getTransition(state, c);
+                }
+
+                while (nextState < 0 && state != 0) {
+                    state = this.failureStates[state];
+                    nextState = this.getTransition(state, c);
+                }
+                state = Math.max(nextState, 0);
+
+                int matchLength = this.matchLengths[state];
+                if (matchLength > 0) {
+                    matches = MatchList.add(matches, i + 1 - matchLength, i + 1);
+                }
+            }
+
+            return matches;
+        }
+    }
+
+    /**
+     * The ranges of text that must be masked. Every range is packed into a
+     * long value, with the start index in the high half, so that sorting the
+     * values sorts the ranges by their start index.
+     */
+    private static class MatchList {
+
+        private long[] ranges = new long[8];
+
+        private int size = 0;
+
+        /**
+         * Adds a range to the specified list, creating the list if it's null.
+         * Lists are only created once a match is found, since most texts
+         * don't contain any secrets.
+         */
+        static MatchList add(MatchList matches, int start, int end) {
+            if (matches == null) {
+                matches = new MatchList();
+            }
+
+            matches.addRange(start, end);
+            return matches;
+        }
+
+        private void addRange(int start, int end) {
+            if (this.size == this.ranges.length) {
+                this.ranges = Arrays.copyOf(this.ranges, this.size * 2);
+            }
+
+            this.ranges[this.size++] = ((long) start << 32) | end;
+        }
+
+        /**
+         * Replaces all the matched ranges with the mask string, merging the
+         * ranges that overlap.
+         */
+        String apply(String text) {
+            Arrays.sort(this.ranges, 0, this.size);
+
+            StringBuilder result = new StringBuilder(text.length());
+            int position = 0;
+            int index = 0;
+
+            while (index < this.size) {
+                int start = (int) (this.ranges[index] >>> 32);
+                int end = (int) this.ranges[index];
+                index++;
+
+                while (index < this.size && (int) (this.ranges[index] >>> 32) < end) {
+                    end = Math.max(end, (int) this.ranges[index]);
+                    index++;
+                }
+
+                result.append(text, position, start).append(MASK);
+                position = end;
+            }
+
+            result.append(text, position, text.length());
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.getopentest.script;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the maps and lists that GraalJsEngine exposes to JS code as objects
+ * and arrays, either directly from JSON data or by copying Java collections.
+ * JSON data is read with a streaming parser, so the maps and lists are built
+ * while the data is being parsed, without any intermediate JSON tree.
+ */
+class CollectionBuilder {
+
+    /**
+     * Parses the JSON data and returns the equivalent maps and lists.
+     */
+    public static Object fromJson(Reader jsonReader) throws IOException {
+        JsonReader reader = new JsonReader(jsonReader);
+        Object value = readValue(reader);
+
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new IOException(String.format(
+                    "Unexpected JSON data after the end of the top-level value at %s",
+                    reader.getPath()));
+        }
+
+        return value;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    map.put(key, readValue(reader));
+                }
+                reader.endObject();
+                return map;
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(readValue(reader));
+                }
+                reader.endArray();
+                return list;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return toJsNumber(Double.parseDouble(reader.nextString()));
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                throw new IOException(String.format(
+                        "Unexpected JSON token %s at %s",
+                        reader.peek(), reader.getPath()));
+        }
+    }
+
+    /**
+     * Copies maps, lists and Java arrays recursively, the same way JSON.parse
+     * would create them from their JSON representation. Numbers are converted
+     * to Integer or Double, which are the types JS numbers map to. All other
+     * values are returned unchanged.
+     */
+    public static Object fromJava(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), fromJava(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(fromJava(item));
+            }
+            return list;
+        } else if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            List<Object> list = new ArrayList<>(length);
+            for (int index = 0; index < length; index++) {
+                list.add(fromJava(Array.get(value, index)));
+            }
+            return list;
+        } else if (value instanceof Number && !(value instanceof Integer) && !(value instanceof Double)) {
+            return toJsNumber(((Number) value).doubleValue());
+        } else if (value instanceof Character) {
+            return value.toString();
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * Returns an Integer for integral values that fit in an int (except for
+     * negative zero) and a Double otherwise, which is how JSON.parse
+     * represents numbers.
+     */
+    private static Object toJsNumber(double number) {
+        if (number == (int) number && !(number == 0 && 1 / number < 0)) {
+            return (int) number;
+        } else {
+            return number;
+        }
+    }
+}
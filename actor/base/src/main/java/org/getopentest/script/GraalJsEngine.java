@@ -0,0 +1,629 @@
+package org.getopentest.script;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.script.ScriptException;
+import org.getopentest.contracts.IScriptEngine;
+import org.getopentest.contracts.IScriptObject;
+import org.getopentest.util.ActorContext;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.SourceSection;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * Script engine backed by GraalJS. All the instances share the same polyglot
+ * engine, which caches the parsed and compiled form of every source it
+ * evaluates, so a script is only compiled once per JVM, no matter how many
+ * contexts (global scopes) evaluate it. Creating a context is relatively
+ * expensive, so a few contexts are created ahead of time in a background
+ * thread and reset() simply takes the next one from the pool.
+ *
+ * JS values are converted to standard Java types when they are returned to
+ * Java code: objects become Map instances, arrays become List instances and
+ * functions become IScriptObject instances. Maps, lists, Java arrays and
+ * IScriptObject instances are exposed to JS code through proxies that behave
+ * like JS objects, arrays and functions, so the Java APIs of the test actor
+ * work the same way they do with Nashorn. Unlike with Nashorn, a JS object stored in a
+ * Java object (e.g. in $localData) is a copy, so changing the original JS
+ * object afterwards doesn't change the stored value.
+ */
+public class GraalJsEngine implements IScriptEngine {
+
+    /**
+     * The names of the members inherited from Object.prototype and
+     * Function.prototype, which must not be looked up in IScriptObject
+     * instances.
+     */
+    private static final Set<String> PROTOTYPE_MEMBERS = new HashSet<>(Arrays.asList(
+            "__proto__", "apply", "bind", "call", "constructor", "hasOwnProperty",
+            "isPrototypeOf", "length", "name", "propertyIsEnumerable",
+            "toLocaleString", "toString", "valueOf"));
+
+    private static final Source UNDEFINED_SOURCE = Source.create("js", "undefined");
+
+    private static Engine sharedEngine;
+
+    private static Map<String, Source> sourceCache;
+
+    private static final BlockingQueue<Context> contextPool = new LinkedBlockingQueue<>();
+
+    private static ExecutorService contextFactory;
+
+    private final int contextPoolSize;
+
+    private Context context;
+
+    private Value bindings;
+
+    private Value undefined;
+
+    private Map<String, Object> globalBindings = new LinkedHashMap<>();
+
+    private List<String> bootstrapScripts = new ArrayList<>();
+
+    /**
+     * @param sourceCacheSize The maximum number of sources to cache. The
+     * cache is shared by all the instances and its size is determined by the
+     * first one created. Zero disables source caching.
+     * @param contextPoolSize The number of contexts to create in advance.
+     */
+    public GraalJsEngine(int sourceCacheSize, int contextPoolSize) {
+        this.contextPoolSize = contextPoolSize;
+
+        synchronized (GraalJsEngine.class) {
+            if (sharedEngine == null) {
+                sharedEngine = Engine.newBuilder().build();
+                sourceCache = sourceCacheSize > 0
+                        ? Collections.synchronizedMap(new LinkedHashMap<String, Source>(16, 0.75f, true) {
+                            @Override
+                            protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+                                return size() > sourceCacheSize;
+                            }
+                        })
+                        : null;
+                // Shared by all the test actors in the JVM, so the thread must
+                // not be bound to the context of the actor that started it
+                contextFactory = Executors.newSingleThreadExecutor((runnable) -> {
+                    Thread thread = ActorContext.newUnboundThread(runnable, "GraalJS context factory");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+
+        this.fillContextPool();
+    }
+
+    private static Context createContext() {
+        return Context.newBuilder("js")
+                .engine(sharedEngine)
+                .allowHostAccess(HostAccess.ALL)
+                .allowHostClassLookup((className) -> true)
+                .allowExperimentalOptions(true)
+                .option("js.foreign-object-prototype", "true")
+                .option("js.nashorn-compat", "true")
+                .build();
+    }
+
+    /**
+     * Creates contexts in the background until the pool holds
+     * contextPoolSize of them.
+     */
+    private void fillContextPool() {
+        int poolSize = this.contextPoolSize;
+
+        contextFactory.submit(() -> {
+            while (contextPool.size() < poolSize) {
+                contextPool.offer(createContext());
+            }
+        });
+    }
+
+    private Source getSource(String code) {
+        if (sourceCache == null) {
+            return Source.create("js", code);
+        }
+
+        return sourceCache.computeIfAbsent(code, (key) -> Source.create("js", key));
+    }
+
+    @Override
+    public void setGlobals(Map<String, Object> bindings, List<String> bootstrapScripts) {
+        this.globalBindings = new LinkedHashMap<>(bindings);
+        this.bootstrapScripts = new ArrayList<>(bootstrapScripts);
+    }
+
+    @Override
+    public void reset() {
+        Context previousContext = this.context;
+
+        Context newContext = contextPool.poll();
+        if (newContext == null) {
+            newContext = createContext();
+        }
+        this.fillContextPool();
+
+        this.context = newContext;
+        this.bindings = newContext.getBindings("js");
+        this.undefined = newContext.eval(UNDEFINED_SOURCE);
+
+        if (previousContext != null) {
+            previousContext.close();
+        }
+
+        for (Map.Entry<String, Object> entry : this.globalBindings.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
+
+        for (String script : this.bootstrapScripts) {
+            try {
+                this.eval(script);
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to evaluate JS code while preparing the JS interpreter", ex);
+            }
+        }
+    }
+
+    @Override
+    public Object eval(String code) throws ScriptException {
+        try {
+            return this.toJava(this.context.eval(this.getSource(code)));
+        } catch (PolyglotException ex) {
+            if (ex.isHostException() && ex.asHostException() instanceof RuntimeException) {
+                throw (RuntimeException) ex.asHostException();
+            } else if (ex.isHostException()) {
+                throw (ScriptException) new ScriptException(ex.getMessage()).initCause(ex.asHostException());
+            }
+
+            SourceSection location = ex.getSourceLocation();
+            ScriptException scriptException = location != null
+                    ? new ScriptException(ex.getMessage(), "<eval>", location.getStartLine(), location.getStartColumn())
+                    : new ScriptException(ex.getMessage());
+            scriptException.initCause(ex);
+            throw scriptException;
+        }
+    }
+
+    @Override
+    public void put(String name, Object value) {
+        this.bindings.putMember(name, this.toJs(value));
+    }
+
+    @Override
+    public boolean isNativeObject(Object value) {
+        // JS objects and arrays are always converted to Java types
+        return false;
+    }
+
+    @Override
+    public boolean isNativeArray(Object value) {
+        return false;
+    }
+
+    @Override
+    public Object toJavaType(Object value) {
+        return value;
+    }
+
+    @Override
+    public Object toNativeType(Object value) {
+        if (value instanceof IScriptObject) {
+            return value;
+        }
+
+        // Maps and lists are exposed to JS code through proxies. They are only
+        // copied, so that changes made by JS code don't affect the originals
+        return CollectionBuilder.fromJava(value);
+    }
+
+    @Override
+    public Predicate<Object> toPredicate(Object function) {
+        if (!(function instanceof IScriptObject) || !((IScriptObject) function).isFunction()) {
+            return null;
+        }
+
+        IScriptObject scriptFunction = (IScriptObject) function;
+        return (value) -> isTruthy(this.context.asValue(this.toJs(scriptFunction.call(value))));
+    }
+
+    @Override
+    public Object parseJson(String json) throws IOException {
+        return CollectionBuilder.fromJson(new StringReader(json));
+    }
+
+    @Override
+    public void close() {
+        if (this.context != null) {
+            this.context.close();
+            this.context = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GraalJS, cached sources: %s, pooled contexts: %s",
+                sourceCache != null ? sourceCache.size() : "disabled",
+                contextPool.size());
+    }
+
+    /**
+     * Converts a JS value to a boolean the same way JS code does (e.g. in an
+     * if statement).
+     */
+    private static boolean isTruthy(Value value) {
+        if (value.isNull()) {
+            return false;
+        } else if (value.isBoolean()) {
+            return value.asBoolean();
+        } else if (value.isNumber()) {
+            double number = value.asDouble();
+            return number != 0 && !Double.isNaN(number);
+        } else if (value.isString()) {
+            return !value.asString().isEmpty();
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Converts a JS value to the equivalent Java value.
+     */
+    private Object toJava(Value value) {
+        if (value.isNull()) {
+            return null;
+        } else if (value.isProxyObject()) {
+            Object proxy = value.asProxyObject();
+            return proxy instanceof JavaValueProxy ? ((JavaValueProxy) proxy).getJavaValue() : proxy;
+        } else if (value.isHostObject()) {
+            return value.asHostObject();
+        } else if (value.isBoolean()) {
+            return value.asBoolean();
+        } else if (value.isString()) {
+            return value.asString();
+        } else if (value.isNumber()) {
+            return value.fitsInInt() ? (Object) value.asInt() : (Object) value.asDouble();
+        } else if (value.canExecute()) {
+            return new JsFunction(value);
+        } else if (value.hasArrayElements()) {
+            int size = (int) value.getArraySize();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(this.toJava(value.getArrayElement(i)));
+            }
+            return list;
+        } else if (value.hasMembers()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : value.getMemberKeys()) {
+                map.put(key, this.toJava(value.getMember(key)));
+            }
+            return map;
+        } else {
+            return value.toString();
+        }
+    }
+
+    private Object[] toJava(Value[] values) {
+        Object[] javaValues = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            javaValues[i] = this.toJava(values[i]);
+        }
+        return javaValues;
+    }
+
+    /**
+     * Converts a Java value to a value that can be used by JS code in the
+     * current context.
+     */
+    private Object toJs(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value == IScriptEngine.UNDEFINED) {
+            return this.undefined;
+        } else if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof JsFunction && ((JsFunction) value).getEngine() == this
+                && ((JsFunction) value).function.getContext() == this.context) {
+            return ((JsFunction) value).function;
+        } else if (value instanceof IScriptObject) {
+            return ((IScriptObject) value).isFunction()
+                    ? new ScriptFunctionProxy((IScriptObject) value)
+                    : new ScriptObjectProxy((IScriptObject) value);
+        } else if (value instanceof Map) {
+            return new MapProxy((Map<Object, Object>) value);
+        } else if (value instanceof List) {
+            return new ListProxy((List<Object>) value);
+        } else if (value instanceof Object[]) {
+            return new ListProxy(Arrays.asList((Object[]) value));
+        } else if (value instanceof Function || value instanceof BiFunction
+                || value instanceof Consumer || value instanceof BiConsumer
+                || value instanceof Supplier || value instanceof Runnable) {
+            return new JavaFunctionProxy(value);
+        } else {
+            return value;
+        }
+    }
+
+    private RuntimeException toRuntimeException(PolyglotException ex) {
+        if (ex.isHostException() && ex.asHostException() instanceof RuntimeException) {
+            return (RuntimeException) ex.asHostException();
+        } else {
+            return new RuntimeException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * A proxy that exposes a Java value to JS code.
+     */
+    private interface JavaValueProxy {
+
+        Object getJavaValue();
+    }
+
+    private class ScriptObjectProxy implements ProxyObject, JavaValueProxy {
+
+        protected final IScriptObject scriptObject;
+
+        ScriptObjectProxy(IScriptObject scriptObject) {
+            this.scriptObject = scriptObject;
+        }
+
+        @Override
+        public Object getJavaValue() {
+            return this.scriptObject;
+        }
+
+        @Override
+        public Object getMember(String key) {
+            return toJs(this.scriptObject.getMember(key));
+        }
+
+        @Override
+        public Object getMemberKeys() {
+            return ProxyArray.fromArray(this.scriptObject.keySet().toArray());
+        }
+
+        @Override
+        public boolean hasMember(String key) {
+            // Most IScriptObject implementations only override getMember, so
+            // every member is assumed to exist, except the ones inherited from
+            // the JS prototypes
+            return this.scriptObject.hasMember(key) || !PROTOTYPE_MEMBERS.contains(key);
+        }
+
+        @Override
+        public void putMember(String key, Value value) {
+            this.scriptObject.setMember(key, toJava(value));
+        }
+
+        @Override
+        public boolean removeMember(String key) {
+            this.scriptObject.removeMember(key);
+            return true;
+        }
+    }
+
+    private class ScriptFunctionProxy extends ScriptObjectProxy implements ProxyExecutable {
+
+        ScriptFunctionProxy(IScriptObject scriptObject) {
+            super(scriptObject);
+        }
+
+        @Override
+        public Object execute(Value... arguments) {
+            return toJs(this.scriptObject.call(toJava(arguments)));
+        }
+    }
+
+    private class MapProxy implements ProxyObject, JavaValueProxy {
+
+        private final Map<Object, Object> map;
+
+        MapProxy(Map<Object, Object> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Object getJavaValue() {
+            return this.map;
+        }
+
+        @Override
+        public Object getMember(String key) {
+            return toJs(this.map.get(key));
+        }
+
+        @Override
+        public Object getMemberKeys() {
+            return ProxyArray.fromArray(this.map.keySet().stream().map(String::valueOf).toArray());
+        }
+
+        @Override
+        public boolean hasMember(String key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public void putMember(String key, Value value) {
+            this.map.put(key, toJava(value));
+        }
+
+        @Override
+        public boolean removeMember(String key) {
+            if (this.map.containsKey(key)) {
+                this.map.remove(key);
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Exposes a list as a JS array. Setting an element past the end of the
+     * list grows the list, so Array.prototype.push works as expected.
+     */
+    private class ListProxy implements ProxyArray, JavaValueProxy {
+
+        private final List<Object> list;
+
+        ListProxy(List<Object> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object getJavaValue() {
+            return this.list;
+        }
+
+        @Override
+        public Object get(long index) {
+            if (index < 0 || index >= this.list.size()) {
+                throw new ArrayIndexOutOfBoundsException((int) index);
+            }
+
+            return toJs(this.list.get((int) index));
+        }
+
+        @Override
+        public void set(long index, Value value) {
+            if (index < 0 || index > Integer.MAX_VALUE) {
+                throw new ArrayIndexOutOfBoundsException((int) index);
+            }
+
+            while (this.list.size() < index) {
+                this.list.add(null);
+            }
+
+            if (index == this.list.size()) {
+                this.list.add(toJava(value));
+            } else {
+                this.list.set((int) index, toJava(value));
+            }
+        }
+
+        @Override
+        public boolean remove(long index) {
+            if (index < 0 || index >= this.list.size()) {
+                return false;
+            }
+
+            this.list.remove((int) index);
+            return true;
+        }
+
+        @Override
+        public long getSize() {
+            return this.list.size();
+        }
+    }
+
+    /**
+     * Exposes the functional interfaces used by the JS APIs of the test actor
+     * (Function, Consumer, etc.) as JS functions.
+     */
+    private class JavaFunctionProxy implements ProxyExecutable, JavaValueProxy {
+
+        private final Object function;
+
+        JavaFunctionProxy(Object function) {
+            this.function = function;
+        }
+
+        @Override
+        public Object getJavaValue() {
+            return this.function;
+        }
+
+        @Override
+        public Object execute(Value... arguments) {
+            Object[] args = toJava(arguments);
+            Object arg0 = args.length > 0 ? args[0] : null;
+            Object arg1 = args.length > 1 ? args[1] : null;
+
+            if (this.function instanceof Function) {
+                return toJs(((Function<Object, Object>) this.function).apply(arg0));
+            } else if (this.function instanceof BiFunction) {
+                return toJs(((BiFunction<Object, Object, Object>) this.function).apply(arg0, arg1));
+            } else if (this.function instanceof Consumer) {
+                ((Consumer<Object>) this.function).accept(arg0);
+            } else if (this.function instanceof BiConsumer) {
+                ((BiConsumer<Object, Object>) this.function).accept(arg0, arg1);
+            } else if (this.function instanceof Supplier) {
+                return toJs(((Supplier<Object>) this.function).get());
+            } else {
+                ((Runnable) this.function).run();
+            }
+
+            return undefined;
+        }
+    }
+
+    /**
+     * A JS function returned to Java code. It can only be called while the
+     * context it was created in is still open, i.e. during the current test.
+     */
+    private class JsFunction implements IScriptObject {
+
+        /**
+         * Transient, so that serializing the function to JSON doesn't
+         * serialize the internals of the polyglot value.
+         */
+        private final transient Value function;
+
+        JsFunction(Value function) {
+            this.function = function;
+        }
+
+        GraalJsEngine getEngine() {
+            return GraalJsEngine.this;
+        }
+
+        @Override
+        public boolean isFunction() {
+            return true;
+        }
+
+        @Override
+        public Object call(Object... args) {
+            try {
+                Object[] jsArgs = new Object[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    jsArgs[i] = toJs(args[i]);
+                }
+                return toJava(this.function.execute(jsArgs));
+            } catch (PolyglotException ex) {
+                throw toRuntimeException(ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.function.toString();
+        }
+    }
+}
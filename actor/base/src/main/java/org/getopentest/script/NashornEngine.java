@@ -0,0 +1,346 @@
+package org.getopentest.script;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import jdk.nashorn.api.scripting.AbstractJSObject;
+import jdk.nashorn.api.scripting.JSObject;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import jdk.nashorn.internal.runtime.JSType;
+import jdk.nashorn.internal.runtime.Undefined;
+import org.getopentest.base.CompiledScriptCache;
+import org.getopentest.contracts.IScriptEngine;
+import org.getopentest.contracts.IScriptObject;
+import org.getopentest.util.Factory;
+
+/**
+ * Script engine backed by the Nashorn JavaScript engine that ships with the
+ * JDK. The same Nashorn engine is used for the whole lifetime of this object
+ * and only its global scope is replaced on reset, so Nashorn's class cache and
+ * the compiled script cache survive from one test to the next.
+ *
+ * This is the only class that uses the Nashorn APIs, since Nashorn is not
+ * available on JDK 15 and later. IScriptObject instances are exposed to JS code
+ * through adapters that implement Nashorn's JSObject interface.
+ */
+public class NashornEngine implements IScriptEngine {
+
+    /**
+     * True if the Nashorn classes are available in the current JVM.
+     */
+    private static final boolean available = isNashornAvailable();
+
+    private ScriptEngine engine;
+
+    /**
+     * Caches the compiled form of the evaluated JavaScript code. Null when
+     * script caching is disabled.
+     */
+    private CompiledScriptCache scriptCache;
+
+    private Map<String, Object> globalBindings = new HashMap<>();
+
+    private List<String> bootstrapScripts = new ArrayList<>();
+
+    /**
+     * The JSON object of the current global scope. Null until it is first
+     * needed after a reset.
+     */
+    private ScriptObjectMirror json;
+
+    /**
+     * @param scriptCacheSize The maximum number of compiled scripts to cache.
+     * Zero disables script caching.
+     */
+    public NashornEngine(int scriptCacheSize) {
+        this.engine = new NashornScriptEngineFactory().getScriptEngine();
+        this.scriptCache = scriptCacheSize > 0
+                ? new CompiledScriptCache(this.engine, scriptCacheSize)
+                : null;
+    }
+
+    @Override
+    public void setGlobals(Map<String, Object> bindings, List<String> bootstrapScripts) {
+        this.globalBindings = new HashMap<>(bindings);
+        this.bootstrapScripts = new ArrayList<>(bootstrapScripts);
+    }
+
+    private static boolean isNashornAvailable() {
+        try {
+            Class.forName("jdk.nashorn.api.scripting.ScriptObjectMirror");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Registers the Gson serializer for the JS objects returned by Nashorn,
+     * if Nashorn is available in the current JVM. Without it, Gson would
+     * serialize JS arrays as objects (the same way it serializes Java maps).
+     */
+    public static GsonBuilder registerTypeAdapters(GsonBuilder builder, boolean serializeNulls) {
+        if (available) {
+            builder.registerTypeAdapter(ScriptObjectMirror.class, new ScriptObjectMirrorSerializer(serializeNulls));
+        }
+
+        return builder;
+    }
+
+    @Override
+    public void reset() {
+        Bindings bindings = this.engine.createBindings();
+        for (Map.Entry<String, Object> entry : this.globalBindings.entrySet()) {
+            bindings.put(entry.getKey(), toNashornType(entry.getValue()));
+        }
+        this.engine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        this.json = null;
+
+        for (String script : this.bootstrapScripts) {
+            try {
+                this.eval(script);
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to evaluate JS code while preparing the JS interpreter", ex);
+            }
+        }
+    }
+
+    @Override
+    public Object eval(String code) throws ScriptException {
+        if (this.scriptCache != null) {
+            return this.scriptCache.get(code).eval();
+        } else {
+            return this.engine.eval(code);
+        }
+    }
+
+    @Override
+    public void put(String name, Object value) {
+        this.engine.put(name, toNashornType(value));
+    }
+
+    @Override
+    public boolean isNativeObject(Object value) {
+        return value instanceof ScriptObjectMirror;
+    }
+
+    @Override
+    public boolean isNativeArray(Object value) {
+        return value instanceof ScriptObjectMirror && ((ScriptObjectMirror) value).isArray();
+    }
+
+    @Override
+    public Object toJavaType(Object value) {
+        if (value instanceof ScriptObjectAdapter) {
+            return ((ScriptObjectAdapter) value).scriptObject;
+        } else if (value instanceof ScriptObjectMirror) {
+            ScriptObjectMirror scriptObjectMirror = (ScriptObjectMirror) value;
+            if (scriptObjectMirror.isArray()) {
+                List<Object> list = new ArrayList<>();
+                for (Map.Entry<String, Object> entry : scriptObjectMirror.entrySet()) {
+                    list.add(toJavaType(entry.getValue()));
+                }
+                return list;
+            } else {
+                Map<String, Object> map = new HashMap<>();
+                for (Map.Entry<String, Object> entry : scriptObjectMirror.entrySet()) {
+                    map.put(entry.getKey(), toJavaType(entry.getValue()));
+                }
+                return map;
+            }
+        } else {
+            return value;
+        }
+    }
+
+    @Override
+    public Object toNativeType(Object value) {
+        if (value instanceof ScriptObjectMirror) {
+            return value;
+        } else if (value instanceof IScriptObject) {
+            return toNashornType(value);
+        }
+
+        return this.getJson().callMember("parse", Factory.getGson().toJson(value));
+    }
+
+    @Override
+    public Predicate<Object> toPredicate(Object function) {
+        Object nashornFunction = toNashornType(function);
+        if (!(nashornFunction instanceof JSObject) || !((JSObject) nashornFunction).isFunction()) {
+            return null;
+        }
+
+        return (value) -> JSType.toBoolean(((JSObject) nashornFunction).call(null, value));
+    }
+
+    /**
+     * Parses JSON data by calling JSON.parse directly, instead of evaluating
+     * a script that contains the data as a string literal. That would require
+     * escaping the data and compiling a new script every time.
+     */
+    @Override
+    public Object parseJson(String json) {
+        return this.getJson().callMember("parse", json);
+    }
+
+    private ScriptObjectMirror getJson() {
+        if (this.json == null) {
+            try {
+                this.json = (ScriptObjectMirror) this.engine.eval("JSON");
+            } catch (ScriptException ex) {
+                throw new RuntimeException("Failed to get the JS JSON object", ex);
+            }
+        }
+
+        return this.json;
+    }
+
+    /**
+     * Converts the values that Java APIs return to JS code to the types
+     * Nashorn understands.
+     */
+    private static Object toNashornType(Object value) {
+        if (value instanceof IScriptObject) {
+            return new ScriptObjectAdapter((IScriptObject) value);
+        } else if (value == IScriptEngine.UNDEFINED) {
+            return Undefined.getUndefined();
+        } else {
+            return value;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Nashorn, compiled script cache: %s",
+                this.scriptCache != null ? this.scriptCache : "disabled");
+    }
+
+    /**
+     * Exposes an IScriptObject to JS code as a Nashorn JSObject.
+     */
+    private static class ScriptObjectAdapter extends AbstractJSObject {
+
+        private final IScriptObject scriptObject;
+
+        ScriptObjectAdapter(IScriptObject scriptObject) {
+            this.scriptObject = scriptObject;
+        }
+
+        @Override
+        public Object call(Object thiz, Object... args) {
+            return toNashornType(this.scriptObject.call(args));
+        }
+
+        @Override
+        public Object getMember(String name) {
+            return toNashornType(this.scriptObject.getMember(name));
+        }
+
+        @Override
+        public boolean hasMember(String name) {
+            return this.scriptObject.hasMember(name);
+        }
+
+        @Override
+        public boolean isFunction() {
+            return this.scriptObject.isFunction();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return this.scriptObject.keySet();
+        }
+
+        @Override
+        public void removeMember(String name) {
+            this.scriptObject.removeMember(name);
+        }
+
+        @Override
+        public void setMember(String name, Object value) {
+            this.scriptObject.setMember(name, value);
+        }
+
+        @Override
+        public String toString() {
+            return this.scriptObject.toString();
+        }
+    }
+
+    /**
+     * Custom Gson serializer for ScriptObjectMirror instances. Without using a
+     * custom serializer, Gson will serialize JavaScript arrays as objects (the
+     * same way it serializes Java maps).
+     */
+    private static class ScriptObjectMirrorSerializer implements JsonSerializer<ScriptObjectMirror> {
+
+        /**
+         * The Gson instances used to serialize the content of the JS objects,
+         * with and without null values. They are created on first use and
+         * shared by all serializer instances, since building a Gson object is
+         * expensive.
+         */
+        private static volatile Gson gsonWithNulls;
+
+        private static volatile Gson gsonWithoutNulls;
+
+        private boolean serializeNulls;
+
+        ScriptObjectMirrorSerializer(boolean serializeNulls) {
+            this.serializeNulls = serializeNulls;
+        }
+
+        private Gson getGson() {
+            Gson gson = this.serializeNulls ? gsonWithNulls : gsonWithoutNulls;
+
+            if (gson == null) {
+                GsonBuilder builder = Factory.getGsonBuilder();
+
+                if (this.serializeNulls) {
+                    builder = builder.serializeNulls();
+                }
+
+                gson = builder
+                        .registerTypeAdapter(ScriptObjectMirror.class, new ScriptObjectMirrorSerializer(this.serializeNulls))
+                        .create();
+
+                if (this.serializeNulls) {
+                    gsonWithNulls = gson;
+                } else {
+                    gsonWithoutNulls = gson;
+                }
+            }
+
+            return gson;
+        }
+
+        @Override
+        public JsonElement serialize(ScriptObjectMirror src, java.lang.reflect.Type typeOfSrc, JsonSerializationContext context) {
+            if (src.isArray()) {
+                return this.getGson().toJsonTree(src.values());
+            } else {
+                Map<String, Object> map = new HashMap<>();
+                map.putAll(src);
+                return this.getGson().toJsonTree(map);
+            }
+        }
+    }
+}
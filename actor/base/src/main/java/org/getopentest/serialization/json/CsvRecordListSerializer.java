@@ -0,0 +1,19 @@
+package org.getopentest.serialization.json;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import org.getopentest.util.CsvRecordList;
+
+/**
+ * Serializes CSV record lists as a short description, so that logging an
+ * action's output doesn't read (and load in memory) the whole CSV data.
+ */
+public class CsvRecordListSerializer implements JsonSerializer<CsvRecordList> {
+
+    @Override
+    public JsonElement serialize(CsvRecordList src, java.lang.reflect.Type typeOfSrc, JsonSerializationContext context) {
+        return new JsonPrimitive(src.toString());
+    }
+}
@@ -3,6 +3,9 @@ package org.getopentest.serialization.json;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Avoids serialization errors when duplicate fields exist in the inheritance
@@ -13,29 +16,36 @@ import java.lang.reflect.Field;
  */
 public class DuplicateFieldExclusionStrategy implements ExclusionStrategy {
 
-    private boolean isFieldInSuperclass(Class<?> subclass, String fieldName) {
-        Class<?> superclass = subclass.getSuperclass();
-        Field field;
-
-        while (superclass != null) {
-            field = getField(superclass, fieldName);
-
-            if (field != null) {
-                return true;
+    /**
+     * The names of all the fields declared in the superclasses of a class.
+     * The set is computed once per class and shared by all the instances of
+     * this strategy.
+     */
+    private static final ClassValue<Set<String>> superclassFieldNames = new ClassValue<Set<String>>() {
+        @Override
+        protected Set<String> computeValue(Class<?> subclass) {
+            Set<String> fieldNames = new HashSet<>();
+            Class<?> superclass = subclass.getSuperclass();
+
+            while (superclass != null) {
+                try {
+                    for (Field field : superclass.getDeclaredFields()) {
+                        fieldNames.add(field.getName());
+                    }
+                } catch (Exception ex) {
+                    // The fields of this class can't be inspected, so
+                    // they can't be considered duplicates
+                }
+
+                superclass = superclass.getSuperclass();
             }
 
-            superclass = superclass.getSuperclass();
+            return Collections.unmodifiableSet(fieldNames);
         }
+    };
 
-        return false;
-    }
-
-    private Field getField(Class<?> theClass, String fieldName) {
-        try {
-            return theClass.getDeclaredField(fieldName);
-        } catch (Exception e) {
-            return null;
-        }
+    private boolean isFieldInSuperclass(Class<?> subclass, String fieldName) {
+        return superclassFieldNames.get(subclass).contains(fieldName);
     }
 
     @Override
@@ -1,19 +1,33 @@
 package org.getopentest.serialization.json;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
-import java.lang.reflect.Type;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Customizes the JSON serialization of Map objects by limiting the maximum
  * length of map values.
+ *
+ * Every value is serialized into a buffer that can hold at most
+ * logEntryMaxChars characters. As soon as a value goes over the limit, its
+ * serialization is abandoned (without descending any further into nested
+ * objects and arrays) and the value is replaced with its first
+ * logEntryTrimmedSize characters, followed by a truncation marker. The memory
+ * used to serialize a map is therefore proportional to the maximum length of
+ * a value, not to the size of the data.
  */
-public class TrimmableMapSerializer implements JsonSerializer<Map> {
+public class TrimmableMapSerializer implements TypeAdapterFactory {
+
+    private static final String TRUNCATION_MARKER = " <<VALUE_WAS_TRUNCATED>>";
 
     private int logEntryMaxChars;
 
@@ -25,36 +39,222 @@ public class TrimmableMapSerializer implements JsonSerializer<Map> {
     }
 
     @Override
-    public JsonElement serialize(Map srcMap, Type typeOfSrc, JsonSerializationContext context) {
-        if (this.logEntryMaxChars == 0) {
-            return context.serialize(new HashMap(srcMap));
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != TrimmableMap.class) {
+            return null;
         }
 
-        JsonObject obj = new JsonObject();
+        return (TypeAdapter<T>) new TrimmableMapAdapter(gson, gson.getDelegateAdapter(this, type));
+    }
+
+    private String trim(String value) {
+        return value.substring(0, Math.min(this.logEntryTrimmedSize, value.length())) + TRUNCATION_MARKER;
+    }
+
+    private class TrimmableMapAdapter extends TypeAdapter<Map> {
 
-        for (Object key : srcMap.keySet()) {
-            JsonElement jsonElement = context.serialize(srcMap.get(key));
+        private Gson gson;
 
-            if (jsonElement instanceof JsonPrimitive) {
-                JsonPrimitive primitive = (JsonPrimitive) jsonElement;
-                // Truncate string values, if too large
-                if (primitive.isString()) {
-                    String jsonElementStr = jsonElement.getAsString();
-                    if (jsonElementStr.length() > this.logEntryMaxChars) {
-                        jsonElement = new JsonPrimitive(jsonElementStr.substring(0, this.logEntryTrimmedSize) + " <<VALUE_WAS_TRUNCATED>>");
-                    }
+        private TypeAdapter delegate;
+
+        TrimmableMapAdapter(Gson gson, TypeAdapter delegate) {
+            this.gson = gson;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map read(JsonReader in) throws IOException {
+            return (Map) this.delegate.read(in);
+        }
+
+        @Override
+        public void write(JsonWriter out, Map srcMap) throws IOException {
+            if (srcMap == null) {
+                out.nullValue();
+                return;
+            }
+
+            if (logEntryMaxChars == 0) {
+                this.gson.getAdapter(HashMap.class).write(out, new HashMap(srcMap));
+                return;
+            }
+
+            out.beginObject();
+
+            for (Object key : srcMap.keySet()) {
+                Object value = srcMap.get(key);
+                out.name(String.valueOf(key));
+
+                if (value == null) {
+                    out.nullValue();
+                } else if (value instanceof String) {
+                    // Strings are already in memory, so there's no need to
+                    // serialize them to find out their length
+                    String strValue = (String) value;
+                    out.value(strValue.length() > logEntryMaxChars ? trim(strValue) : strValue);
+                } else {
+                    this.writeBoundedValue(out, value);
                 }
+            }
+
+            out.endObject();
+        }
+
+        private void writeBoundedValue(JsonWriter out, Object value) throws IOException {
+            BoundedWriter buffer = new BoundedWriter(logEntryMaxChars);
+            BoundedJsonWriter bufferWriter = new BoundedJsonWriter(buffer);
+            bufferWriter.setLenient(true);
+            bufferWriter.setHtmlSafe(out.isHtmlSafe());
+            bufferWriter.setSerializeNulls(out.getSerializeNulls());
+
+            try {
+                TypeAdapter adapter = this.gson.getAdapter(value.getClass());
+                adapter.write(bufferWriter, value);
+                bufferWriter.flush();
+            } catch (LimitExceededException ex) {
+                // Values that serialize to a JSON string are trimmed based on
+                // the string's content, while all other values are trimmed
+                // based on their JSON representation
+                out.value(trim(ex.stringValue != null ? ex.stringValue : buffer.toString()));
+                return;
+            }
+
+            if (bufferWriter.stringValue != null) {
+                out.value(bufferWriter.stringValue);
             } else {
-                // Truncate values of type object/array, if too large
-                String jsonElementStr = jsonElement.toString();
-                if (jsonElementStr.length() > this.logEntryMaxChars) {
-                    jsonElement = new JsonPrimitive(jsonElementStr.substring(0, this.logEntryTrimmedSize) + " <<VALUE_WAS_TRUNCATED>>");
-                }
+                // Not all writers support raw JSON values (e.g. the one used by
+                // Gson.toJsonTree), so the buffered value is read back as a
+                // JSON element. The buffer is small, since it's bounded.
+                JsonReader bufferReader = new JsonReader(new StringReader(buffer.toString()));
+                bufferReader.setLenient(true);
+                TypeAdapter<JsonElement> elementAdapter = this.gson.getAdapter(JsonElement.class);
+                elementAdapter.write(out, elementAdapter.read(bufferReader));
+            }
+        }
+    }
+
+    /**
+     * Signals that a value has gone over the maximum length while being
+     * serialized.
+     */
+    private static class LimitExceededException extends IOException {
+
+        /**
+         * The value being serialized, if it was serialized to a JSON string.
+         */
+        private String stringValue;
+
+        LimitExceededException(String stringValue) {
+            super("The value exceeds the maximum length");
+            this.stringValue = stringValue;
+        }
+    }
+
+    /**
+     * Writer that buffers at most maxChars characters and throws as soon as
+     * more than that are written to it.
+     */
+    private static class BoundedWriter extends Writer {
+
+        private StringBuilder buffer = new StringBuilder();
+
+        private int maxChars;
+
+        BoundedWriter(int maxChars) {
+            this.maxChars = maxChars;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (this.buffer.length() + length > this.maxChars) {
+                this.buffer.append(chars, offset, Math.max(0, this.maxChars - this.buffer.length()));
+                throw new LimitExceededException(null);
             }
 
-            obj.add(key.toString(), jsonElement);
+            this.buffer.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) throws IOException {
+            if (this.buffer.length() + length > this.maxChars) {
+                this.buffer.append(str, offset, offset + Math.max(0, this.maxChars - this.buffer.length()));
+                throw new LimitExceededException(null);
+            }
+
+            this.buffer.append(str, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return this.buffer.toString();
+        }
+    }
+
+    /**
+     * JSON writer that checks the length of top-level string values instead
+     * of writing them, since the length limit applies to the content of
+     * strings, not to their escaped JSON representation.
+     */
+    private static class BoundedJsonWriter extends JsonWriter {
+
+        private int depth = 0;
+
+        /**
+         * The value that was written, if it was a top-level string.
+         */
+        private String stringValue;
+
+        private int maxChars;
+
+        BoundedJsonWriter(BoundedWriter writer) {
+            super(writer);
+            this.maxChars = writer.maxChars;
         }
 
-        return obj;
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            this.depth++;
+            return super.beginArray();
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            this.depth--;
+            return super.endArray();
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            this.depth++;
+            return super.beginObject();
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            this.depth--;
+            return super.endObject();
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (this.depth == 0 && value != null) {
+                if (value.length() > this.maxChars) {
+                    throw new LimitExceededException(value);
+                }
+
+                this.stringValue = value;
+                return this;
+            }
+
+            return super.value(value);
+        }
     }
 }
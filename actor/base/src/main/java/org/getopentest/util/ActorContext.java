@@ -0,0 +1,112 @@
+package org.getopentest.util;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.getopentest.contracts.ILogger;
+import org.getopentest.logging.ConsoleLogger;
+
+/**
+ * Holds the state that belongs to one test actor, so that multiple test actors
+ * can run side by side in the same JVM. Each actor thread is bound to its own
+ * context and the threads it starts (announce thread, log sender, etc.)
+ * inherit it. Threads that were never bound to a context (e.g. when running a
+ * single test actor) share a default context.
+ *
+ * Helper classes that used to keep their state in static fields (like the
+ * Selenium and Appium drivers) store it as context attributes instead.
+ */
+public class ActorContext {
+
+    private static final InheritableThreadLocal<ActorContext> currentContext = new InheritableThreadLocal<>();
+
+    private static final ActorContext defaultContext = new ActorContext();
+
+    private final Map<String, Object> attributes;
+
+    private volatile Config config;
+
+    private volatile ILogger logger;
+
+    public ActorContext() {
+        this.attributes = new ConcurrentHashMap<>();
+        this.logger = new ConsoleLogger();
+    }
+
+    /**
+     * Returns the context of the test actor that owns the current thread.
+     */
+    public static ActorContext getCurrent() {
+        ActorContext context = currentContext.get();
+        return context != null ? context : defaultContext;
+    }
+
+    /**
+     * Binds the current thread (and the threads it will start) to the
+     * specified context.
+     */
+    public static void setCurrent(ActorContext context) {
+        currentContext.set(context);
+    }
+
+    /**
+     * Returns a task that runs bound to the context of the current thread, no
+     * matter what thread executes it. Used for the tasks submitted to thread
+     * pools that are shared by all the test actors in the JVM.
+     */
+    public static <T> Callable<T> bindToCurrent(Callable<T> task) {
+        ActorContext context = currentContext.get();
+
+        return () -> {
+            ActorContext previousContext = currentContext.get();
+            currentContext.set(context);
+            try {
+                return task.call();
+            } finally {
+                currentContext.set(previousContext);
+            }
+        };
+    }
+
+    /**
+     * Creates a thread that is not bound to the context of the current
+     * thread. Used for the threads of thread pools that are shared by all the
+     * test actors in the JVM, which would otherwise inherit the context of
+     * the actor that happened to start them.
+     */
+    public static Thread newUnboundThread(Runnable runnable, String name) {
+        return new Thread(() -> {
+            currentContext.remove();
+            runnable.run();
+        }, name);
+    }
+
+    /**
+     * Returns the value of the specified attribute, creating it with the
+     * initializer if it doesn't exist yet.
+     */
+    public <T> T getAttribute(String name, Supplier<T> initializer) {
+        return (T) this.attributes.computeIfAbsent(name, (key) -> initializer.get());
+    }
+
+    /**
+     * Returns the configuration of the test actor, or null if the test actor
+     * didn't publish its configuration yet.
+     */
+    public Config getConfig() {
+        return this.config;
+    }
+
+    public ILogger getLogger() {
+        return this.logger;
+    }
+
+    public void setConfig(Config config) {
+        this.config = config;
+    }
+
+    public void setLogger(ILogger logger) {
+        this.logger = logger;
+    }
+}
@@ -10,32 +10,70 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import org.apache.commons.io.FilenameUtils;
 import org.getopentest.logging.Logger;
 
 /**
  * Loads properties or YAML configuration files from disk or JAR resources and
  * allows clients to read or modify the configuration properties.
+ *
+ * Property lookups are served from an immutable snapshot of the configuration
+ * data, in which all the nested properties are flattened and indexed by their
+ * full dotted path (e.g. "selenium.explicitWaitSec"), so reading a property
+ * doesn't involve parsing the property path. The typed values of the
+ * properties (e.g. the value of a property as an integer) are computed once
+ * per snapshot. The snapshot is rebuilt the first time a property is read
+ * after the configuration was changed with the set method. Changes made
+ * directly to the maps returned by asMap or getMap are not picked up.
  */
 public class Config {
 
+    /**
+     * The maximum number of property paths that are remembered as missing in
+     * a snapshot. Above this limit, lookups of missing properties are no
+     * longer memoized.
+     */
+    private static final int MAX_MISSING_PROPERTIES = 1000;
+
+    private final List<BiConsumer<String, Object>> changeListeners;
+
+    private volatile Snapshot snapshot;
+
     private Map<String, Object> store;
 
     public Config() {
-        this.store = new HashMap();
+        this(new HashMap());
     }
 
     public Config(Map<String, Object> store) {
+        this.changeListeners = new CopyOnWriteArrayList<>();
         this.store = store;
     }
 
+    /**
+     * Registers a function that will be called with the property path and
+     * the new value every time a property is changed using the set method.
+     */
+    public void addChangeListener(BiConsumer<String, Object> listener) {
+        this.changeListeners.add(listener);
+    }
+
     public Map<String, Object> asMap() {
         return this.store;
     }
 
     public Object get(String propertyPath) {
+        Property property = this.getProperty(propertyPath);
+        if (property != null) {
+            return property.value;
+        }
+
         try {
+            // The property is not defined, so we are only doing this to
+            // throw an exception that describes the problem
             return getRecursive(propertyPath, this.store);
         } catch (Throwable ex) {
             throw new RuntimeException(String.format(
@@ -45,35 +83,28 @@ public class Config {
     }
 
     public Object get(String propertyPath, Object defaultValue) {
-        if (this.hasProperty(propertyPath)) {
-            return get(propertyPath);
-        } else {
-            return defaultValue;
-        }
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.value : defaultValue;
     }
 
     public Boolean getBoolean(String propertyPath) {
-        return TypeConverter.toBooolean(get(propertyPath));
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.getBoolean() : TypeConverter.toBooolean(get(propertyPath));
     }
 
     public Boolean getBoolean(String propertyPath, Boolean defaultValue) {
-        if (this.hasProperty(propertyPath)) {
-            return this.getBoolean(propertyPath);
-        } else {
-            return defaultValue;
-        }
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.getBoolean() : defaultValue;
     }
 
     public Integer getInteger(String propertyPath) {
-        return TypeConverter.toInteger(this.get(propertyPath));
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.getInteger() : TypeConverter.toInteger(this.get(propertyPath));
     }
 
     public Integer getInteger(String propertyPath, Integer defaultValue) {
-        if (this.hasProperty(propertyPath)) {
-            return this.getInteger(propertyPath);
-        } else {
-            return defaultValue;
-        }
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.getInteger() : defaultValue;
     }
 
     public List getList(String propertyPath) {
@@ -114,29 +145,61 @@ public class Config {
         }
     }
 
+    /**
+     * Returns the specified property from the current snapshot, or null if
+     * the property is not defined.
+     */
+    private Property getProperty(String propertyPath) {
+        Snapshot currentSnapshot = this.snapshot;
+        if (currentSnapshot == null) {
+            synchronized (this) {
+                if (this.snapshot == null) {
+                    this.snapshot = new Snapshot(this.store);
+                }
+                currentSnapshot = this.snapshot;
+            }
+        }
+
+        Property property = currentSnapshot.properties.get(propertyPath);
+        if (property == null) {
+            // The path is not one of the flattened property paths, but it may
+            // still resolve to a property (e.g. "prop1." is the same as
+            // "prop1"), so we resolve it the slow way and remember the result
+            property = hasPropertyRecursive(propertyPath, currentSnapshot.store)
+                    ? new Property(getRecursive(propertyPath, currentSnapshot.store))
+                    : Property.MISSING;
+
+            if (currentSnapshot.properties.size() < currentSnapshot.flattenedCount + MAX_MISSING_PROPERTIES) {
+                currentSnapshot.properties.putIfAbsent(propertyPath, property);
+            }
+        }
+
+        return property != Property.MISSING ? property : null;
+    }
+
     public String getString(String propertyPath) {
-        return TypeConverter.toString(this.get(propertyPath));
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.getString() : TypeConverter.toString(this.get(propertyPath));
     }
 
     public String getString(String propertyPath, String defaultValue) {
-        if (this.hasProperty(propertyPath)) {
-            return this.getString(propertyPath);
-        } else {
-            return defaultValue;
-        }
+        Property property = this.getProperty(propertyPath);
+        return property != null ? property.getString() : defaultValue;
     }
 
-    private Object getRecursive(String propertyPath, Map<String, Object> map) {
-        Matcher matcher = StringUtil.executeRegex(propertyPath, "^(?<first>[^\\.]+)\\.?(?<rest>.+)?");
+    private static Object getRecursive(String propertyPath, Map<String, Object> map) {
+        int dotIndex = propertyPath.indexOf('.');
 
-        if (matcher == null) {
+        if (propertyPath.isEmpty() || dotIndex == 0) {
             throw new RuntimeException(String.format(
                     "Failed to read configuration property \"%s\".",
                     propertyPath));
         }
 
-        String firstPropertyName = matcher.group("first");
-        String restOfExpression = matcher.group("rest");
+        String firstPropertyName = dotIndex > 0 ? propertyPath.substring(0, dotIndex) : propertyPath;
+        String restOfExpression = dotIndex > 0 && dotIndex < propertyPath.length() - 1
+                ? propertyPath.substring(dotIndex + 1)
+                : null;
 
         if (restOfExpression == null) {
             // Since there were no dots in the property path, it means that we
@@ -175,21 +238,23 @@ public class Config {
      */
     public boolean hasProperty(String propertyPath) {
         try {
-            return hasPropertyRecursive(propertyPath, this.store);
+            return this.getProperty(propertyPath) != null;
         } catch (Throwable ex) {
             return false;
         }
     }
 
-    private boolean hasPropertyRecursive(String propertyPath, Map<String, Object> map) {
-        Matcher matcher = StringUtil.executeRegex(propertyPath, "^(?<first>[^\\.]+)\\.?(?<rest>.+)?");
+    private static boolean hasPropertyRecursive(String propertyPath, Map<String, Object> map) {
+        int dotIndex = propertyPath.indexOf('.');
 
-        if (matcher == null) {
+        if (propertyPath.isEmpty() || dotIndex == 0) {
             return false;
         }
 
-        String firstPropertyName = matcher.group("first");
-        String restOfExpression = matcher.group("rest");
+        String firstPropertyName = dotIndex > 0 ? propertyPath.substring(0, dotIndex) : propertyPath;
+        String restOfExpression = dotIndex > 0 && dotIndex < propertyPath.length() - 1
+                ? propertyPath.substring(dotIndex + 1)
+                : null;
 
         if (restOfExpression == null) {
             // Since there were no dots in the property path, it means that we
@@ -295,7 +360,103 @@ public class Config {
         return (Map<String, Object>) yamlObject;
     }
 
+    public void removeChangeListener(BiConsumer<String, Object> listener) {
+        this.changeListeners.remove(listener);
+    }
+
     public void set(String propertyPath, Object propertyValue) {
-        this.store.put(propertyPath, propertyValue);
+        synchronized (this) {
+            this.store.put(propertyPath, propertyValue);
+            this.snapshot = null;
+        }
+
+        for (BiConsumer<String, Object> listener : this.changeListeners) {
+            listener.accept(propertyPath, propertyValue);
+        }
+    }
+
+    /**
+     * A configuration property, along with its typed values, which are
+     * computed on first use.
+     */
+    private static class Property {
+
+        static final Property MISSING = new Property(null);
+
+        private Boolean booleanValue;
+
+        private Integer integerValue;
+
+        private String stringValue;
+
+        final Object value;
+
+        Property(Object value) {
+            this.value = value;
+        }
+
+        Boolean getBoolean() {
+            if (this.booleanValue == null) {
+                this.booleanValue = TypeConverter.toBooolean(this.value);
+            }
+            return this.booleanValue;
+        }
+
+        Integer getInteger() {
+            if (this.integerValue == null) {
+                this.integerValue = TypeConverter.toInteger(this.value);
+            }
+            return this.integerValue;
+        }
+
+        String getString() {
+            if (this.stringValue == null) {
+                this.stringValue = TypeConverter.toString(this.value);
+            }
+            return this.stringValue;
+        }
+    }
+
+    /**
+     * The configuration properties at a point in time, indexed by their full
+     * dotted path.
+     */
+    private static class Snapshot {
+
+        /**
+         * The number of properties found when the snapshot was created.
+         */
+        final int flattenedCount;
+
+        final Map<String, Property> properties;
+
+        final Map<String, Object> store;
+
+        Snapshot(Map<String, Object> store) {
+            this.properties = new ConcurrentHashMap<>();
+            this.store = store;
+            flatten("", store);
+            this.flattenedCount = this.properties.size();
+        }
+
+        private void flatten(String pathPrefix, Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                // Property names that contain dots can't be addressed by a
+                // property path, so they are skipped along with their children
+                if (!(entry.getKey() instanceof String)
+                        || ((String) entry.getKey()).isEmpty()
+                        || ((String) entry.getKey()).contains(".")) {
+                    continue;
+                }
+
+                String propertyPath = pathPrefix + entry.getKey();
+                Object value = entry.getValue();
+                this.properties.put(propertyPath, new Property(value));
+
+                if (value instanceof Map) {
+                    flatten(propertyPath + ".", (Map<?, ?>) value);
+                }
+            }
+        }
     }
 }
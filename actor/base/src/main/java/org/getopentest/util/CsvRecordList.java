@@ -0,0 +1,449 @@
+package org.getopentest.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A read-only list of CSV records that are parsed on demand, as the list is
+ * iterated, instead of being loaded in memory all at once. This makes it
+ * possible to work with very large CSV files in data-driven tests. The
+ * records are returned as CsvRow objects.
+ *
+ * Iterating the list or accessing its elements in ascending order reads the
+ * CSV data only once. Accessing an element that comes before the last element
+ * that was accessed restarts the parsing from the beginning of the data. The
+ * size of the list is determined with a quick pass over the CSV data that
+ * counts the records without parsing their fields, unless a filter is used, in
+ * which case all the records must be parsed.
+ */
+public class CsvRecordList extends AbstractList<Map<String, String>> {
+
+    private Cursor cursor;
+
+    private final List<String> fieldNames;
+
+    private final Predicate<Map<String, String>> filter;
+
+    private final CSVFormat format;
+
+    private final boolean hasHeader;
+
+    private final boolean hasHeaderRecord;
+
+    private final int limit;
+
+    /**
+     * The cursors that were opened and not closed yet, including the ones used
+     * by iterators.
+     */
+    private final Set<Cursor> openCursors;
+
+    private final List<String> projection;
+
+    private final ReaderFactory readerFactory;
+
+    private int size;
+
+    private final int skip;
+
+    private CsvRow.Columns sourceColumns;
+
+    /**
+     * @param readerFactory Opens the CSV data for reading. Called every time
+     * the CSV data must be parsed from the beginning.
+     * @param format The CSV format, which determines whether the first record
+     * is the header
+     * @param fieldNames The column names to use when the CSV data has no
+     * header. Columns with no name are named "col1", "col2", etc.
+     * @param projection The columns to include in the records, or null to
+     * include all of them
+     * @param filter Only the records that match this predicate are included
+     * in the list. Can be null.
+     * @param skip The number of records to skip at the beginning of the data,
+     * after applying the filter
+     * @param limit The maximum number of records to include in the list, or a
+     * negative number for no limit
+     */
+    public CsvRecordList(
+            ReaderFactory readerFactory,
+            CSVFormat format,
+            List<String> fieldNames,
+            List<String> projection,
+            Predicate<Map<String, String>> filter,
+            int skip,
+            int limit) {
+
+        this.readerFactory = readerFactory;
+        this.format = format;
+        this.hasHeader = format.getHeader() != null;
+        this.hasHeaderRecord = this.hasHeader
+                && (format.getHeader().length == 0 || format.getSkipHeaderRecord());
+        this.fieldNames = fieldNames;
+        this.projection = projection;
+        this.filter = filter;
+        this.skip = Math.max(skip, 0);
+        this.limit = limit;
+        this.size = -1;
+        this.openCursors = Collections.synchronizedSet(new HashSet<>());
+    }
+
+    /**
+     * Releases the file handles held by the list and by its iterators. The
+     * list can still be used after it was closed, but the iterators that were
+     * not exhausted yet stop returning records.
+     */
+    public void close() {
+        this.cursor = null;
+
+        List<Cursor> cursors;
+        synchronized (this.openCursors) {
+            cursors = new ArrayList<>(this.openCursors);
+        }
+
+        for (Cursor openCursor : cursors) {
+            openCursor.close();
+        }
+    }
+
+    /**
+     * Counts the records in the CSV data without parsing their fields, by
+     * looking at the line breaks that are not enclosed in quotes.
+     */
+    private int countRecords() throws IOException {
+        Character quoteChar = this.format.getQuoteCharacter();
+        Character escapeChar = this.format.getEscapeCharacter();
+        boolean ignoreEmptyLines = this.format.getIgnoreEmptyLines();
+
+        int recordCount = 0;
+        boolean inQuotes = false;
+        boolean lineHasContent = false;
+        boolean afterCarriageReturn = false;
+        boolean escaping = false;
+        char[] buffer = new char[65536];
+
+        try (Reader reader = this.readerFactory.open()) {
+            int charCount;
+            while ((charCount = reader.read(buffer)) > 0) {
+                for (int i = 0; i < charCount; i++) {
+                    char c = buffer[i];
+
+                    if (afterCarriageReturn) {
+                        afterCarriageReturn = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+
+                    if (escaping) {
+                        escaping = false;
+                        lineHasContent = true;
+                    } else if (escapeChar != null && c == escapeChar) {
+                        escaping = true;
+                        lineHasContent = true;
+                    } else if (quoteChar != null && c == quoteChar) {
+                        inQuotes = !inQuotes;
+                        lineHasContent = true;
+                    } else if ((c == '\n' || c == '\r') && !inQuotes) {
+                        if (lineHasContent || !ignoreEmptyLines) {
+                            recordCount++;
+                        }
+                        lineHasContent = false;
+                        afterCarriageReturn = c == '\r';
+                    } else if (!ignoreEmptyLines || !Character.isWhitespace(c)) {
+                        lineHasContent = true;
+                    }
+                }
+            }
+        }
+
+        if (lineHasContent) {
+            recordCount++;
+        }
+
+        if (this.hasHeaderRecord && recordCount > 0) {
+            recordCount--;
+        }
+
+        return recordCount;
+    }
+
+    @Override
+    public Map<String, String> get(int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(String.format("Index: %s", index));
+        }
+
+        if (this.cursor != null && this.cursor.position == index + 1 && this.cursor.current != null) {
+            return this.cursor.current;
+        }
+
+        if (this.cursor == null || this.cursor.position > index) {
+            if (this.cursor != null) {
+                this.cursor.close();
+            }
+            this.cursor = new Cursor();
+        }
+
+        while (this.cursor.position <= index) {
+            if (this.cursor.next() == null) {
+                this.cursor.close();
+                this.cursor = null;
+                throw new IndexOutOfBoundsException(String.format("Index: %s", index));
+            }
+        }
+
+        Map<String, String> record = this.cursor.current;
+
+        // Release the file handle as soon as the last record was read
+        if (this.size >= 0 && index == this.size - 1) {
+            this.cursor.close();
+            this.cursor = null;
+        }
+
+        return record;
+    }
+
+    /**
+     * Returns the header map (column names to field indexes) as parsed from
+     * the CSV data, or null if the CSV data has no header.
+     */
+    public Map<String, Integer> getHeaderMap() {
+        if (!this.hasHeader) {
+            return null;
+        }
+
+        try (CSVParser parser = this.format.parse(this.readerFactory.open())) {
+            return parser.getHeaderMap();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read the CSV header", ex);
+        }
+    }
+
+    @Override
+    public Iterator<Map<String, String>> iterator() {
+        return new Iterator<Map<String, String>>() {
+
+            private final Cursor iteratorCursor = new Cursor();
+
+            private Map<String, String> nextRecord = iteratorCursor.next();
+
+            @Override
+            public boolean hasNext() {
+                return this.nextRecord != null;
+            }
+
+            @Override
+            public Map<String, String> next() {
+                if (this.nextRecord == null) {
+                    throw new NoSuchElementException();
+                }
+
+                Map<String, String> record = this.nextRecord;
+                this.nextRecord = this.iteratorCursor.next();
+                return record;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        if (this.size < 0) {
+            int recordCount;
+
+            if (this.filter == null && this.format.getCommentMarker() == null) {
+                try {
+                    recordCount = Math.max(this.countRecords() - this.skip, 0);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Failed to count the CSV records", ex);
+                }
+
+                if (this.limit >= 0) {
+                    recordCount = Math.min(recordCount, this.limit);
+                }
+            } else {
+                recordCount = 0;
+                Cursor countCursor = new Cursor();
+                while (countCursor.next() != null) {
+                    recordCount++;
+                }
+            }
+
+            this.size = recordCount;
+        }
+
+        return this.size;
+    }
+
+    /**
+     * Loads all the records in memory and returns them as a regular list.
+     */
+    public List<Map<String, String>> toArrayList() {
+        List<Map<String, String>> list = new ArrayList<>();
+        for (Map<String, String> record : this) {
+            list.add(record);
+        }
+
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CSV record list (%s)", this.size >= 0 ? this.size + " records" : "not counted yet");
+    }
+
+    /**
+     * Opens the CSV data for reading.
+     */
+    public interface ReaderFactory {
+
+        Reader open() throws IOException;
+    }
+
+    /**
+     * Parses the CSV data sequentially, applying the filter, skip, limit and
+     * projection.
+     */
+    private class Cursor {
+
+        public Map<String, String> current;
+
+        private boolean exhausted;
+
+        private CSVParser parser;
+
+        /**
+         * The number of records returned by the cursor so far.
+         */
+        public int position;
+
+        private CsvRow.Columns projectedColumns;
+
+        private Iterator<CSVRecord> records;
+
+        private int skippedCount;
+
+        Cursor() {
+            try {
+                this.parser = format.parse(readerFactory.open());
+                this.records = this.parser.iterator();
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to open the CSV data", ex);
+            }
+            openCursors.add(this);
+
+            if (sourceColumns == null) {
+                if (hasHeader) {
+                    CsvRow.Columns columns = new CsvRow.Columns();
+                    String[] headerNames = new String[this.parser.getHeaderMap().size()];
+                    for (Map.Entry<String, Integer> entry : this.parser.getHeaderMap().entrySet()) {
+                        headerNames[entry.getValue()] = entry.getKey();
+                    }
+                    for (String name : headerNames) {
+                        columns.add(name);
+                    }
+                    sourceColumns = columns;
+                } else {
+                    sourceColumns = new CsvRow.Columns();
+                }
+            }
+
+            if (projection != null) {
+                this.projectedColumns = new CsvRow.Columns(projection);
+            }
+        }
+
+        void close() {
+            this.exhausted = true;
+            this.current = null;
+            openCursors.remove(this);
+
+            try {
+                this.parser.close();
+            } catch (IOException ex) {
+            }
+        }
+
+        /**
+         * Advances to the next record and returns it, or returns null if
+         * there are no more records.
+         */
+        Map<String, String> next() {
+            if (this.exhausted) {
+                return null;
+            }
+
+            if (limit >= 0 && this.position >= limit) {
+                this.close();
+                return null;
+            }
+
+            while (this.records.hasNext()) {
+                CsvRow row = this.toRow(this.records.next());
+
+                if (filter != null && !filter.test(row)) {
+                    continue;
+                }
+
+                if (this.skippedCount < skip) {
+                    this.skippedCount++;
+                    continue;
+                }
+
+                this.current = this.project(row);
+                this.position++;
+                return this.current;
+            }
+
+            this.close();
+            return null;
+        }
+
+        private CsvRow project(CsvRow row) {
+            if (this.projectedColumns == null) {
+                return row;
+            }
+
+            String[] values = new String[this.projectedColumns.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.getValue(sourceColumns.indexOf(this.projectedColumns.nameAt(i)));
+            }
+
+            return new CsvRow(this.projectedColumns, values);
+        }
+
+        private CsvRow toRow(CSVRecord record) {
+            String[] values = new String[record.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = record.get(i);
+            }
+
+            if (!hasHeader) {
+                // Without a header, the column names are determined by the
+                // widest record seen so far
+                while (sourceColumns.size() < values.length) {
+                    int columnIndex = sourceColumns.size();
+                    if (fieldNames != null && fieldNames.size() > columnIndex && fieldNames.get(columnIndex) != null) {
+                        sourceColumns.add(fieldNames.get(columnIndex).trim());
+                    } else {
+                        sourceColumns.add(String.format("col%s", columnIndex + 1));
+                    }
+                }
+            }
+
+            return new CsvRow(sourceColumns, values);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.getopentest.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact representation of a CSV record. Instead of having its own hash
+ * map, each row stores its field values in an array and shares the column
+ * index (column name to field index) with all the other rows parsed from the
+ * same CSV data.
+ *
+ * Existing fields can be updated and new fields can be added, as with any
+ * other map, but fields can't be removed.
+ */
+public class CsvRow extends AbstractMap<String, String> {
+
+    private final Columns columns;
+
+    private Map<String, String> extraValues;
+
+    private final String[] values;
+
+    public CsvRow(Columns columns, String[] values) {
+        this.columns = columns;
+        this.values = values;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = this.columns.indexOf(key);
+        if (index >= 0 && index < this.values.length) {
+            return true;
+        }
+
+        return this.extraValues != null && this.extraValues.containsKey(key);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return CsvRow.this.size();
+            }
+        };
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = this.columns.indexOf(key);
+        if (index >= 0 && index < this.values.length) {
+            return this.values[index];
+        }
+
+        return this.extraValues != null ? this.extraValues.get(key) : null;
+    }
+
+    public Columns getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * Returns the value of the field at the specified index, or null if the
+     * record has fewer fields.
+     */
+    public String getValue(int index) {
+        return index >= 0 && index < this.values.length ? this.values[index] : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int index = this.columns.indexOf(key);
+        if (index >= 0 && index < this.values.length) {
+            String previousValue = this.values[index];
+            this.values[index] = value;
+            return previousValue;
+        }
+
+        if (this.extraValues == null) {
+            this.extraValues = new LinkedHashMap<>();
+        }
+
+        return this.extraValues.put(key, value);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        int fieldCount = Math.min(this.values.length, this.columns.size());
+        for (int i = 0; i < fieldCount; i++) {
+            if (this.columns.isPrimaryIndex(i)) {
+                size++;
+            }
+        }
+
+        return size + (this.extraValues != null ? this.extraValues.size() : 0);
+    }
+
+    /**
+     * Maps column names to field indexes. When multiple columns have the same
+     * name, the name refers to the last of them.
+     */
+    public static class Columns {
+
+        private final Map<String, Integer> indexes;
+
+        private final List<String> names;
+
+        public Columns() {
+            this.indexes = new HashMap<>();
+            this.names = new ArrayList<>();
+        }
+
+        public Columns(List<String> names) {
+            this();
+            for (String name : names) {
+                this.add(name);
+            }
+        }
+
+        public final void add(String name) {
+            this.indexes.put(name, this.names.size());
+            this.names.add(name);
+        }
+
+        public int indexOf(Object name) {
+            Integer index = this.indexes.get(name);
+            return index != null ? index : -1;
+        }
+
+        /**
+         * Returns true if the column at the specified index is the one that
+         * its name refers to.
+         */
+        private boolean isPrimaryIndex(int index) {
+            return this.indexes.get(this.names.get(index)) == index;
+        }
+
+        public String nameAt(int index) {
+            return this.names.get(index);
+        }
+
+        public int size() {
+            return this.names.size();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+        private Iterator<Map.Entry<String, String>> extraIterator;
+
+        private int fieldIndex;
+
+        private final int fieldCount;
+
+        EntryIterator() {
+            this.fieldCount = Math.min(values.length, columns.size());
+            this.fieldIndex = this.nextFieldIndex(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.fieldIndex < this.fieldCount) {
+                return true;
+            }
+
+            if (this.extraIterator == null) {
+                this.extraIterator = extraValues != null
+                        ? extraValues.entrySet().iterator()
+                        : new HashMap<String, String>().entrySet().iterator();
+            }
+
+            return this.extraIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            if (this.fieldIndex < this.fieldCount) {
+                final int index = this.fieldIndex;
+                this.fieldIndex = this.nextFieldIndex(index + 1);
+
+                return new AbstractMap.SimpleEntry<String, String>(columns.nameAt(index), values[index]) {
+                    @Override
+                    public String setValue(String value) {
+                        values[index] = value;
+                        return super.setValue(value);
+                    }
+                };
+            } else {
+                return this.extraIterator.next();
+            }
+        }
+
+        private int nextFieldIndex(int startIndex) {
+            int index = startIndex;
+            while (index < this.fieldCount && !columns.isPrimaryIndex(index)) {
+                index++;
+            }
+
+            return index;
+        }
+    }
+}
@@ -3,13 +3,16 @@ package org.getopentest.util;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import java.awt.image.BufferedImage;
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.getopentest.contracts.IImageFinder;
+import org.getopentest.contracts.IScriptEngine;
+import org.getopentest.script.GraalJsEngine;
+import org.getopentest.script.NashornEngine;
 import org.getopentest.serialization.json.BufferedImageSerializer;
+import org.getopentest.serialization.json.CsvRecordListSerializer;
 import org.getopentest.serialization.json.DoubleSerializer;
 import org.getopentest.serialization.json.DuplicateFieldExclusionStrategy;
-import org.getopentest.serialization.json.ScriptObjectMirrorSerializer;
-import org.getopentest.serialization.json.TrimmableMap;
 import org.getopentest.serialization.json.TrimmableMapSerializer;
 import org.getopentest.serialization.yaml.SkipNullRepresenter;
 import org.getopentest.testdef.TestDefAction;
@@ -24,6 +27,24 @@ public class Factory {
 
     private static Gson defaultGson;
 
+    /**
+     * Gson instances are immutable and thread-safe, so they are cached and
+     * reused. The cache key is made up of the config values that influence
+     * the serialization (see getGsonCacheKey).
+     */
+    private static final Map<String, Gson> gsonCache = new ConcurrentHashMap<>();
+
+    /**
+     * The libraries required by the GraalJS script engine.
+     */
+    private static final String[] GRAALJS_JARS = {
+        "graal-sdk-20.3.17.jar",
+        "js-20.3.17.jar",
+        "regex-20.3.17.jar",
+        "truffle-api-20.3.17.jar",
+        "icu4j-71.1.jar"
+    };
+
     private static Config getDefaultConfig() {
         if (defaultConfig == null) {
             defaultConfig = new Config();
@@ -40,12 +61,11 @@ public class Factory {
 
     /**
      * Returns a Gson object pre-configured with some defaults (disable HTML
-     * escaping, custom ScriptObjectMirror serializer, etc.).
+     * escaping, custom serializer for Nashorn JS objects, etc.).
      */
     public static Gson getGson() {
         if (defaultGson == null) {
-            defaultGson = Factory.getGsonBuilder(getDefaultConfig())
-                    .registerTypeAdapter(ScriptObjectMirror.class, new ScriptObjectMirrorSerializer(false))
+            defaultGson = NashornEngine.registerTypeAdapters(Factory.getGsonBuilder(getDefaultConfig()), false)
                     .create();
         }
 
@@ -54,17 +74,57 @@ public class Factory {
 
     /**
      * Returns a Gson object pre-configured with some defaults (disable HTML
-     * escaping, custom ScriptObjectMirror serializer, etc.).
+     * escaping, custom serializer for Nashorn JS objects, etc.), optionally
+     * serializing null values.
+     */
+    public static Gson getGson(boolean serializeNulls) {
+        return Factory.getGson(getDefaultConfig(), serializeNulls);
+    }
+
+    /**
+     * Returns a Gson object pre-configured with some defaults (disable HTML
+     * escaping, custom serializer for Nashorn JS objects, etc.).
      */
     public static Gson getGson(Config config) {
-        return Factory.getGsonBuilder(config)
-                .registerTypeAdapter(ScriptObjectMirror.class, new ScriptObjectMirrorSerializer(false))
-                .create();
+        return Factory.getGson(config, false);
+    }
+
+    /**
+     * Returns a Gson object pre-configured with some defaults (disable HTML
+     * escaping, custom serializer for Nashorn JS objects, etc.), optionally
+     * serializing null values. The instance is created once for every
+     * distinct combination of serialization settings and then reused.
+     */
+    public static Gson getGson(Config config, boolean serializeNulls) {
+        return gsonCache.computeIfAbsent(getGsonCacheKey(config, serializeNulls), (key) -> {
+            GsonBuilder builder = NashornEngine.registerTypeAdapters(Factory.getGsonBuilder(config), serializeNulls);
+
+            if (serializeNulls) {
+                builder.serializeNulls();
+            }
+
+            return builder.create();
+        });
+    }
+
+    private static String getGsonCacheKey(Config config, boolean serializeNulls) {
+        return String.format("%s:%s:%s",
+                getLogEntryMaxChars(config),
+                getLogEntryTrimmedSize(config),
+                serializeNulls);
+    }
+
+    private static int getLogEntryMaxChars(Config config) {
+        return config.getInteger("logEntryMaxChars", Factory.getDefaultConfig().getInteger("logEntryMaxChars"));
+    }
+
+    private static int getLogEntryTrimmedSize(Config config) {
+        return config.getInteger("logEntryTrimmedSize", Factory.getDefaultConfig().getInteger("logEntryTrimmedSize"));
     }
 
     /**
      * Returns a Gson builder object pre-configured with some defaults (disable
-     * HTML escaping, custom ScriptObjectMirror serializer, etc.).
+     * HTML escaping, custom serializer for Nashorn JS objects, etc.).
      */
     public static GsonBuilder getGsonBuilder() {
         return getGsonBuilder(getDefaultConfig());
@@ -72,7 +132,7 @@ public class Factory {
 
     /**
      * Returns a Gson builder object pre-configured with some defaults (disable
-     * HTML escaping, custom ScriptObjectMirror serializer, etc.).
+     * HTML escaping, custom serializer for Nashorn JS objects, etc.).
      */
     public static GsonBuilder getGsonBuilder(Config config) {
         GsonBuilder builder = new GsonBuilder()
@@ -81,11 +141,9 @@ public class Factory {
                 .disableHtmlEscaping()
                 .registerTypeAdapter(Double.class, new DoubleSerializer())
                 .registerTypeAdapter(BufferedImage.class, new BufferedImageSerializer())
-                .registerTypeAdapter(
-                        TrimmableMap.class,
-                        new TrimmableMapSerializer(
-                                config.getInteger("logEntryMaxChars", Factory.getDefaultConfig().getInteger("logEntryMaxChars")),
-                                config.getInteger("logEntryTrimmedSize", Factory.getDefaultConfig().getInteger("logEntryTrimmedSize"))));
+                .registerTypeAdapter(CsvRecordList.class, new CsvRecordListSerializer())
+                .registerTypeAdapterFactory(
+                        new TrimmableMapSerializer(getLogEntryMaxChars(config), getLogEntryTrimmedSize(config)));
         return builder;
     }
 
@@ -103,6 +161,44 @@ public class Factory {
         return new Yaml(representer, options);
     }
 
+    /**
+     * Returns a new script engine, as specified by the "scriptEngine" config
+     * parameter: "nashorn" (the default), "graaljs" or the fully qualified
+     * name of a class that implements IScriptEngine and has a public
+     * no-argument constructor.
+     */
+    public static IScriptEngine getScriptEngine(Config config) {
+        String engineName = config.getString("scriptEngine", "nashorn");
+        int scriptCacheSize = config.getInteger("scriptCacheSize", 1000);
+
+        if (engineName.equalsIgnoreCase("nashorn")) {
+            return new NashornEngine(scriptCacheSize);
+        } else if (engineName.equalsIgnoreCase("graaljs")) {
+            try {
+                return new GraalJsEngine(
+                        scriptCacheSize,
+                        config.getInteger("graalJs.contextPoolSize", 2));
+            } catch (LinkageError | IllegalStateException ex) {
+                // The GraalJS libraries are not bundled with the test actor
+                throw new RuntimeException(String.format(
+                        "Failed to initialize the GraalJS script engine. Make sure the "
+                        + "GraalJS libraries are in the \"user-jars\" directory of the "
+                        + "test actor: %s.",
+                        String.join(", ", GRAALJS_JARS)), ex);
+            }
+        } else {
+            try {
+                return (IScriptEngine) Class.forName(engineName).newInstance();
+            } catch (Exception ex) {
+                throw new RuntimeException(String.format(
+                        "Failed to instantiate script engine %s. The \"scriptEngine\" "
+                        + "config parameter must be \"nashorn\", \"graaljs\" or the name "
+                        + "of a class that implements the IScriptEngine interface.",
+                        engineName), ex);
+            }
+        }
+    }
+
     public static TesseractOcr getTesseractOcr() {
         return new TesseractOcr();
     }
@@ -1,6 +1,7 @@
 package org.getopentest.util;
 
 import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
 
 /**
  * Stores the result of an image compare operation.
@@ -8,9 +9,13 @@ import java.awt.image.BufferedImage;
 public class ImageCompareResult {
 
     private BufferedImage diffImage;
-    
+
+    private Supplier<BufferedImage> diffImageBuilder;
+
     private long diffPixelCount = 0;
 
+    private boolean partial;
+
     private double similarity;
 
     public ImageCompareResult(BufferedImage diffImage, double similarity, long diffPixelCount) {
@@ -20,7 +25,23 @@ public class ImageCompareResult {
     }
 
     /**
-     * Returns the similarity between two images as a percent.
+     * @param similarity The similarity between the two images
+     * @param diffPixelCount The number of different pixels found
+     * @param partial Whether the compare operation stopped before looking at
+     * all the pixels
+     * @param diffImageBuilder Builds the diff image the first time it is
+     * requested
+     */
+    public ImageCompareResult(double similarity, long diffPixelCount, boolean partial, Supplier<BufferedImage> diffImageBuilder) {
+        this.similarity = similarity;
+        this.diffPixelCount = diffPixelCount;
+        this.partial = partial;
+        this.diffImageBuilder = diffImageBuilder;
+    }
+
+    /**
+     * Returns the similarity between two images as a percent. For partial
+     * results, this is an upper bound of the actual similarity.
      */
     public double getSimilarity() {
         return similarity;
@@ -30,14 +51,28 @@ public class ImageCompareResult {
      * Returns an image highlighting the differences between the two source
      * images.
      */
-    public BufferedImage getDiffImage() {
+    public synchronized BufferedImage getDiffImage() {
+        if (this.diffImage == null && this.diffImageBuilder != null) {
+            this.diffImage = this.diffImageBuilder.get();
+            this.diffImageBuilder = null;
+        }
+
         return diffImage;
     }
     
     /**
      * Returns the number of pixels that were different between the two images.
+     * For partial results, this is a lower bound of the actual number.
      */
     public long getDiffPixelCount() {
         return diffPixelCount;
     }
+
+    /**
+     * Returns true if the compare operation stopped early, because the images
+     * were already too different to meet the expected similarity.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
 }
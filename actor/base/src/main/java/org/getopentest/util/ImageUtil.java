@@ -8,11 +8,24 @@ import java.awt.RenderingHints;
 import java.awt.Robot;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 public class ImageUtil {
 
+    /**
+     * The minimum number of pixels for which the image comparison is split
+     * across multiple threads.
+     */
+    private static final long COMPARE_PARALLEL_MIN_PIXELS = 100000;
+
     public static void binarize(BufferedImage srcImg, double maxLuminance) {
         int rgb, red, green, blue;
         int blackRgb = Color.BLACK.getRGB();
@@ -63,68 +76,61 @@ public class ImageUtil {
      * similarity between them, as a percent.
      */
     public static ImageCompareResult compare(BufferedImage templateImage, BufferedImage imageToCompare, Double maxPercentColorDistance, Color ignoredPixelsColor) {
+        return compare(templateImage, imageToCompare, maxPercentColorDistance, ignoredPixelsColor, null);
+    }
+
+    /**
+     * Compare two images and return the similarity between them, as a
+     * percent, along with an image that shows the differences. The diff image
+     * is only built if it's requested from the result object.
+     *
+     * The pixel rows are compared in parallel. When the expected similarity is
+     * provided, the comparison stops as soon as the number of different pixels
+     * makes it impossible to reach the expected similarity. In that case, the
+     * result is marked as partial and the reported similarity is an upper
+     * bound.
+     */
+    public static ImageCompareResult compare(BufferedImage templateImage, BufferedImage imageToCompare, Double maxPercentColorDistance, Color ignoredPixelsColor, Double expectedSimilarity) {
         try {
-            if (maxPercentColorDistance == null) {
-                maxPercentColorDistance = 0.15;
+            double maxPercentDistance = maxPercentColorDistance != null ? maxPercentColorDistance : 0.15;
+            ImageComparison comparison = new ImageComparison(templateImage, imageToCompare, maxPercentDistance, ignoredPixelsColor);
+
+            long totalPixelCount = (long) comparison.width * comparison.height;
+            long maxDiffPixelCount = expectedSimilarity != null
+                    ? (long) Math.floor((1 - expectedSimilarity) * totalPixelCount)
+                    : Long.MAX_VALUE;
+
+            AtomicLong diffPixelCount = new AtomicLong();
+            int chunkCount = totalPixelCount < COMPARE_PARALLEL_MIN_PIXELS
+                    ? 1
+                    : Math.min(Runtime.getRuntime().availableProcessors() * 4, comparison.height);
+
+            IntStream chunks = IntStream.range(0, chunkCount);
+            if (chunkCount > 1) {
+                chunks = chunks.parallel();
             }
 
-            BufferedImage diffImage = new BufferedImage(
-                    Math.min(templateImage.getWidth(), imageToCompare.getWidth()),
-                    Math.min(templateImage.getHeight(), imageToCompare.getHeight()),
-                    BufferedImage.TYPE_3BYTE_BGR);
-
-            double maxColorDistance = Math.sqrt(
-                    Math.pow(255, 2)
-                    + Math.pow(255, 2)
-                    + Math.pow(255, 2));
-
-            long diffPixelCount = 0;
-            int red = Color.RED.getRGB();
-            int gray = Color.LIGHT_GRAY.getRGB();
-            int reallyLightGray = Color.decode("#FAFAFA").getRGB();
-
-            for (int x = 0; x < diffImage.getWidth(); x++) {
-                for (int y = 0; y < diffImage.getHeight(); y++) {
-                    int color1 = templateImage.getRGB(x, y);
-                    int red1 = (color1 >> 16) & 0x000000FF;
-                    int green1 = (color1 >> 8) & 0x000000FF;
-                    int blue1 = (color1) & 0x000000FF;
-     
-                    int color2 = imageToCompare.getRGB(x, y);
-                    int red2 = (color2 >> 16) & 0x000000FF;
-                    int green2 = (color2 >> 8) & 0x000000FF;
-                    int blue2 = (color2) & 0x000000FF;
-                    
-                    if (ignoredPixelsColor != null) {
-                        int ignoredColor = ignoredPixelsColor.getRGB();
-                        if (color1 == ignoredColor || color2 == ignoredColor) {
-                            diffImage.setRGB(x, y, reallyLightGray);
-                            continue;
-                        }
+            chunks.forEach((chunkIndex) -> {
+                int startRow = (int) ((long) comparison.height * chunkIndex / chunkCount);
+                int endRow = (int) ((long) comparison.height * (chunkIndex + 1) / chunkCount);
+                int[] templateRow = new int[comparison.width];
+                int[] rowToCompare = new int[comparison.width];
+
+                for (int y = startRow; y < endRow; y++) {
+                    if (diffPixelCount.get() > maxDiffPixelCount) {
+                        return;
                     }
 
-                    double colorDistance = Math.sqrt(
-                            Math.pow(red1 - red2, 2)
-                            + Math.pow(green1 - green2, 2)
-                            + Math.pow(blue1 - blue2, 2));
-                    double percentDistance = colorDistance / maxColorDistance;
-
-                    // Make new color of the pixel either red or light gray,
-                    // depending on how different the actual screen capture was
-                    // from the reference image.
-                    if (percentDistance >= maxPercentColorDistance) {
-                        diffPixelCount++;
-                        diffImage.setRGB(x, y, red);
-                    } else if (percentDistance > 0.01) {
-                        diffImage.setRGB(x, y, gray);
-                    } else {
-                        diffImage.setRGB(x, y, reallyLightGray);
+                    long rowDiffCount = comparison.compareRow(y, templateRow, rowToCompare, null);
+                    if (rowDiffCount > 0) {
+                        diffPixelCount.addAndGet(rowDiffCount);
                     }
                 }
-            }
+            });
 
-            double similarity = 1 - ((double) diffPixelCount / (diffImage.getWidth() * diffImage.getHeight()));
-            return new ImageCompareResult(diffImage, similarity, diffPixelCount);
+            boolean partial = diffPixelCount.get() > maxDiffPixelCount;
+            double similarity = 1 - ((double) diffPixelCount.get() / totalPixelCount);
+            return new ImageCompareResult(similarity, diffPixelCount.get(), partial, comparison::buildDiffImage);
         } catch (Exception exc) {
             throw new RuntimeException(exc);
         }
@@ -240,4 +246,201 @@ public class ImageUtil {
                 (int) (scalingPercent * srcImg.getWidth()),
                 (int) (scalingPercent * srcImg.getHeight()));
     }
+
+    /**
+     * Compares two images pixel by pixel, one row at a time, reading the pixel
+     * data directly from the image rasters whenever possible.
+     */
+    private static class ImageComparison {
+
+        private static final int DIFF_COLOR = Color.RED.getRGB();
+
+        private static final int NEAR_MATCH_COLOR = Color.LIGHT_GRAY.getRGB();
+
+        private static final int MATCH_COLOR = Color.decode("#FAFAFA").getRGB();
+
+        public final int height;
+
+        private final Integer ignoredColor;
+
+        private final RowReader imageToCompare;
+
+        /**
+         * Squared color distance from which the pixels are considered
+         * different.
+         */
+        private final double maxDistanceSquared;
+
+        /**
+         * Squared color distance from which the pixels are shown as nearly
+         * matching (instead of matching) in the diff image.
+         */
+        private final double nearMatchDistanceSquared;
+
+        private final RowReader templateImage;
+
+        public final int width;
+
+        ImageComparison(BufferedImage templateImage, BufferedImage imageToCompare, double maxPercentColorDistance, Color ignoredPixelsColor) {
+            this.templateImage = new RowReader(templateImage);
+            this.imageToCompare = new RowReader(imageToCompare);
+            this.width = Math.min(templateImage.getWidth(), imageToCompare.getWidth());
+            this.height = Math.min(templateImage.getHeight(), imageToCompare.getHeight());
+            this.ignoredColor = ignoredPixelsColor != null ? ignoredPixelsColor.getRGB() : null;
+
+            double maxColorDistanceSquared = 3 * 255 * 255;
+            this.maxDistanceSquared = maxPercentColorDistance * maxPercentColorDistance * maxColorDistanceSquared;
+            this.nearMatchDistanceSquared = 0.01 * 0.01 * maxColorDistanceSquared;
+        }
+
+        BufferedImage buildDiffImage() {
+            BufferedImage diffImage = new BufferedImage(this.width, this.height, BufferedImage.TYPE_3BYTE_BGR);
+            int[] templateRow = new int[this.width];
+            int[] rowToCompare = new int[this.width];
+            int[] diffRow = new int[this.width];
+
+            for (int y = 0; y < this.height; y++) {
+                this.compareRow(y, templateRow, rowToCompare, diffRow);
+                diffImage.setRGB(0, y, this.width, 1, diffRow, 0, this.width);
+            }
+
+            return diffImage;
+        }
+
+        /**
+         * Compares one row of pixels and returns the number of pixels that
+         * were different.
+         *
+         * @param diffRow When not null, receives the colors of the diff image
+         * pixels for this row
+         */
+        long compareRow(int y, int[] templateRow, int[] rowToCompare, int[] diffRow) {
+            this.templateImage.readRow(y, this.width, templateRow);
+            this.imageToCompare.readRow(y, this.width, rowToCompare);
+
+            long diffCount = 0;
+            for (int x = 0; x < this.width; x++) {
+                int color1 = templateRow[x];
+                int color2 = rowToCompare[x];
+
+                if (this.ignoredColor != null && (color1 == this.ignoredColor || color2 == this.ignoredColor)) {
+                    if (diffRow != null) {
+                        diffRow[x] = MATCH_COLOR;
+                    }
+                    continue;
+                }
+
+                int redDistance = ((color1 >> 16) & 0xFF) - ((color2 >> 16) & 0xFF);
+                int greenDistance = ((color1 >> 8) & 0xFF) - ((color2 >> 8) & 0xFF);
+                int blueDistance = (color1 & 0xFF) - (color2 & 0xFF);
+                int distanceSquared = redDistance * redDistance
+                        + greenDistance * greenDistance
+                        + blueDistance * blueDistance;
+
+                if (distanceSquared >= this.maxDistanceSquared) {
+                    diffCount++;
+                    if (diffRow != null) {
+                        diffRow[x] = DIFF_COLOR;
+                    }
+                } else if (diffRow != null) {
+                    diffRow[x] = distanceSquared > this.nearMatchDistanceSquared ? NEAR_MATCH_COLOR : MATCH_COLOR;
+                }
+            }
+
+            return diffCount;
+        }
+    }
+
+    /**
+     * Reads rows of pixels from an image as ARGB integers (like
+     * BufferedImage.getRGB does). The common image types are read directly
+     * from the raster's data buffer. The other image types are read using
+     * BufferedImage.getRGB.
+     */
+    private static class RowReader {
+
+        private int[] bandOffsets;
+
+        private byte[] byteData;
+
+        private boolean hasAlpha;
+
+        private final BufferedImage image;
+
+        private int[] intData;
+
+        private int pixelStride;
+
+        private int scanlineStride;
+
+        private int startOffset;
+
+        RowReader(BufferedImage image) {
+            this.image = image;
+
+            WritableRaster raster = image.getRaster();
+            int translateX = -raster.getSampleModelTranslateX();
+            int translateY = -raster.getSampleModelTranslateY();
+
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                case BufferedImage.TYPE_INT_ARGB:
+                    if (raster.getDataBuffer() instanceof DataBufferInt
+                            && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+                        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                        this.intData = ((DataBufferInt) raster.getDataBuffer()).getData();
+                        this.scanlineStride = sampleModel.getScanlineStride();
+                        this.startOffset = raster.getDataBuffer().getOffset()
+                                + translateY * this.scanlineStride
+                                + translateX;
+                        this.hasAlpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+                    }
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                case BufferedImage.TYPE_4BYTE_ABGR:
+                    if (raster.getDataBuffer() instanceof DataBufferByte
+                            && raster.getSampleModel() instanceof ComponentSampleModel) {
+                        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+                        this.byteData = ((DataBufferByte) raster.getDataBuffer()).getData();
+                        this.pixelStride = sampleModel.getPixelStride();
+                        this.scanlineStride = sampleModel.getScanlineStride();
+                        this.bandOffsets = sampleModel.getBandOffsets();
+                        this.startOffset = raster.getDataBuffer().getOffset()
+                                + translateY * this.scanlineStride
+                                + translateX * this.pixelStride;
+                        this.hasAlpha = this.bandOffsets.length > 3;
+                    }
+                    break;
+            }
+        }
+
+        void readRow(int y, int width, int[] row) {
+            if (this.intData != null) {
+                int offset = this.startOffset + y * this.scanlineStride;
+                if (this.hasAlpha) {
+                    System.arraycopy(this.intData, offset, row, 0, width);
+                } else {
+                    for (int x = 0; x < width; x++) {
+                        row[x] = 0xFF000000 | this.intData[offset + x];
+                    }
+                }
+            } else if (this.byteData != null) {
+                int offset = this.startOffset + y * this.scanlineStride;
+                int redOffset = this.bandOffsets[0];
+                int greenOffset = this.bandOffsets[1];
+                int blueOffset = this.bandOffsets[2];
+
+                for (int x = 0; x < width; x++) {
+                    int alpha = this.hasAlpha ? this.byteData[offset + this.bandOffsets[3]] & 0xFF : 0xFF;
+                    row[x] = (alpha << 24)
+                            | ((this.byteData[offset + redOffset] & 0xFF) << 16)
+                            | ((this.byteData[offset + greenOffset] & 0xFF) << 8)
+                            | (this.byteData[offset + blueOffset] & 0xFF);
+                    offset += this.pixelStride;
+                }
+            } else {
+                this.image.getRGB(0, y, width, 1, row, 0, width);
+            }
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package org.getopentest.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ObjectUtil {
+
+    /**
+     * Creates a deep copy of the specified object graph. Supports the types
+     * produced when parsing YAML and JSON documents (maps, lists, sets, arrays,
+     * strings, numbers, booleans and dates), as well as plain Java objects with
+     * a no-arg constructor (e.g. the test definition classes), whose fields are
+     * copied recursively. Immutable values are not copied.
+     */
+    public static <T> T deepCopy(T obj) {
+        return (T) deepCopy(obj, new IdentityHashMap<>());
+    }
+
+    private static Object deepCopy(Object obj, Map<Object, Object> copies) {
+        if (obj == null || isImmutable(obj)) {
+            return obj;
+        }
+
+        // Objects that are referenced multiple times in the graph (e.g. YAML
+        // anchors and aliases) are only copied once
+        Object existingCopy = copies.get(obj);
+        if (existingCopy != null) {
+            return existingCopy;
+        }
+
+        if (obj instanceof Date) {
+            Object copy = ((Date) obj).clone();
+            copies.put(obj, copy);
+            return copy;
+        } else if (obj instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            copies.put(obj, copy);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                copy.put(deepCopy(entry.getKey(), copies), deepCopy(entry.getValue(), copies));
+            }
+            return copy;
+        } else if (obj instanceof List) {
+            List<Object> copy = new ArrayList<>(((List) obj).size());
+            copies.put(obj, copy);
+            for (Object item : (List) obj) {
+                copy.add(deepCopy(item, copies));
+            }
+            return copy;
+        } else if (obj instanceof Set) {
+            Set<Object> copy = new LinkedHashSet<>();
+            copies.put(obj, copy);
+            for (Object item : (Collection) obj) {
+                copy.add(deepCopy(item, copies));
+            }
+            return copy;
+        } else if (obj.getClass().isArray()) {
+            int length = Array.getLength(obj);
+            Object copy = Array.newInstance(obj.getClass().getComponentType(), length);
+            copies.put(obj, copy);
+            for (int i = 0; i < length; i++) {
+                Array.set(copy, i, deepCopy(Array.get(obj, i), copies));
+            }
+            return copy;
+        } else {
+            return deepCopyFields(obj, copies);
+        }
+    }
+
+    private static Object deepCopyFields(Object obj, Map<Object, Object> copies) {
+        Class<?> objClass = obj.getClass();
+
+        try {
+            Constructor<?> constructor = objClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            Object copy = constructor.newInstance();
+            copies.put(obj, copy);
+
+            for (Class<?> currentClass = objClass; currentClass != null && currentClass != Object.class; currentClass = currentClass.getSuperclass()) {
+                for (Field field : currentClass.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+                    field.set(copy, deepCopy(field.get(obj), copies));
+                }
+            }
+
+            return copy;
+        } catch (Exception ex) {
+            throw new RuntimeException(String.format(
+                    "Failed to create a deep copy of an object of type %s",
+                    objClass.getName()), ex);
+        }
+    }
+
+    private static boolean isImmutable(Object obj) {
+        return obj instanceof String
+                || obj instanceof Boolean
+                || obj instanceof Character
+                || obj instanceof Enum
+                || obj instanceof Integer
+                || obj instanceof Long
+                || obj instanceof Double
+                || obj instanceof Float
+                || obj instanceof Short
+                || obj instanceof Byte
+                || obj instanceof BigInteger
+                || obj instanceof BigDecimal;
+    }
+}
@@ -0,0 +1,329 @@
+package org.getopentest.util;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Extracts fragments from XML data in a single streaming pass, without
+ * building the DOM for the whole document. Only the elements matched by the
+ * path expressions are turned into (small) DOM trees.
+ *
+ * The path expressions support a subset of the XPath syntax: location paths
+ * made of child ("/") and descendant ("//") steps, with element names, prefixed
+ * element names ("soap:Body") or wildcards ("*"), optionally ending with an
+ * attribute step ("/@id"). Relative paths are matched anywhere in the
+ * document, like paths that start with "//". Predicates and functions are not
+ * supported.
+ */
+public class XmlFragmentReader {
+
+    private static final XMLInputFactory inputFactory;
+
+    private final List<PathExpression> paths;
+
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public XmlFragmentReader(List<String> pathExpressions) {
+        this.paths = new ArrayList<>();
+        for (String pathExpression : pathExpressions) {
+            this.paths.add(new PathExpression(pathExpression));
+        }
+    }
+
+    /**
+     * Reads the XML data and returns the fragments matched by each path
+     * expression, in document order. Matched elements are returned as DOM
+     * Element objects and matched attributes as strings.
+     */
+    public Map<String, List<Object>> read(InputStream xmlStream) {
+        Map<String, List<Object>> results = new LinkedHashMap<>();
+        for (PathExpression path : this.paths) {
+            results.put(path.expression, new ArrayList<>());
+        }
+
+        List<String> elementStack = new ArrayList<>();
+        List<Capture> captures = new ArrayList<>();
+        XMLStreamReader reader = null;
+
+        try {
+            DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            reader = inputFactory.createXMLStreamReader(xmlStream);
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        elementStack.add(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+                        for (Capture capture : captures) {
+                            capture.startElement(reader);
+                        }
+
+                        for (PathExpression path : this.paths) {
+                            if (!path.matches(elementStack)) {
+                                continue;
+                            }
+
+                            if (path.attributeName != null) {
+                                String attributeValue = getAttributeValue(reader, path.attributeName);
+                                if (attributeValue != null) {
+                                    results.get(path.expression).add(attributeValue);
+                                }
+                            } else {
+                                Capture capture = new Capture(path, documentBuilder.newDocument());
+                                capture.startElement(reader);
+                                captures.add(capture);
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        elementStack.remove(elementStack.size() - 1);
+
+                        Iterator<Capture> captureIterator = captures.iterator();
+                        while (captureIterator.hasNext()) {
+                            Capture capture = captureIterator.next();
+                            if (capture.endElement()) {
+                                results.get(capture.path.expression).add(capture.document.getDocumentElement());
+                                captureIterator.remove();
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (!captures.isEmpty()) {
+                            String text = reader.getText();
+                            for (Capture capture : captures) {
+                                capture.text(text);
+                            }
+                        }
+                        break;
+                }
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to read the XML data", ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception ex) {
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private static String getAttributeValue(XMLStreamReader reader, String attributeName) {
+        int attributeCount = reader.getAttributeCount();
+        for (int i = 0; i < attributeCount; i++) {
+            String name = getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+            if (name.equals(attributeName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+
+        return null;
+    }
+
+    private static String getQualifiedName(String prefix, String localName) {
+        return prefix != null && !prefix.isEmpty() ? prefix + ":" + localName : localName;
+    }
+
+    /**
+     * Builds the DOM tree for a matched element, as the element's events are
+     * read from the stream.
+     */
+    private static class Capture {
+
+        private Node currentNode;
+
+        private final Document document;
+
+        private final PathExpression path;
+
+        Capture(PathExpression path, Document document) {
+            this.path = path;
+            this.document = document;
+            this.currentNode = document;
+        }
+
+        /**
+         * @return True if the matched element ended
+         */
+        boolean endElement() {
+            this.currentNode = this.currentNode.getParentNode();
+            return this.currentNode == this.document;
+        }
+
+        void startElement(XMLStreamReader reader) {
+            String namespaceUri = reader.getNamespaceURI();
+            Element element = this.document.createElementNS(
+                    namespaceUri != null && !namespaceUri.isEmpty() ? namespaceUri : null,
+                    getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+            int namespaceCount = reader.getNamespaceCount();
+            for (int i = 0; i < namespaceCount; i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                element.setAttributeNS(
+                        XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        prefix != null && !prefix.isEmpty() ? "xmlns:" + prefix : "xmlns",
+                        reader.getNamespaceURI(i));
+            }
+
+            int attributeCount = reader.getAttributeCount();
+            for (int i = 0; i < attributeCount; i++) {
+                String attributeNamespace = reader.getAttributeNamespace(i);
+                element.setAttributeNS(
+                        attributeNamespace != null && !attributeNamespace.isEmpty() ? attributeNamespace : null,
+                        getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                        reader.getAttributeValue(i));
+            }
+
+            this.currentNode.appendChild(element);
+            this.currentNode = element;
+        }
+
+        void text(String text) {
+            if (this.currentNode != this.document) {
+                this.currentNode.appendChild(this.document.createTextNode(text));
+            }
+        }
+    }
+
+    /**
+     * A parsed path expression.
+     */
+    private static class PathExpression {
+
+        public String attributeName;
+
+        public final String expression;
+
+        private final List<Step> steps;
+
+        PathExpression(String expression) {
+            this.expression = expression;
+            this.steps = new ArrayList<>();
+
+            String path = expression.trim();
+            boolean descendant = !path.startsWith("/") || path.startsWith("//");
+            path = path.replaceFirst("^/+", "");
+
+            String[] segments = path.split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i].trim();
+
+                if (segment.isEmpty()) {
+                    // An empty segment means we found a "//" separator
+                    descendant = true;
+                    continue;
+                }
+
+                if (segment.startsWith("@")) {
+                    if (i != segments.length - 1 || segment.length() == 1) {
+                        throw new RuntimeException(String.format(
+                                "Invalid path expression \"%s\". Attributes can only be "
+                                + "selected in the last step of the path.",
+                                expression));
+                    }
+                    this.attributeName = segment.substring(1);
+                    break;
+                }
+
+                if (!segment.matches("\\*|[\\w\\-.]+(:[\\w\\-.]+)?")) {
+                    throw new RuntimeException(String.format(
+                            "Invalid or unsupported path expression \"%s\". Streaming XML "
+                            + "paths can only contain element names, wildcards and a "
+                            + "final attribute step, separated by \"/\" or \"//\".",
+                            expression));
+                }
+
+                this.steps.add(new Step(segment, descendant));
+                descendant = false;
+            }
+
+            if (this.steps.isEmpty()) {
+                throw new RuntimeException(String.format(
+                        "Invalid path expression \"%s\". The path must select at least one element.",
+                        expression));
+            }
+        }
+
+        /**
+         * Returns true if the path matches the element at the top of the
+         * specified element stack.
+         */
+        boolean matches(List<String> elementStack) {
+            return this.matches(elementStack, elementStack.size() - 1, this.steps.size() - 1);
+        }
+
+        /**
+         * Matches the steps up to (and including) stepIndex against the
+         * elements up to (and including) elementIndex, where the element at
+         * elementIndex must match the step at stepIndex.
+         */
+        private boolean matches(List<String> elementStack, int elementIndex, int stepIndex) {
+            if (elementIndex < 0) {
+                return false;
+            }
+
+            Step step = this.steps.get(stepIndex);
+            if (!step.matches(elementStack.get(elementIndex))) {
+                return false;
+            }
+
+            if (stepIndex == 0) {
+                return step.descendant || elementIndex == 0;
+            }
+
+            if (step.descendant) {
+                for (int i = elementIndex - 1; i >= 0; i--) {
+                    if (this.matches(elementStack, i, stepIndex - 1)) {
+                        return true;
+                    }
+                }
+                return false;
+            } else {
+                return this.matches(elementStack, elementIndex - 1, stepIndex - 1);
+            }
+        }
+    }
+
+    private static class Step {
+
+        /**
+         * True if the step can match any descendant of the element matched by
+         * the previous step, not just its children.
+         */
+        public final boolean descendant;
+
+        public final String name;
+
+        Step(String name, boolean descendant) {
+            this.name = name;
+            this.descendant = descendant;
+        }
+
+        boolean matches(String elementName) {
+            return this.name.equals("*") || this.name.equals(elementName);
+        }
+    }
+}
@@ -31,15 +31,18 @@ public class CvHelper {
     public static Mat convertToMat(BufferedImage buffImg) {
         BufferedImage convertedImg = null;
 
-        // Convert the image to TYPE_3BYTE_BGR, if necessary
-        if (buffImg.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+        // Convert the image to TYPE_3BYTE_BGR, if necessary. Images that
+        // already are TYPE_3BYTE_BGR (like the ones returned by the image
+        // cache) are used as they are, unless they are subimages that
+        // don't span their whole data buffer.
+        if (buffImg.getType() == BufferedImage.TYPE_3BYTE_BGR
+                && buffImg.getRaster().getDataBuffer().getSize() == buffImg.getWidth() * buffImg.getHeight() * 3) {
             convertedImg = buffImg;
         } else {
             convertedImg = new BufferedImage(buffImg.getWidth(), buffImg.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+            convertedImg.getGraphics().drawImage(buffImg, 0, 0, null);
         }
 
-        convertedImg.getGraphics().drawImage(buffImg, 0, 0, null);
-
         WritableRaster raster = convertedImg.getRaster();
         DataBufferByte data = (DataBufferByte) raster.getDataBuffer();
         byte[] pixels = data.getData();
@@ -4,16 +4,32 @@ import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import nu.pattern.OpenCV;
+import org.getopentest.base.ImageCache;
 import org.getopentest.contracts.IImageFinder;
 import org.getopentest.exceptions.ImageNotFoundException;
 import org.getopentest.logging.Logger;
+import org.getopentest.util.ActorContext;
 import org.opencv.core.Core;
 import org.opencv.core.Core.MinMaxLocResult;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
@@ -24,6 +40,32 @@ public class ImageFinder implements IImageFinder {
         System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
     }
 
+    /**
+     * The maximum number of candidate locations found by the coarse search
+     * that are refined at full resolution.
+     */
+    private static final int PYRAMID_CANDIDATES = 3;
+
+    /**
+     * The maximum factor by which the images are downscaled for the coarse
+     * search.
+     */
+    private static final int PYRAMID_MAX_SCALE = 4;
+
+    /**
+     * The minimum size of the source image (in pixels) for which the coarse
+     * search is used.
+     */
+    private static final long PYRAMID_MIN_SOURCE_PIXELS = 250000;
+
+    /**
+     * The minimum width and height of the downscaled template image. Smaller
+     * templates don't have enough detail to be reliably found.
+     */
+    private static final int PYRAMID_MIN_TEMPLATE_SIDE = 12;
+
+    private static ForkJoinPool matchingPool;
+
     MatchingMethod matchingMethod;
 
     public ImageFinder() {
@@ -31,11 +73,11 @@ public class ImageFinder implements IImageFinder {
     }
 
     /**
-     * Finds any one of the template images in a source image. The method
-     * iterates through the template images, performs a find operation for each
-     * one of them and selects the one that produced the best accuracy. Throws
-     * an exception when no image was found or the desired accuracy couldn't be
-     * met.
+     * Finds any one of the template images in a source image. The source image
+     * is converted only once and the template images are matched in parallel.
+     * The method returns as soon as one of the templates meets the desired
+     * accuracy or, if none of them does, throws an exception that reports the
+     * best accuracy found.
      *
      * @param sourceImage The source image.
      * @param sourceRect The rectangle in the source image to look into. If
@@ -49,25 +91,103 @@ public class ImageFinder implements IImageFinder {
      */
     @Override
     public ImageFinderResult findAnyImage(BufferedImage sourceImage, Rectangle sourceRect, List<BufferedImage> templateImages, double desiredAccuracy) {
-        ImageFinderResult bestResult = new ImageFinderResult(new Rectangle(100, 100, 100, 100), 0);
+        BufferedImage subImage = sourceImage;
+        if (sourceRect != null) {
+            subImage = sourceImage.getSubimage(
+                    sourceRect.x,
+                    sourceRect.y,
+                    sourceRect.width,
+                    sourceRect.height);
+        }
 
-        for (BufferedImage templateImage : templateImages) {
-            try {
-                ImageFinderResult result = this.findImage(sourceImage, sourceRect, templateImage, 0);
-                if (result.getAccuracy() > bestResult.getAccuracy()) {
+        SourcePyramid source = new SourcePyramid(CvHelper.convertToMat(subImage));
+        AtomicBoolean found = new AtomicBoolean(false);
+        MatchResult bestResult = null;
+
+        // Held (for reading) by every task that uses the source image, so the
+        // source Mats are only released after the running tasks completed
+        ReadWriteLock sourceLock = new ReentrantReadWriteLock();
+        List<Future<MatchResult>> futures = new ArrayList<>();
+
+        try {
+            List<Callable<MatchResult>> tasks = new ArrayList<>();
+            for (BufferedImage templateImage : templateImages) {
+                tasks.add(() -> {
+                    if (!sourceLock.readLock().tryLock()) {
+                        return null;
+                    }
+
+                    try {
+                        if (found.get()) {
+                            return null;
+                        }
+
+                        Mat cachedTemplateMat = ImageCache.getDerivedForm(templateImage, "mat", CvHelper::convertToMat, Mat::release);
+                        Mat templateMat = cachedTemplateMat != null ? cachedTemplateMat : CvHelper.convertToMat(templateImage);
+                        try {
+                            MatchResult result = this.matchTemplate(source, templateMat, desiredAccuracy, found);
+                            if (result != null && result.isValid && result.accuracy >= desiredAccuracy) {
+                                found.set(true);
+                            }
+                            return result;
+                        } finally {
+                            if (cachedTemplateMat == null) {
+                                templateMat.release();
+                            }
+                        }
+                    } finally {
+                        sourceLock.readLock().unlock();
+                    }
+                });
+            }
+
+            if (tasks.size() > 1) {
+                CompletionService<MatchResult> completionService = new ExecutorCompletionService<>(getMatchingPool());
+                for (Callable<MatchResult> task : tasks) {
+                    futures.add(completionService.submit(ActorContext.bindToCurrent(task)));
+                }
+
+                for (int i = 0; i < futures.size(); i++) {
+                    MatchResult result = getTaskResult(completionService.take());
+                    if (result != null && result.isValid && (bestResult == null || result.accuracy > bestResult.accuracy)) {
+                        bestResult = result;
+                    }
+
+                    // Don't wait for the remaining templates once one of
+                    // them was found
+                    if (bestResult != null && bestResult.accuracy >= desiredAccuracy) {
+                        break;
+                    }
+                }
+            } else {
+                MatchResult result = callTask(tasks.get(0));
+                if (result != null && result.isValid) {
                     bestResult = result;
                 }
-            } catch (UnsupportedOperationException ex) {
-                // This exception will be thrown when the template
-                // image is larger than the source image
-            } catch (Exception ex) {
-                Logger.warning(
-                        "Failed to perform an image template matching operation",
-                        ex);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The image template matching operation was interrupted", ex);
+        } finally {
+            found.set(true);
+            for (Future<MatchResult> future : futures) {
+                future.cancel(false);
+            }
+
+            // Wait for the tasks that are still running. They stop early,
+            // since the "found" flag is set.
+            sourceLock.writeLock().lock();
+            try {
+                source.releaseLevels();
+                source.fullMat.release();
+            } finally {
+                sourceLock.writeLock().unlock();
             }
         }
 
-        if (bestResult.getAccuracy() < desiredAccuracy) {
+        double bestAccuracy = bestResult != null ? bestResult.accuracy : 0;
+
+        if (bestAccuracy < desiredAccuracy) {
             String messagePrefix = templateImages.size() == 1
                     ? "Failed to find the template image"
                     : String.format("Failed to find one of %s template images", templateImages.size());
@@ -80,11 +200,39 @@ public class ImageFinder implements IImageFinder {
                             sourceRect.y,
                             sourceRect.width,
                             sourceRect.height,
-                            bestResult.getAccuracy(),
-                            desiredAccuracy), bestResult.getFoundRect(), bestResult.getAccuracy());
+                            bestAccuracy,
+                            desiredAccuracy),
+                    bestResult != null ? bestResult.getRect() : new Rectangle(100, 100, 100, 100),
+                    bestAccuracy);
+        }
+
+        return new ImageFinderResult(bestResult.getRect(), bestResult.accuracy);
+    }
+
+    private static MatchResult getTaskResult(Future<MatchResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            // An UnsupportedOperationException will be thrown when the
+            // template image is larger than the source image
+            if (!(ex.getCause() instanceof UnsupportedOperationException)) {
+                Logger.warning(
+                        "Failed to perform an image template matching operation",
+                        ex.getCause());
+            }
+            return null;
         }
+    }
 
-        return bestResult;
+    private static MatchResult callTask(Callable<MatchResult> task) {
+        try {
+            return task.call();
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        } catch (Exception ex) {
+            Logger.warning("Failed to perform an image template matching operation", ex);
+            return null;
+        }
     }
 
     /**
@@ -103,7 +251,7 @@ public class ImageFinder implements IImageFinder {
         try {
             BufferedImage capture = new Robot().createScreenCapture(sourceScreenRect);
             Mat sourceMat = CvHelper.convertToMat(capture);
-            Mat templateMat = CvHelper.convertToMat(templateImage);
+            Mat templateMat = getTemplateMat(templateImage);
             return this.findImage(sourceMat, templateMat, desiredAccuracy);
         } catch (Exception ex) {
             throw new RuntimeException(String.format(
@@ -155,62 +303,221 @@ public class ImageFinder implements IImageFinder {
      * found image and desired accuracy.
      */
     private ImageFinderResult findImage(Mat sourceMat, Mat templateMat, double desiredAccuracy) {
-        if (sourceMat.width() < templateMat.width() || sourceMat.height() < templateMat.height()) {
-            throw new UnsupportedOperationException("The template image is larger than the source image. Ensure that the width and/or height of the image you are trying to find do not exceed the dimensions of the source image.");
+        SourcePyramid source = new SourcePyramid(sourceMat);
+        MatchResult matchResult;
+        try {
+            matchResult = this.matchTemplate(source, templateMat, desiredAccuracy, null);
+        } finally {
+            source.releaseLevels();
         }
 
-        Mat result = new Mat(sourceMat.rows() - templateMat.rows() + 1, sourceMat.rows() - templateMat.rows() + 1, CvType.CV_32FC1);
-        int intMatchingMethod;
+        if (matchResult.accuracy < desiredAccuracy) {
+            throw new ImageNotFoundException(
+                    String.format(
+                            "Failed to find template image in the source image. The accuracy was %.2f and the desired accuracy was %.2f",
+                            matchResult.accuracy,
+                            desiredAccuracy),
+                    matchResult.getRect(),
+                    matchResult.accuracy);
+        }
+
+        if (!matchResult.isValid) {
+            throw new ImageNotFoundException(
+                    "Image find result (MinMaxLocResult) was invalid. This usually happens when the source image is covered in one solid color.",
+                    null,
+                    null);
+        }
+
+        return new ImageFinderResult(matchResult.getRect(), matchResult.accuracy);
+    }
+
+    private static synchronized ForkJoinPool getMatchingPool() {
+        if (matchingPool == null) {
+            // The pool is shared by all the test actors in the JVM, so its
+            // threads must not inherit the context of the actor that started
+            // them. The tasks are bound to the context of the caller.
+            matchingPool = new ForkJoinPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    (pool) -> new ForkJoinWorkerThread(pool) {
+                        @Override
+                        protected void onStart() {
+                            super.onStart();
+                            ActorContext.setCurrent(null);
+                        }
+                    },
+                    null,
+                    false);
+        }
+
+        return matchingPool;
+    }
+
+    /**
+     * Converts a template image to a Mat, or returns the Mat cached along with
+     * the image, if the image came from the image cache.
+     */
+    private static Mat getTemplateMat(BufferedImage templateImage) {
+        Mat cachedTemplateMat = ImageCache.getDerivedForm(templateImage, "mat", CvHelper::convertToMat, Mat::release);
+        return cachedTemplateMat != null ? cachedTemplateMat : CvHelper.convertToMat(templateImage);
+    }
 
+    private int getOpenCvMatchingMethod() {
         switch (this.matchingMethod) {
             case MM_CORELLATION_COEFF:
-                intMatchingMethod = Imgproc.TM_CCOEFF_NORMED;
-                break;
+                return Imgproc.TM_CCOEFF_NORMED;
             case MM_CROSS_CORELLATION:
-                intMatchingMethod = Imgproc.TM_CCORR_NORMED;
-                break;
+                return Imgproc.TM_CCORR_NORMED;
             default:
-                intMatchingMethod = Imgproc.TM_SQDIFF_NORMED;
+                return Imgproc.TM_SQDIFF_NORMED;
         }
+    }
 
-        Imgproc.matchTemplate(sourceMat, templateMat, result, intMatchingMethod);
-        MinMaxLocResult minMaxLocRes = Core.minMaxLoc(result);
+    /**
+     * Runs the OpenCV template matching on the whole source image and returns
+     * the best match.
+     */
+    private MatchResult matchFullResolution(Mat sourceMat, Mat templateMat) {
+        Mat result = new Mat();
+        try {
+            Imgproc.matchTemplate(sourceMat, templateMat, result, this.getOpenCvMatchingMethod());
+            return this.toMatchResult(Core.minMaxLoc(result), templateMat, 0, 0);
+        } finally {
+            result.release();
+        }
+    }
 
-        double accuracy = 0;
-        Point location = null;
+    /**
+     * Finds the best match for a template image in a source image. For large
+     * images, the template is first matched against a downscaled version of
+     * the source image (a coarse pyramid level) and the best candidate
+     * locations are then refined at full resolution, looking only at a small
+     * area around each candidate. If the refined match doesn't meet the
+     * desired accuracy, the method falls back to matching the template against
+     * the whole source image at full resolution, so the coarse search can only
+     * make the operation faster, but never miss a match.
+     *
+     * @param cancelled When not null and set to true by another thread, the
+     * operation is abandoned and the method returns null
+     */
+    private MatchResult matchTemplate(SourcePyramid source, Mat templateMat, double desiredAccuracy, AtomicBoolean cancelled) {
+        Mat sourceMat = source.fullMat;
+        if (sourceMat.width() < templateMat.width() || sourceMat.height() < templateMat.height()) {
+            throw new UnsupportedOperationException("The template image is larger than the source image. Ensure that the width and/or height of the image you are trying to find do not exceed the dimensions of the source image.");
+        }
 
-        if (this.matchingMethod == MatchingMethod.MM_SQUARE_DIFFERENCE) {
-            accuracy = 1 - minMaxLocRes.minVal;
-            location = minMaxLocRes.minLoc;
-        } else {
-            accuracy = minMaxLocRes.maxVal;
-            location = minMaxLocRes.maxLoc;
+        int scale = getPyramidScale(sourceMat, templateMat);
+        if (scale > 1) {
+            MatchResult refinedResult = this.matchCoarseToFine(source, templateMat, scale);
+            if (refinedResult != null && refinedResult.isValid && refinedResult.accuracy >= desiredAccuracy) {
+                return refinedResult;
+            }
         }
 
-        if (accuracy < desiredAccuracy) {
-            throw new ImageNotFoundException(
-                    String.format(
-                            "Failed to find template image in the source image. The accuracy was %.2f and the desired accuracy was %.2f",
-                            accuracy,
-                            desiredAccuracy),
-                    new Rectangle((int) location.x, (int) location.y, templateMat.width(), templateMat.height()),
-                    accuracy);
+        if (cancelled != null && cancelled.get()) {
+            return null;
         }
 
-        if (!minMaxLocResultIsValid(minMaxLocRes)) {
-            throw new ImageNotFoundException(
-                    "Image find result (MinMaxLocResult) was invalid. This usually happens when the source image is covered in one solid color.",
-                    null,
-                    null);
+        return this.matchFullResolution(sourceMat, templateMat);
+    }
+
+    private MatchResult matchCoarseToFine(SourcePyramid source, Mat templateMat, int scale) {
+        Mat sourceMat = source.fullMat;
+        Mat coarseSource = source.getLevel(scale);
+        Mat coarseTemplate = new Mat();
+        Mat coarseResult = new Mat();
+
+        try {
+            Imgproc.resize(
+                    templateMat,
+                    coarseTemplate,
+                    new Size(templateMat.width() / scale, templateMat.height() / scale),
+                    0, 0, Imgproc.INTER_AREA);
+
+            int matchingMethod = this.getOpenCvMatchingMethod();
+            boolean lowerIsBetter = matchingMethod == Imgproc.TM_SQDIFF_NORMED;
+            Imgproc.matchTemplate(coarseSource, coarseTemplate, coarseResult, matchingMethod);
+
+            MatchResult bestResult = null;
+            for (int candidateNo = 0; candidateNo < PYRAMID_CANDIDATES; candidateNo++) {
+                MinMaxLocResult coarseMinMax = Core.minMaxLoc(coarseResult);
+                Point coarseLocation = lowerIsBetter ? coarseMinMax.minLoc : coarseMinMax.maxLoc;
+
+                // Refine the candidate at full resolution, in a small area
+                // around its location
+                int margin = scale * 2;
+                int x0 = Math.max(0, Math.min((int) coarseLocation.x * scale - margin, sourceMat.width() - templateMat.width()));
+                int y0 = Math.max(0, Math.min((int) coarseLocation.y * scale - margin, sourceMat.height() - templateMat.height()));
+                int x1 = Math.min(sourceMat.width(), Math.max((int) coarseLocation.x * scale + templateMat.width() + margin, x0 + templateMat.width()));
+                int y1 = Math.min(sourceMat.height(), Math.max((int) coarseLocation.y * scale + templateMat.height() + margin, y0 + templateMat.height()));
+
+                Mat refineArea = sourceMat.submat(y0, y1, x0, x1);
+                Mat refineResult = new Mat();
+                try {
+                    Imgproc.matchTemplate(refineArea, templateMat, refineResult, matchingMethod);
+                    MatchResult result = this.toMatchResult(Core.minMaxLoc(refineResult), templateMat, x0, y0);
+                    if (bestResult == null || result.accuracy > bestResult.accuracy) {
+                        bestResult = result;
+                    }
+                } finally {
+                    refineResult.release();
+                    refineArea.release();
+                }
+
+                // Suppress the area around this candidate, so the next
+                // iteration finds a different one
+                int suppressX0 = Math.max(0, (int) coarseLocation.x - coarseTemplate.width() / 2);
+                int suppressY0 = Math.max(0, (int) coarseLocation.y - coarseTemplate.height() / 2);
+                int suppressX1 = Math.min(coarseResult.width(), (int) coarseLocation.x + coarseTemplate.width() / 2 + 1);
+                int suppressY1 = Math.min(coarseResult.height(), (int) coarseLocation.y + coarseTemplate.height() / 2 + 1);
+                Mat suppressArea = coarseResult.submat(suppressY0, suppressY1, suppressX0, suppressX1);
+                suppressArea.setTo(new Scalar(lowerIsBetter ? Float.MAX_VALUE : -Float.MAX_VALUE));
+                suppressArea.release();
+            }
+
+            return bestResult;
+        } finally {
+            coarseTemplate.release();
+            coarseResult.release();
         }
+    }
 
-        Rectangle foundRect = new Rectangle(
-                (int) location.x,
-                (int) location.y,
-                templateMat.width(),
-                templateMat.height());
+    /**
+     * Returns the factor by which the source and template images can be
+     * downscaled for the coarse search, or 1 if the images are too small for
+     * the coarse search to be worth it.
+     */
+    private static int getPyramidScale(Mat sourceMat, Mat templateMat) {
+        if ((long) sourceMat.width() * sourceMat.height() < PYRAMID_MIN_SOURCE_PIXELS) {
+            return 1;
+        }
 
-        return new ImageFinderResult(foundRect, accuracy);
+        int templateMinSide = Math.min(templateMat.width(), templateMat.height());
+        int scale = PYRAMID_MAX_SCALE;
+        while (scale > 1 && templateMinSide / scale < PYRAMID_MIN_TEMPLATE_SIDE) {
+            scale /= 2;
+        }
+
+        return scale;
+    }
+
+    private MatchResult toMatchResult(MinMaxLocResult minMaxLocRes, Mat templateMat, int offsetX, int offsetY) {
+        MatchResult result = new MatchResult();
+
+        Point location;
+        if (this.matchingMethod == MatchingMethod.MM_SQUARE_DIFFERENCE) {
+            result.accuracy = 1 - minMaxLocRes.minVal;
+            location = minMaxLocRes.minLoc;
+        } else {
+            result.accuracy = minMaxLocRes.maxVal;
+            location = minMaxLocRes.maxLoc;
+        }
+
+        result.isValid = minMaxLocResultIsValid(minMaxLocRes);
+        result.x = (int) location.x + offsetX;
+        result.y = (int) location.y + offsetY;
+        result.width = templateMat.width();
+        result.height = templateMat.height();
+        return result;
     }
 
     /**
@@ -256,7 +563,7 @@ public class ImageFinder implements IImageFinder {
         }
 
         Mat sourceMat = CvHelper.convertToMat(subImage);
-        Mat templateMat = CvHelper.convertToMat(templateImage);
+        Mat templateMat = getTemplateMat(templateImage);
 
         return this.findImage(sourceMat, templateMat, desiredAccuracy);
     }
@@ -297,4 +604,69 @@ public class ImageFinder implements IImageFinder {
     public void setMatchingMethod(MatchingMethod matchingMethod) {
         this.matchingMethod = matchingMethod;
     }
+
+    /**
+     * The best match of a template image in a source image.
+     */
+    private static class MatchResult {
+
+        public double accuracy;
+
+        public int height;
+
+        /**
+         * False if the OpenCV result was invalid (e.g. the source image is
+         * covered in one solid color)
+         */
+        public boolean isValid;
+
+        public int width;
+
+        public int x;
+
+        public int y;
+
+        public Rectangle getRect() {
+            return new Rectangle(this.x, this.y, this.width, this.height);
+        }
+    }
+
+    /**
+     * A source image, along with its downscaled versions, which are created
+     * on demand and shared by all the templates matched against the image.
+     */
+    private static class SourcePyramid {
+
+        public final Mat fullMat;
+
+        private final Map<Integer, Mat> levels;
+
+        SourcePyramid(Mat fullMat) {
+            this.fullMat = fullMat;
+            this.levels = new ConcurrentHashMap<>();
+        }
+
+        Mat getLevel(int scale) {
+            return this.levels.computeIfAbsent(scale, (key) -> {
+                Mat level = new Mat();
+                Imgproc.resize(
+                        this.fullMat,
+                        level,
+                        new Size(this.fullMat.width() / scale, this.fullMat.height() / scale),
+                        0, 0, Imgproc.INTER_AREA);
+                return level;
+            });
+        }
+
+        /**
+         * Releases the native memory used by the downscaled images. The
+         * full-resolution image is owned by the caller.
+         */
+        void releaseLevels() {
+            for (Mat level : this.levels.values()) {
+                level.release();
+            }
+            this.levels.clear();
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package org.getopentest.actions;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.csv.CSVFormat;
+import org.getopentest.base.TestActor;
+import org.getopentest.util.CsvRecordList;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ReadCsvNGTest {
+
+    private static final String CSV_WITH_HEADER = "id,name,city\n"
+            + "1,Alice,Paris\n"
+            + "2,\"Bob\nSmith\",London\n"
+            + "\n"
+            + "3,Carol,Rome\n"
+            + "4,Dave,Oslo";
+
+    @Test
+    public void testRecordsWithHeader() {
+        ReadCsv readCsv = new ReadCsv();
+        readCsv.writeArgument("csvString", CSV_WITH_HEADER);
+        readCsv.writeArgument("hasHeader", true);
+        readCsv.run();
+
+        List<Map<String, String>> records = (List<Map<String, String>>) readCsv.readOutputValue("records");
+        Map<String, Integer> header = (Map<String, Integer>) readCsv.readOutputValue("header");
+
+        assertEquals(records.size(), 4);
+        assertEquals(records.get(1).get("name"), "Bob\nSmith");
+        assertEquals(records.get(3).get("city"), "Oslo");
+        assertEquals(header.get("city"), Integer.valueOf(2));
+    }
+
+    @Test
+    public void testRecordsWithoutHeader() {
+        ReadCsv readCsv = new ReadCsv();
+        readCsv.writeArgument("csvString", "a,b\nc,d,e");
+        readCsv.writeArgument("fieldNames", Arrays.asList("first"));
+        readCsv.run();
+
+        List<Map<String, String>> records = (List<Map<String, String>>) readCsv.readOutputValue("records");
+
+        assertEquals(records.get(0).get("first"), "a");
+        assertEquals(records.get(0).get("col2"), "b");
+        assertFalse(records.get(0).containsKey("col3"));
+        assertEquals(records.get(1).get("col3"), "e");
+    }
+
+    @DataProvider
+    public Object[][] scriptEngines() {
+        return new Object[][]{{"nashorn"}, {"graaljs"}};
+    }
+
+    @Test(dataProvider = "scriptEngines")
+    public void testFilterFunction(String scriptEngine) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        config.put("scriptEngine", scriptEngine);
+        TestActor actor = new TestActor(config);
+
+        // The result is converted to a boolean the same way JS does it
+        ReadCsv readCsv = new ReadCsv();
+        readCsv.setActor(actor);
+        readCsv.writeArgument("csvString", CSV_WITH_HEADER);
+        readCsv.writeArgument("hasHeader", true);
+        readCsv.writeArgument("filter", actor.evalScript("(function (r) { return r.city != 'Paris' && r.id; })"));
+        readCsv.run();
+
+        List<Map<String, String>> records = (List<Map<String, String>>) readCsv.readOutputValue("records");
+
+        assertEquals(records.size(), 3);
+        assertEquals(records.get(0).get("id"), "2");
+        assertEquals(records.get(2).get("id"), "4");
+    }
+
+    @Test
+    public void testFilterMustBeFunction() {
+        ReadCsv readCsv = new ReadCsv();
+        readCsv.writeArgument("csvString", CSV_WITH_HEADER);
+        readCsv.writeArgument("filter", "city == 'Paris'");
+
+        RuntimeException ex = expectThrows(RuntimeException.class, readCsv::run);
+        assertEquals(ex.getMessage(), "The \"filter\" argument must be a JavaScript function.");
+    }
+
+    @Test
+    public void testStreamingRecords() {
+        ReadCsv readCsv = new ReadCsv();
+        readCsv.writeArgument("csvString", CSV_WITH_HEADER);
+        readCsv.writeArgument("hasHeader", true);
+        readCsv.writeArgument("stream", true);
+        readCsv.writeArgument("columns", Arrays.asList("name"));
+        readCsv.writeArgument("skip", 1);
+        readCsv.writeArgument("limit", 2);
+        readCsv.run();
+
+        List<Map<String, String>> records = (List<Map<String, String>>) readCsv.readOutputValue("records");
+
+        assertTrue(records instanceof CsvRecordList);
+        assertEquals(records.size(), 2);
+        assertEquals(records.get(1).get("name"), "Carol");
+        assertEquals(records.get(0).get("name"), "Bob\nSmith");
+        assertNull(records.get(0).get("city"));
+        assertEquals(records.get(0).size(), 1);
+
+        int count = 0;
+        for (Map<String, String> record : records) {
+            count++;
+        }
+        assertEquals(count, 2);
+    }
+
+    @Test
+    public void testRecordListReleasesReaders() {
+        AtomicInteger openReaders = new AtomicInteger();
+        CsvRecordList records = new CsvRecordList(
+                () -> {
+                    openReaders.incrementAndGet();
+                    return new StringReader(CSV_WITH_HEADER) {
+                        @Override
+                        public void close() {
+                            openReaders.decrementAndGet();
+                            super.close();
+                        }
+                    };
+                },
+                CSVFormat.DEFAULT.withFirstRecordAsHeader(),
+                null,
+                null,
+                null,
+                0,
+                -1);
+
+        assertEquals(records.size(), 4);
+        assertEquals(records.get(2).get("name"), "Carol");
+        assertEquals(openReaders.get(), 1);
+
+        // Reading the last record releases the reader
+        assertEquals(records.get(3).get("name"), "Dave");
+        assertEquals(openReaders.get(), 0);
+
+        // Abandoned iterators are released when the list is closed
+        Iterator<Map<String, String>> iterator = records.iterator();
+        iterator.next();
+        records.get(0);
+        assertEquals(openReaders.get(), 2);
+        records.close();
+        assertEquals(openReaders.get(), 0);
+    }
+}
@@ -1,8 +1,10 @@
 package org.getopentest.actions;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
-import jdk.nashorn.api.scripting.AbstractJSObject;
+import org.getopentest.contracts.IScriptObject;
 import static org.testng.Assert.*;
 import org.testng.annotations.Test;
 
@@ -15,7 +17,7 @@ public class ReadXmlNGTest {
         readXml.writeArgument("xml", xml);
         readXml.run();
 
-        AbstractJSObject rootNode = (AbstractJSObject) readXml.readOutputValue("rootNode");
+        IScriptObject rootNode = (IScriptObject) readXml.readOutputValue("rootNode");
 
         assertEquals((String) rootNode.getMember("text"), "child1 text");
     }
@@ -27,7 +29,7 @@ public class ReadXmlNGTest {
         readXml.writeArgument("xml", xml);
         readXml.run();
 
-        AbstractJSObject rootNode = (AbstractJSObject) readXml.readOutputValue("rootNode");
+        IScriptObject rootNode = (IScriptObject) readXml.readOutputValue("rootNode");
 
         String attr1 = ((Function<String, String>) rootNode.getMember("attribute")).apply("attr1");
         assertEquals(attr1, "value1");
@@ -40,7 +42,7 @@ public class ReadXmlNGTest {
         readXml.writeArgument("xml", xml);
         readXml.run();
 
-        AbstractJSObject rootNode = (AbstractJSObject) readXml.readOutputValue("rootNode");
+        IScriptObject rootNode = (IScriptObject) readXml.readOutputValue("rootNode");
 
         Object attrsObj = rootNode.getMember("attributes");
         if (attrsObj instanceof Map) {
@@ -56,10 +58,35 @@ public class ReadXmlNGTest {
         readXml.writeArgument("xml", xml);
         readXml.run();
 
-        AbstractJSObject rootNode = (AbstractJSObject) readXml.readOutputValue("rootNode");
+        IScriptObject rootNode = (IScriptObject) readXml.readOutputValue("rootNode");
 
-        AbstractJSObject child1 = ((Function<String, AbstractJSObject>) rootNode.getMember("node")).apply("child1");
+        IScriptObject child1 = (IScriptObject) ((Function<String, Object>) rootNode.getMember("node")).apply("child1");
         assertEquals((String) child1.getMember("nodeType"), "element");
         assertEquals((String) child1.getMember("text"), "child1 text");
     }
+
+    @Test
+    public void testStreamingPaths() {
+        ReadXml readXml = new ReadXml();
+        String xml = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soap:Body><items><item id=\"1\">first</item><group><item id=\"2\">second</item></group></items>"
+                + "</soap:Body></soap:Envelope>";
+        readXml.writeArgument("xml", xml);
+        readXml.writeArgument("paths", Arrays.asList("//item", "/soap:Envelope/soap:Body/items/item/@id", "items/*"));
+        readXml.run();
+
+        Map<String, List<Object>> matches = (Map<String, List<Object>>) readXml.readOutputValue("matches");
+
+        List<Object> items = matches.get("//item");
+        assertEquals(items.size(), 2);
+        assertEquals((String) ((IScriptObject) items.get(1)).getMember("text"), "second");
+        assertEquals(matches.get("/soap:Envelope/soap:Body/items/item/@id"), Arrays.asList("1"));
+
+        List<Object> children = matches.get("items/*");
+        assertEquals(children.size(), 2);
+        IScriptObject group = (IScriptObject) children.get(1);
+        IScriptObject nestedItem = (IScriptObject) ((Function<String, Object>) group.getMember("node")).apply("item");
+        String id = ((Function<String, String>) nestedItem.getMember("attribute")).apply("id");
+        assertEquals(id, "2");
+    }
 }
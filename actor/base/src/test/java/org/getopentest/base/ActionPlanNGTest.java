@@ -0,0 +1,137 @@
+package org.getopentest.base;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.getopentest.actions.Format;
+import org.getopentest.testdef.TestDefAction;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ActionPlanNGTest {
+
+    /**
+     * Evaluates expressions by returning their code in upper case.
+     */
+    private static final ValuePlan.Evaluator UPPER_CASE = (expression) -> expression.getCode().toUpperCase();
+
+    public ActionPlanNGTest() {
+    }
+
+    @Test
+    public void compileLegacyProperties() {
+        TestDefAction actionDef = new TestDefAction();
+        actionDef.type = "org.getopentest.actions.Format";
+        actionDef.args = new HashMap<>();
+        actionDef.args.put("executeIf", "$script true");
+        actionDef.args.put("optional", true);
+
+        ActionPlan actionPlan = ActionPlan.compile(actionDef);
+
+        assertEquals(actionPlan.getKind(), ActionPlan.Kind.ACTION);
+        assertEquals(actionPlan.getName(), "org.getopentest.actions.Format");
+        assertEquals(actionPlan.getActionType().getActionClass(), Format.class);
+        assertEquals(actionPlan.getArgs().keySet(), Arrays.asList("$if", "$optional"));
+        assertNull(actionDef.action);
+        assertTrue(actionDef.args.containsKey("executeIf"));
+    }
+
+    @Test
+    public void compileUnknownAction() {
+        TestDefAction actionDef = new TestDefAction();
+        actionDef.action = "dtest.actions.Formatt";
+
+        ActionPlan actionPlan = ActionPlan.compile(actionDef);
+
+        assertEquals(actionPlan.getActionClassName(), "org.getopentest.actions.Formatt");
+        assertNull(actionPlan.getActionType());
+    }
+
+    @Test
+    public void compileMacroArgs() {
+        TestDefAction actionDef = new TestDefAction();
+        actionDef.macro = "some.macro";
+        actionDef.args = new HashMap<>();
+        actionDef.args.put("optional", true);
+
+        ActionPlan actionPlan = ActionPlan.compile(actionDef);
+
+        assertEquals(actionPlan.getKind(), ActionPlan.Kind.MACRO);
+        assertEquals(actionPlan.getName(), "some.macro");
+        assertEquals(actionPlan.getDescription(), "some.macro");
+        assertTrue(actionPlan.getArgs().containsKey("optional"));
+        assertNull(actionPlan.getActionType());
+    }
+
+    @Test
+    public void compileCheckpoint() {
+        assertEquals(compileArg("$checkpoint", null).getCheckpoint(), Boolean.FALSE);
+        assertEquals(compileArg("$checkpoint", "yes").getCheckpoint(), Boolean.TRUE);
+        assertNull(compileArg("$checkpoint", "$data.checkpoint").getCheckpoint());
+    }
+
+    @Test
+    public void compileValues() {
+        assertTrue(ValuePlan.compile("plain text") instanceof ValuePlan.Literal);
+        assertTrue(ValuePlan.compile("$ 1") instanceof ValuePlan.Literal);
+        assertTrue(ValuePlan.compile(1) instanceof ValuePlan.Literal);
+        assertEquals(ValuePlan.compile("  $string $data.x").evaluate(UPPER_CASE), "$data.x");
+
+        ValuePlan.Expression expression = (ValuePlan.Expression) ValuePlan.compile(" $script  {a: 1} ");
+        assertEquals(expression.getSource(), "{a: 1} ");
+        assertEquals(expression.getCode(), "({a: 1} )");
+        assertEquals(expression.getExpression(), " $script  {a: 1} ");
+    }
+
+    @Test
+    public void evaluateArgs() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("literal", "text");
+        nested.put("expression", "$data.x");
+
+        TestDefAction actionDef = new TestDefAction();
+        actionDef.action = "org.getopentest.actions.Format";
+        actionDef.args = new LinkedHashMap<>();
+        actionDef.args.put("nested", nested);
+        actionDef.args.put("list", Arrays.asList(1, "$data.y"));
+
+        ActionPlan actionPlan = ActionPlan.compile(actionDef);
+        assertFalse(actionPlan.getArgs().get("nested").isLiteral());
+
+        Map<String, Object> nestedValue = (Map) actionPlan.getArgs().get("nested").evaluate(UPPER_CASE);
+        assertEquals(nestedValue.get("literal"), "text");
+        assertEquals(nestedValue.get("expression"), "$DATA.X");
+        assertNotSame(nestedValue, actionPlan.getArgs().get("nested").evaluate(UPPER_CASE));
+        assertEquals(actionPlan.getArgs().get("list").evaluate(UPPER_CASE), Arrays.asList(1, "$DATA.Y"));
+
+        // The definition is never modified
+        assertEquals(nested.get("expression"), "$data.x");
+        assertEquals(((List) actionDef.args.get("list")).get(1), "$data.y");
+    }
+
+    @Test
+    public void compileDeferredData() {
+        Map<String, Object> localData = new LinkedHashMap<>();
+        localData.put("b", "$data.b");
+        localData.put("a", "a");
+
+        ActionPlan actionPlan = compileArg("$localData", localData);
+
+        assertSame(actionPlan.getArgs().get("$localData").evaluate(UPPER_CASE), localData);
+        assertEquals(actionPlan.getLocalData().keySet(), Arrays.asList("b", "a"));
+        assertEquals(actionPlan.getLocalData().get("b").evaluate(UPPER_CASE), "$DATA.B");
+        assertNull(actionPlan.getSessionData());
+    }
+
+    private static ActionPlan compileArg(String argName, Object argValue) {
+        TestDefAction actionDef = new TestDefAction();
+        actionDef.script = "1";
+        actionDef.args = new HashMap<>();
+        if (argValue != null) {
+            actionDef.args.put(argName, argValue);
+        }
+        return ActionPlan.compile(actionDef);
+    }
+}
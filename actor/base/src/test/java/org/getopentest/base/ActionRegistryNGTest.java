@@ -0,0 +1,39 @@
+package org.getopentest.base;
+
+import org.getopentest.actions.Format;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ActionRegistryNGTest {
+
+    public ActionRegistryNGTest() {
+    }
+
+    @Test
+    public void getActionTypeByFullName() throws Exception {
+        ActionRegistry.ActionType actionType = ActionRegistry.getActionType("org.getopentest.actions.Format");
+        assertEquals(actionType.getActionClass(), Format.class);
+        assertSame(ActionRegistry.getActionType("org.getopentest.actions.Format"), actionType);
+        assertTrue(actionType.newInstance() instanceof Format);
+    }
+
+    @Test
+    public void getActionTypeBySimpleName() {
+        assertEquals(ActionRegistry.getActionType("Format").getActionClass(), Format.class);
+    }
+
+    @Test
+    public void getUnknownActionType() {
+        try {
+            ActionRegistry.getActionType("org.getopentest.actions.Formatt");
+            fail("Expected an exception");
+        } catch (ActionRegistry.ActionNotFoundException ex) {
+            assertTrue(ex.getSuggestions().contains("org.getopentest.actions.Format"));
+        }
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void getNonActionType() {
+        ActionRegistry.getActionType("java.lang.String");
+    }
+}
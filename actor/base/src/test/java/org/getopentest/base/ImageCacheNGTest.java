@@ -0,0 +1,104 @@
+package org.getopentest.base;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ImageCacheNGTest {
+
+    public ImageCacheNGTest() {
+    }
+
+    private static byte[] createPng(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "PNG", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void getCachedImage() throws IOException {
+        byte[] content = createPng(100, 50);
+        AtomicInteger loadCount = new AtomicInteger();
+        ImageCache cache = new ImageCache((assetType, partialPath, etag) -> {
+            loadCount.incrementAndGet();
+            if ("v1".equals(etag)) {
+                return null;
+            }
+            TestAssetCache.Asset asset = new TestAssetCache.Asset();
+            asset.content = content;
+            asset.etag = "v1";
+            return asset;
+        }, 10 * 1048576);
+
+        cache.startSession("session1");
+        BufferedImage image = cache.get("image.png");
+        assertEquals(image.getType(), BufferedImage.TYPE_3BYTE_BGR);
+        assertEquals(image.getWidth(), 100);
+        assertSame(cache.get("image.png"), image);
+        assertEquals(loadCount.get(), 1);
+
+        // The image is revalidated in the next session
+        cache.startSession("session2");
+        assertSame(cache.get("image.png"), image);
+        assertEquals(loadCount.get(), 2);
+
+        Object derivedForm = ImageCache.getDerivedForm(image, "form", (img) -> new Object());
+        assertNotNull(derivedForm);
+        assertSame(ImageCache.getDerivedForm(image, "form", (img) -> new Object()), derivedForm);
+        assertNull(ImageCache.getDerivedForm(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "form", (img) -> new Object()));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException {
+        byte[] content = createPng(100, 100);
+        ImageCache cache = new ImageCache((assetType, partialPath, etag) -> {
+            TestAssetCache.Asset asset = new TestAssetCache.Asset();
+            asset.content = content;
+            return asset;
+        }, 150000);
+
+        cache.startSession("session1");
+        BufferedImage image1 = cache.get("image1.png");
+        BufferedImage image2 = cache.get("image2.png");
+        assertSame(cache.get("image1.png"), image1);
+
+        // Each image takes 60000 bytes, so adding a third one evicts image2
+        cache.get("image3.png");
+        assertSame(cache.get("image1.png"), image1);
+        assertNotSame(cache.get("image2.png"), image2);
+        assertTrue(cache.toString().contains("evictions=2"));
+    }
+
+    @Test
+    public void releaseDerivedForms() throws IOException {
+        byte[] content = createPng(100, 100);
+        ImageCache cache = new ImageCache((assetType, partialPath, etag) -> {
+            TestAssetCache.Asset asset = new TestAssetCache.Asset();
+            asset.content = content;
+            return asset;
+        }, 150000);
+        AtomicInteger releaseCount = new AtomicInteger();
+
+        cache.startSession("session1");
+        BufferedImage image1 = cache.get("image1.png");
+        Object derivedForm = ImageCache.getDerivedForm(image1, "form", (img) -> new Object(), (form) -> releaseCount.incrementAndGet());
+        assertSame(ImageCache.getDerivedForm(image1, "form", (img) -> new Object(), (form) -> releaseCount.incrementAndGet()), derivedForm);
+        assertEquals(releaseCount.get(), 0);
+
+        // Derived forms are released at the beginning of every session
+        cache.startSession("session2");
+        assertEquals(releaseCount.get(), 1);
+        assertSame(cache.get("image1.png"), image1);
+        assertNotSame(ImageCache.getDerivedForm(image1, "form", (img) -> new Object(), (form) -> releaseCount.incrementAndGet()), derivedForm);
+
+        // ... and when the image is evicted
+        cache.get("image2.png");
+        cache.get("image3.png");
+        assertEquals(releaseCount.get(), 2);
+    }
+}
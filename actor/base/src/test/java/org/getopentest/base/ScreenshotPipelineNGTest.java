@@ -0,0 +1,324 @@
+package org.getopentest.base;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.getopentest.util.Config;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ScreenshotPipelineNGTest {
+
+    private static final Pattern ALIASES_PATTERN = Pattern.compile(
+            "name=\"aliases\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)\r\n");
+
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile(
+            "name=\"screenshot\"; filename=\"([^\"]+)\"");
+
+    private ScreenshotPipeline pipeline;
+
+    private File screenshotsDir;
+
+    private FakeServer server;
+
+    public ScreenshotPipelineNGTest() {
+    }
+
+    /**
+     * Simulates the screenshot upload endpoint of the sync server.
+     */
+    private static class FakeServer {
+
+        /**
+         * When set, the request that uploads this file is held until the
+         * latch is released.
+         */
+        volatile String gateFileName;
+
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        final CountDownLatch gateReached = new CountDownLatch(1);
+
+        /**
+         * When true, the aliases are ignored, like older sync servers do.
+         */
+        volatile boolean ignoreAliases;
+
+        /**
+         * The status code for the requests with multiple files.
+         */
+        volatile int multiFileStatus = 200;
+
+        final List<UploadRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+        HttpServer httpServer;
+
+        void start() throws IOException {
+            this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.httpServer.createContext("/api/screenshot", (exchange) -> {
+                UploadRequest request = new UploadRequest(
+                        IOUtils.toString(exchange.getRequestBody(), "ISO-8859-1"));
+
+                if (request.fileNames.contains(this.gateFileName)) {
+                    this.gateReached.countDown();
+                    try {
+                        this.gate.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                String responseText;
+                if (request.fileNames.size() > 1 && this.multiFileStatus != 200) {
+                    request.status = this.multiFileStatus;
+                    responseText = "Unexpected field";
+                } else if (request.aliases != null && !this.ignoreAliases) {
+                    request.status = 200;
+                    responseText = String.format("{\"uploaded\":%s,\"copied\":%s}",
+                            request.fileNames.size(),
+                            request.aliases.size());
+                } else {
+                    request.status = 200;
+                    responseText = "OK";
+                }
+                this.requests.add(request);
+
+                byte[] response = responseText.getBytes("UTF-8");
+                exchange.sendResponseHeaders(request.status, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            });
+            this.httpServer.start();
+        }
+
+        /**
+         * Returns the names of the files uploaded successfully, in the order
+         * they were received.
+         */
+        List<String> getUploadedFileNames() {
+            List<String> fileNames = new ArrayList<>();
+            synchronized (this.requests) {
+                for (UploadRequest request : this.requests) {
+                    if (request.status == 200) {
+                        fileNames.addAll(request.fileNames);
+                    }
+                }
+            }
+            return fileNames;
+        }
+
+        String getUrl() {
+            return String.format("http://127.0.0.1:%s", this.httpServer.getAddress().getPort());
+        }
+    }
+
+    private static class UploadRequest {
+
+        JsonObject aliases;
+
+        final List<String> fileNames = new ArrayList<>();
+
+        int status;
+
+        UploadRequest(String body) {
+            Matcher fileNameMatcher = FILE_NAME_PATTERN.matcher(body);
+            while (fileNameMatcher.find()) {
+                this.fileNames.add(fileNameMatcher.group(1));
+            }
+
+            Matcher aliasesMatcher = ALIASES_PATTERN.matcher(body);
+            if (aliasesMatcher.find()) {
+                this.aliases = new JsonParser().parse(aliasesMatcher.group(1)).getAsJsonObject();
+            }
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        this.screenshotsDir = Files.createTempDirectory("screenshots").toFile();
+        this.server = new FakeServer();
+        this.server.start();
+
+        // A single uploader thread makes the batches predictable
+        Config config = Config.loadYaml("screenshots:\n    uploadThreads: 1\n");
+        this.pipeline = new ScreenshotPipeline(this.screenshotsDir, this.server.getUrl(), config);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        this.server.gate.countDown();
+        this.pipeline.shutdown(0);
+        this.server.httpServer.stop(0);
+        FileUtils.deleteDirectory(this.screenshotsDir);
+    }
+
+    private static byte[] createPng(Color color) throws IOException {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        Graphics graphics = image.getGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, 4, 4);
+        graphics.dispose();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private void submit(String baseName, Color color) throws IOException {
+        this.pipeline.submit(baseName, new ByteArrayInputStream(createPng(color)));
+    }
+
+    /**
+     * Holds the upload of one screenshot while more screenshots are submitted,
+     * so that the uploader thread sends all of them in one request.
+     */
+    private void submitAsBatch(String... baseNames) throws Exception {
+        this.server.gateFileName = "gate.png";
+        submit("gate", Color.BLACK);
+        assertTrue(this.server.gateReached.await(10, TimeUnit.SECONDS));
+
+        for (String baseName : baseNames) {
+            this.submitBatchItem(baseName);
+        }
+
+        // Wait for the screenshots to be saved and queued for upload
+        for (String baseName : baseNames) {
+            File file = new File(this.screenshotsDir, baseName + ".png");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!file.exists() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        Thread.sleep(200);
+
+        this.server.gate.countDown();
+    }
+
+    /**
+     * The screenshots whose names start with "red" are identical, all the
+     * others are different from one another.
+     */
+    private void submitBatchItem(String baseName) throws IOException {
+        if (baseName.startsWith("red")) {
+            submit(baseName, Color.RED);
+        } else {
+            submit(baseName, new Color(baseName.hashCode() & 0xFFFFFF));
+        }
+    }
+
+    @Test
+    public void uploadIdenticalScreenshotsOnce() throws Exception {
+        submit("red1", Color.RED);
+        assertTrue(this.pipeline.flush(10000));
+
+        submit("red2", Color.RED);
+        assertTrue(this.pipeline.flush(10000));
+
+        assertEquals(this.server.requests.size(), 2);
+        UploadRequest aliasRequest = this.server.requests.get(1);
+        assertTrue(aliasRequest.fileNames.isEmpty());
+        assertEquals(aliasRequest.aliases.toString(), "{\"red2.png\":\"red1.png\"}");
+        assertEquals(this.server.getUploadedFileNames(), Arrays.asList("red1.png"));
+        assertTrue(new File(this.screenshotsDir, "red2.png").exists());
+    }
+
+    @Test
+    public void uploadIdenticalScreenshotsAgainInNewSession() throws Exception {
+        submit("red1", Color.RED);
+        assertTrue(this.pipeline.flush(10000));
+
+        this.pipeline.startSession();
+        submit("red2", Color.RED);
+        assertTrue(this.pipeline.flush(10000));
+
+        assertEquals(this.server.getUploadedFileNames(), Arrays.asList("red1.png", "red2.png"));
+        assertNull(this.server.requests.get(1).aliases);
+    }
+
+    @DataProvider
+    public Object[][] multiFileErrorStatus() {
+        return new Object[][]{{400}, {413}, {500}};
+    }
+
+    @Test(dataProvider = "multiFileErrorStatus")
+    public void fallBackToSingleFileRequests(int status) throws Exception {
+        this.server.multiFileStatus = status;
+
+        submitAsBatch("a", "b", "c");
+        assertTrue(this.pipeline.flush(10000));
+
+        List<UploadRequest> requests = new ArrayList<>(this.server.requests);
+        assertEquals(requests.get(1).fileNames, Arrays.asList("a.png", "b.png", "c.png"));
+        assertEquals(requests.get(1).status, status);
+        for (UploadRequest request : requests.subList(2, requests.size())) {
+            assertEquals(request.fileNames.size(), 1);
+        }
+        assertEquals(this.server.getUploadedFileNames(), Arrays.asList("gate.png", "a.png", "b.png", "c.png"));
+    }
+
+    @Test
+    public void keepBatchingOnTransientErrors() throws Exception {
+        this.server.multiFileStatus = 503;
+
+        submitAsBatch("a", "b");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.server.requests.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        this.server.multiFileStatus = 200;
+        assertTrue(this.pipeline.flush(10000));
+
+        // The failed batch is sent again as a whole
+        List<UploadRequest> requests = new ArrayList<>(this.server.requests);
+        assertEquals(requests.size(), 3);
+        assertEquals(requests.get(2).fileNames, Arrays.asList("a.png", "b.png"));
+        assertEquals(requests.get(2).status, 200);
+    }
+
+    @Test
+    public void uploadAliasedScreenshotsWhenServerIgnoresAliases() throws Exception {
+        this.server.ignoreAliases = true;
+
+        submit("red1", Color.RED);
+        assertTrue(this.pipeline.flush(10000));
+
+        submitAsBatch("red2", "blue", "red3", "red4");
+        assertTrue(this.pipeline.flush(10000));
+
+        List<UploadRequest> requests = new ArrayList<>(this.server.requests);
+        assertEquals(requests.get(2).fileNames, Arrays.asList("blue.png"));
+        assertEquals(requests.get(2).aliases.size(), 3);
+
+        // The aliased screenshots are uploaded again, one per request, in the
+        // order they were captured
+        assertEquals(this.server.getUploadedFileNames(), Arrays.asList(
+                "red1.png", "gate.png", "blue.png", "red2.png", "red3.png", "red4.png"));
+        for (UploadRequest request : requests.subList(3, requests.size())) {
+            assertEquals(request.fileNames.size(), 1);
+            assertNull(request.aliases);
+        }
+    }
+}
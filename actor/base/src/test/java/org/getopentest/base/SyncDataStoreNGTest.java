@@ -0,0 +1,233 @@
+package org.getopentest.base;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class SyncDataStoreNGTest {
+
+    public SyncDataStoreNGTest() {
+    }
+
+    /**
+     * Simulates the data endpoints of the sync server.
+     */
+    private static class FakeServer implements SyncDataStore.Transport {
+
+        Map<String, Object> data = new LinkedHashMap<>();
+
+        int loads;
+
+        int notModified;
+
+        int saves;
+
+        boolean unavailable;
+
+        int version;
+
+        @Override
+        public SyncDataStore.Data load(String etag) throws IOException {
+            ++this.loads;
+            if (SyncDataStore.getVersionETag(this.version).equals(etag)) {
+                ++this.notModified;
+                return null;
+            }
+
+            SyncDataStore.Data result = new SyncDataStore.Data();
+            result.etag = SyncDataStore.getVersionETag(this.version);
+            result.json = new Gson().toJson(this.data);
+            return result;
+        }
+
+        @Override
+        public String save(String jsonData) throws IOException {
+            if (this.unavailable) {
+                throw new IOException("The sync server is not available");
+            }
+
+            ++this.saves;
+            this.data.putAll(new Gson().fromJson(jsonData, Map.class));
+            return SyncDataStore.getVersionETag(++this.version);
+        }
+    }
+
+    @Test
+    public void readFromLocalCopy() throws IOException {
+        FakeServer server = new FakeServer();
+        server.data.put("a", "1");
+        SyncDataStore store = new SyncDataStore("session", server, true);
+
+        assertEquals(store.get("a"), "1");
+        assertEquals(store.get("a"), "1");
+        assertTrue(store.has("a"));
+        assertEquals(server.loads, 1);
+
+        // The server version didn't change
+        store.invalidate(0);
+        assertEquals(store.get("a"), "1");
+        assertEquals(server.loads, 1);
+
+        // Another actor changed the data
+        server.data.put("a", "2");
+        server.version++;
+        store.invalidate(server.version);
+        assertEquals(store.get("a"), "2");
+        assertEquals(server.loads, 2);
+
+        // Older sync servers don't report the version
+        store.invalidate(null);
+        assertEquals(store.get("a"), "2");
+        assertEquals(server.loads, 3);
+        assertEquals(server.notModified, 1);
+    }
+
+    @Test
+    public void revalidateMissingProperty() throws IOException {
+        FakeServer server = new FakeServer();
+        SyncDataStore store = new SyncDataStore("shared", server, true);
+
+        assertFalse(store.has("a"));
+        assertEquals(server.loads, 1);
+
+        server.data.put("a", "1");
+        server.version++;
+        assertTrue(store.has("a"));
+        assertEquals(store.get("a"), "1");
+        assertEquals(server.loads, 2);
+    }
+
+    @Test
+    public void coalesceWrites() throws IOException {
+        FakeServer server = new FakeServer();
+        SyncDataStore store = new SyncDataStore("session", server, true);
+
+        assertNull(store.get("a"));
+        store.put("a", 1);
+        Map<String, Object> values = new HashMap<>();
+        values.put("b", "x");
+        store.putAll(values);
+        store.put("a", 2);
+        assertEquals(server.saves, 0);
+
+        // Pending writes are visible, as they would be read from the server
+        assertEquals(store.get("a"), 2.0);
+        assertEquals(store.get("b"), "x");
+
+        store.flush();
+        store.flush();
+        assertEquals(server.saves, 1);
+        assertEquals(server.data.get("a"), 2.0);
+        assertEquals(server.data.get("b"), "x");
+
+        // Our own write was the only change, so the local copy is still valid
+        int loads = server.loads;
+        store.invalidate(server.version);
+        assertEquals(store.get("b"), "x");
+        assertEquals(server.loads, loads);
+    }
+
+    @Test
+    public void concurrentWriteMakesCopyStale() throws IOException {
+        FakeServer server = new FakeServer();
+        SyncDataStore store = new SyncDataStore("shared", server, true);
+
+        assertNull(store.get("a"));
+
+        // Another actor writes before our changes are sent
+        server.data.put("b", "other");
+        server.version++;
+
+        store.put("a", "mine");
+        store.flush();
+        assertEquals(store.get("b"), "other");
+        assertEquals(store.get("a"), "mine");
+        assertEquals(server.loads, 2);
+    }
+
+    @Test
+    public void keepWritesWhenFlushFails() throws IOException {
+        FakeServer server = new FakeServer();
+        SyncDataStore store = new SyncDataStore("session", server, true);
+
+        store.put("a", "1");
+        server.unavailable = true;
+        assertThrows(IOException.class, store::flush);
+        assertEquals(store.get("a"), "1");
+
+        server.unavailable = false;
+        store.flush();
+        assertEquals(server.saves, 1);
+        assertEquals(server.data.get("a"), "1");
+    }
+
+    @Test
+    public void keepWritesOnHttpErrorStatus() throws IOException {
+        AtomicInteger putStatus = new AtomicInteger(500);
+        List<String> savedData = new ArrayList<>();
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/data", (exchange) -> {
+            byte[] response;
+            if (exchange.getRequestMethod().equals("PUT")) {
+                savedData.add(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                exchange.getResponseHeaders().add("ETag", SyncDataStore.getVersionETag(1));
+                response = new byte[0];
+                exchange.sendResponseHeaders(putStatus.get(), -1);
+            } else {
+                exchange.getResponseHeaders().add("ETag", SyncDataStore.getVersionETag(0));
+                response = "{}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+            }
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        httpServer.start();
+
+        try {
+            String url = String.format("http://127.0.0.1:%s/data", httpServer.getAddress().getPort());
+            SyncDataStore store = new SyncDataStore("session", new SyncDataStore.HttpTransport(url, null), true);
+
+            assertNull(store.get("a"));
+            store.put("a", "1");
+            assertThrows(IOException.class, store::flush);
+            assertEquals(store.get("a"), "1");
+
+            putStatus.set(200);
+            store.flush();
+            assertEquals(savedData.size(), 2);
+            assertEquals(savedData.get(1), "{\"a\":\"1\"}");
+
+            // Nothing left to send
+            store.flush();
+            assertEquals(savedData.size(), 2);
+        } finally {
+            httpServer.stop(0);
+        }
+    }
+
+    @Test
+    public void cacheDisabled() throws IOException {
+        FakeServer server = new FakeServer();
+        server.data.put("a", "1");
+        SyncDataStore store = new SyncDataStore("session", server, false);
+
+        assertEquals(store.get("a"), "1");
+        assertEquals(store.get("a"), "1");
+        assertEquals(server.loads, 2);
+        assertEquals(server.notModified, 0);
+
+        store.put("b", "2");
+        assertEquals(server.saves, 1);
+        assertEquals(server.data.get("b"), "2");
+    }
+}
@@ -1,10 +1,18 @@
 package org.getopentest.base;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.script.ScriptEngine;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
 import org.getopentest.contracts.ITestActor;
+import org.getopentest.exceptions.IntentionalFailException;
+import org.getopentest.testdef.TestDefAction;
 import static org.testng.Assert.*;
 import org.testng.annotations.Test;
 
@@ -38,6 +46,182 @@ public class TestActorNGTest {
      */
     @Test
     public void testEvalScript() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        TestActor actor = new TestActor(config);
+
+        assertEquals(actor.evalScript("$script 1 + 1"), 2);
+        assertEquals(actor.evalScript("$script 1 + 1"), 2);
+        Map<String, Object> obj = (Map<String, Object>) actor.evalScript(" { a: 'b' } ");
+        assertEquals(obj.get("a"), "b");
+
+        // Java APIs of the actor
+        assertEquals(actor.evalScript("typeof $localData('z', 1)"), "undefined");
+        assertEquals(actor.evalScript("$localData.z + $localData('z')"), 2.0);
+    }
+
+    @Test
+    public void testCompiledScriptCache() throws Exception {
+        ScriptEngine engine = new NashornScriptEngineFactory().getScriptEngine();
+        CompiledScriptCache cache = new CompiledScriptCache(engine, 2);
+
+        engine.put("x", 5);
+        assertEquals(cache.get("x * 2").eval(), 10.0);
+        engine.put("x", 6);
+        assertEquals(cache.get("x * 2").eval(), 12.0);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+
+        cache.get("1");
+        cache.get("2");
+        assertEquals(cache.size(), 2);
+        cache.get("x * 2");
+        assertEquals(cache.getMisses(), 4);
+    }
+
+    @Test
+    public void testResetScriptEngine() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        TestActor actor = new TestActor(config);
+        Method resetScriptEngine = TestActor.class.getDeclaredMethod("resetScriptEngine");
+        resetScriptEngine.setAccessible(true);
+
+        actor.evalScript("leakedVar = 1; Array.prototype.leakedFn = function () {}; $log = null");
+        actor.injectVariable("x", 5);
+        assertEquals(actor.evalScript("x * 2"), 10.0);
+
+        resetScriptEngine.invoke(actor);
+
+        assertEquals(actor.evalScript("typeof leakedVar"), "undefined");
+        assertEquals(actor.evalScript("typeof [].leakedFn"), "undefined");
+        assertEquals(actor.evalScript("typeof $log.info"), "function");
+        assertEquals(actor.evalScript("$format('{0}-{1}', 'a', 'b')"), "a-b");
+        assertEquals(actor.evalScript("$config('actorType')"), "ACTOR1");
+
+        // Scripts compiled before the reset run in the new global scope
+        actor.injectVariable("x", 6);
+        assertEquals(actor.evalScript("x * 2"), 12.0);
+    }
+
+    @Test
+    public void testExecuteActionByPlan() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        TestActor actor = new TestActor(config);
+        Field currentSessionStatus = TestActor.class.getDeclaredField("currentSessionStatus");
+        currentSessionStatus.setAccessible(true);
+        currentSessionStatus.set(actor, new TestSessionStatus("session1"));
+        Field currentSegmentActions = TestActor.class.getDeclaredField("currentSegmentActions");
+        currentSegmentActions.setAccessible(true);
+        currentSegmentActions.set(actor, new ArrayList<>());
+        Field currentSegmentNo = TestActor.class.getDeclaredField("currentSegmentNo");
+        currentSegmentNo.setAccessible(true);
+        currentSegmentNo.set(actor, 1);
+        Method executeActionByPlan = TestActor.class.getDeclaredMethod("executeActionByPlan", ActionPlan.class);
+        executeActionByPlan.setAccessible(true);
+
+        Map<String, Object> localData = new HashMap<>();
+        localData.put("y", "$script 40 + x");
+        TestDefAction actionDef = new TestDefAction();
+        actionDef.action = "org.getopentest.actions.Format";
+        actionDef.args = new HashMap<>();
+        actionDef.args.put("template", "$script '${' + x + ' + 1}'");
+        actionDef.args.put("$localData", localData);
+        ActionPlan actionPlan = ActionPlan.compile(actionDef);
+
+        // The same plan can be executed multiple times with different data
+        actor.injectVariable("x", 1);
+        Map<String, Object> output = (Map) executeActionByPlan.invoke(actor, actionPlan);
+        assertEquals(output.get("text"), "2");
+        assertEquals(actor.evalScript("$localData('y')"), 41.0);
+
+        actor.injectVariable("x", 2);
+        output = (Map) executeActionByPlan.invoke(actor, actionPlan);
+        assertEquals(output.get("text"), "3");
+        assertEquals(actor.evalScript("$localData('y')"), 42.0);
+
+        assertEquals(actionDef.args.get("template"), "$script '${' + x + ' + 1}'");
+        assertEquals(localData.get("y"), "$script 40 + x");
+        assertEquals(((List) currentSegmentActions.get(actor)).size(), 2);
+    }
+
+    @Test
+    public void testEvalScript_graalJs() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        config.put("scriptEngine", "graaljs");
+        TestActor actor = new TestActor(config);
+        Method resetScriptEngine = TestActor.class.getDeclaredMethod("resetScriptEngine");
+        resetScriptEngine.setAccessible(true);
+
+        assertEquals(actor.evalScript("$script 1 + 1"), 2);
+        assertEquals(actor.evalScript("0.5 * 3"), 1.5);
+        Map<String, Object> obj = (Map<String, Object>) actor.evalScript(" { a: 'b', c: [1, 2] } ");
+        assertEquals(obj.get("a"), "b");
+        assertEquals(obj.get("c"), Arrays.asList(1, 2));
+
+        // Java APIs of the actor
+        assertEquals(actor.evalScript("$format('{0}-{1}', 'a', 'b')"), "a-b");
+        assertEquals(actor.evalScript("$config('actorType')"), "ACTOR1");
+        assertEquals(actor.evalScript("typeof $log.info"), "function");
+        actor.evalScript("$localData.items = [1, 2]; $localData.items.push(3)");
+        assertEquals(actor.evalScript("$localData.items.map(function (i) { return i * 2; }).join()"), "2,4,6");
+        assertEquals(actor.evalScript("$localData('items').length"), 3);
+        assertEquals(actor.evalScript("$localData.missing"), null);
+        assertEquals(actor.evalScript("typeof $localData('z', 1)"), "undefined");
+        assertEquals(actor.evalScript("JSON.stringify($array([1, 'a']))"), "[1,\"a\"]");
+
+        // Java collections behave like JS values
+        actor.injectVariable("list", new ArrayList<>(Arrays.asList("x", "y")));
+        actor.injectVariable("map", new HashMap<>(Collections.singletonMap("k", "v")));
+        assertEquals(actor.evalScript("Array.isArray(list) && list.join('')"), "xy");
+        assertEquals(actor.evalScript("map.k + Object.keys(map).length"), "v1");
+        actor.injectVariable("data", actor.parseJsonToNativeJsType("{\"a\": [1, {\"b\": 2}]}"));
+        assertEquals(actor.evalScript("data.a[1].b + data.a.length"), 4);
+
+        try {
+            actor.evalScript("$fail('intentional')");
+            fail("Expected an IntentionalFailException");
+        } catch (IntentionalFailException ex) {
+            assertEquals(ex.getMessage(), "intentional");
+        }
+
+        actor.evalScript("leakedVar = 1");
+        resetScriptEngine.invoke(actor);
+        assertEquals(actor.evalScript("typeof leakedVar"), "undefined");
+        assertEquals(actor.evalScript("$format('{0}', 'c')"), "c");
+    }
+
+    @Test
+    public void testIsJsExpression() {
+        assertTrue(TestActor.isJsExpression("$script 1 + 1"));
+        assertTrue(TestActor.isJsExpression(" \n\t$data.value"));
+        assertTrue(TestActor.isJsExpression("$ab"));
+        assertFalse(TestActor.isJsExpression("$a"));
+        assertFalse(TestActor.isJsExpression("$1abc"));
+        assertFalse(TestActor.isJsExpression("abc $data"));
+        assertFalse(TestActor.isJsExpression(""));
+    }
+
+    @Test
+    public void testIsObjectLiteral() {
+        assertTrue(TestActor.isObjectLiteral("{}"));
+        assertTrue(TestActor.isObjectLiteral(" {\n a: 1\n} \n"));
+        assertFalse(TestActor.isObjectLiteral("{"));
+        assertFalse(TestActor.isObjectLiteral("{a: 1};"));
+        assertFalse(TestActor.isObjectLiteral("x = {}"));
+    }
+
+    @Test
+    public void testRemoveScriptPrefix() {
+        assertEquals(TestActor.removeScriptPrefix(" $script\n  1 + 1"), "1 + 1");
+        assertEquals(TestActor.removeScriptPrefix(" $data.value"), " $data.value");
+        assertEquals(TestActor.removeScriptPrefix("$script"), "");
     }
 
     /**
@@ -136,5 +320,41 @@ public class TestActorNGTest {
      */
     @Test
     public void testToJsType() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        TestActor actor = new TestActor(config);
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", Arrays.asList(1, 2L, "c"));
+        map.put("nested", Collections.singletonMap("a", 1.5f));
+        actor.injectVariable("obj", actor.toJsType(map));
+
+        assertEquals(actor.evalScript("Array.isArray(obj.list) && obj.list.join()"), "1,2,c");
+        assertEquals(actor.evalScript("typeof obj.list[1]"), "number");
+        assertEquals(actor.evalScript("obj.nested.a * 2"), 3.0);
+        assertEquals(actor.evalScript("Object.keys(obj).sort().join()"), "list,nested");
+    }
+
+    @Test
+    public void testParseJsonToNativeJsType_nested() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", "ACTOR1");
+        config.put("syncServerUrl", "http://localhost:3000");
+        TestActor actor = new TestActor(config);
+
+        actor.injectVariable("data", actor.parseJsonToNativeJsType(
+                "{\"items\": [{\"id\": 1, \"tags\": [\"a\\\"b\", null]}, {\"id\": 2.5, \"ok\": true}], \"big\": 12345678901}"));
+
+        assertEquals(actor.evalScript("data.items.map(function (i) { return i.id; }).join()"), "1,2.5");
+        assertEquals(actor.evalScript("data.items[0].tags[0]"), "a\"b");
+        assertEquals(actor.evalScript("data.items[0].tags[1] === null && data.items[1].ok"), true);
+        assertEquals(actor.evalScript("data.big"), 12345678901.0);
+
+        try {
+            actor.parseJsonToNativeJsType("{\"a\": 1} x");
+            fail("Expected the trailing data to be rejected");
+        } catch (RuntimeException ex) {
+        }
     }
 }
@@ -51,6 +51,33 @@ public class BaseLoggerNGTest {
         assertTrue(!testLogger.lastLogText.contains("regexp_secret2"));
     }
     
+    @Test
+    public void addSecret_overlapping_secrets() {
+        TestLogger testLogger = new TestLogger();
+        testLogger.addSecret("abc");
+        testLogger.addSecret("abcdef");
+        testLogger.addSecret("efgh");
+        testLogger.addSecret("abc");
+
+        testLogger.info("1 abc 2 abcdef 3 abcdefgh 4 ab");
+
+        assertEquals(testLogger.lastLogText,
+                "1 <<MASKED_SECRET>> 2 <<MASKED_SECRET>> 3 <<MASKED_SECRET>> 4 ab");
+    }
+
+    @Test
+    public void addSecret_many_secrets() {
+        TestLogger testLogger = new TestLogger();
+        for (int i = 0; i < 1000; i++) {
+            testLogger.addSecret("secret" + i + "_");
+            testLogger.info("ABC secret" + i + "_ DEF");
+            assertEquals(testLogger.lastLogText, "ABC <<MASKED_SECRET>> DEF");
+        }
+
+        testLogger.info("secret0_secret999_secret1000_");
+        assertEquals(testLogger.lastLogText, "<<MASKED_SECRET>><<MASKED_SECRET>>secret1000_");
+    }
+
     @Test
     public void clearSecrets() {
         TestLogger testLogger = new TestLogger();
@@ -0,0 +1,81 @@
+package org.getopentest.serialization.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class TrimmableMapSerializerNGTest {
+
+    private static Gson getGson(int logEntryMaxChars, int logEntryTrimmedSize) {
+        return new GsonBuilder()
+                .disableHtmlEscaping()
+                .serializeNulls()
+                .registerTypeAdapterFactory(new TrimmableMapSerializer(logEntryMaxChars, logEntryTrimmedSize))
+                .create();
+    }
+
+    private static String toJson(Gson gson, String key, Object value) {
+        Map<String, Object> map = new TrimmableMap<>();
+        map.put(key, value);
+        return gson.toJson(map);
+    }
+
+    @Test
+    public void testValuesWithinLimitAreNotTrimmed() {
+        Gson gson = getGson(20, 5);
+        assertEquals(toJson(gson, "str", "0123456789"), "{\"str\":\"0123456789\"}");
+        assertEquals(toJson(gson, "num", 12345), "{\"num\":12345}");
+        assertEquals(toJson(gson, "list", Arrays.asList(1, 2, 3)), "{\"list\":[1,2,3]}");
+        assertEquals(toJson(gson, "null", null), "{\"null\":null}");
+
+        // The limit applies to the content of strings, not to their JSON
+        // representation, which is longer because of the escaped quotes
+        assertEquals(toJson(gson, "str", "\"\"\"\"\"\"\"\"\"\""), "{\"str\":\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\"}");
+        assertEquals(toJson(gson, "sb", new StringBuilder("\"\"\"\"\"\"\"\"\"\"")), "{\"sb\":\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\\\"\"}");
+    }
+
+    @Test
+    public void testValuesOverLimitAreTrimmed() {
+        Gson gson = getGson(20, 5);
+        assertEquals(toJson(gson, "str", "0123456789ABCDEFGHIJK"), "{\"str\":\"01234 <<VALUE_WAS_TRUNCATED>>\"}");
+        assertEquals(toJson(gson, "sb", new StringBuilder("0123456789ABCDEFGHIJK")), "{\"sb\":\"01234 <<VALUE_WAS_TRUNCATED>>\"}");
+
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            list.add(i);
+        }
+        assertEquals(toJson(gson, "list", list), "{\"list\":\"[0,1, <<VALUE_WAS_TRUNCATED>>\"}");
+
+        Map<String, Object> nestedMap = new HashMap<>();
+        nestedMap.put("items", list);
+        assertEquals(toJson(gson, "map", nestedMap), "{\"map\":\"{\\\"ite <<VALUE_WAS_TRUNCATED>>\"}");
+    }
+
+    @Test
+    public void testToJsonTree() {
+        Gson gson = getGson(20, 5);
+        Map<String, Object> map = new TrimmableMap<>();
+        map.put("list", Arrays.asList(1, 2));
+        map.put("str", "0123456789ABCDEFGHIJK");
+        JsonElement tree = gson.toJsonTree(map);
+        assertEquals(tree, new JsonParser().parse("{\"list\":[1,2],\"str\":\"01234 <<VALUE_WAS_TRUNCATED>>\"}"));
+
+        Map<String, Object> outerMap = new HashMap<>();
+        outerMap.put("inner", map);
+        assertEquals(gson.toJsonTree(outerMap).getAsJsonObject().get("inner"), tree);
+    }
+
+    @Test
+    public void testTrimmingDisabled() {
+        Gson gson = getGson(0, 5);
+        assertEquals(toJson(gson, "str", "0123456789ABCDEFGHIJK"), "{\"str\":\"0123456789ABCDEFGHIJK\"}");
+    }
+}
@@ -0,0 +1,49 @@
+package org.getopentest.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ActorContextNGTest {
+
+    @Test
+    public void bindTaskToCallerContext() throws Exception {
+        ActorContext actor1 = new ActorContext();
+        ActorContext actor2 = new ActorContext();
+
+        // The pool thread is started by actor1's thread, so it inherits
+        // actor1's context
+        ActorContext.setCurrent(actor1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> null).get();
+
+            ActorContext.setCurrent(actor2);
+            Callable<ActorContext> task = ActorContext.bindToCurrent(ActorContext::getCurrent);
+            assertSame(executor.submit(task).get(), actor2);
+            assertSame(executor.submit(ActorContext::getCurrent).get(), actor1);
+        } finally {
+            executor.shutdown();
+            ActorContext.setCurrent(null);
+        }
+    }
+
+    @Test
+    public void unboundThread() throws Exception {
+        ActorContext.setCurrent(null);
+        ActorContext defaultContext = ActorContext.getCurrent();
+        ActorContext.setCurrent(new ActorContext());
+        try {
+            AtomicReference<ActorContext> threadContext = new AtomicReference<>();
+            Thread thread = ActorContext.newUnboundThread(() -> threadContext.set(ActorContext.getCurrent()), "test");
+            thread.start();
+            thread.join();
+            assertSame(threadContext.get(), defaultContext);
+        } finally {
+            ActorContext.setCurrent(null);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.getopentest.util;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import static org.testng.Assert.*;
@@ -36,6 +37,24 @@ public class ConfigNGTest {
         assertEquals(config.getInteger("stringValue"), (Integer) 123);
     }
 
+    @Test
+    public void testGetPropertyAfterSet() {
+        Config config = Config.loadYaml("prop1: { prop2: 123 }");
+        assertEquals(config.getInteger("prop1.prop2"), (Integer) 123);
+        assertEquals(config.getInteger("prop3", 5), (Integer) 5);
+
+        List<String> changedProperties = new ArrayList<>();
+        config.addChangeListener((propertyPath, value) -> changedProperties.add(propertyPath));
+        config.set("prop1", Config.loadYaml("prop2: 456").asMap());
+        config.set("prop3", "789");
+
+        assertEquals(config.getInteger("prop1.prop2"), (Integer) 456);
+        assertEquals(config.getInteger("prop3", 5), (Integer) 789);
+        assertEquals(config.getString("prop3"), "789");
+        assertEquals(changedProperties.size(), 2);
+        assertEquals(changedProperties.get(0), "prop1");
+    }
+
     @Test
     public void testGetMissingProperty() {
         try {
@@ -67,6 +86,16 @@ public class ConfigNGTest {
         assertFalse(config.hasProperty("prop1.prop2.prop3.prop4"));
     }
 
+    @Test
+    public void testHasPropertyWithUnusualPaths() {
+        Config config = Config.loadYaml("prop1: { prop2: 123 }\nprop3.prop4: 456");
+        assertTrue(config.hasProperty("prop1."));
+        assertFalse(config.hasProperty(".prop1"));
+        assertFalse(config.hasProperty("prop1..prop2"));
+        assertFalse(config.hasProperty("prop3.prop4"));
+        assertEquals(config.get("prop1.", null), config.get("prop1"));
+    }
+
     @Test
     public void testHasPropertyOnException() {
         Config config = Config.loadYaml("prop1: { prop2: { prop3: 123 } }");
@@ -0,0 +1,53 @@
+package org.getopentest.util;
+
+import com.google.gson.Gson;
+import java.util.HashMap;
+import java.util.Map;
+import org.getopentest.serialization.json.TrimmableMap;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class FactoryNGTest {
+
+    private static class BaseItem {
+
+        private String name = "base";
+    }
+
+    private static class Item extends BaseItem {
+
+        private String name = "item";
+
+        private Integer count = null;
+    }
+
+    @Test
+    public void testGetGsonIsCachedPerConfig() {
+        Config config = new Config();
+        config.set("logEntryMaxChars", 10);
+        config.set("logEntryTrimmedSize", 5);
+
+        Config sameConfig = new Config();
+        sameConfig.set("logEntryMaxChars", 10);
+        sameConfig.set("logEntryTrimmedSize", 5);
+
+        Gson gson = Factory.getGson(config);
+        assertSame(Factory.getGson(sameConfig), gson);
+        assertSame(Factory.getGson(config, false), gson);
+        assertNotSame(Factory.getGson(config, true), gson);
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("value", "0123456789ABCDEF");
+        assertEquals(gson.toJson(new TrimmableMap(map)), "{\"value\":\"01234 <<VALUE_WAS_TRUNCATED>>\"}");
+
+        config.set("logEntryMaxChars", 0);
+        assertNotSame(Factory.getGson(config), gson);
+        assertEquals(Factory.getGson(config).toJson(new TrimmableMap(map)), "{\"value\":\"0123456789ABCDEF\"}");
+    }
+
+    @Test
+    public void testGetGsonSkipsDuplicateFields() {
+        assertEquals(Factory.getGson(false).toJson(new Item()), "{\"name\":\"base\"}");
+        assertEquals(Factory.getGson(true).toJson(new Item()), "{\"count\":null,\"name\":\"base\"}");
+    }
+}
@@ -0,0 +1,87 @@
+package org.getopentest.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ImageUtilNGTest {
+
+    public ImageUtilNGTest() {
+    }
+
+    private static BufferedImage createImage(int imageType, int width, int height, int diffWidth) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 0, diffWidth, height);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void compareAcrossImageTypes() {
+        BufferedImage template = createImage(BufferedImage.TYPE_INT_RGB, 500, 400, 0);
+        int[] imageTypes = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_USHORT_565_RGB
+        };
+
+        for (int imageType : imageTypes) {
+            BufferedImage image = createImage(imageType, 500, 400, 50);
+            ImageCompareResult result = ImageUtil.compare(template, image, 0.15, null);
+
+            assertEquals(result.getDiffPixelCount(), 50 * 400);
+            assertEquals(result.getSimilarity(), 0.9, 0.00001);
+            assertFalse(result.isPartial());
+            assertEquals(result.getDiffImage().getRGB(10, 10), Color.RED.getRGB());
+            assertEquals(result.getDiffImage().getRGB(100, 10), Color.decode("#FAFAFA").getRGB());
+        }
+    }
+
+    @Test
+    public void compareSubimage() {
+        BufferedImage template = createImage(BufferedImage.TYPE_3BYTE_BGR, 200, 100, 0);
+        BufferedImage image = createImage(BufferedImage.TYPE_3BYTE_BGR, 300, 200, 150)
+                .getSubimage(100, 50, 200, 100);
+
+        ImageCompareResult result = ImageUtil.compare(template, image, 0.15, null);
+        assertEquals(result.getDiffPixelCount(), 50 * 100);
+    }
+
+    @Test
+    public void compareIgnoredPixels() {
+        Color ignoredColor = Color.decode("#FF00EE");
+        BufferedImage template = createImage(BufferedImage.TYPE_INT_RGB, 100, 100, 0);
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 100, 100, 0);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(ignoredColor);
+        graphics.fillRect(0, 0, 10, 10);
+        graphics.dispose();
+
+        ImageCompareResult result = ImageUtil.compare(template, image, 0.15, ignoredColor);
+        assertEquals(result.getDiffPixelCount(), 0);
+        assertEquals(result.getSimilarity(), 1.0);
+    }
+
+    @Test
+    public void compareStopsEarly() {
+        BufferedImage template = createImage(BufferedImage.TYPE_INT_RGB, 1000, 1000, 0);
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 1000, 1000, 500);
+
+        ImageCompareResult result = ImageUtil.compare(template, image, 0.15, null, 0.99);
+        assertTrue(result.isPartial());
+        assertTrue(result.getSimilarity() < 0.99);
+        assertTrue(result.getDiffPixelCount() > 10000);
+
+        result = ImageUtil.compare(template, image, 0.15, null, 0.4);
+        assertFalse(result.isPartial());
+        assertEquals(result.getDiffPixelCount(), 500 * 1000);
+    }
+}
@@ -0,0 +1,52 @@
+package org.getopentest.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.getopentest.testdef.MacroDefinition;
+import org.getopentest.testdef.TestDefAction;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ObjectUtilNGTest {
+
+    @Test
+    public void testDeepCopyMacroDefinition() {
+        Map<String, Object> nestedArgs = new HashMap<>();
+        nestedArgs.put("count", 5);
+        Map<String, Object> args = new HashMap<>();
+        args.put("url", "$data.url");
+        args.put("nested", nestedArgs);
+        TestDefAction action = new TestDefAction();
+        action.action = "org.getopentest.actions.Log";
+        action.args = args;
+        MacroDefinition macro = new MacroDefinition();
+        macro.actions = new ArrayList<>();
+        macro.actions.add(action);
+
+        MacroDefinition copy = ObjectUtil.deepCopy(macro);
+        TestDefAction actionCopy = copy.actions.get(0);
+        actionCopy.args.put("url", "http://example.com");
+        ((Map<String, Object>) actionCopy.args.get("nested")).put("count", 6);
+
+        assertNotSame(copy, macro);
+        assertEquals(actionCopy.action, "org.getopentest.actions.Log");
+        assertEquals(args.get("url"), "$data.url");
+        assertEquals(nestedArgs.get("count"), 5);
+    }
+
+    @Test
+    public void testDeepCopySharedReferences() {
+        List<Object> sharedList = new ArrayList<>();
+        sharedList.add("item");
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", sharedList);
+        map.put("b", sharedList);
+
+        Map<String, Object> copy = ObjectUtil.deepCopy(map);
+
+        assertNotSame(copy.get("a"), sharedList);
+        assertSame(copy.get("a"), copy.get("b"));
+    }
+}
@@ -0,0 +1,65 @@
+package org.getopentest.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.getopentest.util.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures configuration property lookups, which are performed by the actor
+ * and by the test actions many times for each action that is executed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigBenchmark {
+
+    private Config config;
+
+    @Setup
+    public void setup() {
+        this.config = Config.loadYaml(
+                "actorType: ACTOR1\n"
+                + "syncServerUrl: http://localhost:3000\n"
+                + "logLevel: DEBUG\n"
+                + "httpLogger:\n"
+                + "  async: true\n"
+                + "  batchSize: 200\n"
+                + "selenium:\n"
+                + "  desiredCapabilities:\n"
+                + "    browserName: chrome\n"
+                + "    chromeOptions:\n"
+                + "      args: [--headless]\n");
+    }
+
+    @Benchmark
+    public Object getTopLevelProperty() {
+        return this.config.getString("logLevel");
+    }
+
+    @Benchmark
+    public Object getNestedProperty() {
+        return this.config.getInteger("httpLogger.batchSize");
+    }
+
+    @Benchmark
+    public Object getDeeplyNestedProperty() {
+        return this.config.getString("selenium.desiredCapabilities.browserName");
+    }
+
+    @Benchmark
+    public Object getMissingPropertyWithDefault() {
+        return this.config.getInteger("imageCache.maxSizeMb", 256);
+    }
+}
@@ -0,0 +1,60 @@
+package org.getopentest.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import nu.pattern.OpenCV;
+import org.getopentest.visual.CvHelper;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of images to OpenCV Mat objects, which happens for
+ * every screenshot and template image used for image recognition.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertToMatBenchmark {
+
+    private BufferedImage image;
+
+    @Param({"TYPE_3BYTE_BGR", "TYPE_INT_RGB", "TYPE_INT_ARGB"})
+    public String imageType;
+
+    @Setup
+    public void setup() throws Exception {
+        OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+
+        this.image = new BufferedImage(1920, 1080, BufferedImage.class.getField(this.imageType).getInt(null));
+        Graphics2D graphics = this.image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 1920, 1080);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(100, 100, 800, 400);
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public int convertToMat() {
+        Mat mat = CvHelper.convertToMat(this.image);
+        int rows = mat.rows();
+        mat.release();
+        return rows;
+    }
+}
@@ -0,0 +1,109 @@
+package org.getopentest.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.getopentest.util.ImageCompareResult;
+import org.getopentest.util.ImageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the comparison of a template image with a screenshot, as done by
+ * the visual testing actions (e.g. AssertElementImage).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageCompareBenchmark {
+
+    private BufferedImage differentImage;
+
+    private BufferedImage similarImage;
+
+    private BufferedImage template;
+
+    /**
+     * The image type of the screenshot. Template images are always
+     * TYPE_3BYTE_BGR, which is how they are decoded by the image cache.
+     */
+    @Param({"TYPE_3BYTE_BGR", "TYPE_INT_RGB"})
+    public String imageType;
+
+    @Param({"400x300", "1920x1080"})
+    public String size;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] dimensions = this.size.split("x");
+        int width = Integer.valueOf(dimensions[0]);
+        int height = Integer.valueOf(dimensions[1]);
+        int type = BufferedImage.class.getField(this.imageType).getInt(null);
+
+        this.template = createImage(BufferedImage.TYPE_3BYTE_BGR, width, height, 0);
+        this.similarImage = createImage(type, width, height, 0);
+        this.differentImage = createImage(type, width, height, 0);
+
+        // The similar image differs from the template in a small region, and
+        // the different image in more than half of its area
+        Graphics2D graphics = this.similarImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 20, height / 20);
+        graphics.dispose();
+        graphics = this.differentImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width, height * 2 / 3);
+        graphics.dispose();
+    }
+
+    /**
+     * Creates an image with a deterministic, UI-like content (flat areas with
+     * rectangles and some noise).
+     */
+    private static BufferedImage createImage(int type, int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            graphics.fillRect(random.nextInt(width), random.nextInt(height), 1 + random.nextInt(width / 4), 1 + random.nextInt(height / 10));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    @Benchmark
+    public ImageCompareResult compareSimilar() {
+        return ImageUtil.compare(this.template, this.similarImage, 0.15, null);
+    }
+
+    @Benchmark
+    public ImageCompareResult compareDifferent() {
+        return ImageUtil.compare(this.template, this.differentImage, 0.15, null);
+    }
+
+    /**
+     * Comparison with an expected similarity, which allows the comparison to
+     * stop as soon as the expected similarity can't be reached anymore.
+     */
+    @Benchmark
+    public ImageCompareResult compareDifferentWithExpectedSimilarity() {
+        return ImageUtil.compare(this.template, this.differentImage, 0.15, null, 0.95);
+    }
+}
@@ -0,0 +1,101 @@
+package org.getopentest.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.getopentest.base.TestActor;
+import org.getopentest.util.Factory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of Java values and JSON data to JS native values,
+ * which happens for every JSON response body of the HttpRequest action and
+ * for data records, macro arguments, etc. The data is slightly different for
+ * every invocation, like in real tests, so that the conversion can't be served
+ * from the compiled script cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsValueBridgeBenchmark {
+
+    @Param({"10", "1000"})
+    public int itemCount;
+
+    @Param({"nashorn", "graaljs"})
+    public String scriptEngine;
+
+    private TestActor actor;
+
+    private StubSyncServer syncServer;
+
+    private Map<String, Object> data;
+
+    private String json;
+
+    private int sequence;
+
+    @Setup
+    public void setup() throws Exception {
+        this.syncServer = new StubSyncServer("", 0);
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", StubSyncServer.ACTOR_TYPE);
+        config.put("syncServerUrl", this.syncServer.getUrl());
+        config.put("logLevel", "WARN");
+        config.put("scriptEngine", this.scriptEngine);
+        this.actor = new TestActor(config);
+
+        List<Object> items = new ArrayList<>();
+        for (int i = 0; i < this.itemCount; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", i);
+            item.put("name", "Item \"" + i + "\"");
+            item.put("price", i + 0.99);
+            item.put("tags", Arrays.asList("a", "b", null));
+            item.put("active", i % 2 == 0);
+            items.add(item);
+        }
+
+        this.data = new LinkedHashMap<>();
+        this.data.put("total", this.itemCount);
+        this.data.put("items", items);
+        this.json = Factory.getGson().toJson(this.data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.actor.close();
+        this.syncServer.stop();
+    }
+
+    @Benchmark
+    public Object parseJson() {
+        return this.actor.parseJsonToNativeJsType(
+                "{\"sequence\":" + (this.sequence++) + "," + this.json.substring(1));
+    }
+
+    @Benchmark
+    public Object toJsType() {
+        this.data.put("sequence", this.sequence++);
+        return this.actor.toJsType(this.data);
+    }
+}
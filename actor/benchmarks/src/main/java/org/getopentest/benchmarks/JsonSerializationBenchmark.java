@@ -0,0 +1,97 @@
+package org.getopentest.benchmarks;
+
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptEngine;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import org.getopentest.serialization.json.TrimmableMap;
+import org.getopentest.util.Config;
+import org.getopentest.util.Factory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the JSON serialization of action outputs (TrimmableMap values,
+ * including large values that get truncated) and of JavaScript objects, as
+ * done when reporting segment results and logging action outputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    private Config config;
+
+    private ScriptObjectMirror jsObject;
+
+    private TrimmableMap<String, Object> trimmableMap;
+
+    @Setup
+    public void setup() throws Exception {
+        this.config = new Config();
+        this.config.set("logEntryMaxChars", 2000);
+        this.config.set("logEntryTrimmedSize", 100);
+
+        StringBuilder largeText = new StringBuilder();
+        while (largeText.length() < 50000) {
+            largeText.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+        }
+
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> record = new HashMap<>();
+            record.put("id", i);
+            record.put("name", "Record " + i);
+            record.put("active", i % 2 == 0);
+            records.add(record);
+        }
+
+        this.trimmableMap = new TrimmableMap<>();
+        this.trimmableMap.put("statusCode", 200);
+        this.trimmableMap.put("contentType", "application/json");
+        this.trimmableMap.put("body", largeText.toString());
+        this.trimmableMap.put("records", records);
+        this.trimmableMap.put("duration", 123.45);
+
+        ScriptEngine engine = new NashornScriptEngineFactory().getScriptEngine();
+        this.jsObject = (ScriptObjectMirror) engine.eval(
+                "({ id: 1, name: 'John Doe', tags: ['a', 'b', 'c'], address: { city: 'Paris', zip: '75001' }, "
+                + "items: Array.apply(null, Array(100)).map(function (x, i) { return { index: i, price: i * 1.5 }; }) })");
+    }
+
+    @Benchmark
+    public String serializeJsObject() {
+        return Factory.getGson().toJson(this.jsObject);
+    }
+
+    @Benchmark
+    public String serializeTrimmableMap() {
+        return Factory.getGson().toJson(this.trimmableMap);
+    }
+
+    /**
+     * Serialization with a Gson instance created from the actor's
+     * configuration, the way segment results are serialized.
+     */
+    @Benchmark
+    public String serializeTrimmableMapWithConfig() {
+        Gson gson = Factory.getGson(this.config);
+        return gson.toJson(this.trimmableMap);
+    }
+}
@@ -0,0 +1,69 @@
+package org.getopentest.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.getopentest.actions.ReadCsv;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the parsing of CSV data with the ReadCsv action, both when all the
+ * records are loaded in memory and when they are streamed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadCsvBenchmark {
+
+    private String csv;
+
+    @Param({"100", "10000"})
+    public int recordCount;
+
+    @Setup
+    public void setup() {
+        StringBuilder csvBuilder = new StringBuilder("id,firstName,lastName,email,city,balance\n");
+        for (int i = 0; i < this.recordCount; i++) {
+            csvBuilder.append(String.format("%s,First%s,\"Last, %s\",user%s@example.com,City %s,%s.%02d\n",
+                    i, i, i, i, i % 100, i * 7, i % 100));
+        }
+        this.csv = csvBuilder.toString();
+    }
+
+    private void readRecords(boolean stream, Blackhole blackhole) {
+        ReadCsv readCsv = new ReadCsv();
+        readCsv.writeArgument("csvString", this.csv);
+        readCsv.writeArgument("hasHeader", true);
+        readCsv.writeArgument("stream", stream);
+        readCsv.run();
+
+        List<Map<String, String>> records = (List<Map<String, String>>) readCsv.readOutputValue("records");
+        for (Map<String, String> record : records) {
+            blackhole.consume(record.get("email"));
+        }
+    }
+
+    @Benchmark
+    public void readAllRecords(Blackhole blackhole) {
+        this.readRecords(false, blackhole);
+    }
+
+    @Benchmark
+    public void streamRecords(Blackhole blackhole) {
+        this.readRecords(true, blackhole);
+    }
+}
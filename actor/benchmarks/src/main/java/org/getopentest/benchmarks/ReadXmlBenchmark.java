@@ -0,0 +1,74 @@
+package org.getopentest.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.getopentest.actions.ReadXml;
+import org.getopentest.contracts.IScriptObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parsing of XML data with the ReadXml action, both when the
+ * data is loaded in a DOM and queried with XPath, and when fragments are
+ * extracted in streaming mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadXmlBenchmark {
+
+    private String xml;
+
+    @Param({"100", "10000"})
+    public int itemCount;
+
+    @Setup
+    public void setup() {
+        StringBuilder xmlBuilder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n");
+        for (int i = 0; i < this.itemCount; i++) {
+            xmlBuilder.append(String.format(
+                    "  <item id=\"%s\"><name>Item %s</name><price currency=\"EUR\">%s.99</price></item>\n",
+                    i, i, i));
+        }
+        xmlBuilder.append("</catalog>");
+        this.xml = xmlBuilder.toString();
+    }
+
+    @Benchmark
+    public Object readDom() {
+        ReadXml readXml = new ReadXml();
+        readXml.writeArgument("xml", this.xml);
+        readXml.run();
+
+        IScriptObject rootNode = (IScriptObject) readXml.readOutputValue("rootNode");
+        Function<String, Object> node = (Function<String, Object>) rootNode.getMember("node");
+        IScriptObject nameNode = (IScriptObject) node.apply(String.format("/catalog/item[@id='%s']/name", this.itemCount / 2));
+        return nameNode.getMember("text");
+    }
+
+    @Benchmark
+    public Object readFragments() {
+        ReadXml readXml = new ReadXml();
+        readXml.writeArgument("xml", this.xml);
+        readXml.writeArgument("paths", Arrays.asList("/catalog/item/@id", "//price"));
+        readXml.run();
+
+        Map<String, List<Object>> matches = (Map<String, List<Object>>) readXml.readOutputValue("matches");
+        return matches.get("//price").size();
+    }
+}
@@ -0,0 +1,89 @@
+package org.getopentest.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.getopentest.base.TestActor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the preparation of the script engine at the beginning of a test,
+ * followed by the evaluation of a script file included by the test and of a
+ * few action arguments. The resetScriptEngine method is private, so it is
+ * invoked through a method handle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptEngineResetBenchmark {
+
+    private TestActor actor;
+
+    private MethodHandle resetScriptEngine;
+
+    private String includedScript;
+
+    private StubSyncServer syncServer;
+
+    @Param({"false", "true"})
+    public boolean reuseScriptEngine;
+
+    @Param({"nashorn", "graaljs"})
+    public String scriptEngine;
+
+    @Setup
+    public void setup() throws Exception {
+        this.syncServer = new StubSyncServer("", 0);
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", StubSyncServer.ACTOR_TYPE);
+        config.put("syncServerUrl", this.syncServer.getUrl());
+        config.put("logLevel", "WARN");
+        config.put("reuseScriptEngine", this.reuseScriptEngine);
+        config.put("scriptEngine", this.scriptEngine);
+        this.actor = new TestActor(config);
+
+        Method resetMethod = TestActor.class.getDeclaredMethod("resetScriptEngine");
+        resetMethod.setAccessible(true);
+        this.resetScriptEngine = MethodHandles.lookup().unreflect(resetMethod);
+
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            script.append(String.format(
+                    "function helper%s(items) { return items.filter(function (item) { return item.id %% %s === 0; }).length; }\n",
+                    i, i + 1));
+        }
+        this.includedScript = script.toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.actor.close();
+        this.syncServer.stop();
+    }
+
+    @Benchmark
+    public Object resetAndEvaluate() throws Throwable {
+        this.resetScriptEngine.invoke(this.actor);
+        this.actor.evalScript(this.includedScript);
+        this.actor.evalScript("$script $format('Item {0}', helper3([{ id: 1 }, { id: 3 }]))");
+        return this.actor.evalScript("$script 'https://example.com/api/' + $config('actorType')");
+    }
+}
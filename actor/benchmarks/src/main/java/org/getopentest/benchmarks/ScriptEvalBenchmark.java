@@ -0,0 +1,138 @@
+package org.getopentest.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.getopentest.base.TestActor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the evaluation of action arguments and data properties, which
+ * happens for every action that is executed, and of a compute-heavy script,
+ * with each of the script engines. The evalObject and evalString methods are
+ * private, so they are invoked through method handles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptEvalBenchmark {
+
+    @Param({"nashorn", "graaljs"})
+    public String scriptEngine;
+
+    private TestActor actor;
+
+    /**
+     * Action arguments that mix plain values and JS expressions. The map is
+     * copied before each evaluation, since evalObject replaces the values in
+     * place.
+     */
+    private Map<String, Object> args;
+
+    private MethodHandle evalObject;
+
+    private MethodHandle evalString;
+
+    private StubSyncServer syncServer;
+
+    @Setup
+    public void setup() throws Exception {
+        this.syncServer = new StubSyncServer("", 0);
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", StubSyncServer.ACTOR_TYPE);
+        config.put("syncServerUrl", this.syncServer.getUrl());
+        config.put("logLevel", "WARN");
+        config.put("scriptEngine", this.scriptEngine);
+        this.actor = new TestActor(config);
+        this.actor.injectVariable("userId", 12345);
+        this.actor.injectVariable("userName", "john.doe");
+
+        Method evalObjectMethod = TestActor.class.getDeclaredMethod("evalObject", Object.class, String[].class);
+        evalObjectMethod.setAccessible(true);
+        this.evalObject = MethodHandles.lookup().unreflect(evalObjectMethod);
+
+        Method evalStringMethod = TestActor.class.getDeclaredMethod("evalString", String.class);
+        evalStringMethod.setAccessible(true);
+        this.evalString = MethodHandles.lookup().unreflect(evalStringMethod);
+
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("X-User", "$script userName");
+
+        this.args = new HashMap<>();
+        this.args.put("url", "$script 'https://example.com/api/users/' + userId");
+        this.args.put("verb", "GET");
+        this.args.put("headers", headers);
+        this.args.put("retries", "$script 1 + 2");
+        this.args.put("expectedIds", new ArrayList<>(Arrays.asList("$script userId", "$script userId + 1", 3)));
+        this.args.put("note", "$string $this is not evaluated");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.actor.close();
+        this.syncServer.stop();
+    }
+
+    private static Object deepCopy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new HashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List) {
+            ArrayList<Object> copy = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                copy.add(deepCopy(item));
+            }
+            return copy;
+        } else {
+            return value;
+        }
+    }
+
+    @Benchmark
+    public Object evalObject() throws Throwable {
+        return (Object) this.evalObject.invoke(this.actor, deepCopy(this.args), (String[]) null);
+    }
+
+    @Benchmark
+    public Object evalStringExpression() throws Throwable {
+        return (Object) this.evalString.invoke(this.actor, "$script 'Hello, ' + userName + '!'");
+    }
+
+    @Benchmark
+    public Object evalStringCompute() throws Throwable {
+        return (Object) this.evalString.invoke(this.actor,
+                "$script (function () { var items = []; for (var i = 0; i < 10000; i++) { items.push(i % 97); } "
+                + "return items.filter(function (x) { return x % 2 === 0; }).map(function (x) { return x * x; })"
+                + ".reduce(function (a, b) { return a + b; }, 0); })()");
+    }
+
+    @Benchmark
+    public Object evalStringPlain() throws Throwable {
+        return (Object) this.evalString.invoke(this.actor, "Just a plain string value");
+    }
+}
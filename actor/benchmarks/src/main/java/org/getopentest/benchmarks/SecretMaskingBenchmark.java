@@ -0,0 +1,67 @@
+package org.getopentest.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.getopentest.logging.LogLevel;
+import org.getopentest.logging.NullLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the masking of secrets in log entries, which is applied to every
+ * log entry written by the actor. A NullLogger is used so that only the cost
+ * of the masking is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecretMaskingBenchmark {
+
+    private String entryWithoutSecrets;
+
+    private String entryWithSecrets;
+
+    private NullLogger logger;
+
+    @Param({"1", "10", "100"})
+    public int secretCount;
+
+    @Setup
+    public void setup() {
+        this.logger = new NullLogger();
+        this.logger.setLevel(LogLevel.INFO);
+        for (int i = 0; i < this.secretCount; i++) {
+            this.logger.addSecret(String.format("s3cr3t-%s-Kq8vZ2pX", i));
+        }
+
+        StringBuilder entry = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            entry.append(String.format("Executing HTTP request %s with header Authorization: Bearer ", i));
+            entry.append(i == 10 ? "s3cr3t-0-Kq8vZ2pX" : "public-token");
+            entry.append(". ");
+        }
+        this.entryWithSecrets = entry.toString();
+        this.entryWithoutSecrets = this.entryWithSecrets.replace("s3cr3t-0-Kq8vZ2pX", "public-token");
+    }
+
+    @Benchmark
+    public void maskEntryWithoutSecrets() {
+        this.logger.info(this.entryWithoutSecrets);
+    }
+
+    @Benchmark
+    public void maskEntryWithSecrets() {
+        this.logger.info(this.entryWithSecrets);
+    }
+}
@@ -0,0 +1,109 @@
+package org.getopentest.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.getopentest.base.TestActor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the execution of test segments end-to-end: the session status
+ * request, the evaluation and execution of the segment's actions, the log
+ * entries sent to the sync server and the reporting of the segment's result.
+ * The actor runs against an in-process stub of the sync server.
+ *
+ * Every SEGMENTS_PER_TEST segments, the session moves to the next test, so
+ * the cost of initializing a test (resetting the script engine, loading the
+ * test definition, etc.) is also included, amortized over the segments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentBenchmark {
+
+    private static final int SEGMENTS_PER_TEST = 20;
+
+    private static final long SEGMENT_TIMEOUT_MS = 60000;
+
+    private TestActor actor;
+
+    private Thread sessionThread;
+
+    private StubSyncServer syncServer;
+
+    @Param({"false", "true"})
+    public boolean httpLoggerAsync;
+
+    private static String createTestDefinition() {
+        StringBuilder testDef = new StringBuilder()
+                .append("description: Benchmark test\n")
+                .append("actors:\n")
+                .append("  - actor: ").append(StubSyncServer.ACTOR_TYPE).append("\n")
+                .append("    segments:\n");
+
+        for (int segment = 1; segment <= SEGMENTS_PER_TEST; segment++) {
+            testDef.append("      - segment: ").append(segment).append("\n")
+                    .append("        actions:\n")
+                    .append("          - description: Build the test data\n")
+                    .append("            script: |\n")
+                    .append("              $localData.items = [1, 2, 3, 4, 5].map(function (i) {\n")
+                    .append("                return { id: i, name: 'Item ' + i };\n")
+                    .append("              });\n")
+                    .append("          - description: Format a message\n")
+                    .append("            action: org.getopentest.actions.Format\n")
+                    .append("            args:\n")
+                    .append("              template: Found ${$localData.items.length} items\n")
+                    .append("          - description: Log the test data\n")
+                    .append("            action: org.getopentest.actions.Log\n")
+                    .append("            args:\n")
+                    .append("              text: $script 'Items ' + JSON.stringify($localData.items)\n");
+        }
+
+        return testDef.toString();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        this.syncServer = new StubSyncServer(createTestDefinition(), SEGMENTS_PER_TEST);
+        this.syncServer.startSession();
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("actorType", StubSyncServer.ACTOR_TYPE);
+        config.put("syncServerUrl", this.syncServer.getUrl());
+        config.put("logLevel", "INFO");
+        Map<String, Object> httpLoggerConfig = new HashMap<>();
+        httpLoggerConfig.put("async", this.httpLoggerAsync);
+        config.put("httpLogger", httpLoggerConfig);
+        this.actor = new TestActor(config);
+
+        this.sessionThread = new Thread(() -> this.actor.runOneSession(), "benchmark-session");
+        this.sessionThread.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.syncServer.completeSession();
+        this.sessionThread.join(SEGMENT_TIMEOUT_MS);
+        this.actor.close();
+        this.syncServer.stop();
+    }
+
+    @Benchmark
+    public void runSegment() throws InterruptedException {
+        this.syncServer.runSegment(SEGMENT_TIMEOUT_MS);
+    }
+}
@@ -0,0 +1,356 @@
+package org.getopentest.benchmarks;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal, in-process implementation of the sync server API, which allows
+ * running a test actor end-to-end without a real sync server. The server hosts
+ * a single test session, for a single actor, in which the same test is run
+ * over and over again. The session is driven by the benchmark code, one
+ * segment at a time, using the runSegment method.
+ *
+ * Log entries, session data and all the other requests that are not relevant
+ * for driving the session are accepted and discarded.
+ */
+public class StubSyncServer {
+
+    public static final String ACTOR_TYPE = "BENCHMARK";
+
+    private static final Pattern STEP_STATUS_PATTERN = Pattern.compile(
+            "^/api/session/[^/]+/actor/[^/]+/test/(?<test>\\d+)/(step|segment)/(?<segment>\\d+)$");
+
+    private static final Pattern STATUS_PATTERN = Pattern.compile("^/api/session/[^/]+/status$");
+
+    private static final String TEST_NAME = "Benchmark test";
+
+    private static final String TEST_PATH = "benchmarks";
+
+    private int completedSegmentIndex = -1;
+
+    private int completedTestIndex = -1;
+
+    private final ExecutorService executor;
+
+    /**
+     * Describes the last segment that was reported as failed by the actor.
+     */
+    private String failedSegment;
+
+    private int segmentIndex;
+
+    private final int segmentsPerTest;
+
+    private final HttpServer server;
+
+    private final String sessionId = "benchmark-session";
+
+    private boolean sessionCompleted;
+
+    private boolean sessionStarted;
+
+    /**
+     * Incremented every time the session status changes. Used as the state
+     * key for long-polling.
+     */
+    private long stateVersion;
+
+    private final String testDefinition;
+
+    private int testIndex;
+
+    /**
+     * @param testDefinition The YAML test definition that will be run in the
+     * session. Its actor must be of type ACTOR_TYPE.
+     * @param segmentsPerTest The number of segments in the test definition,
+     * numbered from 1 to segmentsPerTest.
+     */
+    public StubSyncServer(String testDefinition, int segmentsPerTest) throws IOException {
+        this.segmentsPerTest = segmentsPerTest;
+        this.testDefinition = testDefinition;
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this::handleRequest);
+
+        // Status and announce requests are held by the server while
+        // long-polling, so each request needs its own thread
+        this.executor = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "stub-sync-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    /**
+     * Waits until the actor reports the specified segment as completed.
+     */
+    private void awaitSegmentCompleted(int testIndex, int segmentIndex, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        synchronized (this) {
+            while (this.completedTestIndex < testIndex
+                    || (this.completedTestIndex == testIndex && this.completedSegmentIndex < segmentIndex)) {
+                long waitMs = deadline - System.currentTimeMillis();
+                if (waitMs <= 0) {
+                    throw new RuntimeException(String.format(
+                            "Timed out waiting for the actor to complete segment %s of test %s",
+                            segmentIndex,
+                            testIndex));
+                }
+                this.wait(waitMs);
+            }
+
+            if (this.failedSegment != null) {
+                throw new RuntimeException(String.format(
+                        "The actor failed to execute %s. Please check the actor's log for details.",
+                        this.failedSegment));
+            }
+        }
+    }
+
+    /**
+     * Marks the test session as completed, so that the actor's runOneSession
+     * method returns.
+     */
+    public synchronized void completeSession() {
+        this.sessionCompleted = true;
+        this.stateChanged();
+    }
+
+    private synchronized String getSessionStatus() {
+        if (!this.sessionStarted) {
+            return null;
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("status", this.sessionCompleted ? "completed" : "started");
+        status.put("stateKey", String.valueOf(this.stateVersion));
+        status.put("currentIteration", 1);
+        status.put("currentTestIndex", this.testIndex);
+        status.put("currentSegmentIndex", this.segmentIndex);
+        status.put("currentTestPath", TEST_PATH);
+        status.put("currentTestName", TEST_NAME);
+        return toJson(status);
+    }
+
+    /**
+     * Returns the base URL of the server (e.g. http://127.0.0.1:12345).
+     */
+    public String getUrl() {
+        return String.format("http://127.0.0.1:%s", this.server.getAddress().getPort());
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String body = readBody(exchange.getRequestBody());
+            Matcher matcher;
+
+            if (path.equals("/api/actor/announce")) {
+                JsonObject announceRequest = new JsonParser().parse(body).getAsJsonObject();
+                long waitMs = announceRequest.has("waitMs") ? announceRequest.get("waitMs").getAsLong() : 0;
+                sendResponse(exchange, 200, this.waitForSession(waitMs));
+            } else if (STATUS_PATTERN.matcher(path).matches()) {
+                String stateKey = query.get("stateKey");
+                long waitMs = query.containsKey("waitMs") ? Long.valueOf(query.get("waitMs")) : 0;
+                String status = this.waitForStateChange(stateKey, waitMs);
+                sendResponse(exchange, status != null ? 200 : 404, status != null ? status : "{}");
+            } else if ((matcher = STEP_STATUS_PATTERN.matcher(path)).matches()) {
+                JsonObject stepStatus = new JsonParser().parse(body).getAsJsonObject();
+                if (stepStatus.get("status").getAsString().equals("completed")) {
+                    this.segmentCompleted(
+                            Integer.valueOf(matcher.group("test")),
+                            Integer.valueOf(matcher.group("segment")),
+                            stepStatus.get("result").getAsString().equals("passed"));
+                }
+                sendResponse(exchange, 200, "{}");
+            } else if (path.equals("/api/test-asset") && "test".equals(query.get("type"))) {
+                sendResponse(exchange, 200, this.testDefinition);
+            } else if (path.equals("/api/test-asset")) {
+                sendResponse(exchange, 404, "Not found");
+            } else {
+                sendResponse(exchange, 200, "{}");
+            }
+        } catch (Exception ex) {
+            sendResponse(exchange, 500, ex.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                String[] parts = param.split("=", 2);
+                params.put(
+                        URLDecoder.decode(parts[0], "UTF-8"),
+                        parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+            }
+        }
+
+        return params;
+    }
+
+    private static String readBody(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Moves the session to the next segment and waits until the actor reports
+     * it as completed. When the last segment of the test was completed, the
+     * session moves to the next test first, which makes the actor reset its
+     * script engine and go through the test's initialization (segment 0).
+     */
+    public void runSegment(long timeoutMs) throws InterruptedException {
+        int currentTestIndex;
+        int currentSegmentIndex;
+        boolean isNewTest;
+
+        synchronized (this) {
+            if (this.segmentIndex >= this.segmentsPerTest) {
+                ++this.testIndex;
+                this.segmentIndex = 0;
+                this.stateChanged();
+            }
+            currentTestIndex = this.testIndex;
+            isNewTest = this.segmentIndex == 0;
+        }
+
+        if (isNewTest) {
+            this.awaitSegmentCompleted(currentTestIndex, 0, timeoutMs);
+        }
+
+        synchronized (this) {
+            ++this.segmentIndex;
+            currentSegmentIndex = this.segmentIndex;
+            this.stateChanged();
+        }
+
+        this.awaitSegmentCompleted(currentTestIndex, currentSegmentIndex, timeoutMs);
+    }
+
+    private synchronized void segmentCompleted(int testIndex, int segmentIndex, boolean passed) {
+        if (!passed) {
+            this.failedSegment = String.format("segment %s of test %s", segmentIndex, testIndex);
+        }
+
+        if (testIndex > this.completedTestIndex
+                || (testIndex == this.completedTestIndex && segmentIndex > this.completedSegmentIndex)) {
+            this.completedTestIndex = testIndex;
+            this.completedSegmentIndex = segmentIndex;
+        }
+        this.notifyAll();
+    }
+
+    private static void sendResponse(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", body.startsWith("{")
+                ? "application/json"
+                : "text/plain");
+        // The JDK's HTTP server only notices that a persistent connection
+        // became idle once a second, which would delay the actor's next
+        // request on that connection, so connections are not reused
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(statusCode, content.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(content);
+        }
+    }
+
+    /**
+     * Starts the test session. The actor will be acquired by the session the
+     * next time it announces itself and will then initialize the first test
+     * (segment 0).
+     */
+    public synchronized void startSession() {
+        this.sessionStarted = true;
+        this.sessionCompleted = false;
+        this.testIndex = 0;
+        this.segmentIndex = 0;
+        this.completedTestIndex = -1;
+        this.completedSegmentIndex = -1;
+        this.failedSegment = null;
+        this.stateChanged();
+    }
+
+    private void stateChanged() {
+        ++this.stateVersion;
+        this.notifyAll();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private static String toJson(Map<String, Object> map) {
+        JsonObject obj = new JsonObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getValue() instanceof Number) {
+                obj.addProperty(entry.getKey(), (Number) entry.getValue());
+            } else {
+                obj.addProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+
+        return obj.toString();
+    }
+
+    /**
+     * Waits for up to waitMs milliseconds for the session to start and
+     * returns the response to an announce request.
+     */
+    private synchronized String waitForSession(long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (!this.sessionStarted && System.currentTimeMillis() < deadline) {
+            this.wait(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+
+        if (this.sessionStarted && !this.sessionCompleted) {
+            return String.format("{\"testSessionId\":\"%s\"}", this.sessionId);
+        } else {
+            return "{}";
+        }
+    }
+
+    /**
+     * Waits for up to waitMs milliseconds for the session state to be
+     * different from the specified state key and returns the session status.
+     */
+    private synchronized String waitForStateChange(String stateKey, long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (stateKey != null
+                && stateKey.equals(String.valueOf(this.stateVersion))
+                && System.currentTimeMillis() < deadline) {
+            this.wait(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+
+        return this.getSessionStatus();
+    }
+}
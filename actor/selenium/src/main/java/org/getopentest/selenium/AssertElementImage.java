@@ -99,8 +99,7 @@ public class AssertElementImage extends SeleniumTestAction {
 
         double bestSimilarity = 0;
         BufferedImage bestSimilarityTemplateImage = null;
-        BufferedImage bestSimilarityDiffImage = null;
-        long bestSimilarityDiffPixelCount = 0;
+        ImageCompareResult bestSimilarityResult = null;
 
         // Iterate through all template images in search of one that matches the
         // expected similarity
@@ -113,13 +112,15 @@ public class AssertElementImage extends SeleniumTestAction {
                 continue;
             }
 
-            ImageCompareResult compareResult = ImageUtil.compare(templateImage, capturedImage, colorMatchTolerance, ignoredPixelsColor);
+            // The comparison stops early when the expected similarity can no
+            // longer be reached, and the diff image is only built on failure
+            ImageCompareResult compareResult = ImageUtil.compare(
+                    templateImage, capturedImage, colorMatchTolerance, ignoredPixelsColor, expectedSimilarity);
 
             if (compareResult.getSimilarity() > bestSimilarity) {
                 bestSimilarity = compareResult.getSimilarity();
-                bestSimilarityDiffImage = compareResult.getDiffImage();
                 bestSimilarityTemplateImage = templateImage;
-                bestSimilarityDiffPixelCount = compareResult.getDiffPixelCount();
+                bestSimilarityResult = compareResult;
 
                 if (compareResult.getSimilarity() >= expectedSimilarity) {
                     break;
@@ -128,6 +129,21 @@ public class AssertElementImage extends SeleniumTestAction {
         }
 
         if (bestSimilarity < expectedSimilarity) {
+            BufferedImage bestSimilarityDiffImage = null;
+            long bestSimilarityDiffPixelCount = 0;
+
+            if (bestSimilarityResult != null) {
+                // Compare all the pixels, to report the actual similarity
+                if (bestSimilarityResult.isPartial()) {
+                    bestSimilarityResult = ImageUtil.compare(
+                            bestSimilarityTemplateImage, capturedImage, colorMatchTolerance, ignoredPixelsColor);
+                    bestSimilarity = bestSimilarityResult.getSimilarity();
+                }
+
+                bestSimilarityDiffImage = bestSimilarityResult.getDiffImage();
+                bestSimilarityDiffPixelCount = bestSimilarityResult.getDiffPixelCount();
+            }
+
             // Write screen capture to disk
             try {
                 String timestamp = LocalDateTime.now()
@@ -9,6 +9,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.lang3.SystemUtils;
 import org.getopentest.logging.Logger;
+import org.getopentest.util.ActorContext;
 import org.getopentest.util.Config;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.Point;
@@ -30,20 +31,20 @@ import org.openqa.selenium.safari.SafariOptions;
 
 public class SeleniumHelper {
 
-    private static Config config;
-
-    private static WebDriver driver;
-
-    private static int explicitWaitSec;
+    /**
+     * The configuration loaded from actor.yaml, used when the test actor that
+     * owns the current thread didn't publish its own configuration.
+     */
+    private static Config defaultConfig;
 
     static {
-        config = Config.load("actor.yaml");
-        explicitWaitSec = config.getInteger("selenium.explicitWaitSec", 10);
+        defaultConfig = Config.load("actor.yaml");
     }
 
     private static WebDriver createDriver() {
         WebDriver webDriver = null;
         DesiredCapabilities caps;
+        Config config = getConfig();
 
         setSystemProperties();
 
@@ -209,8 +210,21 @@ public class SeleniumHelper {
         return caps;
     }
 
+    /**
+     * Returns the state kept for the test actor that owns the current thread.
+     * Every test actor running in this JVM has its own driver.
+     */
+    private static ActorState getActorState() {
+        return ActorContext.getCurrent().getAttribute(ActorState.class.getName(), ActorState::new);
+    }
+
+    /**
+     * Returns the configuration of the test actor that owns the current
+     * thread.
+     */
     public static Config getConfig() {
-        return config;
+        Config actorConfig = ActorContext.getCurrent().getConfig();
+        return actorConfig != null ? actorConfig : defaultConfig;
     }
 
     /**
@@ -219,15 +233,48 @@ public class SeleniumHelper {
      * @return Explicit wait time in seconds
      */
     public static int getExplicitWaitSec() {
-        return explicitWaitSec;
+        return getConfig().getInteger("selenium.explicitWaitSec", 10);
     }
 
     public static WebDriver getDriver() {
-        if (driver == null) {
-            driver = createDriver();
+        ActorState state = getActorState();
+        if (state.driver == null) {
+            WebDriverPool driverPool = getDriverPool();
+            state.driver = driverPool != null ? driverPool.acquire() : createDriver();
+        }
+
+        return state.driver;
+    }
+
+    /**
+     * Returns the driver pool of the test actor that owns the current thread,
+     * or null if the driver pool is not enabled.
+     */
+    private static WebDriverPool getDriverPool() {
+        Config config = getConfig();
+        if (!config.getBoolean("selenium.driverPool.enabled", false)) {
+            return null;
         }
 
-        return driver;
+        ActorState state = getActorState();
+        synchronized (state) {
+            if (state.driverPool == null) {
+                state.driverPool = new WebDriverPool(
+                        SeleniumHelper::createDriver,
+                        config.getInteger("selenium.driverPool.standbySize", 1));
+            }
+
+            return state.driverPool;
+        }
+    }
+
+    /**
+     * Returns the driver pool statistics for the test actor that owns the
+     * current thread, or null if the driver pool is not enabled.
+     */
+    public static String getDriverPoolStats() {
+        WebDriverPool driverPool = getActorState().driverPool;
+        return driverPool != null ? driverPool.getStats() : null;
     }
 
     /**
@@ -235,7 +282,7 @@ public class SeleniumHelper {
      * DesiredCapabilities object.
      */
     private static void injectCapsFromConfig(DesiredCapabilities caps) {
-        Object capsFromConfig = config.get("selenium.desiredCapabilities");
+        Object capsFromConfig = getConfig().get("selenium.desiredCapabilities");
 
         if (capsFromConfig instanceof Map) {
             Map<String, Object> capsFromConfigMap = (Map) capsFromConfig;
@@ -251,17 +298,42 @@ public class SeleniumHelper {
      * Calls driver.quit() and sets the driver instance to null.
      */
     public static void discardDriver() {
-        if (driver != null) {
-            try {
-                driver.quit();
-            } catch (Exception ex) {
-                Logger.warning("Failed to quit the Selenium driver", ex);
+        ActorState state = getActorState();
+        if (state.driver != null) {
+            if (state.driverPool != null) {
+                state.driverPool.discard(state.driver);
+            } else {
+                try {
+                    state.driver.quit();
+                } catch (Exception ex) {
+                    Logger.warning("Failed to quit the Selenium driver", ex);
+                }
             }
 
-            driver = null;
+            state.driver = null;
         }
     }
 
+    /**
+     * Called when a test completes and the driver is not configured to be
+     * reused as it is. When the driver pool is enabled, the browser state is
+     * reset so the browser can be reused by the next test. Otherwise, or if
+     * the reset fails, the driver is discarded.
+     */
+    public static void releaseDriver() {
+        ActorState state = getActorState();
+        WebDriverPool driverPool = getDriverPool();
+
+        if (state.driver != null
+                && driverPool != null
+                && getConfig().getBoolean("selenium.driverPool.resetBetweenTests", true)
+                && driverPool.reset(state.driver)) {
+            return;
+        }
+
+        discardDriver();
+    }
+
     public static Rectangle parseResolution(String resolutionStr) {
         Rectangle resolution;
         // RegEx example 1: 1024x768
@@ -350,7 +422,7 @@ public class SeleniumHelper {
      * "selenium.systemProperties".
      */
     private static void setSystemProperties() {
-        Object systemProperties = config.get("selenium.systemProperties", null);
+        Object systemProperties = getConfig().get("selenium.systemProperties", null);
 
         if (systemProperties instanceof Map) {
             Map<String, Object> propsAsMap = (Map) systemProperties;
@@ -374,11 +446,8 @@ public class SeleniumHelper {
             retriesLeft--;
 
             try {
-                if (driver == null) {
-                    driver = createDriver();
-                }
                 // Just an operation that requires communication with the driver
-                driver.manage().getCookieNamed("no-cookie-for-you");
+                getDriver().manage().getCookieNamed("no-cookie-for-you");
                 break;
             } catch (Throwable ex) {
                 discardDriver();
@@ -390,4 +459,14 @@ public class SeleniumHelper {
             }
         }
     }
+
+    /**
+     * The state that SeleniumHelper keeps for each test actor.
+     */
+    private static class ActorState {
+
+        public WebDriver driver;
+
+        public WebDriverPool driverPool;
+    }
 }
@@ -11,6 +11,7 @@ import org.getopentest.base.TestAction;
 import org.getopentest.base.TestActorEvents;
 import org.getopentest.contracts.ITestActor;
 import org.getopentest.logging.Logger;
+import org.getopentest.util.ActorContext;
 import org.getopentest.util.Config;
 import org.openqa.selenium.*;
 import org.openqa.selenium.interactions.Actions;
@@ -23,24 +24,20 @@ import org.openqa.selenium.support.ui.WebDriverWait;
  */
 public abstract class SeleniumTestAction extends TestAction {
 
-    // Used for implementing the Selenium API for emulating
-    // complex user gestures
-    private static Actions actions;
-
+    /**
+     * The configuration of the test actor that created the last action
+     * instance. Use SeleniumHelper.getConfig() instead, which returns the
+     * configuration of the test actor that owns the current thread.
+     */
+    @Deprecated
     protected static Config config;
 
     // Stores a reference to the Selenium WebDriver object
     // used for automation.
     protected WebDriver driver;
 
-    /**
-     * Just a static flag to remember whether we've done the one-time
-     * initialization work in the initialize() method.
-     */
-    private static boolean initialized;
-
     public static void discardActionsObject() {
-        SeleniumTestAction.actions = null;
+        getActorState().actions = null;
     }
 
     /**
@@ -109,11 +106,19 @@ public abstract class SeleniumTestAction extends TestAction {
      * complex user gestures.
      */
     public static Actions getActionsInstance() {
-        if (SeleniumTestAction.actions == null) {
-            SeleniumTestAction.actions = new Actions(SeleniumHelper.getDriver());
+        ActorState state = getActorState();
+        if (state.actions == null) {
+            state.actions = new Actions(SeleniumHelper.getDriver());
         }
 
-        return SeleniumTestAction.actions;
+        return state.actions;
+    }
+
+    /**
+     * Returns the state kept for the test actor that owns the current thread.
+     */
+    private static ActorState getActorState() {
+        return ActorContext.getCurrent().getAttribute(ActorState.class.getName(), ActorState::new);
     }
 
     /**
@@ -162,9 +167,11 @@ public abstract class SeleniumTestAction extends TestAction {
     public void initialize() {
         super.initialize();
 
-        if (!SeleniumTestAction.initialized) {
-            SeleniumTestAction.initialized = true;
-            SeleniumTestAction.config = SeleniumHelper.getConfig();
+        SeleniumTestAction.config = SeleniumHelper.getConfig();
+
+        ActorState state = getActorState();
+        if (!state.initialized) {
+            state.initialized = true;
 
             this.getActor().addObserver(new Observer() {
                 @Override
@@ -192,7 +199,12 @@ public abstract class SeleniumTestAction extends TestAction {
                             
                             SeleniumTestAction.discardActionsObject();
                             if (!SeleniumHelper.getConfig().getBoolean("selenium.reuseDriver", false)) {
-                                SeleniumHelper.discardDriver();
+                                SeleniumHelper.releaseDriver();
+                            }
+
+                            String driverPoolStats = SeleniumHelper.getDriverPoolStats();
+                            if (driverPoolStats != null) {
+                                log.trace(String.format("WebDriver pool stats: %s", driverPoolStats));
                             }
                         }
                     }
@@ -320,4 +332,22 @@ public abstract class SeleniumTestAction extends TestAction {
             log.warning("The waitForAsyncCallsToFinish method failed.", ex);
         }
     }
+
+    /**
+     * The state that SeleniumTestAction keeps for each test actor.
+     */
+    private static class ActorState {
+
+        /**
+         * Used for implementing the Selenium API for emulating complex user
+         * gestures.
+         */
+        public Actions actions;
+
+        /**
+         * Flag to remember whether we've done the one-time initialization work
+         * in the initialize() method.
+         */
+        public boolean initialized;
+    }
 }
@@ -0,0 +1,229 @@
+package org.getopentest.selenium.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.getopentest.logging.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Keeps the browsers used by one test actor warm, so that tests don't have to
+ * wait for a new browser to start. Between tests, the current browser is reset
+ * (extra windows closed, cookies and web storage cleared) and reused. Standby
+ * browsers are launched in the background while tests are running and are
+ * handed out whenever a new browser is needed (e.g. the current one was closed
+ * or could not be reset).
+ */
+public class WebDriverPool {
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final Supplier<WebDriver> driverFactory;
+
+    private long launchCount;
+
+    private long lastLaunchMs;
+
+    private final ExecutorService launcher;
+
+    private long resetFailures;
+
+    private long reuseCount;
+
+    private final Deque<Future<WebDriver>> standbyDrivers;
+
+    private long standbyHits;
+
+    private final int standbySize;
+
+    private long totalLaunchMs;
+
+    /**
+     * @param driverFactory Creates and configures a new driver instance
+     * @param standbySize The number of browsers to keep ready in the
+     * background
+     */
+    public WebDriverPool(Supplier<WebDriver> driverFactory, int standbySize) {
+        this.driverFactory = driverFactory;
+        this.standbySize = Math.max(standbySize, 0);
+        this.standbyDrivers = new ArrayDeque<>();
+
+        // The launcher threads are created from the test actor's thread, so
+        // they inherit its actor context (configuration, logger, etc.)
+        this.launcher = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, String.format("webdriver-pool-%s", threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    }
+
+    /**
+     * Returns a driver that is ready to use, taking it from the standby
+     * browsers if one is available, or launching a new browser otherwise.
+     * Either way, a replacement standby browser is launched in the background.
+     */
+    public WebDriver acquire() {
+        WebDriver driver = null;
+
+        Future<WebDriver> standbyDriver;
+        synchronized (this) {
+            standbyDriver = this.standbyDrivers.pollFirst();
+        }
+
+        if (standbyDriver != null) {
+            try {
+                driver = standbyDriver.get();
+
+                // Just an operation that requires communication with the driver
+                driver.manage().getCookieNamed("no-cookie-for-you");
+
+                synchronized (this) {
+                    ++this.standbyHits;
+                }
+            } catch (Throwable ex) {
+                Logger.warning(String.format(
+                        "The standby browser could not be used and a new browser will be started. "
+                        + "The exception message was: \"%s\".", ex.getMessage()));
+                if (driver != null) {
+                    quit(driver);
+                }
+                driver = null;
+            }
+        }
+
+        if (driver == null) {
+            driver = launch();
+        }
+
+        this.fillStandby();
+
+        return driver;
+    }
+
+    /**
+     * Quits the specified driver in the background.
+     */
+    public void discard(WebDriver driver) {
+        this.launcher.submit(() -> quit(driver));
+    }
+
+    /**
+     * Launches standby browsers in the background until their number reaches
+     * the configured standby size.
+     */
+    public synchronized void fillStandby() {
+        while (this.standbyDrivers.size() < this.standbySize) {
+            this.standbyDrivers.add(this.launcher.submit(this::launch));
+        }
+    }
+
+    public synchronized String getStats() {
+        return String.format("standbySize=%s, launches=%s, avgLaunchMs=%s, lastLaunchMs=%s, "
+                + "reuses=%s, standbyHits=%s, resetFailures=%s",
+                this.standbyDrivers.size(),
+                this.launchCount,
+                this.launchCount > 0 ? this.totalLaunchMs / this.launchCount : 0,
+                this.lastLaunchMs,
+                this.reuseCount,
+                this.standbyHits,
+                this.resetFailures);
+    }
+
+    private WebDriver launch() {
+        long startTime = System.currentTimeMillis();
+        WebDriver driver = this.driverFactory.get();
+        long launchMs = System.currentTimeMillis() - startTime;
+
+        synchronized (this) {
+            ++this.launchCount;
+            this.lastLaunchMs = launchMs;
+            this.totalLaunchMs += launchMs;
+        }
+
+        Logger.trace(String.format("Browser started in %s ms", launchMs));
+        return driver;
+    }
+
+    private static void quit(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (Exception ex) {
+            Logger.warning("Failed to quit the Selenium driver", ex);
+        }
+    }
+
+    /**
+     * Brings the browser back to a clean state, so it can be used by the next
+     * test: closes all windows except one, deletes the cookies and clears the
+     * local and session storage for the current page, then navigates to a
+     * blank page. Cookies and storage only get cleared for the domain that is
+     * loaded in the browser when the test completes.
+     *
+     * @return True if the browser was reset successfully, false if the
+     * browser can't be reused and must be discarded
+     */
+    public boolean reset(WebDriver driver) {
+        try {
+            Set<String> windowHandles = driver.getWindowHandles();
+            String mainWindow = null;
+            for (String windowHandle : windowHandles) {
+                if (mainWindow == null) {
+                    mainWindow = windowHandle;
+                } else {
+                    driver.switchTo().window(windowHandle);
+                    driver.close();
+                }
+            }
+            driver.switchTo().window(mainWindow);
+
+            driver.manage().deleteAllCookies();
+            ((JavascriptExecutor) driver).executeScript(
+                    "try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) { }");
+            driver.navigate().to("about:blank");
+
+            synchronized (this) {
+                ++this.reuseCount;
+            }
+
+            return true;
+        } catch (Throwable ex) {
+            Logger.debug(String.format(
+                    "Failed to reset the browser state. The exception message was: \"%s\".",
+                    ex.getMessage()));
+
+            synchronized (this) {
+                ++this.resetFailures;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Quits all standby browsers.
+     */
+    public void shutdown() {
+        Deque<Future<WebDriver>> drivers;
+        synchronized (this) {
+            drivers = new ArrayDeque<>(this.standbyDrivers);
+            this.standbyDrivers.clear();
+        }
+
+        for (Future<WebDriver> standbyDriver : drivers) {
+            try {
+                quit(standbyDriver.get());
+            } catch (Exception ex) {
+            }
+        }
+
+        this.launcher.shutdown();
+    }
+}
@@ -1,4 +1,5 @@
 import * as buildInfo from '../lib/build-info';
+import * as changeEvents from '../lib/change-events';
 import * as configLoader from '../lib/config-loader';
 import * as constants from '../lib/constants';
 import * as dbManager from '../lib/db-manager';
@@ -35,7 +36,7 @@ export function createRouter(options?: any) {
     let apiRouter: express.Router = express.Router();
 
     /** An object used for synchronization, to prevent multiple
-     * actors updating a test segment simultaneously. */
+     * actors updating a test segment or the session data simultaneously. */
     const updateTestSegmentLockKey = "updateTestSegmentLockKey";
     const lock = new AsyncLock();
 
@@ -64,7 +65,23 @@ export function createRouter(options?: any) {
                 lastSeenTime: Date.now()
             });
 
-            actor = await db.getActor(actorId);
+            // Actors can ask the server to hold the request until they are
+            // acquired by a test session, so they don't have to poll for it.
+            // The wait time must stay well below the 8 seconds after which an
+            // idle actor is considered to be offline.
+            const waitMs = Math.min(parseInt(req.body.waitMs) || 0, 4000);
+            const deadline = Date.now() + waitMs;
+            const watcher = changeEvents.watchActor(actorId);
+            try {
+                actor = await db.getActor(actorId);
+                while (actor && !actor.testSessionId && Date.now() < deadline) {
+                    await watcher.wait(deadline - Date.now());
+                    actor = await db.getActor(actorId);
+                }
+            } finally {
+                watcher.close();
+            }
+
             res.json(actor);
 
             if (isNewActor) {
@@ -284,30 +301,48 @@ export function createRouter(options?: any) {
         }
     });
 
-    // Upload screenshot
+    // Upload screenshots. Multiple files can be uploaded in one request. The
+    // optional "aliases" field is a JSON object that maps the names of new
+    // screenshot files to the names of previously uploaded files that have
+    // the same content, which are copied instead of being uploaded again.
     const screenShotsDir = path.join(dirs.workingDir(), 'uploads', 'screenshots');
     const uploadScreenshot = multer({ dest: screenShotsDir });
-    apiRouter.post('/screenshot', uploadScreenshot.single('screenshot'), async function (req, res) {
+    apiRouter.post('/screenshot', uploadScreenshot.array('screenshot'), async function (req, res) {
         try {
             if (isReadOnlyRouter) {
                 return res.status(401).send("Unauthorized");
             }
 
-            const screenshotFilePath = path.join(
-                dirs.workingDir(),
-                'uploads',
-                'screenshots',
-                req.file.originalname);
+            const files = (req.files as any[]) || [];
+            for (const file of files) {
+                const screenshotFilePath = path.join(screenShotsDir, file.originalname);
+                if (!helpers.pathIsChildOf(screenShotsDir, screenshotFilePath)) {
+                    return res.status(400).send(`Invalid screenshot file name ${file.originalname}`);
+                }
+
+                // Make sure destination file doesn't exist already 
+                if (helpers.fileExists(screenshotFilePath)) {
+                    helpers.deleteFile(screenshotFilePath);
+                }
 
-            // Make sure destination file doesn't exist already 
-            if (helpers.fileExists(screenshotFilePath)) {
-                helpers.deleteFile(screenshotFilePath);
+                // Rename multer temp file to the original file name
+                await thenify(fs.rename)(file.path, screenshotFilePath);
             }
 
-            // Rename multer temp file to the original file name
-            await thenify(fs.rename)(req.file.path, screenshotFilePath);
+            const aliases = req.body && req.body.aliases ? JSON.parse(req.body.aliases) : {};
+            for (const fileName of Object.keys(aliases)) {
+                const screenshotFilePath = path.join(screenShotsDir, fileName);
+                const sourceFilePath = path.join(screenShotsDir, aliases[fileName]);
+                if (!helpers.pathIsChildOf(screenShotsDir, screenshotFilePath)
+                    || !helpers.pathIsChildOf(screenShotsDir, sourceFilePath)) {
+                    return res.status(400).send(`Invalid screenshot file name ${fileName}`);
+                }
+
+                const content = await thenify(fs.readFile)(sourceFilePath);
+                await thenify(fs.writeFile)(screenshotFilePath, content);
+            }
 
-            res.send(200);
+            res.send({ uploaded: files.length, copied: Object.keys(aliases).length });
         } catch (err) {
             res.status(500).send((err && err.message) || 'Unknown error').end();
         }
@@ -663,21 +698,28 @@ export function createRouter(options?: any) {
         }
 
         let sessionId = parseInt(req.params.sessionId);
-        let level = req.body.level || 'info';
-        let message = req.body.message;
-        let extras = req.body.extras || {};
+
+        // Actors can send either a single log entry, or a batch of log
+        // entries in the "entries" property
+        let entries = Array.isArray(req.body.entries) ? req.body.entries : [req.body];
 
         if (sessionId) {
             let log = logManager.getSessionLog(sessionId);
-            switch (level) {
-                case 'debug': log.debug(extras, message); break;
-                case 'error': log.error(extras, message); break;
-                case 'info': log.info(extras, message); break;
-                case 'trace': log.trace(extras, message); break;
-                case 'warn': log.warn(extras, message); break;
+            for (let entry of entries) {
+                let level = entry.level || 'info';
+                let message = entry.message;
+                let extras = entry.extras || {};
+
+                switch (level) {
+                    case 'debug': log.debug(extras, message); break;
+                    case 'error': log.error(extras, message); break;
+                    case 'info': log.info(extras, message); break;
+                    case 'trace': log.trace(extras, message); break;
+                    case 'warn': log.warn(extras, message); break;
+                }
+                console.log(message);
             }
             (log as any).flushStreams();
-            console.log(message);
         } else {
             res.status(400).send("Session ID not found");
         }
@@ -685,14 +727,47 @@ export function createRouter(options?: any) {
         res.end();
     });
 
-    // Get session status
+    // Get the execution status for a session. When the "stateKey" and "waitMs"
+    // query parameters are specified and the state of the session still matches
+    // the state key, the response is delayed until the session state changes or
+    // until the wait time expires (long-polling).
     apiRouter.get('/session/:sessionId/status', async function (req, res) {
-        let sessionId = parseInt(req.params.sessionId);
+        const sessionId = parseInt(req.params.sessionId);
+        const stateKey = req.query.stateKey;
+        const waitMs = Math.min(parseInt(req.query.waitMs) || 0, 60000);
+        const deadline = Date.now() + waitMs;
+
+        let sessionStatus;
+        const watcher = changeEvents.watchSession(sessionId);
+        try {
+            sessionStatus = await getSessionStatus(sessionId);
+            while (stateKey &&
+                sessionStatus.httpStatus === 200 &&
+                sessionStatus.data.stateKey === stateKey &&
+                Date.now() < deadline) {
+
+                await watcher.wait(deadline - Date.now());
+                sessionStatus = await getSessionStatus(sessionId);
+            }
+        } finally {
+            watcher.close();
+        }
 
+        if (sessionStatus.httpStatus === 200) {
+            res.json(sessionStatus.data);
+        } else {
+            res.status(sessionStatus.httpStatus).send(sessionStatus.data);
+        }
+    });
+
+    async function getSessionStatus(sessionId: number): Promise<{ httpStatus: number, data: any }> {
         const db = dbManager.getDb();
         const testSession = await db.getSession(sessionId);
         if (!testSession) {
-            return res.status(404).send(helpers.format('Session {0} not found', sessionId));
+            return {
+                httpStatus: 404,
+                data: helpers.format('Session {0} not found', sessionId)
+            };
         }
 
         if (testSession.status === constants.testSessionStatus.STARTED) {
@@ -703,33 +778,57 @@ export function createRouter(options?: any) {
                 const errorMessage = helpers.format(
                     "Failed to access the currently executing test for session {0}. " +
                     "The current test index for the session was {1}.",
-                    req.params.sessionId,
+                    sessionId,
                     testSession.currentTestIndex)
                 log.error(errorMessage);
-                return res.status(500).send(errorMessage);
+                return { httpStatus: 500, data: errorMessage };
             }
 
-            res.json({
-                currentDataRecordIndex: currentTest.currentDataRecordIndex,
-                currentIteration: testSession.currentIteration,
-                currentTestIndex: testSession.currentTestIndex,
-                currentTestPath: currentTest.path,
-                currentTestName: currentTest.name,
-                /** This property is to be deleted once we completely
-                 * remove support for the "step" terminology */
-                currentStepIndex: testSession.currentSegmentIndex,
-                currentSegmentIndex: testSession.currentSegmentIndex,
-                environment: testSession.environment,
-                result: testSession.result,
-                status: testSession.status
-            });
+            return {
+                httpStatus: 200,
+                data: {
+                    currentDataRecordIndex: currentTest.currentDataRecordIndex,
+                    currentIteration: testSession.currentIteration,
+                    currentTestIndex: testSession.currentTestIndex,
+                    currentTestPath: currentTest.path,
+                    currentTestName: currentTest.name,
+                    /** This property is to be deleted once we completely
+                     * remove support for the "step" terminology */
+                    currentStepIndex: testSession.currentSegmentIndex,
+                    currentSegmentIndex: testSession.currentSegmentIndex,
+                    environment: testSession.environment,
+                    result: testSession.result,
+                    sessionDataVersion: testSession.sessionDataVersion || 0,
+                    sharedDataVersion: currentTest.sharedDataVersion || 0,
+                    stateKey: [
+                        testSession.status,
+                        testSession.currentIteration,
+                        testSession.currentTestIndex,
+                        currentTest.currentDataRecordIndex,
+                        testSession.currentSegmentIndex
+                    ].join('|'),
+                    status: testSession.status
+                }
+            };
         } else {
-            res.json({
-                result: testSession.result,
-                status: testSession.status
-            });
+            return {
+                httpStatus: 200,
+                data: {
+                    result: testSession.result,
+                    stateKey: testSession.status,
+                    status: testSession.status
+                }
+            };
         }
-    });
+    }
+
+    /** Returns the ETag for the specified version of the session data or of
+     * the test-scoped shared data. Test actors compare it with the data
+     * versions from the session status, to avoid downloading data that didn't
+     * change. */
+    function getDataETag(version: number): string {
+        return '"' + (version || 0) + '"';
+    }
 
     function updateTestSegment(req, res) {
         if (isReadOnlyRouter) {
@@ -796,6 +895,9 @@ export function createRouter(options?: any) {
             const db = dbManager.getDb();
             const testSession = await db.getSession(sessionId);
             if (testSession) {
+                // Express responds with 304 when the ETag matches the
+                // If-None-Match request header
+                res.header('ETag', getDataETag(testSession.sessionDataVersion));
                 res.send(testSession.sessionData || {});
             } else {
                 res.status(404).end(util.format('Test session %s not found', sessionId));
@@ -805,30 +907,38 @@ export function createRouter(options?: any) {
         }
     });
 
-    // Update session-scoped shared data
-    apiRouter.put('/session/:sessionId/data', async function (req, res) {
-        try {
-            if (isReadOnlyRouter) {
-                return res.status(401).send("Unauthorized");
-            }
+    // Update session-scoped shared data. The new data version is returned in
+    // the ETag header.
+    apiRouter.put('/session/:sessionId/data', function (req, res) {
+        if (isReadOnlyRouter) {
+            return res.status(401).send("Unauthorized");
+        }
 
-            const sessionId = parseInt(req.params.sessionId);
-            const testIndex = req.params.testIndex;
-            const newData = req.body;
+        const sessionId = parseInt(req.params.sessionId);
+        const newData = req.body;
 
-            const db = dbManager.getDb();
-            const testSession = await db.getSession(sessionId);
-            if (testSession) {
-                let sessionData = testSession.sessionData || {};
-                Object.assign(sessionData, newData);
-                await db.updateSession(sessionId, { sessionData: sessionData });
-                res.end();
-            } else {
-                res.status(404).send(util.format('Test session %s not found', sessionId));
+        lock.acquire(updateTestSegmentLockKey, async function (done) {
+            try {
+                const db = dbManager.getDb();
+                const testSession = await db.getSession(sessionId);
+                if (testSession) {
+                    let sessionData = testSession.sessionData || {};
+                    Object.assign(sessionData, newData);
+                    const sessionDataVersion = (testSession.sessionDataVersion || 0) + 1;
+                    await db.updateSession(sessionId, {
+                        sessionData: sessionData,
+                        sessionDataVersion: sessionDataVersion
+                    });
+                    res.header('ETag', getDataETag(sessionDataVersion));
+                    res.end();
+                } else {
+                    res.status(404).send(util.format('Test session %s not found', sessionId));
+                }
+            } catch (err) {
+                res.status(500).send(err);
             }
-        } catch (err) {
-            res.status(500).send(err);
-        }
+            done();
+        });
     });
 
     // Get test-scoped shared data
@@ -846,11 +956,14 @@ export function createRouter(options?: any) {
             if (testSession) {
                 var test = testSession.tests[testIndex];
                 if (!test) {
-                    res.status(404).end(util.format('Test index %s doesn\'t exist in session %s',
+                    return res.status(404).end(util.format('Test index %s doesn\'t exist in session %s',
                         testIndex,
                         sessionId));
                 }
 
+                // Express responds with 304 when the ETag matches the
+                // If-None-Match request header
+                res.header('ETag', getDataETag(test.sharedDataVersion));
                 res.send(test.sharedData || {});
             } else {
                 res.status(404).end(util.format('Test session %s not found', sessionId));
@@ -860,36 +973,42 @@ export function createRouter(options?: any) {
         }
     });
 
-    // Update test-scoped shared data
-    apiRouter.put('/session/:sessionId/test/:testIndex/data', async function (req, res) {
-        try {
-            if (isReadOnlyRouter) {
-                return res.status(401).send("Unauthorized");
-            }
+    // Update test-scoped shared data. The new data version is returned in the
+    // ETag header.
+    apiRouter.put('/session/:sessionId/test/:testIndex/data', function (req, res) {
+        if (isReadOnlyRouter) {
+            return res.status(401).send("Unauthorized");
+        }
 
-            const sessionId = parseInt(req.params.sessionId);
-            const testIndex = req.params.testIndex;
-            const newData = req.body;
+        const sessionId = parseInt(req.params.sessionId);
+        const testIndex = req.params.testIndex;
+        const newData = req.body;
 
-            const db = dbManager.getDb();
-            const testSession = await db.getSession(sessionId);
-            if (testSession) {
-                let sessionTests = testSession.tests;
-                var test = sessionTests[testIndex];
-                if (!test) {
-                    return res.status(404).send(util.format('Test index %s was not found', testIndex));
+        lock.acquire(updateTestSegmentLockKey, async function (done) {
+            try {
+                const db = dbManager.getDb();
+                const testSession = await db.getSession(sessionId);
+                if (testSession) {
+                    let sessionTests = testSession.tests;
+                    var test = sessionTests[testIndex];
+                    if (test) {
+                        test.sharedData = test.sharedData || {};
+                        Object.assign(test.sharedData, newData);
+                        test.sharedDataVersion = (test.sharedDataVersion || 0) + 1;
+                        await db.updateSession(sessionId, { tests: sessionTests });
+                        res.header('ETag', getDataETag(test.sharedDataVersion));
+                        res.end();
+                    } else {
+                        res.status(404).send(util.format('Test index %s was not found', testIndex));
+                    }
+                } else {
+                    res.status(404).send(util.format('Test session %s not found', sessionId));
                 }
-
-                test.sharedData = test.sharedData || {};
-                Object.assign(test.sharedData, newData);
-                await db.updateSession(sessionId, { tests: sessionTests });
-                return res.end();
-            } else {
-                return res.status(404).send(util.format('Test session %s not found', sessionId));
+            } catch (err) {
+                res.status(500).send(err);
             }
-        } catch (err) {
-            res.status(500).send(err);
-        }
+            done();
+        });
     });
 
     /** Record the fact that a checkpoint action failed for a specific test. This
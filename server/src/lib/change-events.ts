@@ -0,0 +1,91 @@
+/**
+ * In-process notifications that are emitted after actor and session records
+ * are written to the database. They are used to complete long-polling HTTP
+ * requests (made by test actors) as soon as the data they are waiting for
+ * changes, instead of having the actors poll the server repeatedly.
+ */
+
+import { EventEmitter } from 'events';
+
+const emitter = new EventEmitter();
+emitter.setMaxListeners(0);
+
+export function onActorUpdated(actorId: number) {
+    emitter.emit('actor-updated', actorId);
+}
+
+export function onSessionUpdated(sessionId: number) {
+    emitter.emit('session-updated', sessionId);
+}
+
+/** Starts watching for updates of the specified actor. The watcher must be
+ * created before the actor record is read, so an update that happens while the
+ * record is being read is not missed. */
+export function watchActor(actorId: number): ChangeWatcher {
+    return new ChangeWatcher('actor-updated', actorId);
+}
+
+/** Starts watching for updates of the specified session. The watcher must be
+ * created before the session record is read, so an update that happens while
+ * the record is being read is not missed. */
+export function watchSession(sessionId: number): ChangeWatcher {
+    return new ChangeWatcher('session-updated', sessionId);
+}
+
+/** Records the updates of an actor or session, from the time it's created until
+ * it's closed. */
+export class ChangeWatcher {
+    /** True when an update happened since the last call to wait() */
+    private changed = false;
+
+    private onEvent: (updatedId: number) => void;
+
+    /** Completes the pending call to wait(), if any */
+    private wakeUp: () => void = null;
+
+    constructor(private eventName: string, id: number) {
+        this.onEvent = (updatedId: number) => {
+            if (updatedId === id) {
+                this.changed = true;
+                if (this.wakeUp) {
+                    this.wakeUp();
+                }
+            }
+        };
+
+        emitter.on(this.eventName, this.onEvent);
+    }
+
+    /** Returns a promise that resolves when an update happens or when the
+     * timeout expires, whichever comes first. Resolves right away if an update
+     * already happened since the watcher was created or since the previous
+     * call to wait(). */
+    wait(timeoutMs: number): Promise<void> {
+        return new Promise<void>((resolve) => {
+            if (this.changed) {
+                this.changed = false;
+                return resolve();
+            }
+
+            const timer = setTimeout(done, Math.max(timeoutMs, 0));
+            const self = this;
+
+            function done() {
+                clearTimeout(timer);
+                self.wakeUp = null;
+                self.changed = false;
+                resolve();
+            }
+
+            this.wakeUp = done;
+        });
+    }
+
+    /** Stops watching for updates. */
+    close() {
+        emitter.removeListener(this.eventName, this.onEvent);
+        if (this.wakeUp) {
+            this.wakeUp();
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import * as changeEvents from './change-events';
 import * as dirs from './dirs';
 import * as configLoader from '../lib/config-loader';
 import * as constants from './constants';
@@ -469,6 +470,7 @@ export class NedbAdapter implements DbAdapter {
                     reject(err);
                 } else {
                     resolve(numUpdated);
+                    changeEvents.onActorUpdated(actorId);
                 }
             });
         });
@@ -499,6 +501,7 @@ export class NedbAdapter implements DbAdapter {
                     reject(err);
                 } else {
                     resolve(numUpdated);
+                    changeEvents.onSessionUpdated(sessionId);
                 }
             });
         });
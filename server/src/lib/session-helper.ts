@@ -603,6 +603,7 @@ function resetTestStatus(testSession: TestSessionInfo, testIndex: number) {
     test.timeStarted = null;
     test.timeCompleted = null;
     test.sharedData = {};
+    test.sharedDataVersion = (test.sharedDataVersion || 0) + 1;
     test.result = constants.testResult.PENDING;
     test.status = constants.testStatus.PENDING;
 
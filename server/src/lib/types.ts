@@ -107,6 +107,8 @@ export interface SubtestContext {
     result: string;
     /** The data store for test-scoped shared data */
     sharedData?: any;
+    /** Incremented every time the shared data changes */
+    sharedDataVersion?: number;
     /** Valid values: started, acquiring-actors, completed */
     status: string;
     segments: TestSegmentInfo[];
@@ -196,6 +198,8 @@ export interface TestSessionInfo {
     result: string,
     /** The data store for session-scoped shared data */
     sessionData?: any,
+    /** Incremented every time the session data changes */
+    sessionDataVersion?: number,
     /** Valid values: started, acquiring-actors, completed */
     status: string,
     tests: TestContext[],